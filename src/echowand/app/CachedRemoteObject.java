@@ -6,8 +6,11 @@ import echowand.common.PropertyMap;
 import echowand.net.Node;
 import echowand.net.Subnet;
 import echowand.object.*;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -50,14 +53,26 @@ public class CachedRemoteObject implements EchonetObject {
         return isCached(epc);
     }
     
+    public boolean updateCache(List<EPC> epcs) throws EchonetObjectException {
+        boolean success = true;
+        
+        for (Map.Entry<EPC, ObjectData> entry : remoteObject.getData(epcs).entrySet()) {
+            setCachedData(entry.getKey(), entry.getValue());
+        }
+        
+        for (EPC epc : epcs) {
+            success &= isCached(epc);
+        }
+        
+        return success;
+    }
+    
     public void observeData(EPC epc) throws EchonetObjectException {
         remoteObject.observeData(epc);
     }
 
     public boolean updatePropertyMapsCache() throws EchonetObjectException {
-        return updateCache(EPC.x9F)
-                && updateCache(EPC.x9E)
-                && updateCache(EPC.x9D);
+        return updateCache(Arrays.asList(EPC.x9F, EPC.x9E, EPC.x9D));
     }
 
     private boolean isEPCSetAtPropertyMap(EPC epc, EPC propertyMapEpc) {
@@ -2,6 +2,7 @@ package echowand.app;
 
 import echowand.common.EPC;
 import echowand.object.EchonetObjectException;
+import java.util.LinkedList;
 
 /**
  *
@@ -66,9 +67,20 @@ public class CachedRemoteObjectRefreshThread extends Thread {
             
             cachedObject.updatePropertyMapsCache();
             
+            LinkedList<EPC> gettableEPCs = new LinkedList<EPC>();
+            
             int size = cachedObject.size();
             for (int i = 0; !isInvalid() && i < size; i++) {
-                success &= updateCacheOfEPC(cachedObject.getEPC(i));
+                EPC epc = cachedObject.getEPC(i);
+                if (!cachedObject.isCached(epc) && cachedObject.isGettable(epc)) {
+                    gettableEPCs.add(epc);
+                } else {
+                    success &= updateCacheOfEPC(epc);
+                }
+            }
+            
+            if (!isInvalid() && !gettableEPCs.isEmpty()) {
+                success &= cachedObject.updateCache(gettableEPCs);
             }
             
             if (!isInvalid()) {
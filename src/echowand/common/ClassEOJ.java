@@ -6,11 +6,53 @@ package echowand.common;
  */
 public class ClassEOJ {
 
-    private byte classGroupCode;
-    private byte classCode;
+    private final byte classGroupCode;
+    private final byte classCode;
     private static ClassEOJ nodeClassEOJ = new ClassEOJ((byte) 0x0E, (byte) 0xF0);
     private static byte[] deviceCodes = new byte[]{(byte) 0x00, (byte) 0x01, (byte) 0x02, (byte) 0x03, (byte) 0x04, (byte) 0x05, (byte) 0x06};
     private static byte profileCode = (byte) 0x0e;
+    
+    /**
+     * 生成済みのClassEOJをクラスグループコードとクラスコードで参照するための256×256要素の表
+     * 機器オブジェクトとプロファイルオブジェクトのクラスグループのみを保持する。
+     * 複数のスレッドから同時に参照された場合には等しいClassEOJが重複して生成されることがあるが、ClassEOJは不変であるため問題はない。
+     */
+    private static final ClassEOJ[][] classEOJTable = new ClassEOJ[256][];
+    
+    static {
+        for (byte code : deviceCodes) {
+            classEOJTable[0xff & code] = new ClassEOJ[256];
+        }
+        classEOJTable[0xff & profileCode] = new ClassEOJ[256];
+        classEOJTable[0xff & nodeClassEOJ.classGroupCode][0xff & nodeClassEOJ.classCode] = nodeClassEOJ;
+    }
+    
+    static boolean isCached(byte classGroupCode) {
+        return classEOJTable[0xff & classGroupCode] != null;
+    }
+    
+    /**
+     * 指定されたクラスグループコードとクラスコードを持つClassEOJを返す。
+     * 機器オブジェクトとプロファイルオブジェクトのClassEOJは生成済みのものを再利用する。
+     * @param classGroupCode クラスグループコード
+     * @param classCode クラスコード
+     * @return 指定されたクラスグループコードとクラスコードを持つClassEOJ
+     */
+    public static ClassEOJ valueOf(byte classGroupCode, byte classCode) {
+        ClassEOJ[] classTable = classEOJTable[0xff & classGroupCode];
+        
+        if (classTable == null) {
+            return new ClassEOJ(classGroupCode, classCode);
+        }
+        
+        ClassEOJ ceoj = classTable[0xff & classCode];
+        if (ceoj == null) {
+            ceoj = new ClassEOJ(classGroupCode, classCode);
+            classTable[0xff & classCode] = ceoj;
+        }
+        
+        return ceoj;
+    }
 
     /**
      * 指定されたクラスグループコードとクラスコードを用いてClassEOJを生成する。
@@ -82,7 +124,7 @@ public class ClassEOJ {
      * @return 指定されたインスタンスコードを持ったEOJオブジェクト
      */
     public EOJ getEOJWithInstanceCode(byte instanceCode) {
-        return new EOJ(classGroupCode, classCode, instanceCode);
+        return EOJ.valueOf(this, instanceCode);
     }
     
     /**
@@ -1,5 +1,6 @@
 package echowand.common;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -29,6 +30,17 @@ public class Data {
         System.arraycopy(data, offset, this.data, 0, length);
     }
     
+    /**
+     * 指定されたByteBufferの現在位置から指定された長さを読み出してDataを生成する。
+     * ByteBufferの位置は読み出した長さだけ進められる。
+     * @param buffer データを含むByteBuffer
+     * @param length データの長さ
+     */
+    public Data(ByteBuffer buffer, int length) {
+        this.data = new byte[length];
+        buffer.get(this.data);
+    }
+    
     /**
      * データのindex番目のバイトを返す
      * @param index バイトのインデックス
@@ -85,6 +97,15 @@ public class Data {
             System.arraycopy(data, srcOffset, destData, destOffset, length);
     }
     
+    /**
+     * データをByteBufferの現在位置に書き込む。
+     * ByteBufferの位置はデータ長だけ進められる。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(data);
+    }
+    
     /**
      * データの文字列表現を返す。
      * @return データの文字列表現
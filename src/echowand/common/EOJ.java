@@ -1,12 +1,105 @@
 package echowand.common;
 
+import java.nio.ByteBuffer;
+
 /**
  * EOJの表現クラス
  * @author Yoshiki Makino
  */
 public class EOJ {
-    private ClassEOJ classEOJ;
-    private byte instanceCode;
+    private final ClassEOJ classEOJ;
+    private final byte instanceCode;
+    
+    /**
+     * 生成済みのEOJを再利用するインスタンスコードの上限
+     */
+    private static final int CACHED_INSTANCE_CODES = 16;
+    
+    /**
+     * 生成済みのEOJをクラスグループコード、クラスコード、インスタンスコードで参照するための表
+     * ClassEOJ.valueOfが再利用するクラスグループについて、インスタンスコードがCACHED_INSTANCE_CODES未満のEOJのみを保持する。
+     * 複数のスレッドから同時に参照された場合には等しいEOJが重複して生成されることがあるが、EOJは不変であるため問題はない。
+     */
+    private static final EOJ[][][] eojTable = new EOJ[256][][];
+    
+    private EOJ(ClassEOJ classEOJ, byte instanceCode) {
+        this.classEOJ = classEOJ;
+        this.instanceCode = instanceCode;
+    }
+    
+    /**
+     * 指定されたClassEOJとインスタンスコードを持つEOJを返す。
+     * 機器オブジェクトやプロファイルオブジェクトなどの一般的なEOJは生成済みのものを再利用する。
+     * @param ceoj クラスグループコードとクラスコードを表すClassEOJ
+     * @param instanceCode インスタンスコード
+     * @return 指定されたClassEOJとインスタンスコードを持つEOJ
+     */
+    public static EOJ valueOf(ClassEOJ ceoj, byte instanceCode) {
+        int groupIndex = 0xff & ceoj.getClassGroupCode();
+        int classIndex = 0xff & ceoj.getClassCode();
+        int instanceIndex = 0xff & instanceCode;
+        
+        if (instanceIndex >= CACHED_INSTANCE_CODES || !ClassEOJ.isCached(ceoj.getClassGroupCode())) {
+            return new EOJ(ceoj, instanceCode);
+        }
+        
+        EOJ[][] classTable = eojTable[groupIndex];
+        if (classTable == null) {
+            classTable = new EOJ[256][];
+            eojTable[groupIndex] = classTable;
+        }
+        
+        EOJ[] instanceTable = classTable[classIndex];
+        if (instanceTable == null) {
+            instanceTable = new EOJ[CACHED_INSTANCE_CODES];
+            classTable[classIndex] = instanceTable;
+        }
+        
+        EOJ eoj = instanceTable[instanceIndex];
+        if (eoj == null) {
+            eoj = new EOJ(ClassEOJ.valueOf(ceoj.getClassGroupCode(), ceoj.getClassCode()), instanceCode);
+            instanceTable[instanceIndex] = eoj;
+        }
+        
+        return eoj;
+    }
+    
+    /**
+     * 指定されたクラスグループコード、クラスコード、インスタンスコードを持つEOJを返す。
+     * 機器オブジェクトやプロファイルオブジェクトなどの一般的なEOJは生成済みのものを再利用する。
+     * @param classGroupCode クラスグループコード
+     * @param classCode クラスコード
+     * @param instanceCode インスタンスコード
+     * @return 指定されたコードを持つEOJ
+     */
+    public static EOJ valueOf(byte classGroupCode, byte classCode, byte instanceCode) {
+        return valueOf(ClassEOJ.valueOf(classGroupCode, classCode), instanceCode);
+    }
+    
+    /**
+     * バイト列のoffsetにより指定された要素以降の3バイトが表すEOJを返す。
+     * 機器オブジェクトやプロファイルオブジェクトなどの一般的なEOJは生成済みのものを再利用する。
+     * @param bytes EOJを表現するバイト列
+     * @param offset bytesのEOJ表現までのオフセット
+     * @return 指定されたバイト列が表すEOJ
+     */
+    public static EOJ valueOf(byte[] bytes, int offset) {
+        return valueOf(bytes[offset], bytes[offset+1], bytes[offset+2]);
+    }
+    
+    /**
+     * ByteBufferの現在位置から3バイトを読み出し、それが表すEOJを返す。
+     * ByteBufferの位置は3バイト進められる。
+     * 機器オブジェクトやプロファイルオブジェクトなどの一般的なEOJは生成済みのものを再利用する。
+     * @param buffer EOJを表現するバイト列を含むByteBuffer
+     * @return 読み出したバイト列が表すEOJ
+     */
+    public static EOJ valueOf(ByteBuffer buffer) {
+        byte classGroupCode = buffer.get();
+        byte classCode = buffer.get();
+        byte instanceCode = buffer.get();
+        return valueOf(classGroupCode, classCode, instanceCode);
+    }
     
     /**
      * クラスグループコード、クラスコード、インスタンスコードを指定してEOJオブジェクトを生成する。
@@ -15,7 +108,7 @@ public class EOJ {
      * @param instanceCode インスタンスコード
      */
     public EOJ(byte classGroupCode, byte classCode, byte instanceCode) {
-            this.classEOJ = new ClassEOJ(classGroupCode, classCode);
+            this.classEOJ = ClassEOJ.valueOf(classGroupCode, classCode);
             this.instanceCode = instanceCode;
     }
     
@@ -53,10 +146,22 @@ public class EOJ {
      * @param offset bytesのEOJ表現までのオフセット
      */
     public EOJ(byte[] bytes, int offset) {
-        this.classEOJ = new ClassEOJ(bytes[offset], bytes[offset+1]);
+        this.classEOJ = ClassEOJ.valueOf(bytes[offset], bytes[offset+1]);
         this.instanceCode = bytes[offset+2];
     }
     
+    /**
+     * ByteBufferの現在位置から3バイトを読み出してEOJオブジェクトを生成する。
+     * ByteBufferの位置は3バイト進められる。
+     * @param buffer EOJを表現するバイト列を含むByteBuffer
+     */
+    public EOJ(ByteBuffer buffer) {
+        byte classGroupCode = buffer.get();
+        byte classCode = buffer.get();
+        this.classEOJ = ClassEOJ.valueOf(classGroupCode, classCode);
+        this.instanceCode = buffer.get();
+    }
+    
     /**
      * クラスグループコードを返す。
      * @return クラスグループコード
@@ -96,7 +201,7 @@ public class EOJ {
      * @return 新たに生成されたEOJ
      */
     public EOJ getEOJWithInstanceCode(byte newInstanceCode) {
-        return classEOJ.getEOJWithInstanceCode(newInstanceCode);
+        return valueOf(classEOJ, newInstanceCode);
     }
     
     /**
@@ -169,6 +274,17 @@ public class EOJ {
         return bytes;
     }
     
+    /**
+     * このEOJをByteBufferの現在位置に書き込む。
+     * 先頭からクラスグループコード、クラスコード、インスタンスコードが順番に書き込まれ、ByteBufferの位置は3バイト進められる。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(classEOJ.getClassGroupCode());
+        buffer.put(classEOJ.getClassCode());
+        buffer.put(instanceCode);
+    }
+    
     /**
      * このEOJを16進数で表現し、6文字の文字列に変換したものを返す。
      * @return EOJの文字列表現
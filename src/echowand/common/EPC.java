@@ -75,17 +75,24 @@ public enum EPC {
         return code;
     }
     
+    private static final EPC[] epcTable = new EPC[256];
+    
+    static {
+        for (int i=0; i<epcTable.length; i++) {
+            epcTable[i] = Invalid;
+        }
+        for (EPC epc : EPC.values()) {
+            epcTable[0xff & epc.code] = epc;
+        }
+    }
+    
     /**
      * バイトからEPCに変換する。バイトが不適な場合にはInvalidを返す。
+     * 256要素の変換表を参照するため、配列の複製や探索は行わない。
      * @param code EPCのコード
      * @return 指定されたコードに対応するEPC
      */
     public static EPC fromByte(byte code) {
-        for (EPC epc : EPC.values()) {
-            if (epc.code == code) {
-                return epc;
-            }
-        }
-        return Invalid;
+        return epcTable[0xff & code];
     }
 }
\ No newline at end of file
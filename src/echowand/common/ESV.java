@@ -144,18 +144,25 @@ public enum ESV {
     
     private byte code;
     
+    private static final ESV[] esvTable = new ESV[256];
+    
+    static {
+        for (int i=0; i<esvTable.length; i++) {
+            esvTable[i] = Invalid;
+        }
+        for (ESV esv : ESV.values()) {
+            esvTable[0xff & esv.code] = esv;
+        }
+    }
+    
     /**
      * 与えられたバイトに対応するESVを返す。
      * 適切なESVがない場合にはInvalidを返す。
+     * 256要素の変換表を参照するため、配列の複製や探索は行わない。
      * @param code ESVのコード
      * @return 指定されたコードに対応するESV
      */
     public static ESV fromByte(byte code) {
-        for (ESV esv : ESV.values()) {
-            if (esv.code == code) {
-                return esv;
-            }
-        }
-        return Invalid;
+        return esvTable[0xff & code];
     }
 }
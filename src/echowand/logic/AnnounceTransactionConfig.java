@@ -7,6 +7,7 @@ import echowand.net.Property;
 import echowand.net.StandardPayload;
 import echowand.util.Pair;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -49,14 +50,24 @@ public class AnnounceTransactionConfig extends TransactionConfig {
         }
     }
 
+    private List<int[]> splitProperties() {
+        int[] annoSizes = new int[annoProperties.size()];
+        int i = 0;
+        for (Pair<EPC, Data> prop : annoProperties) {
+            annoSizes[i++] = 2 + prop.second.size();
+        }
+        
+        return splitProperties(annoSizes, new int[0], false);
+    }
+    
     /**
      * トランザクションのリクエストで送信を行なうフレーム数を返す。
-     * ここでは常に1を返す。
-     * @return 常に1
+     * プロパティを一つのフレームに含めると最大サイズを超える場合には、複数のフレームに分割される。
+     * @return リクエストのフレーム数
      */
     @Override
     public int getCountPayloads() {
-        return 1;
+        return splitProperties().size();
     }
     
     /**
@@ -68,7 +79,9 @@ public class AnnounceTransactionConfig extends TransactionConfig {
     public void addPayloadProperties(int index, StandardPayload payload) {
         logger.entering(className, "addPayloadProperties", new Object[]{index, payload});
         
-        for (Pair<EPC, Data> prop : annoProperties) {
+        int[] partition = splitProperties().get(index);
+        
+        for (Pair<EPC, Data> prop : annoProperties.subList(partition[0], partition[1])) {
             payload.addFirstProperty(new Property(prop.first, prop.second));
         }
         
@@ -0,0 +1,20 @@
+package echowand.logic;
+
+/**
+ * MainLoopが受信したフレームをどのワーカーレーンに割り当てるかを表す列挙型
+ * 同じレーンに割り当てられたフレームは受信した順番に処理される。
+ * @author Yoshiki Makino
+ */
+public enum DispatchLanePolicy {
+    /**
+     * 送信ノード毎にレーンを割り当てる。
+     * 同じノードから受信したフレームは全て受信した順番に処理される。
+     */
+    Sender,
+
+    /**
+     * 送信ノードと送信元EOJの組毎にレーンを割り当てる。
+     * 同じノードの異なるオブジェクトからのフレームは並行して処理される。
+     */
+    SenderAndSEOJ;
+}
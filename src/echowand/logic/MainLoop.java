@@ -1,24 +1,51 @@
 package echowand.logic;
 
+import echowand.net.BatchReceivable;
 import echowand.net.Frame;
+import echowand.net.StandardPayload;
 import echowand.net.Subnet;
 import echowand.net.SubnetException;
-import java.util.ArrayList;
+import echowand.util.Tracer;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * 送受信のメインループを実行する。
  * runメソッドを実行する事で、指定されたサブネットからフレームを受信し、登録されたListenerのprocessメソッドを呼び出す。
  * Runnableインタフェースを実装しているので、Threadとして動作させることができる。
+ * ワーカー数を1以上に設定すると、受信したフレームは送信ノード毎のワーカーレーンに振り分けられて並行に処理される。
+ * この場合、Listenerは複数のスレッドから同時に呼び出される。
  * @author Yoshiki Makino
  */
 public class MainLoop implements Runnable {
     private static final Logger logger = Logger.getLogger(MainLoop.class.getName());
     private static final String className = MainLoop.class.getName();
     
+    /**
+     * 一度に受信するフレーム数のデフォルト値
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    
+    /**
+     * ワーカー数のデフォルト値、0の場合には受信したスレッドでListenerを呼び出す
+     */
+    public static final int DEFAULT_WORKER_COUNT = 0;
+    
+    /**
+     * ワーカーレーン毎のキューの容量のデフォルト値
+     */
+    public static final int DEFAULT_LANE_CAPACITY = 1024;
+    
     private Subnet subnet;
     private LinkedList<Listener> listeners;
+    private volatile Listener[] listenerArray = new Listener[0];
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int workerCount = DEFAULT_WORKER_COUNT;
+    private int laneCapacity = DEFAULT_LANE_CAPACITY;
+    private DispatchLanePolicy lanePolicy = DispatchLanePolicy.Sender;
+    private MainLoopLane[] lanes = null;
     
     /**
      * MainLoopを生成する。
@@ -57,15 +84,196 @@ public class MainLoop implements Runnable {
      * @throws SubnetException 受信に失敗した場合
      */
     public Frame receiveFrame() throws SubnetException {
-        logger.entering(className, "receiveFrame");
+        Tracer.entering(logger, className, "receiveFrame");
         
         Frame frame = subnet.receive();
         
-        logger.exiting(className, "receiveFrame");
+        Tracer.exiting(logger, className, "receiveFrame");
         
         return frame;
     }
     
+    /**
+     * サブネットから複数のフレームをまとめて受信する。
+     * SubnetがBatchReceivableを実装していない場合には、1つのフレームのみを受信する。
+     * @param max 受信するフレームの最大数
+     * @return 受信したフレームのリスト
+     * @throws SubnetException 受信に失敗した場合
+     */
+    public List<Frame> receiveFrames(int max) throws SubnetException {
+        Tracer.entering(logger, className, "receiveFrames", max);
+        
+        List<Frame> frames;
+        
+        if (subnet instanceof BatchReceivable) {
+            frames = ((BatchReceivable)subnet).receiveBatch(max);
+        } else {
+            frames = new LinkedList<Frame>();
+            frames.add(subnet.receive());
+        }
+        
+        Tracer.exiting(logger, className, "receiveFrames");
+        
+        return frames;
+    }
+    
+    /**
+     * 一度に受信するフレームの最大数を返す。
+     * @return 一度に受信するフレームの最大数
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+    
+    /**
+     * 一度に受信するフレームの最大数を設定する。
+     * 2以上を設定した場合、SubnetがBatchReceivableを実装していればreceiveBatchを利用して受信済みのフレームをまとめて受信し、順番に処理を行う。
+     * @param batchSize 一度に受信するフレームの最大数
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        logger.entering(className, "setBatchSize", batchSize);
+        
+        this.batchSize = Math.max(1, batchSize);
+        
+        logger.exiting(className, "setBatchSize");
+    }
+    
+    /**
+     * ワーカー数を返す。
+     * @return ワーカー数
+     */
+    public synchronized int getWorkerCount() {
+        return workerCount;
+    }
+    
+    /**
+     * ワーカー数を設定する。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     * 1以上を設定した場合、受信したフレームはDispatchLanePolicyに従ってワーカーレーンに振り分けられ、
+     * 同じレーンのフレームは受信した順番に、異なるレーンのフレームは並行して処理される。
+     * @param workerCount ワーカー数、0の場合には受信したスレッドで処理を行う
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean setWorkerCount(int workerCount) {
+        logger.entering(className, "setWorkerCount", workerCount);
+        
+        if (lanes != null || workerCount < 0) {
+            logger.exiting(className, "setWorkerCount", false);
+            return false;
+        }
+        
+        this.workerCount = workerCount;
+        
+        logger.exiting(className, "setWorkerCount", true);
+        return true;
+    }
+    
+    /**
+     * ワーカーレーン毎のキューの容量を返す。
+     * @return ワーカーレーン毎のキューの容量
+     */
+    public synchronized int getLaneCapacity() {
+        return laneCapacity;
+    }
+    
+    /**
+     * ワーカーレーン毎のキューの容量を設定する。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     * キューが満杯の場合、受信スレッドは空きができるまで待機する。
+     * @param laneCapacity ワーカーレーン毎のキューの容量
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean setLaneCapacity(int laneCapacity) {
+        logger.entering(className, "setLaneCapacity", laneCapacity);
+        
+        if (lanes != null || laneCapacity < 1) {
+            logger.exiting(className, "setLaneCapacity", false);
+            return false;
+        }
+        
+        this.laneCapacity = laneCapacity;
+        
+        logger.exiting(className, "setLaneCapacity", true);
+        return true;
+    }
+    
+    /**
+     * フレームをワーカーレーンに割り当てる方法を返す。
+     * @return フレームをワーカーレーンに割り当てる方法
+     */
+    public synchronized DispatchLanePolicy getLanePolicy() {
+        return lanePolicy;
+    }
+    
+    /**
+     * フレームをワーカーレーンに割り当てる方法を設定する。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     * @param lanePolicy フレームをワーカーレーンに割り当てる方法
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean setLanePolicy(DispatchLanePolicy lanePolicy) {
+        logger.entering(className, "setLanePolicy", lanePolicy);
+        
+        if (lanes != null || lanePolicy == null) {
+            logger.exiting(className, "setLanePolicy", false);
+            return false;
+        }
+        
+        this.lanePolicy = lanePolicy;
+        
+        logger.exiting(className, "setLanePolicy", true);
+        return true;
+    }
+    
+    private synchronized MainLoopLane getLane(int index) {
+        if (index < 0 || index >= workerCount) {
+            throw new IndexOutOfBoundsException("invalid lane: " + index);
+        }
+        
+        if (lanes == null) {
+            return null;
+        }
+        
+        return lanes[index];
+    }
+    
+    /**
+     * 指定されたワーカーレーンのキューに保持されているフレームの数を返す。
+     * @param index ワーカーレーンの番号
+     * @return キューに保持されているフレームの数、実行前の場合には0
+     */
+    public int getLaneQueueSize(int index) {
+        MainLoopLane lane = getLane(index);
+        return lane == null ? 0 : lane.getQueueSize();
+    }
+    
+    /**
+     * 指定されたワーカーレーンのキューに保持されたフレームの数の最大値を返す。
+     * @param index ワーカーレーンの番号
+     * @return キューに保持されたフレームの数の最大値、実行前の場合には0
+     */
+    public int getLaneHighWaterMark(int index) {
+        MainLoopLane lane = getLane(index);
+        return lane == null ? 0 : lane.getHighWaterMark();
+    }
+    
+    /**
+     * 指定されたワーカーレーンに割り当てられたフレームの総数を返す。
+     * @param index ワーカーレーンの番号
+     * @return 割り当てられたフレームの総数、実行前の場合には0
+     */
+    public long getLaneEnqueuedCount(int index) {
+        MainLoopLane lane = getLane(index);
+        return lane == null ? 0 : lane.getEnqueuedCount();
+    }
+    
+    /**
+     * 指定されたワーカーレーンで処理を完了したフレームの総数を返す。
+     * @param index ワーカーレーンの番号
+     * @return 処理を完了したフレームの総数、実行前の場合には0
+     */
+    public long getLaneProcessedCount(int index) {
+        MainLoopLane lane = getLane(index);
+        return lane == null ? 0 : lane.getProcessedCount();
+    }
+    
     /**
      * 指定されたListenerを登録する
      * @param listener 登録するListener
@@ -74,6 +282,7 @@ public class MainLoop implements Runnable {
         logger.entering(className, "addListener", listener);
         
         listeners.add(listener);
+        listenerArray = listeners.toArray(new Listener[listeners.size()]);
         
         logger.exiting(className, "addListener");
     }
@@ -86,6 +295,7 @@ public class MainLoop implements Runnable {
         logger.entering(className, "removeListener", listener);
         
         listeners.remove(listener);
+        listenerArray = listeners.toArray(new Listener[listeners.size()]);
         
         logger.exiting(className, "removeListener");
     }
@@ -103,35 +313,106 @@ public class MainLoop implements Runnable {
         return count;
     }
     
-    private synchronized void invokeListeners(Frame frame) {
-        logger.entering(className, "invokeListeners", frame);
+    void invokeListeners(Frame frame) {
+        Tracer.entering(logger, className, "invokeListeners", frame);
         
         boolean processed = false;
-        for (Listener listener : new ArrayList<Listener>(listeners)) {
+        for (Listener listener : listenerArray) {
             processed |= listener.process(subnet, frame, processed);
         }
         
-        logger.exiting(className, "invokeListeners");
+        Tracer.exiting(logger, className, "invokeListeners");
+    }
+
+    private static int mix(int hash) {
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return hash & 0x7fffffff;
+    }
+    
+    int selectLaneIndex(Frame frame, int count) {
+        int hash = frame.getSender().hashCode();
+        
+        if (lanePolicy == DispatchLanePolicy.SenderAndSEOJ) {
+            StandardPayload payload = frame.getCommonFrame().getEDATA(StandardPayload.class);
+            if (payload != null && payload.getSEOJ() != null) {
+                hash = 31 * hash + payload.getSEOJ().hashCode();
+            }
+        }
+        
+        return mix(hash) % count;
+    }
+    
+    private synchronized MainLoopLane[] startLanes() {
+        logger.entering(className, "startLanes");
+        
+        if (workerCount > 0 && lanes == null) {
+            lanes = new MainLoopLane[workerCount];
+            for (int i=0; i<workerCount; i++) {
+                lanes[i] = new MainLoopLane(this, i, laneCapacity);
+                lanes[i].start();
+            }
+        }
+        
+        logger.exiting(className, "startLanes", lanes);
+        return lanes;
+    }
+    
+    private synchronized void stopLanes() {
+        logger.entering(className, "stopLanes");
+        
+        if (lanes != null) {
+            for (MainLoopLane lane : lanes) {
+                lane.terminate();
+            }
+            lanes = null;
+        }
+        
+        logger.exiting(className, "stopLanes");
+    }
+    
+    private void dispatch(MainLoopLane[] currentLanes, Frame frame) throws InterruptedException {
+        if (currentLanes == null) {
+            invokeListeners(frame);
+        } else {
+            currentLanes[selectLaneIndex(frame, currentLanes.length)].enqueue(frame);
+        }
     }
 
     /**
      * メインループを実行する。
      * サブネットからフレームを受信し、全てのListenerのprocessを呼び出す。
+     * ワーカー数が1以上の場合には、Listenerの呼び出しはワーカーレーンのスレッドで行われる。
+     * 割り込みによりワーカーレーンへの追加が中断された場合には終了する。
      */
     @Override
     public void run() {
         logger.entering(className, "run");
 
+        MainLoopLane[] currentLanes = startLanes();
+
         try {
             for (;;) {
                 try {
-                    Frame frame = receiveFrame();
-                    invokeListeners(frame);
+                    int size = getBatchSize();
+                    if (size > 1) {
+                        for (Frame frame : receiveFrames(size)) {
+                            dispatch(currentLanes, frame);
+                        }
+                    } else {
+                        Frame frame = receiveFrame();
+                        dispatch(currentLanes, frame);
+                    }
                 } catch (SubnetException e) {
                     e.printStackTrace();
                 }
             }
+        } catch (InterruptedException e) {
+            logger.logp(Level.INFO, className, "run", "interrupted", e);
+            Thread.currentThread().interrupt();
         } finally {
+            stopLanes();
             logger.exiting(className, "run");
         }
     }
@@ -0,0 +1,118 @@
+package echowand.logic;
+
+import echowand.net.Frame;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MainLoopのワーカーレーン
+ * 割り当てられたフレームをキューに保持し、受け取った順番にMainLoopのListenerを呼び出す。
+ * @author Yoshiki Makino
+ */
+class MainLoopLane extends Thread {
+    private static final Logger logger = Logger.getLogger(MainLoopLane.class.getName());
+    private static final String className = MainLoopLane.class.getName();
+
+    private MainLoop mainLoop;
+    private LinkedBlockingQueue<Frame> queue;
+    private long enqueuedCount = 0;
+    private long processedCount = 0;
+    private int highWaterMark = 0;
+    private volatile boolean terminated = false;
+
+    /**
+     * MainLoopLaneを生成する。
+     * @param mainLoop Listenerの呼び出しを行うMainLoop
+     * @param index レーンの番号
+     * @param capacity キューの容量
+     */
+    public MainLoopLane(MainLoop mainLoop, int index, int capacity) {
+        super("MainLoopLane-" + index);
+        setDaemon(true);
+
+        this.mainLoop = mainLoop;
+        this.queue = new LinkedBlockingQueue<Frame>(capacity);
+    }
+
+    /**
+     * フレームをキューに追加する。キューが満杯の場合には空きができるまで待機する。
+     * @param frame 追加するフレーム
+     * @throws InterruptedException 待機中に割り込みが発生した場合
+     */
+    public void enqueue(Frame frame) throws InterruptedException {
+        queue.put(frame);
+
+        synchronized (this) {
+            enqueuedCount++;
+            highWaterMark = Math.max(highWaterMark, queue.size());
+        }
+    }
+
+    /**
+     * キューに保持されているフレームの数を返す。
+     * @return キューに保持されているフレームの数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * キューに保持されたフレームの数の最大値を返す。
+     * @return キューに保持されたフレームの数の最大値
+     */
+    public synchronized int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * キューに追加されたフレームの総数を返す。
+     * @return キューに追加されたフレームの総数
+     */
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    /**
+     * 処理を完了したフレームの総数を返す。
+     * @return 処理を完了したフレームの総数
+     */
+    public synchronized long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * このレーンの処理を終了する。
+     */
+    public void terminate() {
+        terminated = true;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        logger.entering(className, "run");
+
+        while (!terminated) {
+            Frame frame;
+
+            try {
+                frame = queue.take();
+            } catch (InterruptedException ex) {
+                continue;
+            }
+
+            try {
+                mainLoop.invokeListeners(frame);
+            } catch (RuntimeException ex) {
+                logger.logp(Level.WARNING, className, "run", "catched exception", ex);
+            } finally {
+                synchronized (this) {
+                    processedCount++;
+                }
+            }
+        }
+
+        logger.exiting(className, "run");
+    }
+}
@@ -0,0 +1,103 @@
+package echowand.logic;
+
+import java.util.logging.Logger;
+
+/**
+ * ノード毎の往復時間(RTT)を推定し、再送までの待ち時間(RTO)を計算する。
+ * RFC 6298と同様に、平滑化したRTTとその平均偏差からRTOを求める。
+ * 整数演算で小さな変化が切り捨てられないように、平滑化したRTTは8倍、平均偏差は4倍した値で保持する。
+ * @author Yoshiki Makino
+ */
+public class RTTEstimator {
+    private static final Logger logger = Logger.getLogger(RTTEstimator.class.getName());
+    private static final String className = RTTEstimator.class.getName();
+    
+    private static final int ALPHA_SHIFT = 3;
+    private static final int BETA_SHIFT = 2;
+    private static final int K = 4;
+    
+    private long scaledSmoothedRTT;
+    private long scaledRTTVariance;
+    private int countSamples;
+    
+    /**
+     * RTTEstimatorを生成する。
+     */
+    public RTTEstimator() {
+        scaledSmoothedRTT = 0;
+        scaledRTTVariance = 0;
+        countSamples = 0;
+    }
+    
+    /**
+     * 測定したRTTを推定値に反映する。
+     * @param rtt 測定したRTT(ミリ秒)
+     */
+    public synchronized void update(long rtt) {
+        logger.entering(className, "update", rtt);
+        
+        if (rtt < 0) {
+            rtt = 0;
+        }
+        
+        if (countSamples == 0) {
+            scaledSmoothedRTT = rtt << ALPHA_SHIFT;
+            scaledRTTVariance = (rtt / 2) << BETA_SHIFT;
+        } else {
+            long delta = rtt - (scaledSmoothedRTT >> ALPHA_SHIFT);
+            scaledSmoothedRTT += delta;
+            scaledRTTVariance += Math.abs(delta) - (scaledRTTVariance >> BETA_SHIFT);
+        }
+        
+        countSamples++;
+        
+        logger.exiting(className, "update");
+    }
+    
+    /**
+     * 測定したRTTの数を返す。
+     * @return 測定したRTTの数
+     */
+    public synchronized int countSamples() {
+        return countSamples;
+    }
+    
+    /**
+     * 平滑化したRTTを返す。
+     * @return 平滑化したRTT(ミリ秒)、測定が行われていない場合には0
+     */
+    public synchronized long getSmoothedRTT() {
+        return scaledSmoothedRTT >> ALPHA_SHIFT;
+    }
+    
+    /**
+     * RTTの平均偏差を返す。
+     * @return RTTの平均偏差(ミリ秒)、測定が行われていない場合には0
+     */
+    public synchronized long getRTTVariance() {
+        return scaledRTTVariance >> BETA_SHIFT;
+    }
+    
+    /**
+     * 指定された再送ポリシーに従って、最初の再送までの待ち時間を返す。
+     * 測定が行われていない場合には再送ポリシーの初期値を返す。
+     * @param policy 再送ポリシー
+     * @return 最初の再送までの待ち時間(ミリ秒)
+     */
+    public synchronized int getRTO(RetransmissionPolicy policy) {
+        long rto;
+        
+        if (countSamples == 0) {
+            rto = policy.getInitialRTO();
+        } else {
+            rto = (scaledSmoothedRTT >> ALPHA_SHIFT) + Math.max(1, (K * scaledRTTVariance) >> BETA_SHIFT);
+        }
+        
+        return (int)Math.min(Math.max(rto, policy.getMinRTO()), policy.getMaxRTO());
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "RTTEstimator{srtt=" + getSmoothedRTT() + ", rttvar=" + getRTTVariance() + ", samples=" + countSamples + "}";
+    }
+}
@@ -1,21 +1,42 @@
 package echowand.logic;
 
+import echowand.common.ESV;
 import echowand.net.CommonFrame;
 import echowand.net.Frame;
 import echowand.net.StandardPayload;
 import echowand.net.Subnet;
+import echowand.util.Tracer;
+import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.logging.Logger;
 
 /**
  * リクエストフレームを受け取り、登録された全てのRequestProcessorの適切なメソッドを呼び出す。
+ * ESV毎に呼び出すRequestProcessorの配列を登録時に作成しておき、フレームの処理時にはこの配列を利用する。
+ * DefaultRequestProcessorのサブクラスは、オーバーライドしたメソッドに対応するESVのフレームのみ処理を行う。
  * @author Yoshiki Makino
  */
 public class RequestDispatcher implements Listener {
     private static final Logger logger = Logger.getLogger(RequestDispatcher.class.getName());
     private static final String className = RequestDispatcher.class.getName();
     
+    private static final RequestProcessor[] EMPTY_PROCESSORS = new RequestProcessor[0];
+    
+    private static final EnumMap<ESV, String> methodNames;
+    
+    static {
+        methodNames = new EnumMap<ESV, String>(ESV.class);
+        methodNames.put(ESV.SetI, "processSetI");
+        methodNames.put(ESV.SetC, "processSetC");
+        methodNames.put(ESV.Get, "processGet");
+        methodNames.put(ESV.SetGet, "processSetGet");
+        methodNames.put(ESV.INF_REQ, "processINF_REQ");
+        methodNames.put(ESV.INF, "processINF");
+        methodNames.put(ESV.INFC, "processINFC");
+    }
+    
     private LinkedList<RequestProcessor> processors;
+    private volatile EnumMap<ESV, RequestProcessor[]> processorTable;
     
     /**
      * RequestDispatcherを生成する。
@@ -24,12 +45,59 @@ public class RequestDispatcher implements Listener {
         logger.entering(className, "RequestDispatcher");
         
         processors = new LinkedList<RequestProcessor>();
+        updateProcessorTable();
         
         logger.exiting(className, "RequestDispatcher");
     }
     
-    private synchronized LinkedList<RequestProcessor> cloneProcessors() {
-        return new LinkedList<RequestProcessor>(processors);
+    private static boolean isOverridden(RequestProcessor processor, String methodName) {
+        if (!(processor instanceof DefaultRequestProcessor)) {
+            return true;
+        }
+        
+        try {
+            Class<?> declaringClass = processor.getClass().getMethod(methodName, Subnet.class, Frame.class, boolean.class).getDeclaringClass();
+            return declaringClass != DefaultRequestProcessor.class;
+        } catch (NoSuchMethodException ex) {
+            return true;
+        } catch (SecurityException ex) {
+            return true;
+        }
+    }
+    
+    private synchronized void updateProcessorTable() {
+        EnumMap<ESV, RequestProcessor[]> newTable = new EnumMap<ESV, RequestProcessor[]>(ESV.class);
+        
+        for (ESV esv : methodNames.keySet()) {
+            LinkedList<RequestProcessor> selected = new LinkedList<RequestProcessor>();
+            for (RequestProcessor processor : processors) {
+                if (isOverridden(processor, methodNames.get(esv))) {
+                    selected.add(processor);
+                }
+            }
+            newTable.put(esv, selected.toArray(EMPTY_PROCESSORS));
+        }
+        
+        processorTable = newTable;
+    }
+    
+    private RequestProcessor[] getProcessors(ESV esv) {
+        return processorTable.get(esv);
+    }
+    
+    /**
+     * 指定されたESVのフレームの処理時に呼び出されるRequestProcessorの数を返す。
+     * @param esv ESVの指定
+     * @return 呼び出されるRequestProcessorの数
+     */
+    public int countRequestProcessors(ESV esv) {
+        RequestProcessor[] selected = getProcessors(esv);
+        
+        if (selected == null) {
+            return 0;
+        }
+        
+        return selected.length;
     }
     
     /**
@@ -40,6 +108,7 @@ public class RequestDispatcher implements Listener {
         logger.entering(className, "addRequestProcessor", processor);
         
         processors.add(processor);
+        updateProcessorTable();
         
         logger.exiting(className, "addRequestProcessor");
     }
@@ -52,6 +121,7 @@ public class RequestDispatcher implements Listener {
         logger.entering(className, "removeRequestProcessor", processor);
         
         processors.remove(processor);
+        updateProcessorTable();
         
         logger.exiting(className, "removeRequestProcessor");
     }
@@ -93,15 +163,15 @@ public class RequestDispatcher implements Listener {
      */
     @Override
     public boolean process(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "process", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "process", subnet, frame, processed);
         
         if (processed) {
-            logger.exiting(className, "process", false);
+            Tracer.exiting(logger, className, "process", false);
             return false;
         }
         
         if (!frame.getCommonFrame().isStandardPayload()) {
-            logger.exiting(className, "process", false);
+            Tracer.exiting(logger, className, "process", false);
             return false;
         }
         
@@ -110,7 +180,7 @@ public class RequestDispatcher implements Listener {
         StandardPayload payload = cf.getEDATA(StandardPayload.class);
         
         if (payload == null) {
-            logger.exiting(className, "process", false);
+            Tracer.exiting(logger, className, "process", false);
             return false;
         }
         
@@ -138,7 +208,7 @@ public class RequestDispatcher implements Listener {
                 break;
         }
         
-        logger.exiting(className, "process", success);
+        Tracer.exiting(logger, className, "process", success);
         return success;
     }
 
@@ -149,14 +219,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processSetI(Subnet subnet, Frame frame) {
-        logger.entering(className, "processSetI", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processSetI", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.SetI)) {
             processed |= processor.processSetI(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processSetI", processed);
+        Tracer.exiting(logger, className, "processSetI", processed);
         return processed;
     }
 
@@ -167,14 +237,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processSetC(Subnet subnet, Frame frame) {
-        logger.entering(className, "processSetC", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processSetC", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.SetC)) {
             processed |= processor.processSetC(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processSetC", processed);
+        Tracer.exiting(logger, className, "processSetC", processed);
         return processed;
     }
     
@@ -185,14 +255,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processGet(Subnet subnet, Frame frame) {
-        logger.entering(className, "processGet", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processGet", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.Get)) {
             processed |= processor.processGet(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processGet", processed);
+        Tracer.exiting(logger, className, "processGet", processed);
         return processed;
     }
     
@@ -203,14 +273,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processSetGet(Subnet subnet, Frame frame) {
-        logger.entering(className, "processSetGet", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processSetGet", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.SetGet)) {
             processed |= processor.processSetGet(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processSetGet", processed);
+        Tracer.exiting(logger, className, "processSetGet", processed);
         return processed;
     }
     
@@ -221,14 +291,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processINF_REQ(Subnet subnet, Frame frame) {
-        logger.entering(className, "processINF_REQ", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processINF_REQ", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.INF_REQ)) {
             processed |= processor.processINF_REQ(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processINF_REQ", processed);
+        Tracer.exiting(logger, className, "processINF_REQ", processed);
         return processed;
     }
     
@@ -239,14 +309,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processINF(Subnet subnet, Frame frame) {
-        logger.entering(className, "processINF", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processINF", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.INF)) {
             processed |= processor.processINF(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processINF", processed);
+        Tracer.exiting(logger, className, "processINF", processed);
         return processed;
     }
     
@@ -257,14 +327,14 @@ public class RequestDispatcher implements Listener {
      * @return 指定されたフレームを処理した場合にはtrue、そうでなければfalse
      */
     public boolean processINFC(Subnet subnet, Frame frame) {
-        logger.entering(className, "processINFC", new Object[]{subnet, frame});
+        Tracer.entering(logger, className, "processINFC", subnet, frame);
         
         boolean processed = false;
-        for (RequestProcessor processor : cloneProcessors()) {
+        for (RequestProcessor processor : getProcessors(ESV.INFC)) {
             processed |= processor.processINFC(subnet, frame, processed);
         }
         
-        logger.exiting(className, "processINFC", processed);
+        Tracer.exiting(logger, className, "processINFC", processed);
         return processed;
     }
 }
@@ -0,0 +1,125 @@
+package echowand.logic;
+
+/**
+ * トランザクションのリクエストの再送方法を表す。
+ * レスポンスを受信するまで、受信ノードのRTTから求めた待ち時間毎に同じTIDでリクエストを再送する。
+ * 待ち時間は再送毎に指数的に増加し、最大値で制限される。
+ * @author Yoshiki Makino
+ */
+public class RetransmissionPolicy {
+    
+    /**
+     * 再送回数の最大値のデフォルト値
+     */
+    public static final int DEFAULT_MAX_RETRANSMISSIONS = 3;
+    
+    /**
+     * RTTの測定値がない場合の待ち時間のデフォルト値(ミリ秒)
+     */
+    public static final int DEFAULT_INITIAL_RTO = 1000;
+    
+    /**
+     * 待ち時間の最小値のデフォルト値(ミリ秒)
+     */
+    public static final int DEFAULT_MIN_RTO = 100;
+    
+    /**
+     * 待ち時間の最大値のデフォルト値(ミリ秒)
+     */
+    public static final int DEFAULT_MAX_RTO = 4000;
+    
+    private int maxRetransmissions;
+    private int initialRTO;
+    private int minRTO;
+    private int maxRTO;
+    
+    /**
+     * デフォルトの設定でRetransmissionPolicyを生成する。
+     */
+    public RetransmissionPolicy() {
+        this(DEFAULT_MAX_RETRANSMISSIONS);
+    }
+    
+    /**
+     * 再送回数の最大値を指定してRetransmissionPolicyを生成する。
+     * @param maxRetransmissions 再送回数の最大値
+     */
+    public RetransmissionPolicy(int maxRetransmissions) {
+        this(maxRetransmissions, DEFAULT_INITIAL_RTO, DEFAULT_MIN_RTO, DEFAULT_MAX_RTO);
+    }
+    
+    /**
+     * RetransmissionPolicyを生成する。
+     * @param maxRetransmissions 再送回数の最大値
+     * @param initialRTO RTTの測定値がない場合の待ち時間(ミリ秒)
+     * @param minRTO 待ち時間の最小値(ミリ秒)
+     * @param maxRTO 待ち時間の最大値(ミリ秒)
+     * @throws IllegalArgumentException 不正な値が指定された場合
+     */
+    public RetransmissionPolicy(int maxRetransmissions, int initialRTO, int minRTO, int maxRTO) {
+        if (maxRetransmissions < 0) {
+            throw new IllegalArgumentException("invalid maxRetransmissions: " + maxRetransmissions);
+        }
+        
+        if (minRTO <= 0 || maxRTO < minRTO || initialRTO <= 0) {
+            throw new IllegalArgumentException("invalid RTO: " + initialRTO + ", " + minRTO + ", " + maxRTO);
+        }
+        
+        this.maxRetransmissions = maxRetransmissions;
+        this.initialRTO = initialRTO;
+        this.minRTO = minRTO;
+        this.maxRTO = maxRTO;
+    }
+    
+    /**
+     * 再送回数の最大値を返す。
+     * @return 再送回数の最大値
+     */
+    public int getMaxRetransmissions() {
+        return maxRetransmissions;
+    }
+    
+    /**
+     * RTTの測定値がない場合の待ち時間を返す。
+     * @return RTTの測定値がない場合の待ち時間(ミリ秒)
+     */
+    public int getInitialRTO() {
+        return initialRTO;
+    }
+    
+    /**
+     * 待ち時間の最小値を返す。
+     * @return 待ち時間の最小値(ミリ秒)
+     */
+    public int getMinRTO() {
+        return minRTO;
+    }
+    
+    /**
+     * 待ち時間の最大値を返す。
+     * @return 待ち時間の最大値(ミリ秒)
+     */
+    public int getMaxRTO() {
+        return maxRTO;
+    }
+    
+    /**
+     * 指定された回数の再送を行った後の待ち時間を返す。
+     * 待ち時間は再送毎に2倍になり、最大値で制限される。
+     * @param rto 最初の再送までの待ち時間(ミリ秒)
+     * @param retransmissions 既に行った再送の回数
+     * @return 次の再送までの待ち時間(ミリ秒)
+     */
+    public int getBackoffRTO(int rto, int retransmissions) {
+        long backoff = rto;
+        for (int i=0; i<retransmissions && backoff < maxRTO; i++) {
+            backoff *= 2;
+        }
+        return (int)Math.min(backoff, maxRTO);
+    }
+    
+    @Override
+    public String toString() {
+        return "RetransmissionPolicy{maxRetransmissions=" + maxRetransmissions + ", initialRTO=" + initialRTO + ", minRTO=" + minRTO + ", maxRTO=" + maxRTO + "}";
+    }
+}
@@ -7,6 +7,7 @@ import echowand.net.Property;
 import echowand.net.StandardPayload;
 import echowand.util.Pair;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -47,14 +48,29 @@ public class SetGetTransactionConfig extends TransactionConfig {
         return ESV.SetGet;
     }
     
+    private List<int[]> splitProperties() {
+        int[] setSizes = new int[setProperties.size()];
+        int i = 0;
+        for (Pair<EPC, Data> prop : setProperties) {
+            setSizes[i++] = 2 + prop.second.size();
+        }
+        
+        int[] getSizes = new int[getProperties.size()];
+        for (i=0; i<getSizes.length; i++) {
+            getSizes[i] = 2;
+        }
+        
+        return splitProperties(setSizes, getSizes, getESV() == ESV.SetGet);
+    }
+    
     /**
      * トランザクションのリクエストで送信を行なうフレーム数を返す。
-     * ここでは常に1を返す。
-     * @return 常に1
+     * プロパティを一つのフレームに含めると最大サイズを超える場合には、複数のフレームに分割される。
+     * @return リクエストのフレーム数
      */
     @Override
     public int getCountPayloads() {
-        return 1;
+        return splitProperties().size();
     }
     
     /**
@@ -66,15 +82,17 @@ public class SetGetTransactionConfig extends TransactionConfig {
     public void addPayloadProperties(int index, StandardPayload payload) {
         logger.entering(className, "addPayloadProperties", new Object[]{index, payload});
         
+        int[] partition = splitProperties().get(index);
+        
         if (setProperties.isEmpty()) {
-            for (EPC epc : getProperties) {
+            for (EPC epc : getProperties.subList(partition[2], partition[3])) {
                 payload.addFirstProperty(new Property(epc));
             }
         } else {
-            for (Pair<EPC, Data> prop : setProperties) {
+            for (Pair<EPC, Data> prop : setProperties.subList(partition[0], partition[1])) {
                 payload.addFirstProperty(new Property(prop.first, prop.second));
             }
-            for (EPC epc : getProperties) {
+            for (EPC epc : getProperties.subList(partition[2], partition[3])) {
                 payload.addSecondProperty(new Property(epc));
             }
         }
@@ -3,7 +3,11 @@ package echowand.logic;
 import echowand.common.EOJ;
 import echowand.common.ESV;
 import echowand.net.*;
+import echowand.util.HashedWheelTimer;
+import echowand.util.Pair;
+import echowand.util.Tracer;
 import java.util.*;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -16,54 +20,56 @@ public class Transaction {
     
     private TransactionConfig transactionConfig;
     private static final int DEFAULT_TIMEOUT = 60;
-    private static short nextTID;
-    
-    static {
-        nextTID = 1;
-    }
     
     private Subnet subnet;
     private TransactionManager transactionManager;
     private int timeout;
-    private short tid;
+    private volatile short tid;
+    private boolean tcpEnabled;
     
-    private Timer timer;
+    private HashedWheelTimer.Timeout timeoutHandle;
+    private HashedWheelTimer.Timeout retransmissionHandle;
+    private int retransmissions;
+    private int rto;
+    private long sentTime;
+    private HashSet<Pair<Node, EOJ>> responders;
     private boolean done;
     private boolean waiting;
+    private boolean timedOut;
+    private boolean registered;
     private int countResponse;
     
     private LinkedList<TransactionListener> transactionListeners;
     
     private static EnumMap<ESV, LinkedList<ESV>> responseESVMap = new EnumMap<ESV, LinkedList<ESV>>(ESV.class);
     
-    private static short getNextTID() {
-        if (nextTID == 0) {
-            nextTID = 1;
-        }
-        return nextTID++;
-    }
-
     /**
      * Transactionを生成する。
      * 原則としてTransactionManagerを用いて生成することを推奨する。
+     * TIDはTransactionManagerにより処理中のTransactionと重複しないように割り当てられる。
+     * TIDは実行の開始時に予約され、既に他のTransactionに予約されている場合には新たなTIDが割り当てられる。
      * @param subnet リクエスト処理が送受信されるサブネット
      * @param transactionManager Transactionオブジェクトの管理オブジェクト
      * @param transactionConfig  リクエスト処理の詳細設定
      */
     public Transaction(Subnet subnet, TransactionManager transactionManager, TransactionConfig transactionConfig) {
-        logger.entering(className, "Transaction", new Object[]{subnet, transactionManager, transactionConfig});
+        Tracer.entering(logger, className, "Transaction", subnet, transactionManager, transactionConfig);
         
         this.subnet = subnet;
         this.transactionManager = transactionManager;
         this.transactionConfig = transactionConfig;
-        this.tid = getNextTID();
+        this.tid = transactionManager.allocateTID();
         this.done = false;
+        this.timedOut = false;
+        this.registered = false;
         this.countResponse = 0;
+        this.retransmissions = 0;
         this.timeout = DEFAULT_TIMEOUT;
+        this.tcpEnabled = false;
         this.transactionListeners = new LinkedList<TransactionListener>();
         initResponseESVMap();
         
-        logger.exiting(className, "Transaction");
+        Tracer.exiting(logger, className, "Transaction");
     }
     
     private void initResponseESVMap() {
@@ -100,6 +106,10 @@ public class Transaction {
         responseESVMap.put(req, esvs);
     }
     
+    TransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+    
     /**
      * トランザクション処理の詳細設定を返す。
      * @return リクエスト処理の詳細設定
@@ -113,11 +123,11 @@ public class Transaction {
      * @param listener 登録するTransactionListener
      */
     public synchronized void addTransactionListener(TransactionListener listener) {
-        logger.entering(className, "addTransactionListener", listener);
+        Tracer.entering(logger, className, "addTransactionListener", listener);
         
         transactionListeners.add(listener);
         
-        logger.exiting(className, "addTransactionListener");
+        Tracer.exiting(logger, className, "addTransactionListener");
     }
     
     
@@ -126,11 +136,11 @@ public class Transaction {
      * @param listener 登録を抹消するTransactionListener
      */
     public synchronized void removeTransactionListener(TransactionListener listener) {
-        logger.entering(className, "removeTransactionListener", listener);
+        Tracer.entering(logger, className, "removeTransactionListener", listener);
         
         transactionListeners.remove(listener);
         
-        logger.exiting(className, "removeTransactionListener");
+        Tracer.exiting(logger, className, "removeTransactionListener");
     }
     
     private synchronized List<TransactionListener> cloneTransactionListeners() {
@@ -138,43 +148,43 @@ public class Transaction {
     }
     
     private void doCallBeginTransactionListeners() {
-        logger.entering(className, "doCallBeginTransactionListeners");
+        Tracer.entering(logger, className, "doCallBeginTransactionListeners");
         
         for (TransactionListener l : cloneTransactionListeners()) {
             l.begin(this);
         }
         
-        logger.exiting(className, "doCallBeginTransactionListeners");
+        Tracer.exiting(logger, className, "doCallBeginTransactionListeners");
     }
     
     private void doCallSentTransactionListeners(Frame frame, boolean success) {
-        logger.entering(className, "doCallSentTransactionListeners", frame);
+        Tracer.entering(logger, className, "doCallSentTransactionListeners", frame);
         
         for (TransactionListener l : cloneTransactionListeners()) {
             l.send(this, subnet, frame, success);
         }
         
-        logger.exiting(className, "doCallSentTransactionListeners");
+        Tracer.exiting(logger, className, "doCallSentTransactionListeners");
     }
     
     private void doCallReceiveTransactionListeners(Frame frame) {
-        logger.entering(className, "doCallReceiveTransactionListeners", frame);
+        Tracer.entering(logger, className, "doCallReceiveTransactionListeners", frame);
         
         for (TransactionListener l : cloneTransactionListeners()) {
             l.receive(this, subnet, frame);
         }
         
-        logger.exiting(className, "doCallReceiveTransactionListeners");
+        Tracer.exiting(logger, className, "doCallReceiveTransactionListeners");
     }
     
     private void doCallFinishTransactionListeners() {
-        logger.entering(className, "doCallFinishTransactionListeners");
+        Tracer.entering(logger, className, "doCallFinishTransactionListeners");
         
         for (TransactionListener l : cloneTransactionListeners()) {
             l.finish(this);
         }
         
-        logger.exiting(className, "doCallFinishTransactionListeners");
+        Tracer.exiting(logger, className, "doCallFinishTransactionListeners");
     }
     
     /**
@@ -195,11 +205,11 @@ public class Transaction {
      * @param timeout タイムアウトの時間(ミリ秒)
      */
     public synchronized void setTimeout(int timeout) {
-        logger.entering(className, "setTimeout", timeout);
+        Tracer.entering(logger, className, "setTimeout", timeout);
         
         this.timeout = timeout;
         
-        logger.exiting(className, "setTimeout");
+        Tracer.exiting(logger, className, "setTimeout");
     }
     
     /**
@@ -210,8 +220,40 @@ public class Transaction {
         return timeout;
     }
     
+    /**
+     * リクエストをTCPで送信するように設定する。
+     * TCPでの送信が可能なSubnetでは、受信ノード毎にプールされたTCP接続が利用される。
+     */
+    public synchronized void enableTCP() {
+        Tracer.entering(logger, className, "enableTCP");
+        
+        this.tcpEnabled = true;
+        
+        Tracer.exiting(logger, className, "enableTCP");
+    }
+    
+    /**
+     * リクエストをTCPで送信しないように設定する。
+     */
+    public synchronized void disableTCP() {
+        Tracer.entering(logger, className, "disableTCP");
+        
+        this.tcpEnabled = false;
+        
+        Tracer.exiting(logger, className, "disableTCP");
+    }
+    
+    /**
+     * リクエストをTCPで送信するかどうかを返す。
+     * @return TCPで送信する場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean isTCPEnabled() {
+        return tcpEnabled;
+    }
+    
     /**
      * トランザクションのTIDを返す。
+     * 実行の開始時に生成時のTIDが他のTransactionに利用されていた場合には、実行後に異なるTIDを返す。
      * @return リクエスト処理のTID
      */
     public short getTID() {
@@ -219,7 +261,7 @@ public class Transaction {
     }
     
     private StandardPayload createPayload(int index) {
-        logger.entering(className, "createPayload", index);
+        Tracer.entering(logger, className, "createPayload", index);
         
         StandardPayload payload = new StandardPayload();
         payload.setDEOJ(transactionConfig.getDestinationEOJ());
@@ -229,17 +271,17 @@ public class Transaction {
         
         transactionConfig.addPayloadProperties(index, payload);
         
-        logger.exiting(className, "createPayload", payload);
+        Tracer.exiting(logger, className, "createPayload", payload);
         return payload;
     }
     
     private boolean sendRequest() throws SubnetException {
-        logger.entering(className, "sendRequest");
+        Tracer.entering(logger, className, "sendRequest");
         
         int count = transactionConfig.getCountPayloads();
         
         if (count == 0) {
-            logger.exiting(className, "sendRequest", false);
+            Tracer.exiting(logger, className, "sendRequest", false);
             return false;
         }
         
@@ -252,6 +294,7 @@ public class Transaction {
             cf.setEDATA(payload);
             cf.setTID(tid);
             Frame frame = new Frame(transactionConfig.getSenderNode(), transactionConfig.getReceiverNode(), cf);
+            frame.setTCPEnabled(tcpEnabled);
             boolean success = subnet.send(frame);
             
             doCallSentTransactionListeners(frame, success);
@@ -259,12 +302,12 @@ public class Transaction {
             result &= success;
         }
         
-        logger.exiting(className, "sendRequest", result);
+        Tracer.exiting(logger, className, "sendRequest", result);
         return result;
     }
     
     private boolean isValidTransactionESVPair(ESV req, ESV res) {
-        logger.entering(className, "isValidTransactionESVPair", new Object[]{req, res});
+        Tracer.entering(logger, className, "isValidTransactionESVPair", req, res);
 
         LinkedList<ESV> esvs = responseESVMap.get(req);
         boolean valid = false;
@@ -272,7 +315,7 @@ public class Transaction {
             valid = esvs.contains(res);
         }
 
-        logger.exiting(className, "isValidTransactionESVPair", valid);
+        Tracer.exiting(logger, className, "isValidTransactionESVPair", valid);
         return valid;
     }
 
@@ -282,29 +325,29 @@ public class Transaction {
      * @return フレームの処理に成功した場合にはtrue、そうでなければfalse
      */
     public synchronized boolean receiveResponse(Frame frame) {
-        logger.entering(className, "receiveResponse");
+        Tracer.entering(logger, className, "receiveResponse");
         
         if (!this.waiting) {
-            logger.exiting(className, "receiveResponse", false);
+            Tracer.exiting(logger, className, "receiveResponse", false);
             return false;
         }
         
         if (!frame.getCommonFrame().isStandardPayload()) {
-            logger.exiting(className, "receiveResponse", false);
+            Tracer.exiting(logger, className, "receiveResponse", false);
             return false;
         }
         
         CommonFrame cf = frame.getCommonFrame();
         
         if (cf.getTID() != this.getTID()) {
-            logger.exiting(className, "receiveResponse", false);
+            Tracer.exiting(logger, className, "receiveResponse", false);
             return false;
         }
         
         StandardPayload payload = cf.getEDATA(StandardPayload.class);
         
         if (payload == null) {
-            logger.exiting(className, "receiveResponse", false);
+            Tracer.exiting(logger, className, "receiveResponse", false);
             return false;
         }
         
@@ -315,17 +358,17 @@ public class Transaction {
         
         if (!responseSEOJ.equals(requestDEOJ)) {
             if (!requestDEOJ.isAllInstance()) {
-                logger.exiting(className, "receiveResponse", false);
+                Tracer.exiting(logger, className, "receiveResponse", false);
                 return false;
             }
 
             if (!responseSEOJ.getClassEOJ().equals(requestDEOJ.getClassEOJ())) {
-                logger.exiting(className, "receiveResponse", false);
+                Tracer.exiting(logger, className, "receiveResponse", false);
                 return false;
             }
         }
         if (!responseDEOJ.equals(requestSEOJ)) {
-            logger.exiting(className, "receiveResponse", false);
+            Tracer.exiting(logger, className, "receiveResponse", false);
             return false;
         }
 
@@ -333,15 +376,30 @@ public class Transaction {
         ESV resESV = payload.getESV();
         
         if (!isValidTransactionESVPair(reqESV, resESV)) {
-            logger.exiting(className, "receiveResponse", false);
+            Tracer.exiting(logger, className, "receiveResponse", false);
             return false;
         }
         
+        if (responders != null && !responders.add(new Pair<Node, EOJ>(frame.getSender(), responseSEOJ))) {
+            Tracer.exiting(logger, className, "receiveResponse", true);
+            return true;
+        }
+        
+        if (countResponse == 0 && retransmissionHandle != null) {
+            if (retransmissions == 0) {
+                long rtt = (System.nanoTime() - sentTime) / 1000000;
+                transactionManager.getRTTEstimator(transactionConfig.getReceiverNode()).update(rtt);
+            }
+            
+            retransmissionHandle.cancel();
+            retransmissionHandle = null;
+        }
+        
         this.countResponse++;
         
         doCallReceiveTransactionListeners(frame);
         
-        logger.exiting(className, "receiveResponse", true);
+        Tracer.exiting(logger, className, "receiveResponse", true);
         return true;
     }
     
@@ -349,28 +407,70 @@ public class Transaction {
      * トランザクションを終了する。
      */
     public synchronized void finish() {
-        logger.entering(className, "finish");
+        Tracer.entering(logger, className, "finish");
         
         if (!this.done) {
             this.waiting = false;
             this.done = true;
 
-            if (timer != null) {
-                timer.cancel();
-                timer = null;
+            if (timeoutHandle != null) {
+                timeoutHandle.cancel();
+                timeoutHandle = null;
+            }
+            
+            if (retransmissionHandle != null) {
+                retransmissionHandle.cancel();
+                retransmissionHandle = null;
             }
         
-            transactionManager.removeTransaction(this);
+            unregister();
             
             doCallFinishTransactionListeners();
             
             notifyAll();
         }
         
-        logger.exiting(className, "finish");
+        Tracer.exiting(logger, className, "finish");
     }
     
-    private static class TimeoutTimerTask extends TimerTask {
+    private void unregister() {
+        if (registered) {
+            registered = false;
+            transactionManager.removeTransaction(this);
+        }
+    }
+    
+    private synchronized void expire() {
+        if (!done) {
+            timedOut = true;
+            finish();
+        }
+    }
+    
+    /**
+     * トランザクションがタイムアウトにより終了したか示す。
+     * finishの呼び出しにより終了した場合にはfalseを返す。
+     * @return タイムアウトにより終了していればtrue、そうでなければfalse
+     */
+    public synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+    
+    private static class ExpireTask implements Runnable {
+        public Transaction t;
+        public ExpireTask(Transaction t) {
+            this.t = t;
+        }
+
+        @Override
+        public void run() {
+            Tracer.entering(logger, className, "ExpireTask.run");
+            t.expire();
+            Tracer.exiting(logger, className, "ExpireTask.run");
+        }
+    }
+    
+    private static class TimeoutTimerTask implements Runnable {
         public Transaction t;
         public TimeoutTimerTask(Transaction t) {
             this.t = t;
@@ -378,41 +478,215 @@ public class Transaction {
 
         @Override
         public void run() {
-            logger.entering(className, "TimeoutTimerTask.run");
-            t.finish();
-            logger.exiting(className, "TimeoutTimerTask.run");
+            Tracer.entering(logger, className, "TimeoutTimerTask.run");
+            t.transactionManager.getWorkerExecutor().execute(new ExpireTask(t));
+            Tracer.exiting(logger, className, "TimeoutTimerTask.run");
+        }
+    }
+    
+    private static class RetransmissionTask implements Runnable {
+        public Transaction t;
+        public RetransmissionTask(Transaction t) {
+            this.t = t;
+        }
+
+        @Override
+        public void run() {
+            Tracer.entering(logger, className, "RetransmissionTask.run");
+            t.retransmit();
+            Tracer.exiting(logger, className, "RetransmissionTask.run");
+        }
+    }
+    
+    private static class RetransmissionTimerTask implements Runnable {
+        public Transaction t;
+        public RetransmissionTimerTask(Transaction t) {
+            this.t = t;
+        }
+
+        @Override
+        public void run() {
+            Tracer.entering(logger, className, "RetransmissionTimerTask.run");
+            t.transactionManager.getWorkerExecutor().execute(new RetransmissionTask(t));
+            Tracer.exiting(logger, className, "RetransmissionTimerTask.run");
         }
     }
+    
+    private boolean isRetransmissionEnabled() {
+        RetransmissionPolicy policy = transactionConfig.getRetransmissionPolicy();
+        
+        if (policy == null || policy.getMaxRetransmissions() == 0) {
+            return false;
+        }
+        
+        if (tcpEnabled) {
+            return false;
+        }
+        
+        if (transactionConfig.getCountPayloads() != 1) {
+            return false;
+        }
+        
+        Node receiver = transactionConfig.getReceiverNode();
+        if (receiver == null || receiver.equals(subnet.getGroupNode())) {
+            return false;
+        }
+        
+        switch (transactionConfig.getESV()) {
+            case SetC:
+            case Get:
+            case SetGet:
+            case INF_REQ:
+            case INFC:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private void scheduleRetransmission(int delay) {
+        HashedWheelTimer timer = transactionManager.getTimeoutTimer();
+        retransmissionHandle = timer.newTimeout(new RetransmissionTimerTask(this), delay);
+    }
+    
+    private synchronized void retransmit() {
+        Tracer.entering(logger, className, "retransmit");
+        
+        retransmissionHandle = null;
+        
+        if (!waiting || countResponse > 0) {
+            Tracer.exiting(logger, className, "retransmit");
+            return;
+        }
+        
+        RetransmissionPolicy policy = transactionConfig.getRetransmissionPolicy();
+        
+        retransmissions++;
+        
+        try {
+            sendRequest();
+        } catch (SubnetException ex) {
+            logger.logp(Level.WARNING, className, "retransmit", "catched exception", ex);
+        }
+        
+        if (retransmissions < policy.getMaxRetransmissions()) {
+            scheduleRetransmission(policy.getBackoffRTO(rto, retransmissions));
+        }
+        
+        Tracer.exiting(logger, className, "retransmit");
+    }
+    
+    /**
+     * 再送したリクエストの回数を返す。
+     * @return 再送したリクエストの回数
+     */
+    public synchronized int countRetransmissions() {
+        return retransmissions;
+    }
+    
     /**
      * トランザクションを開始する。
+     * TransactionConfigに再送方法が設定されている場合、単一のノードへのレスポンスを要求するリクエストは、
+     * レスポンスを受信するまで受信ノードのRTTから求めた待ち時間毎に同じTIDで再送される。
+     * 再送されたリクエストへの重複したレスポンスは、送信ノードと送信元EOJが同じレスポンスを既に受信している場合に無視される。
+     * TCPを利用する場合には再送は行われない。再送とタイムアウトによる終了はTransactionManagerのworker Executorで行われる。
      * @throws SubnetException フレームの生成や送信に失敗した場合 
      */
     public synchronized void execute() throws SubnetException {
-        logger.entering(className, "execute");
+        Tracer.entering(logger, className, "execute");
         
         if (this.waiting || this.done) {
-            logger.exiting(className, "execute");
+            Tracer.exiting(logger, className, "execute");
             return;
         }
         
         doCallBeginTransactionListeners();
 
+        this.tid = transactionManager.reserveTID(tid);
         this.waiting = true;
+        this.registered = true;
         
         transactionManager.addTransaction(this);
         
-        sendRequest();
+        sentTime = System.nanoTime();
+        
+        boolean sent = false;
+        try {
+            sendRequest();
+            sent = true;
+        } finally {
+            if (!sent) {
+                this.waiting = false;
+                unregister();
+            }
+        }
         
         int timeout = getTimeout();
         
+        if (timeout != 0 && isRetransmissionEnabled()) {
+            RetransmissionPolicy policy = transactionConfig.getRetransmissionPolicy();
+            rto = transactionManager.getRTTEstimator(transactionConfig.getReceiverNode()).getRTO(policy);
+            responders = new HashSet<Pair<Node, EOJ>>();
+            scheduleRetransmission(rto);
+        }
+        
         if (timeout == 0) {
             finish();
         } else if (timeout > 0) {
-            timer = new Timer(true);
-            timer.schedule(new TimeoutTimerTask(this), timeout);
+            HashedWheelTimer timer = transactionManager.getTimeoutTimer();
+            timeoutHandle = timer.newTimeout(new TimeoutTimerTask(this), timeout);
+        }
+
+        Tracer.exiting(logger, className, "execute");
+    }
+
+    private static class FutureTransactionListener implements TransactionListener {
+        private TransactionFuture<Transaction> future;
+
+        public FutureTransactionListener(TransactionFuture<Transaction> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void begin(Transaction t) {
+        }
+
+        @Override
+        public void send(Transaction t, Subnet subnet, Frame frame, boolean success) {
+        }
+
+        @Override
+        public void receive(Transaction t, Subnet subnet, Frame frame) {
+        }
+
+        @Override
+        public void finish(Transaction t) {
+            future.complete(t);
+        }
+    }
+
+    /**
+     * トランザクションを開始し、終了を受け取るTransactionFutureを返す。
+     * 呼び出したスレッドはレスポンスを待たずに戻る。
+     * TransactionFutureはタイムアウトもしくはfinishの呼び出しによりこのTransactionとともに完了する。
+     * フレームの送信に失敗した場合には、SubnetExceptionを原因として失敗したTransactionFutureを返す。
+     * @return このTransactionの終了を受け取るTransactionFuture
+     */
+    public TransactionFuture<Transaction> executeAsync() {
+        Tracer.entering(logger, className, "executeAsync");
+
+        TransactionFuture<Transaction> future = new TransactionFuture<Transaction>(this);
+        addTransactionListener(new FutureTransactionListener(future));
+
+        try {
+            execute();
+        } catch (SubnetException e) {
+            future.fail(e);
+            finish();
         }
 
-        logger.exiting(className, "execute");
+        Tracer.exiting(logger, className, "executeAsync", future);
+        return future;
     }
 
     /**
@@ -434,11 +708,11 @@ public class Transaction {
      * @return 受信したレスポンスフレーム数
      */
     public synchronized int countResponses() {
-        logger.entering(className, "countResponses");
+        Tracer.entering(logger, className, "countResponses");
         
         int count = this.countResponse;
         
-        logger.exiting(className, "countResponses", count);
+        Tracer.exiting(logger, className, "countResponses", count);
         return count;
     }
     
@@ -4,6 +4,9 @@ import echowand.common.EOJ;
 import echowand.common.ESV;
 import echowand.net.Node;
 import echowand.net.StandardPayload;
+import echowand.net.UDPNetwork;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -14,10 +17,24 @@ public abstract class TransactionConfig {
     private static final Logger logger = Logger.getLogger(TransactionConfig.class.getName());
     private static final String className = TransactionConfig.class.getName();
     
+    /**
+     * リクエストフレームの最大サイズのデフォルト値(バイト)
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = UDPNetwork.DEFAULT_BUFFER_SIZE;
+    
+    /**
+     * 一つのプロパティ列に含めることのできるプロパティ数の最大値
+     */
+    public static final int MAX_OPC = 0xff;
+    
+    private static final int FRAME_HEADER_SIZE = 12;
+    
     private Node senderNode;
     private Node receiverNode;
     private EOJ sourceEOJ;
     private EOJ destinationEOJ;
+    private RetransmissionPolicy retransmissionPolicy;
+    private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
     
     /**
      * TransactionConfigを生成する。
@@ -121,4 +138,98 @@ public abstract class TransactionConfig {
     public EOJ getDestinationEOJ() {
         return destinationEOJ;
     }
+    
+    /**
+     * リクエストフレームの最大サイズを設定する。
+     * プロパティを一つのフレームに含めるとこのサイズを超える場合には、リクエストは複数のフレームに分割される。
+     * @param maxFrameSize リクエストフレームの最大サイズ(バイト)
+     * @throws IllegalArgumentException プロパティを一つも含められないサイズが指定された場合
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        logger.entering(className, "setMaxFrameSize", maxFrameSize);
+        
+        if (maxFrameSize < FRAME_HEADER_SIZE + 3) {
+            IllegalArgumentException exception = new IllegalArgumentException("invalid maxFrameSize: " + maxFrameSize);
+            logger.throwing(className, "setMaxFrameSize", exception);
+            throw exception;
+        }
+        
+        this.maxFrameSize = maxFrameSize;
+        
+        logger.exiting(className, "setMaxFrameSize");
+    }
+    
+    /**
+     * リクエストフレームの最大サイズを取得する。
+     * @return リクエストフレームの最大サイズ(バイト)
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+    
+    /**
+     * フレームの最大サイズとプロパティ数の最大値を超えないように、二つのプロパティ列を複数のフレームに分割する。
+     * 各フレームには第1のプロパティ列、第2のプロパティ列の順にプロパティが詰められる。
+     * 単独で最大サイズを超えるプロパティは一つのフレームに単独で含められる。
+     * @param firstSizes 第1のプロパティ列の各プロパティのサイズ(バイト)
+     * @param secondSizes 第2のプロパティ列の各プロパティのサイズ(バイト)
+     * @param hasSecondOPC フレームに第2のプロパティ列の数が含まれる場合にはtrue
+     * @return 各フレームの第1と第2のプロパティ列の開始位置と終了位置を表す配列のリスト
+     */
+    protected List<int[]> splitProperties(int[] firstSizes, int[] secondSizes, boolean hasSecondOPC) {
+        LinkedList<int[]> partitions = new LinkedList<int[]>();
+        int headerSize = FRAME_HEADER_SIZE + (hasSecondOPC ? 1 : 0);
+        
+        int[] current = new int[]{0, 0, 0, 0};
+        int size = headerSize;
+        
+        for (int i=0; i<firstSizes.length; i++) {
+            int count = current[1] - current[0];
+            if (count > 0 && (count == MAX_OPC || size + firstSizes[i] > maxFrameSize)) {
+                partitions.add(current);
+                current = new int[]{i, i, 0, 0};
+                size = headerSize;
+            }
+            current[1] = i + 1;
+            size += firstSizes[i];
+        }
+        
+        current[2] = current[3] = 0;
+        
+        for (int i=0; i<secondSizes.length; i++) {
+            int count = (current[1] - current[0]) + (current[3] - current[2]);
+            if (count > 0 && (current[3] - current[2] == MAX_OPC || size + secondSizes[i] > maxFrameSize)) {
+                partitions.add(current);
+                current = new int[]{firstSizes.length, firstSizes.length, i, i};
+                size = headerSize;
+            }
+            current[3] = i + 1;
+            size += secondSizes[i];
+        }
+        
+        partitions.add(current);
+        
+        return partitions;
+    }
+    
+    /**
+     * リクエストの再送方法を設定する。
+     * nullを指定した場合には再送を行わない。
+     * @param retransmissionPolicy リクエストの再送方法
+     */
+    public void setRetransmissionPolicy(RetransmissionPolicy retransmissionPolicy) {
+        logger.entering(className, "setRetransmissionPolicy", retransmissionPolicy);
+        
+        this.retransmissionPolicy = retransmissionPolicy;
+        
+        logger.exiting(className, "setRetransmissionPolicy");
+    }
+    
+    /**
+     * リクエストの再送方法を取得する。
+     * @return リクエストの再送方法、再送を行わない場合にはnull
+     */
+    public RetransmissionPolicy getRetransmissionPolicy() {
+        return retransmissionPolicy;
+    }
 }
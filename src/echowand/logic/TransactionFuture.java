@@ -0,0 +1,269 @@
+package echowand.logic;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transactionの処理結果を非同期に受け取るためのFuture
+ * TransactionListenerのreceiveやfinishから完了させることで、呼び出し側のスレッドをブロックせずに結果を受け取ることができる。
+ * 取り消された場合には対応するTransactionを終了する。
+ * @param <V> 結果の型
+ * @author Yoshiki Makino
+ */
+public class TransactionFuture<V> implements Future<V> {
+    private static final Logger logger = Logger.getLogger(TransactionFuture.class.getName());
+    private static final String className = TransactionFuture.class.getName();
+
+    private enum State {
+        RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private Transaction transaction;
+    private State state;
+    private V result;
+    private Throwable cause;
+    private LinkedList<TransactionFutureListener<V>> listeners;
+
+    /**
+     * 特定のTransactionに対応しないTransactionFutureを生成する。
+     * 複数の要求をまとめて一つのTransactionで処理する場合に利用する。取り消してもTransactionは終了しない。
+     */
+    public TransactionFuture() {
+        this(null);
+    }
+
+    /**
+     * 指定されたTransactionの結果を受け取るTransactionFutureを生成する。
+     * @param transaction 結果を受け取るTransaction
+     */
+    public TransactionFuture(Transaction transaction) {
+        logger.entering(className, "TransactionFuture", transaction);
+
+        this.transaction = transaction;
+        this.state = State.RUNNING;
+        this.listeners = new LinkedList<TransactionFutureListener<V>>();
+
+        logger.exiting(className, "TransactionFuture");
+    }
+
+    /**
+     * 結果を受け取るTransactionを返す。
+     * @return 結果を受け取るTransaction、対応するTransactionがない場合にはnull
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * 完了を受け取るTransactionFutureListenerを登録する。
+     * 既に完了している場合には、呼び出したスレッドで直ちに通知を行う。
+     * @param listener 登録するTransactionFutureListener
+     */
+    public void addTransactionFutureListener(TransactionFutureListener<V> listener) {
+        logger.entering(className, "addTransactionFutureListener", listener);
+
+        synchronized (this) {
+            if (state == State.RUNNING) {
+                listeners.add(listener);
+                logger.exiting(className, "addTransactionFutureListener");
+                return;
+            }
+        }
+
+        notifyListener(listener);
+
+        logger.exiting(className, "addTransactionFutureListener");
+    }
+
+    private synchronized boolean setState(State newState, V result, Throwable cause) {
+        if (state != State.RUNNING) {
+            return false;
+        }
+
+        this.state = newState;
+        this.result = result;
+        this.cause = cause;
+
+        notifyAll();
+        return true;
+    }
+
+    private synchronized List<TransactionFutureListener<V>> takeListeners() {
+        List<TransactionFutureListener<V>> list = new ArrayList<TransactionFutureListener<V>>(listeners);
+        listeners.clear();
+        return list;
+    }
+
+    private void notifyListener(TransactionFutureListener<V> listener) {
+        State currentState;
+        V currentResult;
+        Throwable currentCause;
+
+        synchronized (this) {
+            currentState = state;
+            currentResult = result;
+            currentCause = cause;
+        }
+
+        try {
+            switch (currentState) {
+                case SUCCEEDED:
+                    listener.success(this, currentResult);
+                    break;
+                case FAILED:
+                    listener.failure(this, currentCause);
+                    break;
+                case CANCELLED:
+                    listener.failure(this, new CancellationException());
+                    break;
+            }
+        } catch (RuntimeException ex) {
+            logger.logp(Level.WARNING, className, "notifyListener", "catched exception", ex);
+        }
+    }
+
+    private void notifyListeners() {
+        for (TransactionFutureListener<V> listener : takeListeners()) {
+            notifyListener(listener);
+        }
+    }
+
+    /**
+     * 結果を設定して完了させる。
+     * 既に完了している場合には何もしない。
+     * @param result 完了の結果
+     * @return 完了させた場合にはtrue、既に完了していた場合にはfalse
+     */
+    public boolean complete(V result) {
+        logger.entering(className, "complete", result);
+
+        boolean completed = setState(State.SUCCEEDED, result, null);
+
+        if (completed) {
+            notifyListeners();
+        }
+
+        logger.exiting(className, "complete", completed);
+        return completed;
+    }
+
+    /**
+     * 失敗の原因を設定して完了させる。
+     * 既に完了している場合には何もしない。
+     * @param cause 失敗の原因
+     * @return 完了させた場合にはtrue、既に完了していた場合にはfalse
+     */
+    public boolean fail(Throwable cause) {
+        logger.entering(className, "fail", cause);
+
+        boolean completed = setState(State.FAILED, null, cause);
+
+        if (completed) {
+            notifyListeners();
+        }
+
+        logger.exiting(className, "fail", completed);
+        return completed;
+    }
+
+    /**
+     * 処理を取り消し、対応するTransactionを終了する。
+     * @param mayInterruptIfRunning 利用されない
+     * @return 取り消した場合にはtrue、既に完了していた場合にはfalse
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        logger.entering(className, "cancel", mayInterruptIfRunning);
+
+        boolean cancelled = setState(State.CANCELLED, null, null);
+
+        if (cancelled) {
+            if (transaction != null) {
+                transaction.finish();
+            }
+            notifyListeners();
+        }
+
+        logger.exiting(className, "cancel", cancelled);
+        return cancelled;
+    }
+
+    /**
+     * 取り消されたかどうか返す。
+     * @return 取り消された場合にはtrue、そうでなければfalse
+     */
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    /**
+     * 完了したかどうか返す。
+     * @return 成功、失敗、取り消しのいずれかにより完了した場合にはtrue、そうでなければfalse
+     */
+    @Override
+    public synchronized boolean isDone() {
+        return state != State.RUNNING;
+    }
+
+    private V report() throws ExecutionException {
+        switch (state) {
+            case SUCCEEDED:
+                return result;
+            case CANCELLED:
+                throw new CancellationException();
+            default:
+                throw new ExecutionException(cause);
+        }
+    }
+
+    /**
+     * 完了するまで待ち、結果を返す。
+     * @return 完了の結果
+     * @throws InterruptedException 割り込みが発生した場合
+     * @throws ExecutionException 失敗により完了した場合
+     * @throws CancellationException 取り消された場合
+     */
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (state == State.RUNNING) {
+            wait();
+        }
+
+        return report();
+    }
+
+    /**
+     * 指定された時間を上限として完了するまで待ち、結果を返す。
+     * @param timeout 待機する時間
+     * @param unit timeoutの単位
+     * @return 完了の結果
+     * @throws InterruptedException 割り込みが発生した場合
+     * @throws ExecutionException 失敗により完了した場合
+     * @throws TimeoutException 指定された時間内に完了しなかった場合
+     * @throws CancellationException 取り消された場合
+     */
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+
+        while (state == State.RUNNING) {
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+
+        return report();
+    }
+}
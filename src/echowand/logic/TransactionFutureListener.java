@@ -0,0 +1,24 @@
+package echowand.logic;
+
+/**
+ * TransactionFutureの完了を受け取るためのインタフェース
+ * 完了を通知するスレッドはトランザクションの処理を行うスレッドであるため、長時間ブロックしてはならない。
+ * @param <V> TransactionFutureの結果の型
+ * @author Yoshiki Makino
+ */
+public interface TransactionFutureListener<V> {
+    /**
+     * TransactionFutureが結果とともに完了した時の処理を行う。
+     * @param future 完了したTransactionFuture
+     * @param result 完了の結果
+     */
+    public void success(TransactionFuture<V> future, V result);
+
+    /**
+     * TransactionFutureが失敗もしくは取り消しにより完了した時の処理を行う。
+     * 取り消された場合にはCancellationExceptionが渡される。
+     * @param future 完了したTransactionFuture
+     * @param cause 失敗の原因
+     */
+    public void failure(TransactionFuture<V> future, Throwable cause);
+}
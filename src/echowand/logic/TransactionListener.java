@@ -5,6 +5,8 @@ import echowand.net.Subnet;
 
 /**
  * トランザクションのレスポンス処理のためのインタフェース
+ * タイムアウトによりTransactionが終了した場合、finishはTransactionManagerのworker Executorのスレッドで呼び出される。
+ * このため、finishがブロックしても他のTransactionのタイムアウト処理は遅れない。
  * @author Yoshiki Makino
  */
 public interface TransactionListener {
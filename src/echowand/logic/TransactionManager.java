@@ -1,9 +1,16 @@
 package echowand.logic;
 
 import echowand.net.Frame;
+import echowand.net.Node;
 import echowand.net.Subnet;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import echowand.util.HashedWheelTimer;
+import echowand.util.Tracer;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -15,7 +22,11 @@ public class TransactionManager implements Listener {
     private static final String className = TransactionManager.class.getName();
     
     private Subnet subnet;
-    private LinkedList<Transaction> transactions;
+    private TransactionTable transactions;
+    private HashedWheelTimer timeoutTimer;
+    private AtomicInteger nextTID;
+    private HashMap<Node, RTTEstimator> rttEstimators;
+    private ExecutorService workerExecutor;
     
     /**
      * TransactinManagerを生成する。
@@ -25,49 +36,170 @@ public class TransactionManager implements Listener {
         logger.entering(className, "TransactionManager", subnet);
         
         this.subnet = subnet;
-        transactions = new LinkedList<Transaction>();
+        transactions = new TransactionTable();
+        timeoutTimer = new HashedWheelTimer();
+        nextTID = new AtomicInteger(1);
+        rttEstimators = new HashMap<Node, RTTEstimator>();
         
         logger.exiting(className, "TransactionManager");
     }
     
-    private synchronized LinkedList<Transaction> cloneTransactions() {
-        return new LinkedList<Transaction>(transactions);
+    /**
+     * 新たなTransactionのためのTIDを割り当てる。
+     * TIDは1から順番に割り当てられ、0xffffの次は1に戻る。
+     * 処理中のTransactionが利用しているTIDは割り当てられない。
+     * 複数のスレッドから同時に呼び出された場合にも同じTIDが割り当てられることはない。
+     * 割り当てたTIDは予約されないため、0xffff回の割り当ての後には再び割り当てられる可能性がある。
+     * Transactionは実行の開始時にTIDを予約する。
+     * @return 割り当てたTID
+     * @throws IllegalStateException 全てのTIDが処理中のTransactionに利用されている場合
+     */
+    public short allocateTID() {
+        Tracer.entering(logger, className, "allocateTID");
+        
+        short tid = allocateTID(false);
+        
+        Tracer.exiting(logger, className, "allocateTID", tid);
+        return tid;
+    }
+    
+    /**
+     * 実行を開始するTransactionのためにTIDを予約する。
+     * 指定されたTIDが既に予約されている場合には、新たなTIDを割り当てて予約する。
+     * 予約したTIDはTransactionの終了時にremoveTransactionにより解除される。
+     * @param tid 予約するTID
+     * @return 予約したTID
+     * @throws IllegalStateException 全てのTIDが処理中のTransactionに利用されている場合
+     */
+    short reserveTID(short tid) {
+        if (transactions.reserveTID(tid)) {
+            return tid;
+        }
+        
+        return allocateTID(true);
+    }
+    
+    private short allocateTID(boolean reserve) {
+        for (int i=0; i<0xffff; i++) {
+            int current;
+            int next;
+            
+            do {
+                current = nextTID.get();
+                next = (current == 0xffff) ? 1 : current + 1;
+            } while (!nextTID.compareAndSet(current, next));
+            
+            short tid = (short)current;
+            
+            if (transactions.isReservedTID(tid) || transactions.containsTID(tid)) {
+                continue;
+            }
+            
+            if (!reserve || transactions.reserveTID(tid)) {
+                return tid;
+            }
+        }
+        
+        IllegalStateException exception = new IllegalStateException("TIDs have been exhausted");
+        logger.throwing(className, "allocateTID", exception);
+        throw exception;
+    }
+    
+    /**
+     * 処理中のTransactionが利用しているTIDの数を返す。
+     * この数が65535に近づくと新たなTIDの割り当てに時間がかかるようになる。
+     * @return 利用されているTIDの数
+     */
+    public int countUsedTIDs() {
+        return transactions.countReservedTIDs();
     }
     
     /**
      * Transactionを処理中として登録する。
+     * 登録はロックを行わずにTIDをキーとする表に対して行われる。
      * @param t 登録するトランザクション
      */
-    protected synchronized void addTransaction(Transaction t) {
-        logger.entering(className, "addTransaction", t);
+    protected void addTransaction(Transaction t) {
+        Tracer.entering(logger, className, "addTransaction", t);
         
         transactions.add(t);
         
-        logger.exiting(className, "addTransaction");
+        Tracer.exiting(logger, className, "addTransaction");
     }
     
     /**
-     * Transactionの処理が終了したとして登録を抹消する。
+     * Transactionの処理が終了したとして登録を抹消し、TIDの予約を解除する。
      * @param t 登録を抹消するトランザクション
      */
-    protected synchronized void removeTransaction(Transaction t) {
-        logger.entering(className, "removeTransaction", t);
+    protected void removeTransaction(Transaction t) {
+        Tracer.entering(logger, className, "removeTransaction", t);
         
         transactions.remove(t);
+        transactions.releaseTID(t.getTID());
         
-        logger.exiting(className, "removeTransaction");
+        Tracer.exiting(logger, className, "removeTransaction");
+    }
+    
+    /**
+     * Transactionのタイムアウト処理に利用するタイマーを返す。
+     * 全てのTransactionのタイムアウトは単一のスレッドで検出され、タイムアウトしたTransactionの終了処理はworker Executorで行われる。
+     * TimeoutTaskなど、他のタイムアウト処理に利用することもできる。
+     * @return タイムアウト処理に利用するタイマー
+     */
+    public HashedWheelTimer getTimeoutTimer() {
+        return timeoutTimer;
+    }
+    
+    /**
+     * タイムアウト処理に利用するタイマーのスレッドで実行すべきでない処理を実行するExecutorを返す。
+     * 再送やタイムアウトによる終了処理など、TransactionListenerの呼び出しやフレームの送信を伴う処理は、タイマーのスレッドを止めないようにこのExecutorで実行される。
+     * Executorのスレッドは最初に利用された時に生成され、一定時間利用されなければ終了するデーモンスレッドである。
+     * @return 送信を伴う処理を実行するExecutor
+     */
+    public synchronized Executor getWorkerExecutor() {
+        if (workerExecutor == null) {
+            workerExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TransactionManager-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        
+        return workerExecutor;
+    }
+    
+    /**
+     * 指定されたノードとのRTTを推定するRTTEstimatorを返す。
+     * RTTEstimatorが存在しない場合には新たに生成する。
+     * RTTは再送を行わずにレスポンスを受信したTransactionにより測定される。
+     * @param node ノードの指定
+     * @return 指定されたノードのRTTEstimator
+     */
+    public synchronized RTTEstimator getRTTEstimator(Node node) {
+        RTTEstimator estimator = rttEstimators.get(node);
+        
+        if (estimator == null) {
+            estimator = new RTTEstimator();
+            rttEstimators.put(node, estimator);
+        }
+        
+        return estimator;
     }
     
     /**
      * 処理中のTransactionの数を返す。
      * @return 処理中のTransaction数
      */
-    public synchronized int countActiveTransactions() {
+    public int countActiveTransactions() {
         return transactions.size();
     }
     
     /**
      * 受信したフレームのTIDを確認して適切なTransactionのreceiveResponseを呼び出す。
+     * TransactionはTIDにより直接検索されるため、処理中のTransactionの数には依存しない。
      * 既に処理済みのフレームは無視を行なう。
      * @param subnet 受信したフレームの送受信が行なわれたサブネット
      * @param frame 受信したフレーム
@@ -76,22 +208,22 @@ public class TransactionManager implements Listener {
      */
     @Override
     public boolean process(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "process", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "process", subnet, frame, processed);
         
         boolean ret = false;
         
         if (processed) {
-            logger.exiting(className, "process", ret);
+            Tracer.exiting(logger, className, "process", ret);
             return ret;
         }
         
-        for (Transaction transaction : cloneTransactions()) {
-            if (frame.getCommonFrame().getTID() == transaction.getTID()) {
-                ret |= transaction.receiveResponse(frame);
-            }
+        short tid = frame.getCommonFrame().getTID();
+        
+        for (TransactionTable.Entry entry = transactions.get(tid); entry != null; entry = entry.nextEntry()) {
+            ret |= entry.getTransaction().receiveResponse(frame);
         }
         
-        logger.exiting(className, "process", ret);
+        Tracer.exiting(logger, className, "process", ret);
         return ret;
     }
 
@@ -101,11 +233,11 @@ public class TransactionManager implements Listener {
      * @return このTransactionManagerに所属するTransaction
      */
     public Transaction createTransaction(TransactionConfig transactionConfig) {
-        logger.entering(className, "createTransaction", transactionConfig);
+        Tracer.entering(logger, className, "createTransaction", transactionConfig);
         
         Transaction newTransaction = new Transaction(subnet, this, transactionConfig);
         
-        logger.exiting(className, "createTransaction");
+        Tracer.exiting(logger, className, "createTransaction");
         
         return newTransaction;
     }
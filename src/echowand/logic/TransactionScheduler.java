@@ -0,0 +1,387 @@
+package echowand.logic;
+
+import echowand.net.Frame;
+import echowand.net.Node;
+import echowand.net.Subnet;
+import echowand.net.SubnetException;
+import echowand.util.Tracer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 受信ノード毎に同時に実行するTransactionの数を制限するスケジューラ
+ * 制限を超えたTransactionは受信ノード毎のキューに登録され、同じノードへのTransactionが終了すると登録された順番に実行される。
+ * キューから取り出されたTransactionは、終了したTransactionのスレッドではなくTransactionManagerのworker Executorで実行される。
+ * 異なるノードへのTransactionは互いに待たされることはない。
+ * 適応制御が有効な場合には、タイムアウトが発生する度にノード毎の上限を半分にし、
+ * 上限と同じ数のTransactionがレスポンスを受信する度に上限を1増やす。
+ * レスポンスを受信せずにfinishの呼び出しにより終了したTransactionはタイムアウトとして扱わない。
+ * グループへのTransactionは制限されずに直ちに実行される。
+ * @author Yoshiki Makino
+ */
+public class TransactionScheduler {
+    private static final Logger logger = Logger.getLogger(TransactionScheduler.class.getName());
+    private static final String className = TransactionScheduler.class.getName();
+
+    /**
+     * ノード毎に同時に実行するTransactionの数のデフォルトの上限
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private Subnet subnet;
+    private int maxInFlight;
+    private boolean adaptive;
+    private HashMap<Node, NodeState> nodeStates;
+
+    private static class NodeState {
+        public int fixedLimit = 0;
+        public int limit;
+        public int inFlight = 0;
+        public int successes = 0;
+        public LinkedList<Transaction> queue = new LinkedList<Transaction>();
+
+        public NodeState(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * TransactionSchedulerを生成する。
+     * @param subnet Transactionが送受信されるサブネット
+     */
+    public TransactionScheduler(Subnet subnet) {
+        logger.entering(className, "TransactionScheduler", subnet);
+
+        this.subnet = subnet;
+        this.maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        this.adaptive = false;
+        this.nodeStates = new HashMap<Node, NodeState>();
+
+        logger.exiting(className, "TransactionScheduler");
+    }
+
+    private NodeState getNodeState(Node node) {
+        NodeState state = nodeStates.get(node);
+
+        if (state == null) {
+            state = new NodeState(maxInFlight);
+            nodeStates.put(node, state);
+        }
+
+        return state;
+    }
+
+    private int getLimit(NodeState state) {
+        if (state.fixedLimit > 0) {
+            return state.fixedLimit;
+        }
+
+        if (adaptive) {
+            return Math.min(state.limit, maxInFlight);
+        }
+
+        return maxInFlight;
+    }
+
+    private void adjustLimit(NodeState state, Transaction transaction) {
+        if (!adaptive || state.fixedLimit > 0) {
+            return;
+        }
+
+        if (transaction.countResponses() > 0) {
+            state.successes++;
+            if (state.successes >= state.limit) {
+                state.limit = Math.min(state.limit + 1, maxInFlight);
+                state.successes = 0;
+            }
+        } else if (transaction.isTimedOut()) {
+            state.limit = Math.max(state.limit / 2, 1);
+            state.successes = 0;
+        }
+    }
+
+    private List<Transaction> dequeueTransactions(NodeState state) {
+        LinkedList<Transaction> transactions = new LinkedList<Transaction>();
+
+        while (!state.queue.isEmpty() && state.inFlight < getLimit(state)) {
+            transactions.add(state.queue.removeFirst());
+            state.inFlight++;
+        }
+
+        return transactions;
+    }
+
+    private synchronized List<Transaction> dequeueAllTransactions() {
+        LinkedList<Transaction> transactions = new LinkedList<Transaction>();
+
+        for (NodeState state : nodeStates.values()) {
+            transactions.addAll(dequeueTransactions(state));
+        }
+
+        return transactions;
+    }
+
+    private static class ExecuteTask implements Runnable {
+        private Transaction transaction;
+        
+        public ExecuteTask(Transaction transaction) {
+            this.transaction = transaction;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                transaction.execute();
+            } catch (SubnetException ex) {
+                logger.logp(Level.WARNING, className, "ExecuteTask.run", "catched exception", ex);
+                transaction.finish();
+            }
+        }
+    }
+
+    private void executeQueuedTransactions(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            transaction.getTransactionManager().getWorkerExecutor().execute(new ExecuteTask(transaction));
+        }
+    }
+
+    /**
+     * ノード毎に同時に実行するTransactionの数の上限を設定する。
+     * 適応制御が有効な場合には、ノード毎の上限はこの値を超えない範囲で変化する。
+     * @param maxInFlight 同時に実行するTransactionの数の上限
+     * @throws IllegalArgumentException maxInFlightが1未満の場合
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        logger.entering(className, "setMaxInFlight", maxInFlight);
+
+        if (maxInFlight < 1) {
+            IllegalArgumentException exception = new IllegalArgumentException("invalid maxInFlight: " + maxInFlight);
+            logger.throwing(className, "setMaxInFlight", exception);
+            throw exception;
+        }
+
+        synchronized (this) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        executeQueuedTransactions(dequeueAllTransactions());
+
+        logger.exiting(className, "setMaxInFlight");
+    }
+
+    /**
+     * ノード毎に同時に実行するTransactionの数の上限を返す。
+     * @return 同時に実行するTransactionの数の上限
+     */
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 指定されたノードに同時に実行するTransactionの数の上限を設定する。
+     * 設定された上限は適応制御により変化しない。
+     * @param node ノードの指定
+     * @param maxInFlight 同時に実行するTransactionの数の上限、0以下の場合にはノード毎の設定を削除する
+     */
+    public void setMaxInFlight(Node node, int maxInFlight) {
+        logger.entering(className, "setMaxInFlight", new Object[]{node, maxInFlight});
+
+        List<Transaction> transactions;
+
+        synchronized (this) {
+            NodeState state = getNodeState(node);
+            state.fixedLimit = Math.max(maxInFlight, 0);
+            transactions = dequeueTransactions(state);
+        }
+
+        executeQueuedTransactions(transactions);
+
+        logger.exiting(className, "setMaxInFlight");
+    }
+
+    /**
+     * 指定されたノードに同時に実行するTransactionの数の現在の上限を返す。
+     * @param node ノードの指定
+     * @return 同時に実行するTransactionの数の上限
+     */
+    public synchronized int getMaxInFlight(Node node) {
+        NodeState state = nodeStates.get(node);
+
+        if (state == null) {
+            return maxInFlight;
+        }
+
+        return getLimit(state);
+    }
+
+    /**
+     * タイムアウトとレスポンスの受信によりノード毎の上限を調整するかどうかを設定する。
+     * @param adaptive 調整を行う場合にはtrue、そうでなければfalse
+     */
+    public void setAdaptive(boolean adaptive) {
+        logger.entering(className, "setAdaptive", adaptive);
+
+        synchronized (this) {
+            this.adaptive = adaptive;
+
+            for (NodeState state : nodeStates.values()) {
+                state.limit = maxInFlight;
+                state.successes = 0;
+            }
+        }
+
+        executeQueuedTransactions(dequeueAllTransactions());
+
+        logger.exiting(className, "setAdaptive");
+    }
+
+    /**
+     * タイムアウトとレスポンスの受信によりノード毎の上限を調整するかどうかを返す。
+     * @return 調整を行う場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * 指定されたノードに対して実行中のTransactionの数を返す。
+     * @param node ノードの指定
+     * @return 実行中のTransactionの数
+     */
+    public synchronized int countInFlight(Node node) {
+        NodeState state = nodeStates.get(node);
+
+        if (state == null) {
+            return 0;
+        }
+
+        return state.inFlight;
+    }
+
+    /**
+     * 指定されたノードに対して実行を待っているTransactionの数を返す。
+     * @param node ノードの指定
+     * @return 実行を待っているTransactionの数
+     */
+    public synchronized int countQueued(Node node) {
+        NodeState state = nodeStates.get(node);
+
+        if (state == null) {
+            return 0;
+        }
+
+        return state.queue.size();
+    }
+
+    /**
+     * 全てのノードに対して実行を待っているTransactionの数を返す。
+     * @return 実行を待っているTransactionの数
+     */
+    public synchronized int countQueued() {
+        int count = 0;
+
+        for (NodeState state : nodeStates.values()) {
+            count += state.queue.size();
+        }
+
+        return count;
+    }
+
+    private class SchedulerTransactionListener implements TransactionListener {
+        private Node node;
+
+        public SchedulerTransactionListener(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public void begin(Transaction t) {
+        }
+
+        @Override
+        public void send(Transaction t, Subnet subnet, Frame frame, boolean success) {
+        }
+
+        @Override
+        public void receive(Transaction t, Subnet subnet, Frame frame) {
+        }
+
+        @Override
+        public void finish(Transaction t) {
+            release(node, t);
+        }
+    }
+
+    private void release(Node node, Transaction transaction) {
+        Tracer.entering(logger, className, "release", node, transaction);
+
+        List<Transaction> transactions;
+
+        synchronized (this) {
+            NodeState state = nodeStates.get(node);
+
+            if (state.queue.remove(transaction)) {
+                Tracer.exiting(logger, className, "release");
+                return;
+            }
+
+            state.inFlight--;
+            adjustLimit(state, transaction);
+            transactions = dequeueTransactions(state);
+        }
+
+        executeQueuedTransactions(transactions);
+
+        Tracer.exiting(logger, className, "release");
+    }
+
+    /**
+     * Transactionを実行する。
+     * 受信ノードに対して実行中のTransactionの数が上限に達している場合には、Transactionはキューに登録され、
+     * 同じノードへのTransactionが終了した時に実行される。
+     * Transactionのタイムアウトは実際に実行が開始された時点から計測される。
+     * キューに登録されたTransactionは、finishを呼び出すことで実行せずに終了させることができる。
+     * @param transaction 実行するTransaction
+     * @return 直ちに実行した場合にはtrue、キューに登録した場合にはfalse
+     * @throws SubnetException 直ちに実行したTransactionのフレームの生成や送信に失敗した場合
+     */
+    public boolean schedule(Transaction transaction) throws SubnetException {
+        Tracer.entering(logger, className, "schedule", transaction);
+
+        Node node = transaction.getTransactionConfig().getReceiverNode();
+
+        if (node == null || node.equals(subnet.getGroupNode())) {
+            transaction.execute();
+            Tracer.exiting(logger, className, "schedule", true);
+            return true;
+        }
+
+        transaction.addTransactionListener(new SchedulerTransactionListener(node));
+
+        synchronized (this) {
+            NodeState state = getNodeState(node);
+
+            if (state.inFlight >= getLimit(state)) {
+                state.queue.add(transaction);
+                Tracer.exiting(logger, className, "schedule", false);
+                return false;
+            }
+
+            state.inFlight++;
+        }
+
+        try {
+            transaction.execute();
+        } catch (SubnetException ex) {
+            transaction.finish();
+            logger.throwing(className, "schedule", ex);
+            throw ex;
+        }
+
+        Tracer.exiting(logger, className, "schedule", true);
+        return true;
+    }
+}
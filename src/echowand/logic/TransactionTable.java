@@ -0,0 +1,271 @@
+package echowand.logic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 処理中のTransactionをTIDで検索するための表
+ * TIDの下位ビットで選択されるバケット毎に不変の連結リストを保持し、更新はCASにより行う。
+ * 検索はロックやコピーを行わずにバケット内の要素数に比例した時間で行われる。
+ * 実行を開始したTransactionのTIDが終了するまで再び割り当てられないように、TIDの予約もビット列により管理する。
+ * @author Yoshiki Makino
+ */
+class TransactionTable {
+    /**
+     * デフォルトのバケット数
+     */
+    public static final int DEFAULT_BUCKET_COUNT = 256;
+
+    private final AtomicReferenceArray<Entry> buckets;
+    private final int mask;
+    private final AtomicInteger size;
+    private final AtomicInteger tidCount;
+    private final AtomicLongArray reservedTIDs;
+    private final AtomicInteger reservedCount;
+
+    /**
+     * TIDが同じTransactionを順番に参照するための連結リストの要素
+     */
+    public static class Entry {
+        private final Transaction transaction;
+        private final short tid;
+        private final Entry next;
+
+        private Entry(Transaction transaction, Entry next) {
+            this.transaction = transaction;
+            this.tid = transaction.getTID();
+            this.next = next;
+        }
+
+        /**
+         * この要素のTransactionを返す。
+         * @return この要素のTransaction
+         */
+        public Transaction getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * 同じTIDを持つ次の要素を返す。
+         * @return 同じTIDを持つ次の要素、存在しない場合にはnull
+         */
+        public Entry nextEntry() {
+            Entry entry = next;
+            while (entry != null && entry.tid != tid) {
+                entry = entry.next;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * デフォルトのバケット数でTransactionTableを生成する。
+     */
+    public TransactionTable() {
+        this(DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * バケット数を指定してTransactionTableを生成する。
+     * @param bucketCount バケット数、2のべき乗でなければならない
+     */
+    public TransactionTable(int bucketCount) {
+        if (bucketCount <= 0 || (bucketCount & (bucketCount - 1)) != 0) {
+            throw new IllegalArgumentException("invalid bucket count: " + bucketCount);
+        }
+
+        buckets = new AtomicReferenceArray<Entry>(bucketCount);
+        mask = bucketCount - 1;
+        size = new AtomicInteger(0);
+        tidCount = new AtomicInteger(0);
+        reservedTIDs = new AtomicLongArray(0x10000 >>> 6);
+        reservedCount = new AtomicInteger(0);
+    }
+
+    private int index(short tid) {
+        return (0xffff & tid) & mask;
+    }
+
+    /**
+     * Transactionを追加する。
+     * @param transaction 追加するTransaction
+     */
+    public void add(Transaction transaction) {
+        short tid = transaction.getTID();
+        int index = index(tid);
+        boolean newTID;
+
+        for (;;) {
+            Entry head = buckets.get(index);
+            newTID = !containsTID(head, tid);
+            if (buckets.compareAndSet(index, head, new Entry(transaction, head))) {
+                break;
+            }
+        }
+
+        size.incrementAndGet();
+
+        if (newTID) {
+            tidCount.incrementAndGet();
+        }
+    }
+
+    private static boolean containsTID(Entry head, short tid) {
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            if (entry.tid == tid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(Entry head, Transaction transaction) {
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            if (entry.transaction == transaction) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Entry removeEntry(Entry head, Transaction transaction) {
+        if (head.transaction == transaction) {
+            return head.next;
+        }
+
+        return new Entry(head.transaction, removeEntry(head.next, transaction));
+    }
+
+    /**
+     * Transactionを削除する。
+     * @param transaction 削除するTransaction
+     * @return 削除した場合にはtrue、登録されていなかった場合にはfalse
+     */
+    public boolean remove(Transaction transaction) {
+        int index = index(transaction.getTID());
+
+        for (;;) {
+            Entry head = buckets.get(index);
+
+            if (!contains(head, transaction)) {
+                return false;
+            }
+
+            Entry newHead = removeEntry(head, transaction);
+
+            if (buckets.compareAndSet(index, head, newHead)) {
+                size.decrementAndGet();
+                if (!containsTID(newHead, transaction.getTID())) {
+                    tidCount.decrementAndGet();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 指定されたTIDを持つ最初の要素を返す。
+     * 同じTIDを持つ残りの要素はEntry.nextEntryで参照できる。
+     * @param tid 検索するTID
+     * @return 指定されたTIDを持つ最初の要素、存在しない場合にはnull
+     */
+    public Entry get(short tid) {
+        Entry entry = buckets.get(index(tid));
+
+        while (entry != null && entry.tid != tid) {
+            entry = entry.next;
+        }
+
+        return entry;
+    }
+
+    /**
+     * 指定されたTIDを持つTransactionが存在するか返す。
+     * @param tid 検索するTID
+     * @return 存在する場合にはtrue、そうでなければfalse
+     */
+    public boolean containsTID(short tid) {
+        return get(tid) != null;
+    }
+
+    /**
+     * 指定されたTIDを予約する。
+     * @param tid 予約するTID
+     * @return 予約した場合にはtrue、既に予約されていた場合にはfalse
+     */
+    public boolean reserveTID(short tid) {
+        int index = (0xffff & tid) >>> 6;
+        long bit = 1L << (tid & 0x3f);
+
+        for (;;) {
+            long current = reservedTIDs.get(index);
+
+            if ((current & bit) != 0) {
+                return false;
+            }
+
+            if (reservedTIDs.compareAndSet(index, current, current | bit)) {
+                reservedCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 指定されたTIDの予約を解除する。
+     * @param tid 予約を解除するTID
+     * @return 解除した場合にはtrue、予約されていなかった場合にはfalse
+     */
+    public boolean releaseTID(short tid) {
+        int index = (0xffff & tid) >>> 6;
+        long bit = 1L << (tid & 0x3f);
+
+        for (;;) {
+            long current = reservedTIDs.get(index);
+
+            if ((current & bit) == 0) {
+                return false;
+            }
+
+            if (reservedTIDs.compareAndSet(index, current, current & ~bit)) {
+                reservedCount.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 指定されたTIDが予約されているか返す。
+     * @param tid 確認するTID
+     * @return 予約されている場合にはtrue、そうでなければfalse
+     */
+    public boolean isReservedTID(short tid) {
+        return (reservedTIDs.get((0xffff & tid) >>> 6) & (1L << (tid & 0x3f))) != 0;
+    }
+
+    /**
+     * 予約されているTIDの数を返す。
+     * @return 予約されているTIDの数
+     */
+    public int countReservedTIDs() {
+        return reservedCount.get();
+    }
+
+    /**
+     * 登録されているTransactionが利用しているTIDの数を返す。
+     * 同じTIDを持つ複数のTransactionは一つとして数えられる。
+     * @return 利用されているTIDの数
+     */
+    public int countTIDs() {
+        return tidCount.get();
+    }
+
+    /**
+     * 登録されているTransactionの数を返す。
+     * @return 登録されているTransactionの数
+     */
+    public int size() {
+        return size.get();
+    }
+}
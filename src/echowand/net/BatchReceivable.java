@@ -0,0 +1,21 @@
+package echowand.net;
+
+import java.util.List;
+
+/**
+ * 複数のフレームをまとめて受信できるサブネット
+ * Subnetと合わせて実装することで、MainLoopは受信済みのフレームをまとめて取得して処理する。
+ * 実装していないSubnetに対しては、MainLoopはreceiveを利用して1つずつ受信を行う。
+ * @author ymakino
+ */
+public interface BatchReceivable {
+    
+    /**
+     * このサブネットから複数のフレームをまとめて受信する。
+     * 少なくとも1つのフレームを受信するまで待機し、その後既に受信済みのフレームを待機せずに最大max個まで返す。
+     * @param max 受信するフレームの最大数
+     * @return 受信したFrameのリスト
+     * @throws SubnetException 無効なフレームを受信、あるいは受信に失敗した場合
+     */
+    public List<Frame> receiveBatch(int max) throws SubnetException;
+}
@@ -0,0 +1,121 @@
+package echowand.net;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.logging.Logger;
+
+/**
+ * 再利用可能なByteBufferのプール
+ * 受信処理などで毎回バッファを生成することを避けるために利用する。
+ * @author ymakino
+ */
+public class ByteBufferPool {
+    private static final Logger LOGGER = Logger.getLogger(ByteBufferPool.class.getName());
+    private static final String CLASS_NAME = ByteBufferPool.class.getName();
+
+    private LinkedList<ByteBuffer> buffers;
+    private int bufferSize;
+    private int maxPoolSize;
+    private boolean direct;
+
+    /**
+     * ByteBufferPoolを生成する。
+     * @param bufferSize 各バッファの容量
+     * @param maxPoolSize プールに保持するバッファの最大数
+     * @param direct ダイレクトバッファを利用する場合にはtrue、そうでなければfalse
+     */
+    public ByteBufferPool(int bufferSize, int maxPoolSize, boolean direct) {
+        this.buffers = new LinkedList<ByteBuffer>();
+        this.bufferSize = bufferSize;
+        this.maxPoolSize = maxPoolSize;
+        this.direct = direct;
+    }
+
+    /**
+     * 各バッファの容量を返す。
+     * @return バッファの容量
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * プールに保持するバッファの最大数を返す。
+     * @return プールに保持するバッファの最大数
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * ダイレクトバッファを利用しているかを返す。
+     * @return ダイレクトバッファを利用している場合にはtrue、そうでなければfalse
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * 現在プールに保持されているバッファの数を返す。
+     * @return 保持されているバッファの数
+     */
+    public synchronized int getPooledCount() {
+        return buffers.size();
+    }
+
+    private ByteBuffer allocate() {
+        if (direct) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        } else {
+            return ByteBuffer.allocate(bufferSize);
+        }
+    }
+
+    /**
+     * プールからバッファを取得する。プールが空の場合には新たにバッファを生成する。
+     * 取得したバッファはクリアされた状態になっている。
+     * @return 取得したバッファ
+     */
+    public ByteBuffer acquire() {
+        LOGGER.entering(CLASS_NAME, "acquire");
+
+        ByteBuffer buffer;
+
+        synchronized (this) {
+            buffer = buffers.pollFirst();
+        }
+
+        if (buffer == null) {
+            buffer = allocate();
+        }
+
+        buffer.clear();
+
+        LOGGER.exiting(CLASS_NAME, "acquire", buffer);
+        return buffer;
+    }
+
+    /**
+     * バッファをプールに返却する。
+     * 容量が異なるバッファやプールが満杯の場合には返却されたバッファは破棄される。
+     * @param buffer 返却するバッファ
+     * @return プールに保持された場合にはtrue、破棄された場合にはfalse
+     */
+    public boolean release(ByteBuffer buffer) {
+        LOGGER.entering(CLASS_NAME, "release", buffer);
+
+        boolean result = false;
+
+        if (buffer != null && buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+            synchronized (this) {
+                if (buffers.size() < maxPoolSize) {
+                    buffers.addFirst(buffer);
+                    result = true;
+                }
+            }
+        }
+
+        LOGGER.exiting(CLASS_NAME, "release", result);
+        return result;
+    }
+}
@@ -57,6 +57,7 @@ public class CommonFrame {
     /**
      * CommonFrameを生成する。
      * 指定されたバイト配列の中身をフレームとみなし初期化を行う。
+     * 標準ペイロードのプロパティは参照された時点で解析されるため、生成後にバイト配列の内容を変更してはならない。
      * @param bytes フレームのバイト配列
      * @throws InvalidDataException バイト配列の解析に失敗した場合
      */
@@ -68,7 +69,7 @@ public class CommonFrame {
             this.tid = (short) ((0xff & (int) bytes[offset++]) << 8);
             this.tid |= (short) (0xff & (int) bytes[offset++]);
             if (this.ehd2 == EHD2_STANDARD_PAYLOAD) {
-                this.edata = new StandardPayload(bytes, offset);
+                this.edata = new LazyStandardPayload(bytes, offset);
             } else {
                 this.edata = new SimplePayload(bytes, offset);
             }
@@ -77,6 +78,28 @@ public class CommonFrame {
         }
     }
     
+    /**
+     * CommonFrameを生成する。
+     * 指定されたByteBufferの現在位置から残りの内容をフレームとみなし初期化を行う。
+     * 受信バッファの再利用を可能にするため、標準ペイロードの内容は一度だけバイト配列に複製され、プロパティは参照された時点で解析される。
+     * @param buffer フレームを含むByteBuffer
+     * @throws InvalidDataException ByteBufferの解析に失敗した場合
+     */
+    public CommonFrame(ByteBuffer buffer) throws InvalidDataException {
+        try {
+            this.ehd1 = buffer.get();
+            this.ehd2 = buffer.get();
+            this.tid = buffer.getShort();
+            if (this.ehd2 == EHD2_STANDARD_PAYLOAD) {
+                this.edata = new LazyStandardPayload(buffer);
+            } else {
+                this.edata = new SimplePayload(buffer);
+            }
+        } catch (Exception e) {
+            throw new InvalidDataException("invalid data at: " + buffer.position(), e);
+        }
+    }
+    
     /**
      * このCommonFrameの1バイト目を返す。
      * @return このCommonFrameの1バイト目
@@ -167,18 +190,37 @@ public class CommonFrame {
      * @return バイト配列に変換されたCommonFrame
      */
     public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(size());
+        writeTo(buffer);
+        return buffer.array();
+    }
+    
+    /**
+     * このCommonFrameをバイト配列に変換したときの長さを返す。
+     * @return バイト配列の長さ
+     */
+    public int size() {
         int len = 4;
         if (edata != null) {
             len += edata.size();
         }
-        ByteBuffer buffer = ByteBuffer.allocate(len);
+        return len;
+    }
+    
+    /**
+     * このCommonFrameをフレームとしてByteBufferの現在位置に書き込む。
+     * ペイロードも含めて中間のバイト配列を生成せずに一度に書き込みを行う。
+     * ByteBufferの位置はsizeメソッドが返す長さだけ進められる。
+     * @param buffer 書き込み先のByteBuffer
+     * @throws java.nio.BufferOverflowException ByteBufferの残りが不足している場合
+     */
+    public void writeTo(ByteBuffer buffer) {
         buffer.put(ehd1);
         buffer.put(ehd2);
         buffer.putShort(tid);
         if (edata != null) {
-            buffer.put(edata.toBytes());
+            edata.writeTo(buffer);
         }
-        return buffer.array();
     }
     
     /**
@@ -0,0 +1,265 @@
+package echowand.net;
+
+import echowand.common.EPC;
+import echowand.common.ESV;
+import echowand.util.Tracer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ストリームから受信したバイト列を標準ペイロードのCommonFrameに分割する。
+ * OPCとPDCを順に読み進めてフレームの境界を求めるため、受信した各バイトは一度だけ走査される。
+ * 消費済みの領域はバッファが一杯になった時にまとめて詰められ、必要に応じて最大サイズまでバッファを拡張する。
+ * @author ymakino
+ */
+class CommonFrameDecoder {
+    private static final Logger LOGGER = Logger.getLogger(CommonFrameDecoder.class.getName());
+    private static final String CLASS_NAME = CommonFrameDecoder.class.getName();
+
+    private static final int EHD_SIZE = 4;
+    private static final int HEADER_SIZE = EHD_SIZE + 7;
+    private static final int ESV_OFFSET = HEADER_SIZE - 1;
+
+    private enum State {
+        HEADER, OPC, PROPERTY, EDT
+    }
+
+    private final int maxBufferSize;
+    private final StandardPayloadValidator validator;
+    private byte[] buffer;
+    private int start;
+    private int end;
+
+    private State state;
+    private int scan;
+    private boolean headerChecked;
+    private boolean secondBlock;
+    private boolean setGet;
+    private int remainingProperties;
+    private int remainingData;
+    private boolean rejected;
+
+    /**
+     * CommonFrameDecoderを生成する。
+     * @param initialBufferSize バッファの初期サイズ
+     * @param maxBufferSize バッファの最大サイズ
+     */
+    public CommonFrameDecoder(int initialBufferSize, int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+        this.validator = new StandardPayloadValidator();
+        this.buffer = new byte[Math.min(initialBufferSize, maxBufferSize)];
+        resetFrame(0);
+    }
+
+    private void resetFrame(int frameStart) {
+        start = frameStart;
+        scan = frameStart;
+        state = State.HEADER;
+        headerChecked = false;
+        secondBlock = false;
+    }
+
+    /**
+     * バッファに保持されている未処理のバイト数を返す。
+     * @return 未処理のバイト数
+     */
+    public int countBufferedBytes() {
+        return end - start;
+    }
+
+    /**
+     * 未処理のバイトが最大サイズに達しているかを返す。
+     * @return 最大サイズに達していればtrue、そうでなければfalse
+     */
+    public boolean isOverflowed() {
+        return end - start >= maxBufferSize;
+    }
+
+    /**
+     * バッファの末尾に書き込み可能な領域を確保する。
+     * 処理済みの領域を詰め、それでも空きがなければ最大サイズまでバッファを拡張する。
+     */
+    public void ensureSpace() {
+        if (start == end) {
+            scan -= start;
+            start = 0;
+            end = 0;
+        }
+
+        if (end < buffer.length) {
+            return;
+        }
+
+        if (start > 0) {
+            int length = end - start;
+            System.arraycopy(buffer, start, buffer, 0, length);
+            scan -= start;
+            start = 0;
+            end = length;
+            return;
+        }
+
+        int newSize = Math.min(buffer.length * 2, maxBufferSize);
+
+        if (newSize != buffer.length) {
+            LOGGER.logp(Level.FINE, CLASS_NAME, "ensureSpace", "expand: " + newSize);
+            buffer = Arrays.copyOf(buffer, newSize);
+        }
+    }
+
+    /**
+     * InputStreamから読み込み可能なバイトをバッファに読み込む。
+     * @param is 読み込むInputStream
+     * @return 読み込んだバイト数、ストリームの終端に達した場合には-1
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public int readFrom(InputStream is) throws IOException {
+        ensureSpace();
+        int count = is.read(buffer, end, buffer.length - end);
+        if (count > 0) {
+            end += count;
+        }
+        return count;
+    }
+
+    /**
+     * チャネルから読み込み可能なバイトをバッファに読み込む。
+     * @param channel 読み込むチャネル
+     * @return 読み込んだバイト数、ストリームの終端に達した場合には-1
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        ensureSpace();
+        int count = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+        if (count > 0) {
+            end += count;
+        }
+        return count;
+    }
+
+    private boolean checkHeader() throws NetworkException {
+        if (!headerChecked) {
+            if (end - start < EHD_SIZE) {
+                return false;
+            }
+
+            if (buffer[start] != CommonFrame.EHD1_ECHONET_LITE || buffer[start + 1] != CommonFrame.EHD2_STANDARD_PAYLOAD) {
+                NetworkException exception = new NetworkException(String.format("invalid header: %02x%02x", buffer[start], buffer[start + 1]));
+                LOGGER.throwing(CLASS_NAME, "checkHeader", exception);
+                throw exception;
+            }
+
+            headerChecked = true;
+        }
+
+        if (end - start < HEADER_SIZE) {
+            return false;
+        }
+
+        ESV esv = ESV.fromByte(buffer[start + ESV_OFFSET]);
+
+        if (esv.isInvalid()) {
+            NetworkException exception = new NetworkException(String.format("invalid esv: %02x", buffer[start + ESV_OFFSET]));
+            LOGGER.throwing(CLASS_NAME, "checkHeader", exception);
+            throw exception;
+        }
+
+        setGet = esv.isSetGet();
+        scan = start + HEADER_SIZE;
+        return true;
+    }
+
+    /**
+     * 走査を進め、フレームの終端に達した場合にはtrueを返す。
+     */
+    private boolean scanFrame() throws NetworkException {
+        for (;;) {
+            switch (state) {
+                case HEADER:
+                    if (!checkHeader()) {
+                        return false;
+                    }
+                    state = State.OPC;
+                    break;
+                case OPC:
+                    if (scan >= end) {
+                        return false;
+                    }
+                    remainingProperties = 0xff & buffer[scan++];
+                    state = State.PROPERTY;
+                    break;
+                case PROPERTY:
+                    if (remainingProperties == 0) {
+                        if (setGet && !secondBlock) {
+                            secondBlock = true;
+                            state = State.OPC;
+                            break;
+                        }
+                        return true;
+                    }
+                    if (end - scan < 2) {
+                        return false;
+                    }
+                    if (!secondBlock && EPC.fromByte(buffer[scan]).isInvalid()) {
+                        NetworkException exception = new NetworkException(String.format("invalid epcs: %02x", buffer[scan]));
+                        LOGGER.throwing(CLASS_NAME, "scanFrame", exception);
+                        throw exception;
+                    }
+                    remainingData = 0xff & buffer[scan + 1];
+                    scan += 2;
+                    state = State.EDT;
+                    break;
+                case EDT:
+                    int length = Math.min(remainingData, end - scan);
+                    scan += length;
+                    remainingData -= length;
+                    if (remainingData > 0) {
+                        return false;
+                    }
+                    remainingProperties--;
+                    state = State.PROPERTY;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * バッファから次のフレームを取り出す。
+     * フレームが揃っていない場合、または揃ったフレームが正しい標準ペイロードではない場合にはnullを返す。
+     * 正しくないフレームの後に続くバイトは処理されず、バッファに蓄積される。
+     * @return 取り出したフレーム、取り出せるフレームがなければnull
+     * @throws NetworkException ヘッダ、ESV、EPCが不正な場合
+     */
+    public CommonFrame decode() throws NetworkException {
+        Tracer.entering(LOGGER, CLASS_NAME, "decode");
+
+        if (rejected || !scanFrame()) {
+            Tracer.exiting(LOGGER, CLASS_NAME, "decode", null);
+            return null;
+        }
+
+        CommonFrame commonFrame;
+
+        try {
+            commonFrame = new CommonFrame(Arrays.copyOfRange(buffer, start, scan));
+        } catch (InvalidDataException ex) {
+            commonFrame = null;
+        }
+
+        if (commonFrame == null || !validator.validate(commonFrame.getEDATA(StandardPayload.class))) {
+            rejected = true;
+            Tracer.exiting(LOGGER, CLASS_NAME, "decode", null);
+            return null;
+        }
+
+        resetFrame(scan);
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "decode", commonFrame);
+        return commonFrame;
+    }
+}
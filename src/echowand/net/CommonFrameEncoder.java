@@ -0,0 +1,42 @@
+package echowand.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CommonFrameを送信用のByteBufferに変換する。
+ * スレッド毎に送信用のバッファを保持し、送信の度にバイト配列を生成することを避ける。
+ * @author ymakino
+ */
+class CommonFrameEncoder {
+    /**
+     * 送信用バッファのデフォルトの容量
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1500;
+    
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+    
+    private CommonFrameEncoder() {
+    }
+    
+    /**
+     * 現在のスレッドの送信用バッファにCommonFrameを書き込む。
+     * 返されるバッファは読み出し可能な状態になっており、次に同じスレッドでencodeを呼び出すまで有効である。
+     * バッファの容量が不足する場合には新たにバッファを生成する。
+     * @param commonFrame 書き込むCommonFrame
+     * @return CommonFrameが書き込まれたバッファ
+     */
+    public static ByteBuffer encode(CommonFrame commonFrame) {
+        int size = commonFrame.size();
+        ByteBuffer buffer = buffers.get();
+        
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, DEFAULT_BUFFER_SIZE));
+            buffers.set(buffer);
+        }
+        
+        buffer.clear();
+        commonFrame.writeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+}
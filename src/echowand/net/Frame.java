@@ -9,6 +9,7 @@ public class Frame {
     private Node receiver;
     private CommonFrame commonFrame;
     private Connection connection;
+    private boolean tcpEnabled = false;
     
     /**
      * Frameを生成する。
@@ -56,6 +57,23 @@ public class Frame {
         return connection;
     }
     
+    /**
+     * コネクションが登録されていない場合にTCPで送信するかどうかを設定する。
+     * TCPでの送信が可能なSubnetはプールされたTCP接続を利用してこのフレームを送信する。
+     * @param tcpEnabled TCPで送信する場合にはtrue、そうでなければfalse
+     */
+    public void setTCPEnabled(boolean tcpEnabled) {
+        this.tcpEnabled = tcpEnabled;
+    }
+    
+    /**
+     * コネクションが登録されていない場合にTCPで送信するかどうかを返す。
+     * @return TCPで送信する場合にはtrue、そうでなければfalse
+     */
+    public boolean isTCPEnabled() {
+        return tcpEnabled;
+    }
+    
     /**
      * このFrameから共通フレームを取得する。
      * @return 共通フレーム
@@ -0,0 +1,29 @@
+package echowand.net;
+
+/**
+ * 受信キューが満杯の時にフレームをどのように扱うかを表す列挙型
+ * @author ymakino
+ */
+public enum FrameQueueOverflowPolicy {
+    /**
+     * キューに空きができるまで追加を待機する。
+     */
+    Block,
+
+    /**
+     * 新たに追加しようとしたフレームを破棄する。
+     */
+    DropNewest,
+
+    /**
+     * キューの中で最も古いフレームを破棄して新たなフレームを追加する。
+     */
+    DropOldest,
+
+    /**
+     * キューの中で最も古い優先度の低いフレームを破棄して新たなフレームを追加する。
+     * キューに優先度の低いフレームが存在しない場合、新たなフレームの優先度が低ければそのフレームを破棄し、
+     * そうでなければキューに空きができるまで追加を待機する。
+     */
+    DropLowPriority;
+}
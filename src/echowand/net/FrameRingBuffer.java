@@ -0,0 +1,371 @@
+package echowand.net;
+
+import echowand.common.ESV;
+import echowand.util.Selector;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 受信フレームを保持する固定長のリングバッファ
+ * 複数の受信スレッドからフレームを追加し、単一のスレッドから取り出すことを想定している。
+ * キューが満杯の場合の処理はFrameQueueOverflowPolicyにより指定する。
+ * @author ymakino
+ */
+public class FrameRingBuffer extends AbstractQueue<Frame> implements BlockingQueue<Frame> {
+    private static final Logger LOGGER = Logger.getLogger(FrameRingBuffer.class.getName());
+    private static final String CLASS_NAME = FrameRingBuffer.class.getName();
+
+    private final Frame[] items;
+    private int head = 0;
+    private int count = 0;
+
+    private FrameQueueOverflowPolicy policy;
+    private Selector<? super Frame> lowPrioritySelector;
+
+    private long enqueuedCount = 0;
+    private long droppedCount = 0;
+    private int highWaterMark = 0;
+
+    /**
+     * ESVがINFのフレームを優先度の低いフレームとして選択するSelector
+     */
+    public static class INFSelector implements Selector<Frame> {
+        @Override
+        public boolean match(Frame frame) {
+            CommonFrame commonFrame = frame.getCommonFrame();
+            if (commonFrame == null) {
+                return false;
+            }
+
+            StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+            if (payload == null) {
+                return false;
+            }
+
+            return payload.getESV() == ESV.INF;
+        }
+    }
+
+    /**
+     * FrameRingBufferを生成する。
+     * 満杯の場合には空きができるまで追加を待機する。
+     * @param capacity キューの容量
+     */
+    public FrameRingBuffer(int capacity) {
+        this(capacity, FrameQueueOverflowPolicy.Block);
+    }
+
+    /**
+     * 満杯の場合の処理を指定してFrameRingBufferを生成する。
+     * 優先度の低いフレームはESVがINFのフレームとなる。
+     * @param capacity キューの容量
+     * @param policy 満杯の場合の処理
+     */
+    public FrameRingBuffer(int capacity, FrameQueueOverflowPolicy policy) {
+        this(capacity, policy, new INFSelector());
+    }
+
+    /**
+     * 満杯の場合の処理と優先度の低いフレームの選択方法を指定してFrameRingBufferを生成する。
+     * @param capacity キューの容量
+     * @param policy 満杯の場合の処理
+     * @param lowPrioritySelector 優先度の低いフレームを選択するSelector
+     */
+    public FrameRingBuffer(int capacity, FrameQueueOverflowPolicy policy, Selector<? super Frame> lowPrioritySelector) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+
+        this.items = new Frame[capacity];
+        this.policy = policy;
+        this.lowPrioritySelector = lowPrioritySelector;
+    }
+
+    /**
+     * キューの容量を返す。
+     * @return キューの容量
+     */
+    public int getCapacity() {
+        return items.length;
+    }
+
+    /**
+     * 満杯の場合の処理を返す。
+     * @return 満杯の場合の処理
+     */
+    public FrameQueueOverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * これまでにキューに追加されたフレームの数を返す。
+     * @return 追加されたフレームの数
+     */
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    /**
+     * これまでに満杯のために破棄されたフレームの数を返す。
+     * @return 破棄されたフレームの数
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * これまでにキューに同時に保持されたフレームの最大数を返す。
+     * @return 保持されたフレームの最大数
+     */
+    public synchronized int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    private int index(int i) {
+        return (head + i) % items.length;
+    }
+
+    private void enqueue(Frame frame) {
+        items[index(count)] = frame;
+        count++;
+        enqueuedCount++;
+
+        if (count > highWaterMark) {
+            highWaterMark = count;
+        }
+
+        notifyAll();
+    }
+
+    private Frame dequeue() {
+        Frame frame = items[head];
+        items[head] = null;
+        head = index(1);
+        count--;
+        notifyAll();
+        return frame;
+    }
+
+    private void removeAt(int i) {
+        for (int j=i; j<count-1; j++) {
+            items[index(j)] = items[index(j+1)];
+        }
+        items[index(count-1)] = null;
+        count--;
+    }
+
+    private boolean isLowPriority(Frame frame) {
+        return lowPrioritySelector != null && lowPrioritySelector.match(frame);
+    }
+
+    private boolean dropLowPriority() {
+        for (int i=0; i<count; i++) {
+            if (isLowPriority(items[index(i)])) {
+                removeAt(i);
+                droppedCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * キューが満杯の時に方針に従ってフレームを破棄する。
+     * @return 空きができた場合には1、新しいフレームを破棄した場合には0、待機が必要な場合には-1
+     */
+    private int makeRoom(Frame frame) {
+        switch (policy) {
+            case DropNewest:
+                droppedCount++;
+                return 0;
+            case DropOldest:
+                dequeue();
+                droppedCount++;
+                return 1;
+            case DropLowPriority:
+                if (dropLowPriority()) {
+                    return 1;
+                }
+                if (isLowPriority(frame)) {
+                    droppedCount++;
+                    return 0;
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    private void checkNotNull(Frame frame) {
+        if (frame == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    /**
+     * フレームを追加する。
+     * キューが満杯の場合には設定された方針に従ってフレームを破棄する。
+     * 待機が必要な場合には追加せずにfalseを返す。
+     * @param frame 追加するフレーム
+     * @return 追加した場合にはtrue、そうでなければfalse
+     */
+    @Override
+    public synchronized boolean offer(Frame frame) {
+        checkNotNull(frame);
+
+        if (count == items.length && makeRoom(frame) <= 0) {
+            return false;
+        }
+
+        enqueue(frame);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean offer(Frame frame, long timeout, TimeUnit unit) throws InterruptedException {
+        checkNotNull(frame);
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (count == items.length) {
+            int result = makeRoom(frame);
+
+            if (result == 0) {
+                return false;
+            } else if (result > 0) {
+                break;
+            }
+
+            long nanos = deadline - System.nanoTime();
+            if (nanos <= 0) {
+                return false;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, nanos);
+        }
+
+        enqueue(frame);
+        return true;
+    }
+
+    /**
+     * フレームを追加する。
+     * キューが満杯の場合には設定された方針に従ってフレームを破棄するか、空きができるまで待機する。
+     * @param frame 追加するフレーム
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Override
+    public synchronized void put(Frame frame) throws InterruptedException {
+        checkNotNull(frame);
+
+        while (count == items.length) {
+            int result = makeRoom(frame);
+
+            if (result == 0) {
+                LOGGER.logp(Level.FINE, CLASS_NAME, "put", "dropped: " + frame);
+                return;
+            } else if (result > 0) {
+                break;
+            }
+
+            wait();
+        }
+
+        enqueue(frame);
+    }
+
+    @Override
+    public synchronized Frame poll() {
+        if (count == 0) {
+            return null;
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public synchronized Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (count == 0) {
+            long nanos = deadline - System.nanoTime();
+            if (nanos <= 0) {
+                return null;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, nanos);
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public synchronized Frame take() throws InterruptedException {
+        while (count == 0) {
+            wait();
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public synchronized Frame peek() {
+        if (count == 0) {
+            return null;
+        }
+
+        return items[head];
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized int remainingCapacity() {
+        return items.length - count;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Frame> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized int drainTo(Collection<? super Frame> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = Math.max(0, Math.min(maxElements, count));
+        for (int i=0; i<n; i++) {
+            c.add(dequeue());
+        }
+
+        return n;
+    }
+
+    /**
+     * キューに含まれるフレームのスナップショットに対するIteratorを返す。
+     * 返されたIteratorによる要素の削除はサポートされない。
+     * @return フレームのIterator
+     */
+    @Override
+    public synchronized Iterator<Frame> iterator() {
+        ArrayList<Frame> frames = new ArrayList<Frame>(count);
+
+        for (int i=0; i<count; i++) {
+            frames.add(items[index(i)]);
+        }
+
+        return Collections.unmodifiableList(frames).iterator();
+    }
+}
@@ -1,12 +1,12 @@
 package echowand.net;
 
+import echowand.util.Tracer;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.SynchronousQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +15,7 @@ import java.util.logging.Logger;
  *
  * @author Yoshiki Makino
  */
-public class InetSubnet implements Subnet {
+public class InetSubnet implements Subnet, BatchReceivable {
     private static final Logger LOGGER = Logger.getLogger(InetSubnet.class.getName());
     private static final String CLASS_NAME = InetSubnet.class.getName();
 
@@ -23,10 +23,21 @@ public class InetSubnet implements Subnet {
      * ECHONET Liteが利用するポート番号
      */
     public static final short DEFAULT_PORT_NUMBER = 3610;
+    
+    /**
+     * バッチ受信時に一度に受信するフレーム数のデフォルト値
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    
+    /**
+     * 受信キューの容量のデフォルト値
+     */
+    public static final int DEFAULT_RECEIVE_QUEUE_CAPACITY = 1024;
 
     private UDPNetwork udpNetwork;
     private TCPReceiver tcpReceiver;
     private TCPAcceptor tcpAcceptor;
+    private TCPConnectionPool tcpConnectionPool;
 
     private NetworkInterface networkInterface;
     private List<NetworkInterface> receiverInterfaces;
@@ -38,13 +49,17 @@ public class InetSubnet implements Subnet {
     private InetNode groupNode;
     private InetNode localNode;
 
-    private SynchronousQueue<Frame> receiveQueue = null;
+    private FrameRingBuffer receiveQueue = null;
+    private int receiveQueueCapacity = DEFAULT_RECEIVE_QUEUE_CAPACITY;
+    private FrameQueueOverflowPolicy receiveQueueOverflowPolicy = FrameQueueOverflowPolicy.Block;
 
     private InetSubnetUDPReceiverThread udpReceiverThread;
     private InetSubnetTCPReceiverThread tcpReceiverThread;
-    private InetSubnetTCPAcceptorThread tcpAcceptorThread;
 
     private boolean tcpAcceptorEnabled = false;
+    
+    private boolean batchReceiveEnabled = false;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     /**
      * InetSubnetの初期化を行う。
@@ -77,6 +92,7 @@ public class InetSubnet implements Subnet {
         createUDPNetwork();
         createTCPReceiver();
         createTCPAcceptor();
+        createTCPConnectionPool();
 
         LOGGER.exiting(CLASS_NAME, "initialize");
     }
@@ -116,6 +132,7 @@ public class InetSubnet implements Subnet {
         createUDPNetwork();
         createTCPReceiver();
         createTCPAcceptor();
+        createTCPConnectionPool();
 
         LOGGER.exiting(CLASS_NAME, "initialize");
     }
@@ -149,6 +166,7 @@ public class InetSubnet implements Subnet {
         createUDPNetwork();
         createTCPReceiver();
         createTCPAcceptor();
+        createTCPConnectionPool();
 
         LOGGER.exiting(CLASS_NAME, "initialize");
     }
@@ -185,10 +203,26 @@ public class InetSubnet implements Subnet {
         } else {
             tcpAcceptor = new TCPAcceptor(portNumber);
         }
+        
+        tcpAcceptor.addObserver(new TCPAcceptorObserver() {
+            @Override
+            public void notifyAccepted(TCPConnection connection) {
+                LOGGER.logp(Level.FINE, CLASS_NAME, "notifyAccepted", "accept", connection);
+                registerTCPConnection(connection);
+            }
+        });
 
         LOGGER.exiting(CLASS_NAME, "createTCPAcceptor");
     }
 
+    private void createTCPConnectionPool() {
+        LOGGER.entering(CLASS_NAME, "createTCPConnectionPool");
+
+        tcpConnectionPool = new TCPConnectionPool(this);
+
+        LOGGER.exiting(CLASS_NAME, "createTCPConnectionPool");
+    }
+
     private UDPNetwork getUDPNetwork() {
         return udpNetwork;
     }
@@ -201,6 +235,16 @@ public class InetSubnet implements Subnet {
         return tcpAcceptor;
     }
 
+    /**
+     * TCPで送信を行うフレームが利用するTCPConnectionPoolを返す。
+     * 返されたTCPConnectionPoolを利用して最大接続数やアイドルタイムアウトの設定を行うことができる。
+     *
+     * @return 利用するTCPConnectionPool
+     */
+    public TCPConnectionPool getTCPConnectionPool() {
+        return tcpConnectionPool;
+    }
+
     /**
      * TCPを有効にする。実行中に呼び出した場合には設定は変更されずfalseを返す。
      *
@@ -240,6 +284,175 @@ public class InetSubnet implements Subnet {
         return tcpAcceptorEnabled;
     }
 
+    /**
+     * バッチ受信を有効にする。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     * バッチ受信が有効な場合、UDPの受信スレッドは受信の度にソケットに届いているフレームをまとめて受信し、
+     * 受信キューに登録する。
+     * DatagramChannelを利用していない場合には、UDPのフレームは1つずつ受信される。
+     *
+     * @return 設定の変更を成功した場合にはtrue、それ以外の場合にはfalse
+     */
+    public synchronized boolean enableBatchReceive() {
+        if (isInService()) {
+            return false;
+        }
+
+        batchReceiveEnabled = true;
+
+        return true;
+    }
+
+    /**
+     * バッチ受信を無効にする。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     *
+     * @return 設定の変更を成功した場合にはtrue、それ以外の場合にはfalse
+     */
+    public synchronized boolean disableBatchReceive() {
+        if (isInService()) {
+            return false;
+        }
+
+        batchReceiveEnabled = false;
+
+        return true;
+    }
+
+    /**
+     * バッチ受信が有効であるかを返す。
+     *
+     * @return バッチ受信が有効であればtrue、無効であればfalse
+     */
+    public synchronized boolean isBatchReceiveEnabled() {
+        return batchReceiveEnabled;
+    }
+
+    /**
+     * バッチ受信時に一度に受信するフレームの最大数を返す。
+     *
+     * @return 一度に受信するフレームの最大数
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * バッチ受信時に一度に受信するフレームの最大数を設定する。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     *
+     * @param batchSize 一度に受信するフレームの最大数
+     * @return 設定の変更を成功した場合にはtrue、それ以外の場合にはfalse
+     */
+    public synchronized boolean setBatchSize(int batchSize) {
+        if (isInService() || batchSize < 1) {
+            return false;
+        }
+
+        this.batchSize = batchSize;
+
+        return true;
+    }
+
+    /**
+     * 受信キューの容量を返す。
+     *
+     * @return 受信キューの容量
+     */
+    public synchronized int getReceiveQueueCapacity() {
+        return receiveQueueCapacity;
+    }
+
+    /**
+     * 受信キューの容量を設定する。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     *
+     * @param capacity 受信キューの容量
+     * @return 設定の変更を成功した場合にはtrue、それ以外の場合にはfalse
+     */
+    public synchronized boolean setReceiveQueueCapacity(int capacity) {
+        if (isInService() || capacity < 1) {
+            return false;
+        }
+
+        receiveQueueCapacity = capacity;
+
+        return true;
+    }
+
+    /**
+     * 受信キューが満杯の場合の処理を返す。
+     *
+     * @return 受信キューが満杯の場合の処理
+     */
+    public synchronized FrameQueueOverflowPolicy getReceiveQueueOverflowPolicy() {
+        return receiveQueueOverflowPolicy;
+    }
+
+    /**
+     * 受信キューが満杯の場合の処理を設定する。実行中に呼び出した場合には設定は変更されずfalseを返す。
+     *
+     * @param policy 受信キューが満杯の場合の処理
+     * @return 設定の変更を成功した場合にはtrue、それ以外の場合にはfalse
+     */
+    public synchronized boolean setReceiveQueueOverflowPolicy(FrameQueueOverflowPolicy policy) {
+        if (isInService() || policy == null) {
+            return false;
+        }
+
+        receiveQueueOverflowPolicy = policy;
+
+        return true;
+    }
+
+    /**
+     * 現在の受信キューにこれまでに登録されたフレームの数を返す。
+     *
+     * @return 登録されたフレームの数、受信キューが存在しない場合には0
+     */
+    public synchronized long getReceiveQueueEnqueuedCount() {
+        if (receiveQueue == null) {
+            return 0;
+        }
+
+        return receiveQueue.getEnqueuedCount();
+    }
+
+    /**
+     * 現在の受信キューが満杯のためにこれまでに破棄されたフレームの数を返す。
+     *
+     * @return 破棄されたフレームの数、受信キューが存在しない場合には0
+     */
+    public synchronized long getReceiveQueueDroppedCount() {
+        if (receiveQueue == null) {
+            return 0;
+        }
+
+        return receiveQueue.getDroppedCount();
+    }
+
+    /**
+     * 現在の受信キューにこれまでに同時に保持されたフレームの最大数を返す。
+     *
+     * @return 保持されたフレームの最大数、受信キューが存在しない場合には0
+     */
+    public synchronized int getReceiveQueueHighWaterMark() {
+        if (receiveQueue == null) {
+            return 0;
+        }
+
+        return receiveQueue.getHighWaterMark();
+    }
+
+    /**
+     * 受信キューに現在保持されているフレームの数を返す。
+     *
+     * @return 保持されているフレームの数、受信キューが存在しない場合には0
+     */
+    public synchronized int getReceiveQueueSize() {
+        if (receiveQueue == null) {
+            return 0;
+        }
+
+        return receiveQueue.size();
+    }
+
     /**
      * 設定されたネットワークインタフェースを返す。
      *
@@ -267,17 +480,21 @@ public class InetSubnet implements Subnet {
     private synchronized void startThreads() {
         LOGGER.entering(CLASS_NAME, "startThreads");
 
-        receiveQueue = new SynchronousQueue<Frame>();
+        receiveQueue = new FrameRingBuffer(receiveQueueCapacity, receiveQueueOverflowPolicy);
 
-        udpReceiverThread = new InetSubnetUDPReceiverThread(this, getUDPNetwork(), receiveQueue);
+        if (batchReceiveEnabled) {
+            udpReceiverThread = new InetSubnetUDPReceiverThread(this, getUDPNetwork(), receiveQueue, batchSize);
+        } else {
+            udpReceiverThread = new InetSubnetUDPReceiverThread(this, getUDPNetwork(), receiveQueue);
+        }
+        
         udpReceiverThread.start();
 
         tcpReceiverThread = new InetSubnetTCPReceiverThread(this, getTCPReceiver(), receiveQueue);
         tcpReceiverThread.start();
 
         if (tcpAcceptorEnabled) {
-            tcpAcceptorThread = new InetSubnetTCPAcceptorThread(this, getTCPAcceptor());
-            tcpAcceptorThread.start();
+            getTCPReceiver().addAcceptor(getTCPAcceptor());
         }
 
         LOGGER.exiting(CLASS_NAME, "startThreads");
@@ -296,10 +513,7 @@ public class InetSubnet implements Subnet {
             tcpReceiverThread = null;
         }
 
-        if (tcpAcceptorThread != null) {
-            tcpAcceptorThread.terminate();
-            tcpAcceptorThread = null;
-        }
+        getTCPReceiver().removeAcceptor(getTCPAcceptor());
 
         LOGGER.exiting(CLASS_NAME, "stopThreads");
     }
@@ -364,6 +578,8 @@ public class InetSubnet implements Subnet {
 
         stopThreads();
 
+        getTCPConnectionPool().closeAllConnections();
+
         if (tcpAcceptorEnabled) {
             result &= getTCPAcceptor().stopService();
         }
@@ -446,9 +662,19 @@ public class InetSubnet implements Subnet {
         return result;
     }
 
+    private void sendPooledTCPConnection(Frame frame) throws SubnetException {
+        Tracer.entering(LOGGER, CLASS_NAME, "sendPooledTCPConnection", frame);
+
+        getTCPConnectionPool().send(frame.getReceiver(), frame.getCommonFrame());
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "sendPooledTCPConnection");
+    }
+
     /**
      * このInetSubnetのサブネットにフレームを転送する。
      * フレームの送信ノードや受信ノードがこのInetSubnetに含まれない場合には例外が発生する。
+     * コネクションが登録されていないフレームにTCPでの送信が指定されている場合には、
+     * グループ宛てを除いてTCPConnectionPoolから取得した接続を利用して送信する。
      *
      * @param frame 送信するフレーム
      * @return 常にtrue
@@ -456,7 +682,7 @@ public class InetSubnet implements Subnet {
      */
     @Override
     public boolean send(Frame frame) throws SubnetException {
-        LOGGER.entering(CLASS_NAME, "send", frame);
+        Tracer.entering(LOGGER, CLASS_NAME, "send", frame);
 
         if (!isInService()) {
             SubnetException exception = new SubnetException("not enabled");
@@ -488,6 +714,8 @@ public class InetSubnet implements Subnet {
                 }
 
                 connection.send(frame.getCommonFrame());
+            } else if (frame.isTCPEnabled() && !frame.getReceiver().equals(getGroupNode())) {
+                sendPooledTCPConnection(frame);
             } else {
                 if (!(remoteNodeInfo instanceof InetNodeInfo)) {
                     SubnetException exception = new SubnetException("invalid remote node: " + remoteNodeInfo);
@@ -497,7 +725,7 @@ public class InetSubnet implements Subnet {
                 getUDPNetwork().send((InetNodeInfo) remoteNodeInfo, frame.getCommonFrame());
             }
 
-            LOGGER.exiting(CLASS_NAME, "send", true);
+            Tracer.exiting(LOGGER, CLASS_NAME, "send", true);
             return true;
         } catch (NetworkException ex) {
             SubnetException exception = new SubnetException("catched exception", ex);
@@ -514,7 +742,7 @@ public class InetSubnet implements Subnet {
      */
     @Override
     public Frame receive() throws SubnetException {
-        LOGGER.entering(CLASS_NAME, "receive");
+        Tracer.entering(LOGGER, CLASS_NAME, "receive");
 
         if (!isInService()) {
             SubnetException exception = new SubnetException("not enabled");
@@ -524,7 +752,7 @@ public class InetSubnet implements Subnet {
 
         try {
             Frame frame = receiveQueue.take();
-            LOGGER.exiting(CLASS_NAME, "receive", frame);
+            Tracer.exiting(LOGGER, CLASS_NAME, "receive", frame);
             return frame;
         } catch (InterruptedException ex) {
             SubnetException exception = new SubnetException("catched exception", ex);
@@ -533,6 +761,37 @@ public class InetSubnet implements Subnet {
         }
     }
 
+    /**
+     * このInetSubnetのサブネットから複数のフレームをまとめて受信する。
+     * 少なくとも1つのフレームの受信を行うまで待機し、その後既に受信済みのフレームを最大max個まで返す。
+     *
+     * @param max 受信するフレームの最大数
+     * @return 受信したFrameのリスト
+     * @throws SubnetException 無効なフレームを受信、あるいは受信に失敗した場合
+     */
+    @Override
+    public List<Frame> receiveBatch(int max) throws SubnetException {
+        Tracer.entering(LOGGER, CLASS_NAME, "receiveBatch", max);
+
+        if (!isInService()) {
+            SubnetException exception = new SubnetException("not enabled");
+            LOGGER.throwing(CLASS_NAME, "receiveBatch", exception);
+            throw exception;
+        }
+
+        try {
+            LinkedList<Frame> frames = new LinkedList<Frame>();
+            frames.add(receiveQueue.take());
+            receiveQueue.drainTo(frames, max - 1);
+            Tracer.exiting(LOGGER, CLASS_NAME, "receiveBatch", frames);
+            return frames;
+        } catch (InterruptedException ex) {
+            SubnetException exception = new SubnetException("catched exception", ex);
+            LOGGER.throwing(CLASS_NAME, "receiveBatch", exception);
+            throw exception;
+        }
+    }
+
     /**
      * 指定されたアドレスが有効であるか返す。
      *
@@ -585,11 +844,11 @@ public class InetSubnet implements Subnet {
      * @throws SubnetException 無効なアドレスが指定された場合
      */
     public Node getRemoteNode(InetAddress addr) throws SubnetException {
-        LOGGER.entering(CLASS_NAME, "getRemoteNode", addr);
+        Tracer.entering(LOGGER, CLASS_NAME, "getRemoteNode", addr);
         
         if (isValidAddress(addr)) {
             InetNode inetNode = new InetNode(this, addr);
-            LOGGER.exiting(CLASS_NAME, "getRemoteNode", inetNode);
+            Tracer.exiting(LOGGER, CLASS_NAME, "getRemoteNode", inetNode);
             return inetNode;
         } else {
             SubnetException exception = new SubnetException("invalid address: " + addr);
@@ -607,14 +866,14 @@ public class InetSubnet implements Subnet {
      */
     @Override
     public Node getRemoteNode(NodeInfo nodeInfo) throws SubnetException {
-        LOGGER.entering(CLASS_NAME, "getRemoteNode", nodeInfo);
+        Tracer.entering(LOGGER, CLASS_NAME, "getRemoteNode", nodeInfo);
         
         if (nodeInfo instanceof InetNodeInfo) {
             InetNodeInfo inetNodeInfo = (InetNodeInfo) nodeInfo;
 
             if (isValidNodeInfo(inetNodeInfo)) {
                 InetNode inetNode = new InetNode(this, (InetNodeInfo) nodeInfo);
-                LOGGER.exiting(CLASS_NAME, "getRemoteNode", inetNode);
+                Tracer.exiting(LOGGER, CLASS_NAME, "getRemoteNode", inetNode);
                 return inetNode;
             } else {
                 SubnetException exception = new SubnetException("invalid nodeInfo: " + nodeInfo);
@@ -643,13 +902,13 @@ public class InetSubnet implements Subnet {
      */
     @Override
     public synchronized Node getLocalNode() {
-        LOGGER.entering(CLASS_NAME, "getLocalNode");
+        Tracer.entering(LOGGER, CLASS_NAME, "getLocalNode");
         
         if (localNode == null) {
             localNode = new InetNode(this, getLocalAddress());
         }
 
-        LOGGER.exiting(CLASS_NAME, "getLocalNode", localNode);
+        Tracer.exiting(LOGGER, CLASS_NAME, "getLocalNode", localNode);
         return localNode;
     }
 
@@ -660,13 +919,13 @@ public class InetSubnet implements Subnet {
      */
     @Override
     public synchronized Node getGroupNode() {
-        LOGGER.entering(CLASS_NAME, "getGroupNode");
+        Tracer.entering(LOGGER, CLASS_NAME, "getGroupNode");
         
         if (groupNode == null) {
             groupNode = new InetNode(this, multicastAddress);
         }
 
-        LOGGER.exiting(CLASS_NAME, "getGroupNode", groupNode);
+        Tracer.exiting(LOGGER, CLASS_NAME, "getGroupNode", groupNode);
         return groupNode;
     }
     
@@ -736,4 +995,87 @@ public class InetSubnet implements Subnet {
         LOGGER.exiting(CLASS_NAME, "disableRemotePortNumber", result);
         return result;
     }
+    
+    /**
+     * UDPの送受信にDatagramChannelを利用するかを返す。
+     * @return DatagramChannelを利用する場合にはtrue、そうでなければfalse
+     */
+    public boolean isDatagramChannelEnabled() {
+        LOGGER.entering(CLASS_NAME, "isDatagramChannelEnabled");
+        
+        boolean result = udpNetwork.isDatagramChannelEnabled();
+        
+        LOGGER.exiting(CLASS_NAME, "isDatagramChannelEnabled", result);
+        return result;
+    }
+    
+    /**
+     * MulticastSocketの代わりにDatagramChannelを利用してUDPの送受信を行うように設定する。
+     * DatagramChannelを利用する場合、受信バッファは再利用され、受信データから直接フレームの解析を行う。
+     * サービス開始後に設定することはできない。
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public boolean enableDatagramChannel() {
+        LOGGER.entering(CLASS_NAME, "enableDatagramChannel");
+        
+        boolean result = udpNetwork.enableDatagramChannel();
+        
+        LOGGER.exiting(CLASS_NAME, "enableDatagramChannel", result);
+        return result;
+    }
+    
+    /**
+     * MulticastSocketを利用してUDPの送受信を行うように設定する。
+     * サービス開始後に設定することはできない。
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public boolean disableDatagramChannel() {
+        LOGGER.entering(CLASS_NAME, "disableDatagramChannel");
+        
+        boolean result = udpNetwork.disableDatagramChannel();
+        
+        LOGGER.exiting(CLASS_NAME, "disableDatagramChannel", result);
+        return result;
+    }
+    
+    /**
+     * DatagramChannel利用時の受信バッファにダイレクトバッファを利用するかを返す。
+     * @return ダイレクトバッファを利用する場合にはtrue、そうでなければfalse
+     */
+    public boolean isDirectBufferEnabled() {
+        LOGGER.entering(CLASS_NAME, "isDirectBufferEnabled");
+        
+        boolean result = udpNetwork.isDirectBufferEnabled();
+        
+        LOGGER.exiting(CLASS_NAME, "isDirectBufferEnabled", result);
+        return result;
+    }
+    
+    /**
+     * DatagramChannel利用時の受信バッファにダイレクトバッファを利用するように設定する。
+     * サービス開始後に設定することはできない。
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public boolean enableDirectBuffer() {
+        LOGGER.entering(CLASS_NAME, "enableDirectBuffer");
+        
+        boolean result = udpNetwork.enableDirectBuffer();
+        
+        LOGGER.exiting(CLASS_NAME, "enableDirectBuffer", result);
+        return result;
+    }
+    
+    /**
+     * DatagramChannel利用時の受信バッファにダイレクトバッファを利用しないように設定する。
+     * サービス開始後に設定することはできない。
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public boolean disableDirectBuffer() {
+        LOGGER.entering(CLASS_NAME, "disableDirectBuffer");
+        
+        boolean result = udpNetwork.disableDirectBuffer();
+        
+        LOGGER.exiting(CLASS_NAME, "disableDirectBuffer", result);
+        return result;
+    }
 }
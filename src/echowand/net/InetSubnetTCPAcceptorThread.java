@@ -6,7 +6,10 @@ import java.util.logging.Logger;
 /**
  * TCPコネクションの接続要求の自動応答スレッド
  * @author ymakino
+ * @deprecated InetSubnetはTCPAcceptorをTCPReceiverのSelectorに登録して接続要求を受理するため、このスレッドは利用されない。
+ * InetSubnetの外で利用する場合にもTCPReceiver.addAcceptorとTCPAcceptorObserverを利用すること。
  */
+@Deprecated
 public class InetSubnetTCPAcceptorThread extends Thread {
     private static final Logger LOGGER = Logger.getLogger(InetSubnetTCPAcceptorThread.class.getName());
     private static final String CLASS_NAME = InetSubnetTCPAcceptorThread.class.getName();
@@ -1,7 +1,7 @@
 package echowand.net;
 
 import echowand.util.Pair;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +15,7 @@ public class InetSubnetTCPReceiverThread extends Thread {
 
     private InetSubnet subnet;
     private TCPReceiver receiver;
-    private SynchronousQueue<Frame> queue;
+    private BlockingQueue<Frame> queue;
     private boolean terminated = false;
 
     /**
@@ -24,7 +24,7 @@ public class InetSubnetTCPReceiverThread extends Thread {
      * @param receiver フレームの受信を行うTCPReceiver
      * @param queue 受信したフレームの登録先となるキュー
      */
-    public InetSubnetTCPReceiverThread(InetSubnet subnet, TCPReceiver receiver, SynchronousQueue<Frame> queue) {
+    public InetSubnetTCPReceiverThread(InetSubnet subnet, TCPReceiver receiver, BlockingQueue<Frame> queue) {
         this.subnet = subnet;
         this.receiver = receiver;
         this.queue = queue;
@@ -1,7 +1,8 @@
 package echowand.net;
 
 import echowand.util.Pair;
-import java.util.concurrent.SynchronousQueue;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +16,8 @@ public class InetSubnetUDPReceiverThread extends Thread {
 
     private InetSubnet subnet;
     private UDPNetwork network;
-    private SynchronousQueue<Frame> queue;
+    private BlockingQueue<Frame> queue;
+    private int batchSize;
     private boolean terminated = false;
 
     /**
@@ -24,10 +26,23 @@ public class InetSubnetUDPReceiverThread extends Thread {
      * @param network フレームの受信を行うUDPNetwork
      * @param queue 受信したフレームの登録先となるキュー
      */
-    public InetSubnetUDPReceiverThread(InetSubnet subnet, UDPNetwork network, SynchronousQueue<Frame> queue) {
+    public InetSubnetUDPReceiverThread(InetSubnet subnet, UDPNetwork network, BlockingQueue<Frame> queue) {
+        this(subnet, network, queue, 1);
+    }
+
+    /**
+     * InetSubnetUDPReceiverThreadを生成する。
+     * batchSizeに2以上を指定した場合、受信の度にソケットに届いているフレームを最大batchSize個までまとめて受信し、キューに登録する。
+     * @param subnet 受信したフレームの送受信ノードが存在するInetSubnet
+     * @param network フレームの受信を行うUDPNetwork
+     * @param queue 受信したフレームの登録先となるキュー
+     * @param batchSize 一度に受信するフレームの最大数
+     */
+    public InetSubnetUDPReceiverThread(InetSubnet subnet, UDPNetwork network, BlockingQueue<Frame> queue, int batchSize) {
         this.subnet = subnet;
         this.network = network;
         this.queue = queue;
+        this.batchSize = batchSize;
     }
 
     /**
@@ -42,16 +57,35 @@ public class InetSubnetUDPReceiverThread extends Thread {
         LOGGER.exiting(CLASS_NAME, "terminate");
     }
 
+    private Frame createFrame(Pair<InetNodeInfo, CommonFrame> pair) throws SubnetException {
+        InetNodeInfo nodeInfo = pair.first;
+        CommonFrame commonFrame = pair.second;
+        Node localNode = subnet.getLocalNode();
+        Node remoteNode = subnet.getRemoteNode(nodeInfo);
+        return new Frame(remoteNode, localNode, commonFrame);
+    }
+    
+    private void receiveBatch() throws NetworkException, InterruptedException {
+        List<Pair<InetNodeInfo, CommonFrame>> pairs = network.receiveBatch(batchSize);
+        
+        for (Pair<InetNodeInfo, CommonFrame> pair : pairs) {
+            try {
+                queue.put(createFrame(pair));
+            } catch (SubnetException ex) {
+                LOGGER.logp(Level.INFO, CLASS_NAME, "InetSubnetUDPReceiver.receiveBatch", "invalid remoteNode", ex);
+            }
+        }
+    }
+
     @Override
     public void run() {
         while (!terminated) {
             try {
-                Pair<InetNodeInfo, CommonFrame> pair = network.receive();
-                InetNodeInfo nodeInfo = pair.first;
-                CommonFrame commonFrame = pair.second;
-                Node localNode = subnet.getLocalNode();
-                Node remoteNode = subnet.getRemoteNode(nodeInfo);
-                queue.put(new Frame(remoteNode, localNode, commonFrame));
+                if (batchSize > 1) {
+                    receiveBatch();
+                } else {
+                    queue.put(createFrame(network.receive()));
+                }
             } catch (InterruptedException ex) {
                 LOGGER.logp(Level.INFO, CLASS_NAME, "InetSubnetUDPReceiver.run", "interrupted", ex);
             } catch (NetworkException ex) {
@@ -1,11 +1,14 @@
 package echowand.net;
 
+import java.util.LinkedList;
+import java.util.List;
+
 /**
  * プログラム内でのみ有効なサブネット
  * InternalSubnetを生成する度にユニークなIDが割り振られる。
  * @author Yoshiki Makino
  */
-public class InternalSubnet implements Subnet {
+public class InternalSubnet implements Subnet, BatchReceivable {
     private static int nextId = 0;
     
     private InternalNetwork network;
@@ -121,6 +124,31 @@ public class InternalSubnet implements Subnet {
         }
     }
     
+    /**
+     * このInternalSubnetのサブネットから複数のフレームをまとめて受信する。
+     * 少なくとも1つのフレームを受信するまで待機し、その後既に受信済みのフレームを最大max個まで返す。
+     * @param max 受信するフレームの最大数
+     * @return 受信したFrameのリスト
+     * @throws SubnetException 無効なフレームを受信、あるいは受信に失敗した場合
+     */
+    @Override
+    public List<Frame> receiveBatch(int max) throws SubnetException {
+        LinkedList<Frame> frames = new LinkedList<Frame>();
+        frames.add(receive());
+        
+        while (frames.size() < max) {
+            Frame frame = receiveNoWait();
+            
+            if (frame == null) {
+                break;
+            }
+            
+            frames.add(frame);
+        }
+        
+        return frames;
+    }
+    
     /**
      * リモートノードを表すNodeを生成する。
      * @param name リモートノードの名前
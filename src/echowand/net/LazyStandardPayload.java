@@ -0,0 +1,355 @@
+package echowand.net;
+
+import echowand.common.EOJ;
+import echowand.common.ESV;
+import java.nio.ByteBuffer;
+
+/**
+ * 受信したバイト配列を参照し、プロパティを必要になった時点で解析する標準ペイロード
+ * 生成時にはSEOJ、DEOJ、ESVのみを解析し、プロパティは長さの検査のみを行う。
+ * プロパティは参照された時点でインデックス毎に解析される。
+ * プロパティの追加やESVの変更が行われた場合には全てのプロパティを解析し、以降はStandardPayloadと同様に動作する。
+ * 解析前はプロパティの参照でも内部状態が変更されるため、受信したフレームを複数のスレッドから参照できるように同期して処理する。
+ * 全てのプロパティの解析後はStandardPayloadと同様に同期を行わない。
+ * @author Yoshiki Makino
+ */
+public class LazyStandardPayload extends StandardPayload {
+    private byte[] bytes;
+    private int propertiesOffset;
+    private int propertiesEnd;
+    private int firstOPC;
+    private int secondOPC;
+    private int[] firstOffsets;
+    private int[] secondOffsets;
+    private Property[] firstProperties;
+    private Property[] secondProperties;
+    private volatile boolean decoded;
+
+    /**
+     * 指定されたバイト配列の指定されたオフセットから解析してLazyStandardPayloadを生成する。
+     * 生成後にバイト配列の内容を変更してはならない。
+     * @param bytes ペイロードを含むバイト配列
+     * @param offset バイト配列のオフセット
+     * @throws InvalidDataException 解析に失敗した場合
+     */
+    public LazyStandardPayload(byte[] bytes, int offset) throws InvalidDataException {
+        try {
+            setSEOJ(EOJ.valueOf(bytes, offset));
+            offset += 3;
+            setDEOJ(EOJ.valueOf(bytes, offset));
+            offset += 3;
+            super.setESV(ESV.fromByte(bytes[offset++]));
+
+            if (bytes.length > offset) {
+                this.bytes = bytes;
+                this.propertiesOffset = offset;
+                this.firstOPC = 0xff & bytes[offset];
+                offset = skipProperties(bytes, offset);
+                if (getESV().isSetGet()) {
+                    this.secondOPC = 0xff & bytes[offset];
+                    offset = skipProperties(bytes, offset);
+                }
+                this.propertiesEnd = offset;
+            } else if (getESV().isSetGet()) {
+                throw new ArrayIndexOutOfBoundsException(offset);
+            } else {
+                this.decoded = true;
+            }
+        } catch (Exception e) {
+            throw new InvalidDataException("invalid data at: " + offset, e);
+        }
+    }
+
+    /**
+     * 指定されたByteBufferの現在位置から解析してLazyStandardPayloadを生成する。
+     * ByteBufferの残りの内容はバイト配列に複製され、ByteBufferの位置は残りの長さだけ進められる。
+     * @param buffer ペイロードを含むByteBuffer
+     * @throws InvalidDataException 解析に失敗した場合
+     */
+    public LazyStandardPayload(ByteBuffer buffer) throws InvalidDataException {
+        this(remainingBytes(buffer), 0);
+    }
+
+    private static byte[] remainingBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int skipProperties(byte[] bytes, int offset) {
+        int len = 0xff & bytes[offset++];
+        for (int i=0; i<len; i++) {
+            int pdc = 0xff & bytes[offset + 1];
+            offset += 2 + pdc;
+            if (offset > bytes.length) {
+                throw new ArrayIndexOutOfBoundsException(offset);
+            }
+        }
+        return offset;
+    }
+
+    private static int[] propertyOffsets(byte[] bytes, int offset, int count) {
+        int[] offsets = new int[count];
+        offset++;
+        for (int i=0; i<count; i++) {
+            offsets[i] = offset;
+            offset += 2 + (0xff & bytes[offset + 1]);
+        }
+        return offsets;
+    }
+
+    private boolean isDecoded() {
+        return decoded;
+    }
+
+    private int[] getFirstOffsets() {
+        if (firstOffsets == null) {
+            firstOffsets = propertyOffsets(bytes, propertiesOffset, firstOPC);
+        }
+        return firstOffsets;
+    }
+
+    private int[] getSecondOffsets() {
+        if (secondOffsets == null) {
+            int[] offsets = getFirstOffsets();
+            int offset = propertiesOffset + 1;
+            if (firstOPC > 0) {
+                int last = offsets[firstOPC - 1];
+                offset = last + 2 + (0xff & bytes[last + 1]);
+            }
+            secondOffsets = propertyOffsets(bytes, offset, secondOPC);
+        }
+        return secondOffsets;
+    }
+
+    private Property firstPropertyAt(int index) {
+        if (index < 0 || index >= firstOPC) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + firstOPC);
+        }
+
+        if (firstProperties == null) {
+            firstProperties = new Property[firstOPC];
+        }
+
+        if (firstProperties[index] == null) {
+            firstProperties[index] = new Property(bytes, getFirstOffsets()[index]);
+        }
+
+        return firstProperties[index];
+    }
+
+    private Property secondPropertyAt(int index) {
+        if (index < 0 || index >= secondOPC) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + secondOPC);
+        }
+
+        if (secondProperties == null) {
+            secondProperties = new Property[secondOPC];
+        }
+
+        if (secondProperties[index] == null) {
+            secondProperties[index] = new Property(bytes, getSecondOffsets()[index]);
+        }
+
+        return secondProperties[index];
+    }
+
+    /**
+     * 全てのプロパティを解析してStandardPayloadのプロパティとして保持する。
+     * 以降はバイト配列を参照しない。
+     */
+    private void decode() {
+        if (isDecoded()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (isDecoded()) {
+                return;
+            }
+
+            for (int i=0; i<firstOPC; i++) {
+                super.addFirstProperty(firstPropertyAt(i));
+            }
+
+            for (int i=0; i<secondOPC; i++) {
+                super.addSecondProperty(secondPropertyAt(i));
+            }
+
+            bytes = null;
+            firstOffsets = null;
+            secondOffsets = null;
+            firstProperties = null;
+            secondProperties = null;
+            decoded = true;
+        }
+    }
+
+    /**
+     * プロパティが解析済みであるか返す。
+     * @return 全てのプロパティが解析済みであればtrue、そうでなければfalse
+     */
+    public boolean isPropertiesDecoded() {
+        return isDecoded();
+    }
+
+    /**
+     * ペイロードのESVを設定する。
+     * プロパティが解析されていない場合には全てのプロパティを解析する。
+     * @param esv 設定するESV
+     */
+    @Override
+    public void setESV(ESV esv) {
+        decode();
+        super.setESV(esv);
+    }
+
+    /**
+     * プロパティを追加する(SetGetのGetを除く)。
+     * プロパティが解析されていない場合には全てのプロパティを解析する。
+     * @param property 追加するプロパティ
+     * @return 追加に成功したときtrue、そうでなければfalse
+     */
+    @Override
+    public boolean addFirstProperty(Property property) {
+        decode();
+        return super.addFirstProperty(property);
+    }
+
+    /**
+     * index番目のプロパティを返す(SetGetのGetを除く)
+     * プロパティのリストは生成せず、指定されたプロパティのみを解析する。
+     * @param index プロパティのインデックス
+     * @return 指定されたプロパティ
+     */
+    @Override
+    public Property getFirstPropertyAt(int index) {
+        if (isDecoded()) {
+            return super.getFirstPropertyAt(index);
+        }
+
+        synchronized (this) {
+            if (isDecoded()) {
+                return super.getFirstPropertyAt(index);
+            }
+            return firstPropertyAt(index);
+        }
+    }
+
+    /**
+     * プロパティ数をバイトで返す(SetGetのGetを除く)。
+     * @return プロパティ数
+     */
+    @Override
+    public byte getFirstOPC() {
+        if (isDecoded()) {
+            return super.getFirstOPC();
+        }
+
+        synchronized (this) {
+            if (isDecoded()) {
+                return super.getFirstOPC();
+            }
+            return (byte)firstOPC;
+        }
+    }
+
+    /**
+     * SetGetのGetのためにプロパティを追加する。
+     * プロパティが解析されていない場合には全てのプロパティを解析する。
+     * @param property 追加するプロパティ
+     * @return 追加に成功したときtrue、そうでなければfalse
+     */
+    @Override
+    public boolean addSecondProperty(Property property) {
+        decode();
+        return super.addSecondProperty(property);
+    }
+
+    /**
+     * SetGetのGetのindex番目のプロパティを返す。
+     * プロパティのリストは生成せず、指定されたプロパティのみを解析する。
+     * @param index プロパティのインデックス
+     * @return 指定されたプロパティ
+     */
+    @Override
+    public Property getSecondPropertyAt(int index) {
+        if (isDecoded()) {
+            return super.getSecondPropertyAt(index);
+        }
+
+        synchronized (this) {
+            if (isDecoded()) {
+                return super.getSecondPropertyAt(index);
+            }
+            return secondPropertyAt(index);
+        }
+    }
+
+    /**
+     * SetGetのGetのプロパティ数をバイトで返す。
+     * @return プロパティ数
+     */
+    @Override
+    public byte getSecondOPC() {
+        if (isDecoded()) {
+            return super.getSecondOPC();
+        }
+
+        synchronized (this) {
+            if (isDecoded()) {
+                return super.getSecondOPC();
+            }
+            return (byte)secondOPC;
+        }
+    }
+
+    /**
+     * このLazyStandardPayloadをバイト配列で表現したときの長さを返す。
+     * @return バイト配列の長さ
+     */
+    @Override
+    public int size() {
+        if (!isDecoded()) {
+            synchronized (this) {
+                if (!isDecoded() && firstProperties == null && secondProperties == null) {
+                    return 7 + (propertiesEnd - propertiesOffset);
+                }
+                decode();
+            }
+        }
+        return super.size();
+    }
+
+    /**
+     * このLazyStandardPayloadのバイト配列表現をByteBufferに書き込む。
+     * プロパティが参照されていない場合には、受信したプロパティのバイト列をそのまま書き込む。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (!isDecoded()) {
+            synchronized (this) {
+                if (!isDecoded() && firstProperties == null && secondProperties == null) {
+                    getSEOJ().writeTo(buffer);
+                    getDEOJ().writeTo(buffer);
+                    buffer.put(getESV().toByte());
+                    buffer.put(bytes, propertiesOffset, propertiesEnd - propertiesOffset);
+                    return;
+                }
+                decode();
+            }
+        }
+        super.writeTo(buffer);
+    }
+
+    /**
+     * このLazyStandardPayloadの文字列表現を返す。
+     * @return このLazyStandardPayloadの文字列表現
+     */
+    @Override
+    public String toString() {
+        decode();
+        return super.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package echowand.net;
 
+import java.nio.ByteBuffer;
+
 /**
  * ペイロードの共通インタフェース
  * @author Yoshiki Makino
@@ -16,4 +18,11 @@ public interface Payload {
      * @return ペイロードのバイト配列
      */
     public byte[] toBytes();
+    
+    /**
+     * ペイロードのバイト列表現をByteBufferの現在位置に書き込む。
+     * ByteBufferの位置はペイロード長だけ進められる。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    public void writeTo(ByteBuffer buffer);
 }
@@ -2,6 +2,7 @@ package echowand.net;
 
 import echowand.common.Data;
 import echowand.common.EPC;
+import java.nio.ByteBuffer;
 
 /**
  * ペイロードのプロパティ
@@ -56,6 +57,17 @@ public class Property {
         this.edt = new Data(bytes, offset+2, pdc);
     }
     
+    /**
+     * 指定されたByteBufferの現在位置からPropertyを生成する。
+     * ByteBufferの位置はプロパティの長さだけ進められる。
+     * @param buffer プロパティを含むByteBuffer
+     */
+    public Property(ByteBuffer buffer) {
+        this.epc = EPC.fromByte(buffer.get());
+        int pdc = 0xff & (int)buffer.get();
+        this.edt = new Data(buffer, pdc);
+    }
+    
     /**
      * EPCを設定する。
      * @param epc 設定するEPC
@@ -115,6 +127,19 @@ public class Property {
         return bytes;
     }
     
+    /**
+     * このPropertyをByteBufferの現在位置に書き込む。
+     * ByteBufferの位置はプロパティの長さだけ進められる。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(epc.toByte());
+        buffer.put(getPDC());
+        if (getPDC() != 0) {
+            edt.writeTo(buffer);
+        }
+    }
+    
     /**
      * このPropertyをバイト配列に変換したときの長さを返す。
      * @return バイト配列の長さ
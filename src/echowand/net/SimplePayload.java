@@ -1,5 +1,6 @@
 package echowand.net;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -35,6 +36,15 @@ public class SimplePayload implements Payload {
         System.arraycopy(payload, offset, this.payload, 0, length);
     }
     
+    /**
+     * 指定されたByteBufferの現在位置から残り全てを読み出してSimplePayloadを生成する。
+     * @param buffer ペイロードを含むByteBuffer
+     */
+    public SimplePayload(ByteBuffer buffer) {
+        this.payload = new byte[buffer.remaining()];
+        buffer.get(this.payload);
+    }
+    
     /**
      * ペイロードを設定する。
      * @param payload 設定するペイロード
@@ -69,6 +79,15 @@ public class SimplePayload implements Payload {
         return Arrays.copyOf(payload, payload.length);
     }
     
+    /**
+     * このSimplePayloadのバイト配列表現をByteBufferに書き込む。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(payload);
+    }
+    
     /**
      * このSimplePayloadの文字列表現を返す。
      * @return このSimplePayloadの文字列表現
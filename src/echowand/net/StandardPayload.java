@@ -63,11 +63,24 @@ public class StandardPayload implements Payload {
         }
     }
     
+    /**
+     * 指定されたByteBufferの現在位置から解析してStandardPayloadを生成する。
+     * ByteBufferの位置は解析したペイロードの長さだけ進められる。
+     * @param buffer ペイロードを含むByteBuffer
+     * @throws InvalidDataException 解析に失敗した場合
+     */
+    public StandardPayload(ByteBuffer buffer) throws InvalidDataException {
+        this();
+        if (buffer != null) {
+            parse(buffer);
+        }
+    }
+    
     private int parse(byte[] bytes, int offset) throws InvalidDataException {
         try {
-            this.seoj = new EOJ(bytes, offset);
+            this.seoj = EOJ.valueOf(bytes, offset);
             offset += 3;
-            this.deoj = new EOJ(bytes, offset);
+            this.deoj = EOJ.valueOf(bytes, offset);
             offset += 3;
             this.esv = ESV.fromByte(bytes[offset++]);
             if (bytes.length > offset) {
@@ -82,6 +95,29 @@ public class StandardPayload implements Payload {
         }
     }
     
+    private void parse(ByteBuffer buffer) throws InvalidDataException {
+        try {
+            this.seoj = EOJ.valueOf(buffer);
+            this.deoj = EOJ.valueOf(buffer);
+            this.esv = ESV.fromByte(buffer.get());
+            if (buffer.hasRemaining()) {
+                parseProperties(firstProperties, buffer);
+            }
+            if (esv.isSetGet()) {
+                parseProperties(secondProperties, buffer);
+            }
+        } catch (Exception e) {
+            throw new InvalidDataException("invalid data at: " + buffer.position(), e);
+        }
+    }
+    
+    private void parseProperties(LinkedList<Property> properties, ByteBuffer buffer) {
+        int len = 0xff & (int)buffer.get();
+        for (int i=0; i<len; i++) {
+            properties.add(new Property(buffer));
+        }
+    }
+    
     private int parseProperties(LinkedList<Property> properties, byte[] bytes, int offset) {
         int len = 0xff & (int)bytes[offset++];
         for (int i=0; i<len; i++) {
@@ -208,14 +244,11 @@ public class StandardPayload implements Payload {
         return len;
     }
 
-    private byte[] propertiesBytes(Collection<Property> properties) {
-        int len = propertiesLength(properties);
-        ByteBuffer buffer = ByteBuffer.allocate(len);
+    private void writePropertiesTo(Collection<Property> properties, ByteBuffer buffer) {
         buffer.put((byte) properties.size());
         for (Property p : properties) {
-            buffer.put(p.toBytes());
+            p.writeTo(buffer);
         }
-        return buffer.array();
     }
     
     /**
@@ -239,14 +272,24 @@ public class StandardPayload implements Payload {
     @Override
     public byte[] toBytes() {
         ByteBuffer buffer = ByteBuffer.allocate(size());
-        buffer.put(seoj.toBytes());
-        buffer.put(deoj.toBytes());
+        writeTo(buffer);
+        return buffer.array();
+    }
+    
+    /**
+     * このStandardPayloadのバイト配列表現をByteBufferに書き込む。
+     * 中間のバイト配列を生成せずに一度に書き込みを行う。
+     * @param buffer 書き込み先のByteBuffer
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        seoj.writeTo(buffer);
+        deoj.writeTo(buffer);
         buffer.put(esv.toByte());
-        buffer.put(propertiesBytes(firstProperties));
+        writePropertiesTo(firstProperties, buffer);
         if (esv.isSetGet()) {
-            buffer.put(propertiesBytes(secondProperties));
+            writePropertiesTo(secondProperties, buffer);
         }
-        return buffer.array();
     }
     
     private String propertiesToString(LinkedList<Property> properties) {
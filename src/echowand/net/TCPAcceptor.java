@@ -5,12 +5,15 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * 新たなTCP接続の受付
+ * TCPReceiverに登録された場合にはSelectorによりノンブロッキングで接続を受け付ける。
  * @author ymakino
  */
 public class TCPAcceptor {
@@ -20,6 +23,7 @@ public class TCPAcceptor {
     private InetAddress address;
     private int portNumber;
     private ServerSocket serverSocket;
+    private ServerSocketChannel serverSocketChannel;
     private LinkedList<TCPAcceptorObserver> observers;
     
     /**
@@ -102,9 +106,63 @@ public class TCPAcceptor {
     private synchronized  ServerSocket getServerSocket() {
         return serverSocket;
     }
+    
+    /**
+     * 接続待ちのServerSocketChannelを返す。
+     * @return 接続待ちのServerSocketChannel、有効でない場合にはnull
+     */
+    synchronized ServerSocketChannel getServerSocketChannel() {
+        return serverSocketChannel;
+    }
+    
+    private TCPConnection createConnection(Socket socket) throws NetworkException {
+        NodeInfo localNodeInfo = new InetNodeInfo(socket.getLocalAddress());
+        NodeInfo remoteNodeInfo = new InetNodeInfo(socket.getInetAddress());
+        return new TCPConnection(socket, localNodeInfo, remoteNodeInfo);
+    }
+    
+    /**
+     * 受付待ちの接続が存在すればTCPConnectionを生成して返す。
+     * 受付待ちの接続が存在しない場合には待機せずにnullを返す。
+     * TCPSelectorThreadが接続を受け付け可能になった時に呼び出す。
+     * @return 新たに生成されたTCPConnection、受付待ちの接続が存在しない場合にはnull
+     * @throws NetworkException TCPConnectionの生成に失敗した場合
+     */
+    TCPConnection acceptNonBlocking() throws NetworkException {
+        LOGGER.entering(CLASS_NAME, "acceptNonBlocking");
+        
+        ServerSocketChannel channel = getServerSocketChannel();
+        
+        if (channel == null) {
+            NetworkException exception = new NetworkException("not working");
+            LOGGER.throwing(CLASS_NAME, "acceptNonBlocking", exception);
+            throw exception;
+        }
+        
+        try {
+            SocketChannel socketChannel = channel.accept();
+            
+            if (socketChannel == null) {
+                LOGGER.exiting(CLASS_NAME, "acceptNonBlocking", null);
+                return null;
+            }
+            
+            TCPConnection connection = createConnection(socketChannel.socket());
+            
+            notifyAccepted(connection);
+            
+            LOGGER.exiting(CLASS_NAME, "acceptNonBlocking", connection);
+            return connection;
+        } catch (IOException ex) {
+            NetworkException exception = new NetworkException("catched exception", ex);
+            LOGGER.throwing(CLASS_NAME, "acceptNonBlocking", exception);
+            throw exception;
+        }
+    }
 
     /**
      * 新たに生成されたTCPAcceptorを返す。
+     * TCPReceiverに登録されノンブロッキングモードで動作している場合には利用できない。
      * @return 新たに生成されたTCPConnection
      * @throws NetworkException TCPConnectionの生成に失敗した場合
      */
@@ -119,11 +177,15 @@ public class TCPAcceptor {
             throw exception;
         }
         
+        if (!ss.getChannel().isBlocking()) {
+            NetworkException exception = new NetworkException("accepted by selector");
+            LOGGER.throwing(CLASS_NAME, "accept", exception);
+            throw exception;
+        }
+        
         try {
             Socket socket = ss.accept();
-            NodeInfo localNodeInfo = new InetNodeInfo(socket.getLocalAddress());
-            NodeInfo remoteNodeInfo = new InetNodeInfo(socket.getInetAddress());
-            TCPConnection connection = new TCPConnection(socket, localNodeInfo, remoteNodeInfo);
+            TCPConnection connection = createConnection(socket);
             
             notifyAccepted(connection);
             
@@ -150,7 +212,8 @@ public class TCPAcceptor {
         }
         
         try {
-            serverSocket = new ServerSocket();
+            serverSocketChannel = ServerSocketChannel.open();
+            serverSocket = serverSocketChannel.socket();
             serverSocket.setReuseAddress(true);
             
             InetSocketAddress saddr;
@@ -162,13 +225,16 @@ public class TCPAcceptor {
             }
             serverSocket.bind(saddr);
         } catch (IOException ex) {
-            if (serverSocket != null) {
+            if (serverSocketChannel != null) {
                 try {
-                    serverSocket.close();
+                    serverSocketChannel.close();
                 } catch (IOException ex1) {
                 }
             }
             
+            serverSocket = null;
+            serverSocketChannel = null;
+            
             NetworkException exception = new NetworkException("catched exception", ex);
             LOGGER.throwing(CLASS_NAME, "startService", exception);
             throw exception;
@@ -199,6 +265,7 @@ public class TCPAcceptor {
             }
 
             serverSocket = null;
+            serverSocketChannel = null;
         }
 
         LOGGER.exiting(CLASS_NAME, "stopService", result);
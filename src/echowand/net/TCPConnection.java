@@ -1,20 +1,25 @@
 package echowand.net;
 
-import echowand.common.EPC;
-import echowand.common.ESV;
+import echowand.util.Tracer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.Arrays;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * TCPコネクションの管理
+ * SocketChannelを持つ接続はTCPReceiverに登録されるとSelectorによりノンブロッキングで送受信が行われる。
+ * 応答を待たずに連続して送信されたフレームは送信待ちのバッファにまとめられ、一度の書き込みで送信される。
  * @author ymakino
  */
 public class TCPConnection implements Connection {
@@ -23,6 +28,17 @@ public class TCPConnection implements Connection {
 
     public static final int INITIAL_BUFFER_SIZE = 128;
     public static final int MAX_BUFFER_SIZE = 4096;
+    
+    /**
+     * 送信待ちのフレームをまとめるバッファのサイズ
+     */
+    public static final int COALESCE_BUFFER_SIZE = 4096;
+    
+    /**
+     * 送信待ちのデータの最大のバイト数
+     * 相手の受信が遅れて送信待ちのデータがこのサイズを超える場合、sendは送信せずに失敗する。
+     */
+    public static final int MAX_PENDING_BYTES = 256 * 1024;
 
     private Socket socket;
     private NodeInfo localNodeInfo;
@@ -31,6 +47,12 @@ public class TCPConnection implements Connection {
     private LinkedList<TCPConnectionObserver> observers;
     private boolean inputClosed = false;
     private boolean outputClosed = false;
+    
+    private final Object writeLock = new Object();
+    private TCPSelectorThread selectorThread;
+    private SelectionKey selectionKey;
+    private LinkedList<ByteBuffer> pendingWrites = new LinkedList<ByteBuffer>();
+    private int pendingBytes = 0;
 
     /**
      * 新たにTCPコネクションを生成する。
@@ -70,7 +92,11 @@ public class TCPConnection implements Connection {
         
         InetSocketAddress remoteSocketAddress = new InetSocketAddress(remoteAddress, portNumber);
 
-        socket = new Socket();
+        try {
+            socket = SocketChannel.open().socket();
+        } catch (IOException ex) {
+            throw new NetworkException("catched exception", ex);
+        }
 
         try {
             if (timeout > 0) {
@@ -87,6 +113,8 @@ public class TCPConnection implements Connection {
             throw new NetworkException("catched exception", ex);
         }
 
+        disableDelay();
+
         this.localNodeInfo = localNodeInfo;
         this.remoteNodeInfo = remoteNodeInfo;
         receiver = new CommonFrameReceiver();
@@ -106,6 +134,214 @@ public class TCPConnection implements Connection {
         this.remoteNodeInfo = remoteNodeInfo;
         receiver = new CommonFrameReceiver();
         observers = new LinkedList<TCPConnectionObserver>();
+
+        disableDelay();
+    }
+
+    private void disableDelay() {
+        try {
+            socket.setTcpNoDelay(true);
+        } catch (SocketException ex) {
+            LOGGER.logp(Level.FINE, CLASS_NAME, "disableDelay", "catched exception", ex);
+        }
+    }
+
+    /**
+     * この接続のSocketChannelを返す。
+     * @return SocketChannel、Socketがチャネルを持たない場合にはnull
+     */
+    SocketChannel getSocketChannel() {
+        return socket.getChannel();
+    }
+
+    /**
+     * この接続がTCPSelectorThreadにより処理されているかどうかを返す。
+     * @return TCPSelectorThreadにより処理されていればtrue、そうでなければfalse
+     */
+    boolean isAttached() {
+        synchronized (writeLock) {
+            return selectorThread != null;
+        }
+    }
+
+    /**
+     * この接続をノンブロッキングモードに変更してSelectorに登録し、TCPSelectorThreadにより処理されるように設定する。
+     * モードの変更と設定は送信と同じロックの中で行われるため、送信の途中でモードが変更されることはない。
+     * @param selectorThread 処理を行うTCPSelectorThread
+     * @param selector 登録先のSelector
+     * @throws IOException モードの変更や登録に失敗した場合
+     */
+    void attach(TCPSelectorThread selectorThread, Selector selector) throws IOException {
+        synchronized (writeLock) {
+            SocketChannel channel = getSocketChannel();
+            channel.configureBlocking(false);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ, this);
+
+            this.selectorThread = selectorThread;
+            this.selectionKey = key;
+
+            if (!pendingWrites.isEmpty()) {
+                selectorThread.requestWrite(key);
+            }
+        }
+    }
+
+    /**
+     * TCPSelectorThreadによる処理を終了し、ブロッキングモードに戻す。
+     * 送信が完了していないデータはこのメソッドの中で送信される。
+     * @throws NetworkException ブロッキングモードへの変更や送信に失敗した場合
+     */
+    void detach() throws NetworkException {
+        synchronized (writeLock) {
+            selectorThread = null;
+            selectionKey = null;
+
+            SocketChannel channel = getSocketChannel();
+
+            if (!channel.isOpen()) {
+                clearPendingWrites();
+                return;
+            }
+
+            try {
+                channel.configureBlocking(true);
+                while (!pendingWrites.isEmpty()) {
+                    ByteBuffer buffer = pendingWrites.removeFirst();
+                    while (buffer.hasRemaining()) {
+                        pendingBytes -= channel.write(buffer);
+                    }
+                }
+            } catch (IOException ex) {
+                clearPendingWrites();
+                NetworkException exception = new NetworkException("catched exception", ex);
+                LOGGER.throwing(CLASS_NAME, "detach", exception);
+                throw exception;
+            }
+        }
+    }
+
+    private void clearPendingWrites() {
+        pendingWrites.clear();
+        pendingBytes = 0;
+    }
+
+    private void appendPendingWrite(ByteBuffer data) {
+        pendingBytes += data.remaining();
+
+        if (!pendingWrites.isEmpty()) {
+            ByteBuffer last = pendingWrites.getLast();
+            if (last.capacity() - last.limit() >= data.remaining()) {
+                int position = last.position();
+                last.position(last.limit());
+                last.limit(last.capacity());
+                last.put(data);
+                last.limit(last.position());
+                last.position(position);
+                return;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(COALESCE_BUFFER_SIZE, data.remaining()));
+        buffer.put(data);
+        buffer.flip();
+        pendingWrites.add(buffer);
+    }
+
+    private boolean write(ByteBuffer data) throws IOException {
+        synchronized (writeLock) {
+            if (selectorThread == null) {
+                OutputStream os = socket.getOutputStream();
+                os.write(data.array(), data.arrayOffset(), data.remaining());
+                os.flush();
+            } else if (pendingWrites.isEmpty()) {
+                getSocketChannel().write(data);
+
+                if (data.hasRemaining()) {
+                    appendPendingWrite(data);
+                    selectorThread.requestWrite(selectionKey);
+                }
+            } else if (pendingBytes + data.remaining() > MAX_PENDING_BYTES) {
+                return false;
+            } else {
+                appendPendingWrite(data);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * 送信が完了していないデータをノンブロッキングで書き込む。
+     * 送信待ちのバッファはまとめて一度に書き込まれる。
+     * TCPSelectorThreadが書き込み可能になった時に呼び出す。
+     * @throws NetworkException 書き込みに失敗した場合
+     */
+    void flushPendingWrites() throws NetworkException {
+        Tracer.entering(LOGGER, CLASS_NAME, "flushPendingWrites");
+
+        synchronized (writeLock) {
+            try {
+                if (!pendingWrites.isEmpty()) {
+                    ByteBuffer[] buffers = pendingWrites.toArray(new ByteBuffer[pendingWrites.size()]);
+                    pendingBytes -= (int)getSocketChannel().write(buffers);
+                }
+
+                while (!pendingWrites.isEmpty() && !pendingWrites.getFirst().hasRemaining()) {
+                    pendingWrites.removeFirst();
+                }
+
+                if (!pendingWrites.isEmpty()) {
+                    Tracer.exiting(LOGGER, CLASS_NAME, "flushPendingWrites");
+                    return;
+                }
+
+                if (selectionKey != null && selectionKey.isValid()) {
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException ex) {
+                clearPendingWrites();
+                NetworkException exception = new NetworkException("catched exception", ex);
+                LOGGER.throwing(CLASS_NAME, "flushPendingWrites", exception);
+                throw exception;
+            }
+        }
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "flushPendingWrites");
+    }
+
+    /**
+     * 送信待ちのデータのバイト数を返す。
+     * @return 送信待ちのデータのバイト数
+     */
+    int countPendingBytes() {
+        synchronized (writeLock) {
+            return pendingBytes;
+        }
+    }
+
+    /**
+     * ノンブロッキングで読み込み可能なデータを全て読み込み、含まれる全てのフレームを受信する。
+     * 受信したフレームはオブザーバに通知される。
+     * TCPSelectorThreadが読み込み可能になった時に呼び出す。
+     * @return 接続が継続している場合にはtrue、相手が接続を切断した場合にはfalse
+     * @throws NetworkException 受信に失敗した場合
+     */
+    boolean receiveAvailable() throws NetworkException {
+        Tracer.entering(LOGGER, CLASS_NAME, "receiveAvailable");
+
+        if (isInputClosed()) {
+            Tracer.exiting(LOGGER, CLASS_NAME, "receiveAvailable", false);
+            return false;
+        }
+
+        boolean result = receiver.receiveAvailableCommonFrames();
+
+        if (!result) {
+            closeInput();
+        }
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "receiveAvailable", result);
+        return result;
     }
 
     private synchronized LinkedList<TCPConnectionObserver> cloneObservers() {
@@ -113,23 +349,23 @@ public class TCPConnection implements Connection {
     }
 
     private void notifySent(CommonFrame commonFrame) {
-        LOGGER.entering(CLASS_NAME, "notifySent", commonFrame);
+        Tracer.entering(LOGGER, CLASS_NAME, "notifySent", commonFrame);
 
         for (TCPConnectionObserver observer : cloneObservers()) {
             observer.notifySent(this, commonFrame);
         }
 
-        LOGGER.exiting(CLASS_NAME, "notifySent");
+        Tracer.exiting(LOGGER, CLASS_NAME, "notifySent");
     }
 
     private void notifyReceived(CommonFrame commonFrame) {
-        LOGGER.entering(CLASS_NAME, "notifyReceived", commonFrame);
+        Tracer.entering(LOGGER, CLASS_NAME, "notifyReceived", commonFrame);
 
         for (TCPConnectionObserver observer : cloneObservers()) {
             observer.notifyReceived(this, commonFrame);
         }
 
-        LOGGER.exiting(CLASS_NAME, "notifyReceived");
+        Tracer.exiting(LOGGER, CLASS_NAME, "notifyReceived");
     }
 
     private void notifyClosed() {
@@ -265,13 +501,14 @@ public class TCPConnection implements Connection {
 
     /**
      * この接続を利用したフレームの送信を行う。
+     * 送信待ちのデータがMAX_PENDING_BYTESを超える場合には、接続を維持したまま送信に失敗する。
      *
      * @param commonFrame 送信するフレーム
      * @throws NetworkException 送信に失敗した場合
      */
     @Override
     public void send(CommonFrame commonFrame) throws NetworkException {
-        LOGGER.entering(CLASS_NAME, "send", commonFrame);
+        Tracer.entering(LOGGER, CLASS_NAME, "send", commonFrame);
 
         if (isOutputClosed()) {
             NetworkException exception = new NetworkException("closed output: " + socket);
@@ -279,10 +516,10 @@ public class TCPConnection implements Connection {
             throw exception;
         }
 
+        boolean written;
+
         try {
-            OutputStream os = socket.getOutputStream();
-            os.write(commonFrame.toBytes());
-            os.flush();
+            written = write(CommonFrameEncoder.encode(commonFrame));
         } catch (IOException ex) {
             close();
             NetworkException exception = new NetworkException("catched exception", ex);
@@ -290,9 +527,15 @@ public class TCPConnection implements Connection {
             throw exception;
         }
 
+        if (!written) {
+            NetworkException exception = new NetworkException("too many pending writes: " + socket);
+            LOGGER.throwing(CLASS_NAME, "send", exception);
+            throw exception;
+        }
+
         notifySent(commonFrame);
 
-        LOGGER.exiting(CLASS_NAME, "send");
+        Tracer.exiting(LOGGER, CLASS_NAME, "send");
     }
 
     /**
@@ -303,7 +546,7 @@ public class TCPConnection implements Connection {
      */
     @Override
     public CommonFrame receive() throws NetworkException {
-        LOGGER.entering(CLASS_NAME, "receive");
+        Tracer.entering(LOGGER, CLASS_NAME, "receive");
 
         if (isInputClosed()) {
             NetworkException exception = new NetworkException("closed input: " + socket);
@@ -311,6 +554,12 @@ public class TCPConnection implements Connection {
             throw exception;
         }
 
+        if (isAttached()) {
+            NetworkException exception = new NetworkException("received by selector: " + socket);
+            LOGGER.throwing(CLASS_NAME, "receive", exception);
+            throw exception;
+        }
+
         CommonFrame commonFrame = null;
         try {
             commonFrame = receiver.receiveCommonFrame();
@@ -324,7 +573,7 @@ public class TCPConnection implements Connection {
             notifyReceived(commonFrame);
         }
 
-        LOGGER.exiting(CLASS_NAME, "receive", commonFrame);
+        Tracer.exiting(LOGGER, CLASS_NAME, "receive", commonFrame);
         return commonFrame;
     }
 
@@ -335,14 +584,13 @@ public class TCPConnection implements Connection {
 
     private class CommonFrameReceiver {
 
-        private byte[] buffer;
-        private int offset;
+        private CommonFrameDecoder decoder;
         private InputStream is;
 
         private CommonFrameReceiver() throws NetworkException {
             LOGGER.entering(CLASS_NAME, "CommonFrameReceiver");
 
-            resetBuffer();
+            decoder = new CommonFrameDecoder(INITIAL_BUFFER_SIZE, MAX_BUFFER_SIZE);
 
             try {
                 is = socket.getInputStream();
@@ -355,225 +603,101 @@ public class TCPConnection implements Connection {
             LOGGER.exiting(CLASS_NAME, "CommonFrameReceiver");
         }
 
-        private int getRemain() {
-            return buffer.length - offset;
-        }
-
-        private void resetBuffer() {
-            LOGGER.entering(CLASS_NAME, "resetBuffer");
-
-            buffer = new byte[INITIAL_BUFFER_SIZE];
-            offset = 0;
-
-            LOGGER.exiting(CLASS_NAME, "resetBuffer");
-        }
-
-        private void expandBuffer() {
-            LOGGER.entering(CLASS_NAME, "expandBuffer");
-
-            int newSize = buffer.length * 2;
-
-            if (newSize > MAX_BUFFER_SIZE) {
-                newSize = MAX_BUFFER_SIZE;
-            }
-
-            if (newSize != buffer.length) {
-                byte[] newBuffer = new byte[newSize];
-                System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
-                buffer = newBuffer;
-            }
-
-            LOGGER.exiting(CLASS_NAME, "expandBuffer");
-        }
-
-        private void consumeBuffer(int length) throws NetworkException {
-            LOGGER.entering(CLASS_NAME, "consumeBuffer", length);
-
-            if (offset < length) {
-                NetworkException exception = new NetworkException("buffer underflowed");
-                LOGGER.throwing(CLASS_NAME, "consumeBuffer", exception);
-                throw exception;
-            }
-
-            for (int i = 0; length + i < offset; i++) {
-                buffer[i] = buffer[length + i];
-            }
-            offset -= length;
+        private int readBytes() throws NetworkException {
+            Tracer.entering(LOGGER, CLASS_NAME, "readBytes");
 
-            LOGGER.exiting(CLASS_NAME, "consumeBuffer");
-        }
-        
-        private boolean hasStandardPayloadHeader(CommonFrame commonFrame) {
-            return commonFrame.isEchonetLite() && commonFrame.isStandardPayload();
-        }
-        
-        private boolean hasValidESV(Payload payload) {
-            byte[] bytes = payload.toBytes();
-            
-            if (bytes.length < 7) {
-                return false;
-            }
-            
-            return !ESV.fromByte(bytes[6]).isInvalid();
-        }
-        
-        private boolean isSetGet(ESV esv) {
-            return esv == ESV.SetGet && esv == ESV.SetGet_Res && esv == ESV.SetGet_SNA;
-        }
-        
-        private int hasValidEPCs(byte[] bytes, int payloadOffset) {
-            int opc = 0xff & bytes[payloadOffset++];
-            
-            for (int i=0; i<opc; i++) {
-                EPC epc = EPC.fromByte(bytes[payloadOffset++]);
-                if (epc.isInvalid()) {
-                    return -1;
-                }
-                int pdc = 0xff & bytes[payloadOffset++];
-                payloadOffset += pdc;
-            }
-            
-            return payloadOffset;
-        }
-        
-        private boolean hasValidEPCsEach(Payload payload) {
-            byte[] bytes = payload.toBytes();
+            int count;
 
             try {
-                int payloadOffset = 6;
-                ESV esv = ESV.fromByte(bytes[++payloadOffset]);
-
-                payloadOffset = hasValidEPCs(bytes, payloadOffset);
-                if (payloadOffset == -1) {
-                    return false;
-                }
-
-                if (isSetGet(esv)) {
-                    payloadOffset = hasValidEPCs(bytes, payloadOffset);
-                    if (payloadOffset == -1) {
-                        return false;
-                    }
-                }
-            } catch (ArrayIndexOutOfBoundsException ex) {
-                LOGGER.logp(Level.FINE, CLASS_NAME, "hasValidEPCsEach", "incompleted yet: " + payload);
+                count = decoder.readFrom(is);
+            } catch (IOException ex) {
+                NetworkException exception = new NetworkException("catched exception", ex);
+                LOGGER.throwing(CLASS_NAME, "receiveCommonFrame", exception);
+                throw exception;
             }
 
-            return true;
+            Tracer.exiting(LOGGER, CLASS_NAME, "readBytes", count);
+            return count;
         }
 
-        private boolean isValidStandardPayload(Payload payload) {
-            if (payload == null) {
-                return false;
-            }
+        private void validateBufferSize() throws NetworkException {
+            Tracer.entering(LOGGER, CLASS_NAME, "validateBufferSize");
 
-            if (payload instanceof StandardPayload) {
-                StandardPayload standardPayload = (StandardPayload) payload;
-                StandardPayloadValidator validator = new StandardPayloadValidator();
-                return validator.validate(standardPayload);
-            } else {
-                return false;
+            if (decoder.isOverflowed()) {
+                close();
+                NetworkException exception = new NetworkException("buffer overflowed");
+                LOGGER.throwing(CLASS_NAME, "receiveCommonFrame", exception);
+                throw exception;
             }
-        }
-
-        private CommonFrame parseFrame() throws NetworkException {
-            LOGGER.entering(CLASS_NAME, "parseNextFrame");
-
-            CommonFrame commonFrame;
 
-            try {
-                byte[] currentBuffer = Arrays.copyOf(buffer, offset);
-                commonFrame = new CommonFrame(currentBuffer);
-                
-                if (!hasStandardPayloadHeader(commonFrame)) {
-                    NetworkException exception = new NetworkException("invalid header: " + commonFrame);
-                    LOGGER.throwing(CLASS_NAME, "consumeBuffer", exception);
-                    throw exception;
-                }
-                
-                if (!hasValidESV(commonFrame.getEDATA())) {
-                    NetworkException exception = new NetworkException("invalid esv: " + commonFrame);
-                    LOGGER.throwing(CLASS_NAME, "consumeBuffer", exception);
-                    throw exception;
-                }
-                
-                if (!hasValidEPCsEach(commonFrame.getEDATA())) {
-                    NetworkException exception = new NetworkException("invalid epcs: " + commonFrame);
-                    LOGGER.throwing(CLASS_NAME, "consumeBuffer", exception);
-                    throw exception;
-                }
-                
-                if (isValidStandardPayload(commonFrame.getEDATA())) {
-                    consumeBuffer(commonFrame.toBytes().length);
-                } else {
-                    commonFrame = null;
-                }
-            } catch (InvalidDataException ex) {
-                commonFrame = null;
-            }
+            decoder.ensureSpace();
 
-            LOGGER.entering(CLASS_NAME, "parseNextFrame", commonFrame);
-            return commonFrame;
+            Tracer.exiting(LOGGER, CLASS_NAME, "validateBufferSize");
         }
 
-        private int readBytes() throws NetworkException {
-            LOGGER.entering(CLASS_NAME, "readBytes");
+        private int readChannel() throws NetworkException {
+            Tracer.entering(LOGGER, CLASS_NAME, "readChannel");
 
             int count;
 
             try {
-                count = is.read(buffer, offset, getRemain());
+                count = decoder.readFrom(getSocketChannel());
             } catch (IOException ex) {
                 NetworkException exception = new NetworkException("catched exception", ex);
-                LOGGER.throwing(CLASS_NAME, "receiveCommonFrame", exception);
+                LOGGER.throwing(CLASS_NAME, "readChannel", exception);
                 throw exception;
             }
 
-            if (count != -1) {
-                offset += count;
-            }
-
-            LOGGER.exiting(CLASS_NAME, "readBytes", count);
+            Tracer.exiting(LOGGER, CLASS_NAME, "readChannel", count);
             return count;
         }
 
-        private void validateBufferSize() throws NetworkException {
-            LOGGER.entering(CLASS_NAME, "validateBufferSize");
+        public synchronized boolean receiveAvailableCommonFrames() throws NetworkException {
+            Tracer.entering(LOGGER, CLASS_NAME, "receiveAvailableCommonFrames");
 
-            if (MAX_BUFFER_SIZE == offset) {
-                close();
-                NetworkException exception = new NetworkException("buffer overflowed");
-                LOGGER.throwing(CLASS_NAME, "receiveCommonFrame", exception);
-                throw exception;
-            }
+            for (;;) {
+                validateBufferSize();
 
-            if (getRemain() == 0) {
-                expandBuffer();
-            }
+                int count = readChannel();
+
+                if (count == -1) {
+                    Tracer.exiting(LOGGER, CLASS_NAME, "receiveAvailableCommonFrames", false);
+                    return false;
+                }
+
+                CommonFrame commonFrame;
+                while ((commonFrame = decoder.decode()) != null) {
+                    notifyReceived(commonFrame);
+                }
 
-            LOGGER.exiting(CLASS_NAME, "validateBufferSize");
+                if (count == 0) {
+                    Tracer.exiting(LOGGER, CLASS_NAME, "receiveAvailableCommonFrames", true);
+                    return true;
+                }
+            }
         }
 
         public synchronized CommonFrame receiveCommonFrame() throws NetworkException {
-            LOGGER.entering(CLASS_NAME, "receiveCommonFrame");
+            Tracer.entering(LOGGER, CLASS_NAME, "receiveCommonFrame");
 
-            CommonFrame commonFrame = parseFrame();
+            CommonFrame commonFrame = decoder.decode();
 
             if (commonFrame != null) {
-                LOGGER.exiting(CLASS_NAME, "receiveCommonFrame", commonFrame);
+                Tracer.exiting(LOGGER, CLASS_NAME, "receiveCommonFrame", commonFrame);
                 return commonFrame;
             }
 
             for (;;) {
                 int count = readBytes();
                 if (count == -1) {
-                    LOGGER.exiting(CLASS_NAME, "receiveCommonFrame", null);
+                    Tracer.exiting(LOGGER, CLASS_NAME, "receiveCommonFrame", null);
                     return null;
                 }
 
-                commonFrame = parseFrame();
+                commonFrame = decoder.decode();
 
                 if (commonFrame != null) {
-                    LOGGER.exiting(CLASS_NAME, "receiveCommonFrame", commonFrame);
+                    Tracer.exiting(LOGGER, CLASS_NAME, "receiveCommonFrame", commonFrame);
                     return commonFrame;
                 }
 
@@ -0,0 +1,734 @@
+package echowand.net;
+
+import echowand.common.ESV;
+import echowand.util.HashedWheelTimer;
+import echowand.util.Tracer;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * リモートノード毎にTCPコネクションを保持し、複数の送信で再利用するためのプール
+ * 接続はInetSubnetにより生成されてTCPReceiverに登録されるため、応答は通常の受信と同様に処理される。
+ * 応答を待つリクエストはTID毎に記録され、1つの接続で最大パイプライン深さまで応答を待たずに送信される。
+ * 一定時間利用されなかった接続や切断された接続はプールから取り除かれる。
+ * @author ymakino
+ */
+public class TCPConnectionPool implements TCPConnectionObserver {
+    private static final Logger LOGGER = Logger.getLogger(TCPConnectionPool.class.getName());
+    private static final String CLASS_NAME = TCPConnectionPool.class.getName();
+
+    /**
+     * デフォルトのリモートノード毎の最大接続数
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_NODE = 2;
+
+    /**
+     * デフォルトのアイドルタイムアウト(ミリ秒)
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    /**
+     * デフォルトの接続確立のタイムアウト(ミリ秒)
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * デフォルトの接続毎の最大パイプライン深さ
+     */
+    public static final int DEFAULT_MAX_PIPELINE_DEPTH = 32;
+
+    /**
+     * デフォルトのパイプラインのタイムアウト(ミリ秒)
+     */
+    public static final long DEFAULT_PIPELINE_TIMEOUT = 10000;
+
+    private static final long EVICTION_TICK_DURATION = 100;
+    private static final int EVICTION_WHEEL_SIZE = 64;
+
+    private static class PooledConnection {
+        public TCPConnection connection;
+        public int leases;
+        public long lastUsed;
+        public LinkedHashMap<Short, Long> outstandingRequests;
+
+        public PooledConnection(TCPConnection connection) {
+            this.connection = connection;
+            this.leases = 0;
+            this.lastUsed = System.currentTimeMillis();
+            this.outstandingRequests = new LinkedHashMap<Short, Long>();
+        }
+
+        public int getLoad() {
+            return leases + outstandingRequests.size();
+        }
+
+        public void expireOutstandingRequests(long now, long pipelineTimeout) {
+            Iterator<Long> iterator = outstandingRequests.values().iterator();
+            while (iterator.hasNext() && now - iterator.next() >= pipelineTimeout) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /*
+     * connectingが0より大きいNodeEntryはnodeEntriesから取り除かれない。
+     * 接続を確立しているスレッドはInetNodeInfoからNodeEntryを再取得して確立した接続を追加する。
+     */
+    private static class NodeEntry {
+        public LinkedList<PooledConnection> connections = new LinkedList<PooledConnection>();
+        public int connecting = 0;
+
+        public int countAll() {
+            return connections.size() + connecting;
+        }
+    }
+
+    private InetSubnet subnet;
+    private HashMap<InetNodeInfo, NodeEntry> nodeEntries;
+    private HashMap<TCPConnection, PooledConnection> pooledConnections;
+    private int maxConnectionsPerNode = DEFAULT_MAX_CONNECTIONS_PER_NODE;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int maxPipelineDepth = DEFAULT_MAX_PIPELINE_DEPTH;
+    private long pipelineTimeout = DEFAULT_PIPELINE_TIMEOUT;
+
+    private HashedWheelTimer evictionTimer;
+    private HashedWheelTimer.Timeout evictionHandle;
+
+    /**
+     * 指定されたInetSubnetを利用して接続を行うTCPConnectionPoolを生成する。
+     * @param subnet 接続の生成と登録に利用するInetSubnet
+     */
+    public TCPConnectionPool(InetSubnet subnet) {
+        LOGGER.entering(CLASS_NAME, "TCPConnectionPool", subnet);
+
+        this.subnet = subnet;
+        nodeEntries = new HashMap<InetNodeInfo, NodeEntry>();
+        pooledConnections = new HashMap<TCPConnection, PooledConnection>();
+        evictionTimer = new HashedWheelTimer(EVICTION_TICK_DURATION, EVICTION_WHEEL_SIZE);
+
+        LOGGER.exiting(CLASS_NAME, "TCPConnectionPool");
+    }
+
+    /**
+     * リモートノード毎の最大接続数を返す。
+     * @return リモートノード毎の最大接続数
+     */
+    public synchronized int getMaxConnectionsPerNode() {
+        return maxConnectionsPerNode;
+    }
+
+    /**
+     * リモートノード毎の最大接続数を設定する。
+     * 全ての接続が利用中でも最大接続数に達している場合には、新たに接続せずに既存の接続を共有する。
+     * @param maxConnectionsPerNode リモートノード毎の最大接続数
+     * @throws IllegalArgumentException 最大接続数が1未満の場合
+     */
+    public synchronized void setMaxConnectionsPerNode(int maxConnectionsPerNode) {
+        if (maxConnectionsPerNode < 1) {
+            throw new IllegalArgumentException("invalid max connections: " + maxConnectionsPerNode);
+        }
+
+        this.maxConnectionsPerNode = maxConnectionsPerNode;
+    }
+
+    /**
+     * アイドルタイムアウトを返す。
+     * @return アイドルタイムアウト(ミリ秒)
+     */
+    public synchronized long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * アイドルタイムアウトを設定する。
+     * この時間以上利用されなかった接続は切断される。
+     * @param idleTimeout アイドルタイムアウト(ミリ秒)
+     * @throws IllegalArgumentException アイドルタイムアウトが0以下の場合
+     */
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("invalid idle timeout: " + idleTimeout);
+        }
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * 接続確立のタイムアウトを返す。
+     * @return 接続確立のタイムアウト(ミリ秒)
+     */
+    public synchronized int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * 接続確立のタイムアウトを設定する。0を指定した場合にはタイムアウトしない。
+     * @param connectTimeout 接続確立のタイムアウト(ミリ秒)
+     */
+    public synchronized void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 接続毎の最大パイプライン深さを返す。
+     * @return 接続毎の最大パイプライン深さ
+     */
+    public synchronized int getMaxPipelineDepth() {
+        return maxPipelineDepth;
+    }
+
+    /**
+     * 接続毎の最大パイプライン深さを設定する。
+     * 全ての接続で応答待ちのリクエストがこの数に達している場合、sendは応答の受信を待つ。
+     * @param maxPipelineDepth 接続毎の最大パイプライン深さ
+     * @throws IllegalArgumentException 最大パイプライン深さが1未満の場合
+     */
+    public synchronized void setMaxPipelineDepth(int maxPipelineDepth) {
+        if (maxPipelineDepth < 1) {
+            throw new IllegalArgumentException("invalid max pipeline depth: " + maxPipelineDepth);
+        }
+
+        this.maxPipelineDepth = maxPipelineDepth;
+        notifyAll();
+    }
+
+    /**
+     * パイプラインのタイムアウトを返す。
+     * @return パイプラインのタイムアウト(ミリ秒)
+     */
+    public synchronized long getPipelineTimeout() {
+        return pipelineTimeout;
+    }
+
+    /**
+     * パイプラインのタイムアウトを設定する。
+     * この時間以上応答を受信しなかったリクエストは応答待ちとして扱われなくなる。
+     * @param pipelineTimeout パイプラインのタイムアウト(ミリ秒)
+     * @throws IllegalArgumentException パイプラインのタイムアウトが0以下の場合
+     */
+    public synchronized void setPipelineTimeout(long pipelineTimeout) {
+        if (pipelineTimeout <= 0) {
+            throw new IllegalArgumentException("invalid pipeline timeout: " + pipelineTimeout);
+        }
+
+        this.pipelineTimeout = pipelineTimeout;
+    }
+
+    /**
+     * 指定された接続で応答を待っているリクエストの数を返す。
+     * @param connection 接続
+     * @return 応答を待っているリクエストの数、プールに含まれない接続の場合には0
+     */
+    public synchronized int countOutstandingRequests(TCPConnection connection) {
+        PooledConnection pooledConnection = pooledConnections.get(connection);
+
+        if (pooledConnection == null) {
+            return 0;
+        }
+
+        pooledConnection.expireOutstandingRequests(System.currentTimeMillis(), pipelineTimeout);
+        return pooledConnection.outstandingRequests.size();
+    }
+
+    /**
+     * プールに含まれる接続の数を返す。
+     * @return 接続の数
+     */
+    public synchronized int countConnections() {
+        return pooledConnections.size();
+    }
+
+    /**
+     * 指定されたリモートノードに対してプールに含まれる接続の数を返す。
+     * @param nodeInfo リモートノードの情報
+     * @return 接続の数
+     */
+    public synchronized int countConnections(NodeInfo nodeInfo) {
+        NodeEntry entry = nodeEntries.get(nodeInfo);
+
+        if (entry == null) {
+            return 0;
+        }
+
+        return entry.connections.size();
+    }
+
+    /**
+     * 指定された接続がこのプールに含まれるかどうか返す。
+     * @param connection 確認する接続
+     * @return 含まれていればtrue、そうでなければfalse
+     */
+    public synchronized boolean contains(TCPConnection connection) {
+        return pooledConnections.containsKey(connection);
+    }
+
+    /**
+     * 接続が再利用できる状態にあるかどうか確認する。
+     * @param connection 確認する接続
+     * @return 再利用できる場合にはtrue、そうでなければfalse
+     */
+    public boolean isHealthy(TCPConnection connection) {
+        if (connection.isClosed() || connection.isInputClosed() || connection.isOutputClosed()) {
+            return false;
+        }
+
+        SocketChannel channel = connection.getSocketChannel();
+        if (channel != null && !channel.isConnected()) {
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean isIdle(PooledConnection pooledConnection, long now) {
+        return pooledConnection.leases == 0 && pooledConnection.outstandingRequests.isEmpty() && now - pooledConnection.lastUsed >= idleTimeout;
+    }
+
+    private List<TCPConnection> findUnhealthyConnections(Collection<TCPConnection> connections) {
+        LinkedList<TCPConnection> unhealthyConnections = new LinkedList<TCPConnection>();
+
+        for (TCPConnection connection : connections) {
+            if (!isHealthy(connection)) {
+                unhealthyConnections.add(connection);
+            }
+        }
+
+        return unhealthyConnections;
+    }
+
+    private synchronized List<TCPConnection> snapshotConnections(InetNodeInfo nodeInfo) {
+        LinkedList<TCPConnection> connections = new LinkedList<TCPConnection>();
+        NodeEntry entry = nodeEntries.get(nodeInfo);
+
+        if (entry == null) {
+            return connections;
+        }
+
+        for (PooledConnection pooledConnection : entry.connections) {
+            connections.add(pooledConnection.connection);
+        }
+
+        return connections;
+    }
+
+    private synchronized void removeStaleConnections(NodeEntry entry, Collection<TCPConnection> unhealthyConnections, List<TCPConnection> staleConnections) {
+        long now = System.currentTimeMillis();
+
+        for (Iterator<PooledConnection> iterator = entry.connections.iterator(); iterator.hasNext();) {
+            PooledConnection pooledConnection = iterator.next();
+            pooledConnection.expireOutstandingRequests(now, pipelineTimeout);
+            if (unhealthyConnections.contains(pooledConnection.connection) || isIdle(pooledConnection, now)) {
+                iterator.remove();
+                pooledConnections.remove(pooledConnection.connection);
+                staleConnections.add(pooledConnection.connection);
+            }
+        }
+    }
+
+    private void closeConnections(List<TCPConnection> connections) {
+        for (TCPConnection connection : connections) {
+            connection.removeObserver(this);
+
+            if (connection.isClosed()) {
+                continue;
+            }
+
+            try {
+                connection.close();
+            } catch (NetworkException ex) {
+                LOGGER.logp(Level.INFO, CLASS_NAME, "closeConnections", "catched exception", ex);
+            }
+        }
+    }
+
+    private synchronized NodeEntry getNodeEntry(InetNodeInfo nodeInfo) {
+        NodeEntry entry = nodeEntries.get(nodeInfo);
+
+        if (entry == null) {
+            entry = new NodeEntry();
+            nodeEntries.put(nodeInfo, entry);
+        }
+
+        return entry;
+    }
+
+    private synchronized TCPConnection leaseConnection(NodeEntry entry, Short tid) {
+        PooledConnection selected = null;
+
+        for (PooledConnection pooledConnection : entry.connections) {
+            if (tid != null && pooledConnection.outstandingRequests.size() >= maxPipelineDepth) {
+                continue;
+            }
+
+            if (selected == null || pooledConnection.getLoad() < selected.getLoad()) {
+                selected = pooledConnection;
+            }
+        }
+
+        if (selected == null) {
+            return null;
+        }
+
+        if (tid == null && selected.getLoad() > 0 && entry.countAll() < maxConnectionsPerNode) {
+            return null;
+        }
+
+        selected.leases++;
+        selected.lastUsed = System.currentTimeMillis();
+
+        if (tid != null) {
+            selected.outstandingRequests.put(tid, selected.lastUsed);
+        }
+
+        return selected.connection;
+    }
+
+    private synchronized boolean reserveConnection(NodeEntry entry) {
+        if (entry.countAll() >= maxConnectionsPerNode) {
+            return false;
+        }
+
+        entry.connecting++;
+        return true;
+    }
+
+    private synchronized void addConnection(InetNodeInfo nodeInfo, TCPConnection connection, Short tid) {
+        NodeEntry entry = nodeEntries.get(nodeInfo);
+        entry.connecting--;
+        notifyAll();
+
+        if (connection == null) {
+            if (entry.countAll() == 0) {
+                nodeEntries.remove(nodeInfo);
+            }
+            return;
+        }
+
+        PooledConnection pooledConnection = new PooledConnection(connection);
+        pooledConnection.leases = 1;
+        if (tid != null) {
+            pooledConnection.outstandingRequests.put(tid, pooledConnection.lastUsed);
+        }
+        entry.connections.add(pooledConnection);
+        pooledConnections.put(connection, pooledConnection);
+
+        scheduleEviction();
+    }
+
+    private TCPConnection connect(Node remoteNode) throws SubnetException {
+        TCPConnection connection = subnet.newTCPConnection(remoteNode, getConnectTimeout());
+        connection.addObserver(this);
+
+        if (!subnet.registerTCPConnection(connection)) {
+            closeConnections(Collections.singletonList(connection));
+            SubnetException exception = new SubnetException("cannot register: " + connection);
+            LOGGER.throwing(CLASS_NAME, "connect", exception);
+            throw exception;
+        }
+
+        return connection;
+    }
+
+    /**
+     * 指定されたリモートノードへの接続をプールから取得する。
+     * 利用可能な接続が存在しない場合には新たに接続を確立する。
+     * 取得した接続は利用後にreleaseを呼び出してプールに返却する必要がある。
+     * @param remoteNode 接続先のリモートノード
+     * @return 取得した接続
+     * @throws SubnetException 接続の確立に失敗した場合
+     */
+    public TCPConnection acquire(Node remoteNode) throws SubnetException {
+        Tracer.entering(LOGGER, CLASS_NAME, "acquire", remoteNode);
+
+        TCPConnection connection = acquireConnection(remoteNode, null);
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "acquire", connection);
+        return connection;
+    }
+
+    private TCPConnection acquireConnection(Node remoteNode, Short tid) throws SubnetException {
+
+        NodeInfo nodeInfo = remoteNode.getNodeInfo();
+
+        if (!(nodeInfo instanceof InetNodeInfo)) {
+            SubnetException exception = new SubnetException("invalid remote node: " + nodeInfo);
+            LOGGER.throwing(CLASS_NAME, "acquireConnection", exception);
+            throw exception;
+        }
+
+        InetNodeInfo inetNodeInfo = (InetNodeInfo) nodeInfo;
+
+        for (;;) {
+            List<TCPConnection> unhealthyConnections = findUnhealthyConnections(snapshotConnections(inetNodeInfo));
+            LinkedList<TCPConnection> staleConnections = new LinkedList<TCPConnection>();
+            TCPConnection connection;
+            boolean reserved;
+
+            synchronized (this) {
+                NodeEntry entry = getNodeEntry(inetNodeInfo);
+                removeStaleConnections(entry, unhealthyConnections, staleConnections);
+                connection = leaseConnection(entry, tid);
+                reserved = (connection == null) && reserveConnection(entry);
+
+                if (connection == null && !reserved && staleConnections.isEmpty()) {
+                    try {
+                        wait(pipelineTimeout);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        SubnetException exception = new SubnetException("interrupted", ex);
+                        LOGGER.throwing(CLASS_NAME, "acquireConnection", exception);
+                        throw exception;
+                    }
+                }
+            }
+
+            closeConnections(staleConnections);
+
+            if (connection != null) {
+                return connection;
+            }
+
+            if (reserved) {
+                try {
+                    connection = connect(remoteNode);
+                } finally {
+                    addConnection(inetNodeInfo, connection, tid);
+                }
+
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * acquireにより取得した接続をプールに返却する。
+     * @param connection 返却する接続
+     * @return 返却に成功した場合にはtrue、プールに含まれない接続の場合にはfalse
+     */
+    public synchronized boolean release(TCPConnection connection) {
+        Tracer.entering(LOGGER, CLASS_NAME, "release", connection);
+
+        PooledConnection pooledConnection = pooledConnections.get(connection);
+
+        if (pooledConnection == null || pooledConnection.leases == 0) {
+            Tracer.exiting(LOGGER, CLASS_NAME, "release", false);
+            return false;
+        }
+
+        pooledConnection.leases--;
+        pooledConnection.lastUsed = System.currentTimeMillis();
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "release", true);
+        return true;
+    }
+
+    private static boolean isResponseRequired(ESV esv) {
+        switch (esv) {
+            case SetC:
+            case Get:
+            case SetGet:
+            case INFC:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isRequest(ESV esv) {
+        switch (esv) {
+            case SetI:
+            case SetC:
+            case Get:
+            case INF_REQ:
+            case SetGet:
+            case INF:
+            case INFC:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private synchronized void removeOutstandingRequest(TCPConnection connection, short tid) {
+        PooledConnection pooledConnection = pooledConnections.get(connection);
+
+        if (pooledConnection != null && pooledConnection.outstandingRequests.remove(tid) != null) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 指定されたリモートノードへプールされた接続を利用してフレームを送信する。
+     * 応答を必要とするリクエストは応答を受信するまでパイプラインの1段を占有する。
+     * 全ての接続でパイプラインが埋まっている場合には、応答の受信により空きができるまで待機する。
+     * @param remoteNode 送信先のリモートノード
+     * @param commonFrame 送信するフレーム
+     * @throws SubnetException 接続の確立や送信に失敗した場合
+     */
+    public void send(Node remoteNode, CommonFrame commonFrame) throws SubnetException {
+        Tracer.entering(LOGGER, CLASS_NAME, "send", remoteNode, commonFrame);
+
+        Short tid = null;
+
+        if (commonFrame.isStandardPayload()) {
+            StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+            if (payload != null && payload.getESV() != null && isResponseRequired(payload.getESV())) {
+                tid = commonFrame.getTID();
+            }
+        }
+
+        TCPConnection connection = acquireConnection(remoteNode, tid);
+
+        try {
+            connection.send(commonFrame);
+        } catch (NetworkException ex) {
+            if (tid != null) {
+                removeOutstandingRequest(connection, tid);
+            }
+            SubnetException exception = new SubnetException("catched exception", ex);
+            LOGGER.throwing(CLASS_NAME, "send", exception);
+            throw exception;
+        } finally {
+            release(connection);
+        }
+
+        Tracer.exiting(LOGGER, CLASS_NAME, "send");
+    }
+
+    /**
+     * アイドルタイムアウトを過ぎた接続と再利用できない接続を切断し、プールから取り除く。
+     * @return 取り除いた接続の数
+     */
+    public int evictIdleConnections() {
+        LOGGER.entering(CLASS_NAME, "evictIdleConnections");
+
+        List<TCPConnection> connections;
+        synchronized (this) {
+            connections = new LinkedList<TCPConnection>(pooledConnections.keySet());
+        }
+        HashSet<TCPConnection> unhealthyConnections = new HashSet<TCPConnection>(findUnhealthyConnections(connections));
+
+        LinkedList<TCPConnection> staleConnections = new LinkedList<TCPConnection>();
+
+        synchronized (this) {
+            for (Iterator<NodeEntry> iterator = nodeEntries.values().iterator(); iterator.hasNext();) {
+                NodeEntry entry = iterator.next();
+                removeStaleConnections(entry, unhealthyConnections, staleConnections);
+                if (entry.countAll() == 0) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        closeConnections(staleConnections);
+
+        int count = staleConnections.size();
+        LOGGER.exiting(CLASS_NAME, "evictIdleConnections", count);
+        return count;
+    }
+
+    /**
+     * プールに含まれる全ての接続を切断し、プールから取り除く。
+     */
+    public void closeAllConnections() {
+        LOGGER.entering(CLASS_NAME, "closeAllConnections");
+
+        LinkedList<TCPConnection> connections;
+
+        synchronized (this) {
+            connections = new LinkedList<TCPConnection>(pooledConnections.keySet());
+            pooledConnections.clear();
+
+            for (Iterator<NodeEntry> iterator = nodeEntries.values().iterator(); iterator.hasNext();) {
+                NodeEntry entry = iterator.next();
+                entry.connections.clear();
+                if (entry.connecting == 0) {
+                    iterator.remove();
+                }
+            }
+
+            if (evictionHandle != null) {
+                evictionHandle.cancel();
+                evictionHandle = null;
+            }
+        }
+
+        closeConnections(connections);
+
+        LOGGER.exiting(CLASS_NAME, "closeAllConnections");
+    }
+
+    private synchronized void scheduleEviction() {
+        if (evictionHandle != null || pooledConnections.isEmpty()) {
+            return;
+        }
+
+        evictionHandle = evictionTimer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (TCPConnectionPool.this) {
+                    evictionHandle = null;
+                }
+
+                evictIdleConnections();
+                scheduleEviction();
+            }
+        }, idleTimeout);
+    }
+
+    private synchronized void removeConnection(TCPConnection connection) {
+        PooledConnection pooledConnection = pooledConnections.remove(connection);
+
+        if (pooledConnection == null) {
+            return;
+        }
+
+        notifyAll();
+
+        for (Iterator<NodeEntry> iterator = nodeEntries.values().iterator(); iterator.hasNext();) {
+            NodeEntry entry = iterator.next();
+            if (entry.connections.remove(pooledConnection) && entry.countAll() == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void notifyReceived(TCPConnection connection, CommonFrame commonFrame) {
+        PooledConnection pooledConnection = pooledConnections.get(connection);
+
+        if (pooledConnection != null) {
+            pooledConnection.lastUsed = System.currentTimeMillis();
+
+            StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+            if (payload != null && payload.getESV() != null && !isRequest(payload.getESV())) {
+                if (pooledConnection.outstandingRequests.remove(commonFrame.getTID()) != null) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void notifySent(TCPConnection connection, CommonFrame commonFrame) {
+    }
+
+    @Override
+    public void notifyClosed(TCPConnection connection) {
+        LOGGER.entering(CLASS_NAME, "notifyClosed", connection);
+
+        removeConnection(connection);
+
+        LOGGER.exiting(CLASS_NAME, "notifyClosed");
+    }
+}
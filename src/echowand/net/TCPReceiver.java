@@ -1,26 +1,74 @@
 package echowand.net;
 
 import echowand.util.Pair;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- *
+ * 複数のTCPConnectionからのフレームの受信
+ * SocketChannelを持つTCPConnectionは、固定数のTCPSelectorThreadによりノンブロッキングで送受信が行われる。
+ * SocketChannelを持たないTCPConnectionは、接続毎にTCPConnectionReceiverThreadを生成して受信を行う。
  * @author ymakino
  */
 public class TCPReceiver implements TCPConnectionObserver {
     private static final Logger LOGGER = Logger.getLogger(TCPReceiver.class.getName());
     private static final String CLASS_NAME = TCPReceiver.class.getName();
     
+    /**
+     * デフォルトのTCPSelectorThreadの数
+     */
+    public static final int DEFAULT_SELECTOR_COUNT = 2;
+    
+    private static final long SELECTOR_JOIN_TIMEOUT = 1000;
+    
     private LinkedBlockingQueue<Pair<TCPConnection, CommonFrame>> receiveQueue;
     private HashMap<TCPConnection, TCPConnectionReceiverThread> receiverThreadMap;
+    private HashMap<TCPConnection, TCPSelectorThread> selectorThreadMap;
+    private HashMap<TCPAcceptor, TCPSelectorThread> acceptorMap;
+    private int selectorCount;
+    private TCPSelectorThread[] selectorThreads;
     private boolean inService = false;
 
+    /**
+     * デフォルトの数のTCPSelectorThreadを利用するTCPReceiverを生成する。
+     */
     public TCPReceiver() {
+        this(DEFAULT_SELECTOR_COUNT);
+    }
+
+    /**
+     * 利用するTCPSelectorThreadの数を指定してTCPReceiverを生成する。
+     * @param selectorCount TCPSelectorThreadの数
+     */
+    public TCPReceiver(int selectorCount) {
+        if (selectorCount <= 0) {
+            throw new IllegalArgumentException("invalid selector count: " + selectorCount);
+        }
+        
+        this.selectorCount = selectorCount;
         receiveQueue = new LinkedBlockingQueue<Pair<TCPConnection, CommonFrame>>();
         receiverThreadMap = new HashMap<TCPConnection, TCPConnectionReceiverThread>();
+        selectorThreadMap = new HashMap<TCPConnection, TCPSelectorThread>();
+        acceptorMap = new HashMap<TCPAcceptor, TCPSelectorThread>();
+    }
+    
+    /**
+     * 利用するTCPSelectorThreadの数を返す。
+     * @return TCPSelectorThreadの数
+     */
+    public int getSelectorCount() {
+        return selectorCount;
+    }
+    
+    /**
+     * 受信を行うために管理しているTCPConnectionの数を返す。
+     * @return 管理しているTCPConnectionの数
+     */
+    public synchronized int countConnections() {
+        return receiverThreadMap.size() + selectorThreadMap.size();
     }
     
     /**
@@ -34,15 +82,37 @@ public class TCPReceiver implements TCPConnectionObserver {
     /**
      * このTCPReceiverを有効にする。
      * @return 無効から有効に変更した場合はtrue、そうでなければfalse
+     * @throws NetworkException TCPSelectorThreadの生成に失敗した場合
      */
-    public synchronized boolean startService() {
+    public synchronized boolean startService() throws NetworkException {
         LOGGER.entering(CLASS_NAME, "startService");
         
         if (inService) {
             LOGGER.exiting(CLASS_NAME, "startService", false);
             return false;
         }
-
+        
+        TCPSelectorThread[] threads = new TCPSelectorThread[selectorCount];
+        
+        try {
+            for (int i=0; i<selectorCount; i++) {
+                threads[i] = new TCPSelectorThread("TCPSelectorThread-" + i);
+            }
+        } catch (NetworkException ex) {
+            for (TCPSelectorThread thread : threads) {
+                if (thread != null) {
+                    thread.closeSelector();
+                }
+            }
+            LOGGER.throwing(CLASS_NAME, "startService", ex);
+            throw ex;
+        }
+        
+        for (TCPSelectorThread thread : threads) {
+            thread.start();
+        }
+        
+        selectorThreads = threads;
         inService = true;
 
         LOGGER.exiting(CLASS_NAME, "startService", true);
@@ -53,21 +123,46 @@ public class TCPReceiver implements TCPConnectionObserver {
      * このTCPReceiverを無効にする。
      * @return 有効から無効に変更した場合はtrue、そうでなければfalse
      */
-    public synchronized boolean stopService() {
+    public boolean stopService() {
         LOGGER.entering(CLASS_NAME, "stopService");
         
-        if (!inService) {
-            LOGGER.entering(CLASS_NAME, "stopService", false);
-            return false;
-        }
+        TCPSelectorThread[] threads;
         
-        removeAllConnections();
+        synchronized (this) {
+            if (!inService) {
+                LOGGER.entering(CLASS_NAME, "stopService", false);
+                return false;
+            }
+
+            removeAllConnections();
+            removeAllAcceptors();
+
+            threads = selectorThreads;
+            
+            for (TCPSelectorThread thread : threads) {
+                thread.terminate();
+            }
 
-        inService = false;
+            selectorThreads = null;
+            inService = false;
+        }
+        
+        joinSelectorThreads(threads);
 
         LOGGER.entering(CLASS_NAME, "stopService", true);
         return true;
     }
+    
+    private void joinSelectorThreads(TCPSelectorThread[] threads) {
+        try {
+            for (TCPSelectorThread thread : threads) {
+                thread.join(SELECTOR_JOIN_TIMEOUT);
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.logp(Level.INFO, CLASS_NAME, "joinSelectorThreads", "interrupted", ex);
+            Thread.currentThread().interrupt();
+        }
+    }
 
     /**
      * 指定されたTCPConnectionを追加する。
@@ -83,15 +178,22 @@ public class TCPReceiver implements TCPConnectionObserver {
             return false;
         }
         
-        if (receiverThreadMap.containsKey(connection)) {
+        if (receiverThreadMap.containsKey(connection) || selectorThreadMap.containsKey(connection)) {
             LOGGER.exiting(CLASS_NAME, "addConnection", false);
             return false;
         }
         
         connection.addObserver(this);
-        TCPConnectionReceiverThread receiverThread = new TCPConnectionReceiverThread(connection);
-        receiverThreadMap.put(connection, receiverThread);
-        receiverThread.start();
+        
+        if (connection.getSocketChannel() != null) {
+            TCPSelectorThread selectorThread = selectSelectorThread();
+            selectorThreadMap.put(connection, selectorThread);
+            selectorThread.register(connection);
+        } else {
+            TCPConnectionReceiverThread receiverThread = new TCPConnectionReceiverThread(connection);
+            receiverThreadMap.put(connection, receiverThread);
+            receiverThread.start();
+        }
         
         LOGGER.exiting(CLASS_NAME, "addConnection", true);
         return true;
@@ -111,14 +213,17 @@ public class TCPReceiver implements TCPConnectionObserver {
             return false;
         }
         
-        if (!receiverThreadMap.containsKey(connection)) {
+        if (selectorThreadMap.containsKey(connection)) {
+            TCPSelectorThread selectorThread = selectorThreadMap.remove(connection);
+            selectorThread.unregister(connection);
+        } else if (receiverThreadMap.containsKey(connection)) {
+            TCPConnectionReceiverThread receiverThread = receiverThreadMap.remove(connection);
+            receiverThread.terminate();
+        } else {
             LOGGER.exiting(CLASS_NAME, "removeConnection", false);
             return false;
         }
         
-        TCPConnectionReceiverThread receiverThread = receiverThreadMap.get(connection);
-        receiverThread.terminate();
-        receiverThreadMap.remove(connection);
         connection.removeObserver(this);
         
         LOGGER.exiting(CLASS_NAME, "removeConnection", true);
@@ -131,13 +236,84 @@ public class TCPReceiver implements TCPConnectionObserver {
     public synchronized void removeAllConnections() {
         LOGGER.entering(CLASS_NAME, "removeAllConnections");
         
-        for (TCPConnection connection : receiverThreadMap.keySet()) {
+        ArrayList<TCPConnection> connections = new ArrayList<TCPConnection>(receiverThreadMap.keySet());
+        connections.addAll(selectorThreadMap.keySet());
+        
+        for (TCPConnection connection : connections) {
             removeConnection(connection);
         }
         
         LOGGER.exiting(CLASS_NAME, "removeAllConnections");
     }
     
+    private TCPSelectorThread selectSelectorThread() {
+        TCPSelectorThread selected = selectorThreads[0];
+        
+        for (TCPSelectorThread thread : selectorThreads) {
+            if (thread.countConnections() < selected.countConnections()) {
+                selected = thread;
+            }
+        }
+        
+        return selected;
+    }
+    
+    /**
+     * 指定されたTCPAcceptorを追加する。
+     * TCPAcceptorはノンブロッキングモードに変更され、TCPSelectorThreadにより接続の受付が行われる。
+     * 受け付けた接続はTCPAcceptorのオブザーバに通知される。
+     * TCPAcceptorは有効になっていなければならない。
+     * @param acceptor 追加するTCPAcceptorの指定
+     * @return 追加に成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean addAcceptor(TCPAcceptor acceptor) {
+        LOGGER.entering(CLASS_NAME, "addAcceptor", acceptor);
+        
+        if (!isInService() || !acceptor.isInService()) {
+            LOGGER.exiting(CLASS_NAME, "addAcceptor", false);
+            return false;
+        }
+        
+        if (acceptorMap.containsKey(acceptor)) {
+            LOGGER.exiting(CLASS_NAME, "addAcceptor", false);
+            return false;
+        }
+        
+        TCPSelectorThread selectorThread = selectorThreads[0];
+        acceptorMap.put(acceptor, selectorThread);
+        selectorThread.register(acceptor);
+        
+        LOGGER.exiting(CLASS_NAME, "addAcceptor", true);
+        return true;
+    }
+    
+    /**
+     * 指定されたTCPAcceptorを削除する。
+     * @param acceptor 削除するTCPAcceptorの指定
+     * @return 削除に成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean removeAcceptor(TCPAcceptor acceptor) {
+        LOGGER.entering(CLASS_NAME, "removeAcceptor", acceptor);
+        
+        TCPSelectorThread selectorThread = acceptorMap.remove(acceptor);
+        
+        if (selectorThread == null) {
+            LOGGER.exiting(CLASS_NAME, "removeAcceptor", false);
+            return false;
+        }
+        
+        selectorThread.unregister(acceptor);
+        
+        LOGGER.exiting(CLASS_NAME, "removeAcceptor", true);
+        return true;
+    }
+    
+    private void removeAllAcceptors() {
+        for (TCPAcceptor acceptor : new ArrayList<TCPAcceptor>(acceptorMap.keySet())) {
+            removeAcceptor(acceptor);
+        }
+    }
+    
     /**
      * フレームを受信する。
      * 受信したフレームが利用したTCPConnectionと、受信したフレームの内容を返す。
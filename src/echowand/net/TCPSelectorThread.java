@@ -0,0 +1,304 @@
+package echowand.net;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selectorを利用して複数のTCPコネクションの受付、受信、送信を行うスレッド
+ * 登録されたTCPConnectionとTCPAcceptorはノンブロッキングモードで処理される。
+ * Selectorへの登録や変更はこのスレッドで実行されるようにキューを経由して行われる。
+ * @author ymakino
+ */
+class TCPSelectorThread extends Thread {
+    private static final Logger LOGGER = Logger.getLogger(TCPSelectorThread.class.getName());
+    private static final String CLASS_NAME = TCPSelectorThread.class.getName();
+
+    private Selector selector;
+    private ConcurrentLinkedQueue<Runnable> tasks;
+    private volatile boolean terminated = false;
+    private volatile int connectionCount = 0;
+
+    /**
+     * TCPSelectorThreadを生成する。
+     * @param name スレッドの名前
+     * @throws NetworkException Selectorの生成に失敗した場合
+     */
+    public TCPSelectorThread(String name) throws NetworkException {
+        super(name);
+        setDaemon(true);
+
+        try {
+            selector = Selector.open();
+        } catch (IOException ex) {
+            NetworkException exception = new NetworkException("catched exception", ex);
+            LOGGER.throwing(CLASS_NAME, "TCPSelectorThread", exception);
+            throw exception;
+        }
+
+        tasks = new ConcurrentLinkedQueue<Runnable>();
+    }
+
+    /**
+     * このスレッドが処理しているTCPConnectionの数を返す。
+     * @return 処理しているTCPConnectionの数
+     */
+    public int countConnections() {
+        return connectionCount;
+    }
+
+    private void invoke(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * TCPConnectionの受信と送信をこのスレッドで行うように登録する。
+     * @param connection 登録するTCPConnection
+     */
+    public void register(final TCPConnection connection) {
+        LOGGER.entering(CLASS_NAME, "register", connection);
+
+        connectionCount++;
+
+        invoke(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    connection.attach(TCPSelectorThread.this, selector);
+                } catch (IOException ex) {
+                    LOGGER.logp(Level.INFO, CLASS_NAME, "register", "catched exception", ex);
+                    closeConnection(connection);
+                }
+            }
+        });
+
+        LOGGER.exiting(CLASS_NAME, "register");
+    }
+
+    /**
+     * TCPConnectionの登録を抹消する。
+     * 抹消後のTCPConnectionはブロッキングモードに戻され、送信が完了していないデータは送信される。
+     * @param connection 登録を抹消するTCPConnection
+     */
+    public void unregister(final TCPConnection connection) {
+        LOGGER.entering(CLASS_NAME, "unregister", connection);
+
+        connectionCount--;
+
+        invoke(new Runnable() {
+            @Override
+            public void run() {
+                SelectionKey key = connection.getSocketChannel().keyFor(selector);
+                if (key != null) {
+                    key.cancel();
+                }
+
+                try {
+                    selector.selectNow();
+                    connection.detach();
+                } catch (IOException ex) {
+                    LOGGER.logp(Level.INFO, CLASS_NAME, "unregister", "catched exception", ex);
+                } catch (NetworkException ex) {
+                    LOGGER.logp(Level.INFO, CLASS_NAME, "unregister", "catched exception", ex);
+                }
+            }
+        });
+
+        LOGGER.exiting(CLASS_NAME, "unregister");
+    }
+
+    /**
+     * TCPAcceptorの接続の受付をこのスレッドで行うように登録する。
+     * @param acceptor 登録するTCPAcceptor
+     */
+    public void register(final TCPAcceptor acceptor) {
+        LOGGER.entering(CLASS_NAME, "register", acceptor);
+
+        invoke(new Runnable() {
+            @Override
+            public void run() {
+                ServerSocketChannel channel = acceptor.getServerSocketChannel();
+                if (channel == null) {
+                    LOGGER.logp(Level.INFO, CLASS_NAME, "register", "not working: " + acceptor);
+                    return;
+                }
+
+                try {
+                    channel.configureBlocking(false);
+                    channel.register(selector, SelectionKey.OP_ACCEPT, acceptor);
+                } catch (IOException ex) {
+                    LOGGER.logp(Level.INFO, CLASS_NAME, "register", "catched exception", ex);
+                }
+            }
+        });
+
+        LOGGER.exiting(CLASS_NAME, "register");
+    }
+
+    /**
+     * TCPAcceptorの登録を抹消する。
+     * @param acceptor 登録を抹消するTCPAcceptor
+     */
+    public void unregister(final TCPAcceptor acceptor) {
+        LOGGER.entering(CLASS_NAME, "unregister", acceptor);
+
+        invoke(new Runnable() {
+            @Override
+            public void run() {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() == acceptor) {
+                        key.cancel();
+                    }
+                }
+            }
+        });
+
+        LOGGER.exiting(CLASS_NAME, "unregister");
+    }
+
+    /**
+     * 登録されたTCPConnectionの送信待ちデータを書き込むように要求する。
+     * @param key TCPConnectionのSelectionKey
+     */
+    void requestWrite(final SelectionKey key) {
+        invoke(new Runnable() {
+            @Override
+            public void run() {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        });
+    }
+
+    /**
+     * このスレッドの停止を行う。
+     * 登録されている全てのTCPConnectionとTCPAcceptorはSelectorから取り除かれる。
+     */
+    public void terminate() {
+        LOGGER.entering(CLASS_NAME, "terminate");
+
+        terminated = true;
+        selector.wakeup();
+
+        LOGGER.exiting(CLASS_NAME, "terminate");
+    }
+
+    /**
+     * このTCPSelectorThreadのSelectorを閉じる。
+     */
+    void closeSelector() {
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            LOGGER.logp(Level.INFO, CLASS_NAME, "closeSelector", "catched exception", ex);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void closeConnection(TCPConnection connection) {
+        try {
+            connection.close();
+        } catch (NetworkException ex) {
+            LOGGER.logp(Level.INFO, CLASS_NAME, "closeConnection", "catched exception", ex);
+        }
+    }
+
+    private void processAccept(TCPAcceptor acceptor) {
+        try {
+            while (acceptor.acceptNonBlocking() != null) {
+            }
+        } catch (NetworkException ex) {
+            LOGGER.logp(Level.FINE, CLASS_NAME, "processAccept", "catched exception", ex);
+        }
+    }
+
+    private void processRead(TCPConnection connection) {
+        try {
+            if (!connection.receiveAvailable()) {
+                closeConnection(connection);
+            }
+        } catch (NetworkException ex) {
+            LOGGER.logp(Level.FINE, CLASS_NAME, "processRead", "catched exception", ex);
+            closeConnection(connection);
+        }
+    }
+
+    private void processWrite(TCPConnection connection) {
+        try {
+            connection.flushPendingWrites();
+        } catch (NetworkException ex) {
+            LOGGER.logp(Level.FINE, CLASS_NAME, "processWrite", "catched exception", ex);
+            closeConnection(connection);
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        Object attachment = key.attachment();
+
+        if (key.isAcceptable()) {
+            processAccept((TCPAcceptor) attachment);
+            return;
+        }
+
+        TCPConnection connection = (TCPConnection) attachment;
+
+        if (key.isReadable()) {
+            processRead(connection);
+        }
+
+        if (key.isValid() && key.isWritable()) {
+            processWrite(connection);
+        }
+    }
+
+    @Override
+    public void run() {
+        LOGGER.entering(CLASS_NAME, "run");
+
+        try {
+            while (!terminated) {
+                runTasks();
+
+                try {
+                    selector.select();
+                } catch (IOException ex) {
+                    LOGGER.logp(Level.WARNING, CLASS_NAME, "run", "catched exception", ex);
+                    break;
+                }
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    try {
+                        if (key.isValid()) {
+                            processKey(key);
+                        }
+                    } catch (CancelledKeyException ex) {
+                        LOGGER.logp(Level.FINE, CLASS_NAME, "run", "catched exception", ex);
+                    }
+                }
+            }
+        } finally {
+            runTasks();
+            closeSelector();
+        }
+
+        LOGGER.exiting(CLASS_NAME, "run");
+    }
+}
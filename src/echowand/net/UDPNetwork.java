@@ -1,13 +1,24 @@
 package echowand.net;
 
 import echowand.util.Pair;
+import echowand.util.Tracer;
 import java.io.IOException;
 import java.net.DatagramPacket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
@@ -15,6 +26,8 @@ import java.util.logging.Logger;
 
 /**
  * UDPを利用した通信管理
+ * DatagramChannelを利用する場合、チャネルは常にノンブロッキングモードで利用され、
+ * 受信と送信の待機はそれぞれ専用のSelectorで行われる。
  * @author ymakino
  */
 public class UDPNetwork {
@@ -26,6 +39,11 @@ public class UDPNetwork {
      */
     public static final int  DEFAULT_BUFFER_SIZE = 1500;
     
+    /**
+     * DatagramChannel利用時に保持する受信バッファ数のデフォルト値
+     */
+    public static final int DEFAULT_BUFFER_POOL_SIZE = 4;
+    
     private NetworkInterface networkInterface;
     private List<NetworkInterface> receiverInterfaces;
     private InetAddress localAddress;
@@ -35,6 +53,15 @@ public class UDPNetwork {
     private int bufferSize = DEFAULT_BUFFER_SIZE;
     private boolean inService = false;
     
+    private DatagramChannel datagramChannel;
+    private Selector receiveSelector;
+    private Selector sendSelector;
+    private final Object sendLock = new Object();
+    private ByteBufferPool bufferPool;
+    private int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+    private boolean datagramChannelEnabled = false;
+    private boolean directBufferEnabled = false;
+    
     private boolean remotePortNumberEnabled;
     
     /**
@@ -101,12 +128,38 @@ public class UDPNetwork {
             multicastSocket.close();
             multicastSocket = null;
         }
+        
+        if (datagramChannel != null) {
+            try {
+                datagramChannel.close();
+            } catch (IOException ex) {
+                LOGGER.logp(Level.INFO, CLASS_NAME, "closeSocket", "catched exception", ex);
+            }
+            datagramChannel = null;
+        }
+        
+        receiveSelector = closeSelector(receiveSelector);
+        sendSelector = closeSelector(sendSelector);
+        
+        bufferPool = null;
             
         inService = false;
         
         LOGGER.exiting(CLASS_NAME, "closeSocket");
     }
     
+    private Selector closeSelector(Selector selector) {
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                LOGGER.logp(Level.INFO, CLASS_NAME, "closeSelector", "catched exception", ex);
+            }
+        }
+        
+        return null;
+    }
+    
     private synchronized void openSocket() throws NetworkException {
         LOGGER.entering(CLASS_NAME, "openSocket");
         
@@ -144,6 +197,90 @@ public class UDPNetwork {
         LOGGER.exiting(CLASS_NAME, "openSocket");
     }
     
+    private NetworkInterface getDefaultMulticastInterface() throws IOException {
+        boolean inet6 = multicastAddress instanceof Inet6Address;
+        
+        for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!ni.isUp() || ni.isLoopback() || !ni.supportsMulticast()) {
+                continue;
+            }
+            
+            for (InetAddress addr : Collections.list(ni.getInetAddresses())) {
+                if ((addr instanceof Inet6Address) == inet6) {
+                    return ni;
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    private NetworkInterface getMulticastInterface() throws IOException {
+        if (networkInterface != null) {
+            return networkInterface;
+        }
+        
+        if (localAddress != null) {
+            return NetworkInterface.getByInetAddress(localAddress);
+        }
+        
+        return getDefaultMulticastInterface();
+    }
+    
+    private synchronized void openChannel() throws NetworkException {
+        LOGGER.entering(CLASS_NAME, "openChannel");
+        
+        try {
+            ProtocolFamily family;
+            if (multicastAddress instanceof Inet6Address) {
+                family = StandardProtocolFamily.INET6;
+            } else {
+                family = StandardProtocolFamily.INET;
+            }
+            
+            datagramChannel = DatagramChannel.open(family);
+            // MulticastSocketと同様にバインド前にアドレスの再利用を有効にする
+            datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            datagramChannel.bind(new InetSocketAddress(getPortNumber()));
+            
+            NetworkInterface multicastInterface = getMulticastInterface();
+            
+            if (multicastInterface == null && receiverInterfaces.isEmpty()) {
+                throw new IOException("no multicast interface");
+            }
+            
+            if (multicastInterface != null) {
+                datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, multicastInterface);
+                datagramChannel.join(multicastAddress, multicastInterface);
+            }
+            
+            for (NetworkInterface receiverInterface : receiverInterfaces) {
+                datagramChannel.join(multicastAddress, receiverInterface);
+            }
+            
+            // MulticastSocket.setLoopbackMode(false)と同じくループバックを有効にする
+            datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            
+            // モードを切り替えずに待機できるように、チャネルは常にノンブロッキングで利用する
+            datagramChannel.configureBlocking(false);
+            receiveSelector = Selector.open();
+            datagramChannel.register(receiveSelector, SelectionKey.OP_READ);
+            sendSelector = Selector.open();
+            datagramChannel.register(sendSelector, SelectionKey.OP_WRITE);
+            
+            bufferPool = new ByteBufferPool(bufferSize, bufferPoolSize, directBufferEnabled);
+
+            inService = true;
+        } catch (IOException ex) {
+            closeSocket();
+            NetworkException exception = new NetworkException("catched exception", ex);
+            LOGGER.throwing(CLASS_NAME, "openChannel", exception);
+            throw exception;
+        }
+        
+        LOGGER.exiting(CLASS_NAME, "openChannel");
+    }
+    
     /**
      * 送受信に利用するポート番号を返す。
      * @return ポート番号
@@ -183,6 +320,127 @@ public class UDPNetwork {
         this.bufferSize = bufferSize;
     }
     
+    /**
+     * DatagramChannel利用時に保持する受信バッファの最大数を返す。
+     * @return 受信バッファの最大数
+     */
+    public int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+    
+    /**
+     * DatagramChannel利用時に保持する受信バッファの最大数を設定する。
+     * サービス開始前に呼び出す必要がある。
+     * @param bufferPoolSize 受信バッファの最大数
+     * @return 設定が成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean setBufferPoolSize(int bufferPoolSize) {
+        LOGGER.entering(CLASS_NAME, "setBufferPoolSize", bufferPoolSize);
+        
+        if (isInService()) {
+            LOGGER.exiting(CLASS_NAME, "setBufferPoolSize", false);
+            return false;
+        }
+        
+        this.bufferPoolSize = bufferPoolSize;
+        
+        LOGGER.exiting(CLASS_NAME, "setBufferPoolSize", true);
+        return true;
+    }
+    
+    /**
+     * MulticastSocketの代わりにDatagramChannelを利用して送受信を行うかを返す。
+     * @return DatagramChannelを利用する場合にはtrue、そうでなければfalse
+     */
+    public boolean isDatagramChannelEnabled() {
+        return datagramChannelEnabled;
+    }
+    
+    /**
+     * MulticastSocketの代わりにDatagramChannelを利用して送受信を行うように設定する。
+     * DatagramChannelを利用する場合、受信バッファは再利用され、受信データから直接フレームの解析を行う。
+     * サービス開始前に呼び出す必要がある。
+     * @return 設定が成功した場合にはtrue、そうでければfalse
+     */
+    public synchronized boolean enableDatagramChannel() {
+        LOGGER.entering(CLASS_NAME, "enableDatagramChannel");
+        
+        if (isInService()) {
+            LOGGER.exiting(CLASS_NAME, "enableDatagramChannel", false);
+            return false;
+        }
+        
+        datagramChannelEnabled = true;
+        
+        LOGGER.exiting(CLASS_NAME, "enableDatagramChannel", true);
+        return true;
+    }
+    
+    /**
+     * DatagramChannelではなくMulticastSocketを利用して送受信を行うように設定する。
+     * サービス開始前に呼び出す必要がある。
+     * @return 設定が成功した場合にはtrue、そうでければfalse
+     */
+    public synchronized boolean disableDatagramChannel() {
+        LOGGER.entering(CLASS_NAME, "disableDatagramChannel");
+        
+        if (isInService()) {
+            LOGGER.exiting(CLASS_NAME, "disableDatagramChannel", false);
+            return false;
+        }
+        
+        datagramChannelEnabled = false;
+        
+        LOGGER.exiting(CLASS_NAME, "disableDatagramChannel", true);
+        return true;
+    }
+    
+    /**
+     * DatagramChannel利用時の受信バッファにダイレクトバッファを利用するかを返す。
+     * @return ダイレクトバッファを利用する場合にはtrue、そうでなければfalse
+     */
+    public boolean isDirectBufferEnabled() {
+        return directBufferEnabled;
+    }
+    
+    /**
+     * DatagramChannel利用時の受信バッファにダイレクトバッファを利用するように設定する。
+     * サービス開始前に呼び出す必要がある。
+     * @return 設定が成功した場合にはtrue、そうでければfalse
+     */
+    public synchronized boolean enableDirectBuffer() {
+        LOGGER.entering(CLASS_NAME, "enableDirectBuffer");
+        
+        if (isInService()) {
+            LOGGER.exiting(CLASS_NAME, "enableDirectBuffer", false);
+            return false;
+        }
+        
+        directBufferEnabled = true;
+        
+        LOGGER.exiting(CLASS_NAME, "enableDirectBuffer", true);
+        return true;
+    }
+    
+    /**
+     * DatagramChannel利用時の受信バッファにダイレクトバッファを利用しないように設定する。
+     * サービス開始前に呼び出す必要がある。
+     * @return 設定が成功した場合にはtrue、そうでければfalse
+     */
+    public synchronized boolean disableDirectBuffer() {
+        LOGGER.entering(CLASS_NAME, "disableDirectBuffer");
+        
+        if (isInService()) {
+            LOGGER.exiting(CLASS_NAME, "disableDirectBuffer", false);
+            return false;
+        }
+        
+        directBufferEnabled = false;
+        
+        LOGGER.exiting(CLASS_NAME, "disableDirectBuffer", true);
+        return true;
+    }
+    
     /**
      * このUDPNetworkが有効であるかどうか返す。
      * @return 有効であればtrue、そうでなければfalse
@@ -271,7 +529,11 @@ public class UDPNetwork {
             result = false;
         } else {
             closeSocket();
-            openSocket();
+            if (datagramChannelEnabled) {
+                openChannel();
+            } else {
+                openSocket();
+            }
             result = inService;
         }
         
@@ -281,12 +543,14 @@ public class UDPNetwork {
     
     /**
      * このUDPNetworkのサブネットにフレームを転送する。
+     * 送信バッファに空きができるまでの待機はこのUDPNetworkのロックを保持せずに行うため、待機中でもstopServiceを呼び出すことができる。
+     * その場合、待機中の送信は失敗する。
      * @param remoteNodeInfo 送信先のノード情報
      * @param commonFrame 送信する共通フレーム
      * @throws NetworkException 送信に失敗した場合
      */
-    public synchronized void send(InetNodeInfo remoteNodeInfo, CommonFrame commonFrame) throws NetworkException {
-        LOGGER.entering(CLASS_NAME, "send", new Object[]{remoteNodeInfo, commonFrame});
+    public void send(InetNodeInfo remoteNodeInfo, CommonFrame commonFrame) throws NetworkException {
+        Tracer.entering(LOGGER, CLASS_NAME, "send", remoteNodeInfo, commonFrame);
         
         if (!isInService()) {
             NetworkException exception = new NetworkException("not working");
@@ -294,7 +558,7 @@ public class UDPNetwork {
             throw exception;
         }
         
-        byte[] data = commonFrame.toBytes();
+        ByteBuffer data = CommonFrameEncoder.encode(commonFrame);
 
         try {
             InetAddress receiver = remoteNodeInfo.getAddress();
@@ -304,22 +568,54 @@ public class UDPNetwork {
                 port = remoteNodeInfo.getPortNumber();
             }
             
-            DatagramPacket packet = new DatagramPacket(data, data.length, receiver, port);
+            MulticastSocket socket;
+            DatagramChannel channel;
+            Selector selector;
+            
+            synchronized (this) {
+                socket = multicastSocket;
+                channel = datagramChannel;
+                selector = sendSelector;
+            }
             
-            multicastSocket.send(packet);
+            synchronized (sendLock) {
+                if (channel != null) {
+                    sendToChannel(channel, selector, data, new InetSocketAddress(receiver, port));
+                } else if (socket != null) {
+                    DatagramPacket packet = new DatagramPacket(data.array(), data.arrayOffset(), data.remaining(), receiver, port);
+                    socket.send(packet);
+                } else {
+                    throw new IOException("socket closed");
+                }
+            }
         } catch (IOException ex) {
             NetworkException exception = new NetworkException("catched exception", ex);
             LOGGER.throwing(CLASS_NAME, "send", exception);
             throw exception;
         }
         
-        LOGGER.exiting(CLASS_NAME, "send");
+        Tracer.exiting(LOGGER, CLASS_NAME, "send");
     }
     
-    private DatagramPacket receivePacket() throws IOException {
+    private void await(Selector selector) throws IOException {
+        try {
+            selector.select();
+            selector.selectedKeys().clear();
+        } catch (ClosedSelectorException ex) {
+            throw new IOException("channel closed", ex);
+        }
+    }
+    
+    private void sendToChannel(DatagramChannel channel, Selector selector, ByteBuffer data, InetSocketAddress saddr) throws IOException {
+        while (channel.send(data, saddr) == 0) {
+            await(selector);
+        }
+    }
+    
+    private DatagramPacket receivePacket(MulticastSocket socket) throws IOException {
         byte[] packetData = new byte[this.bufferSize];
         DatagramPacket packet = new DatagramPacket(packetData, packetData.length);
-        multicastSocket.receive(packet);
+        socket.receive(packet);
         return packet;
     }
     
@@ -334,6 +630,53 @@ public class UDPNetwork {
         return data;
     }
     
+    private Pair<InetNodeInfo, CommonFrame> createPair(InetAddress addr, int port, CommonFrame commonFrame) {
+        if (isRemotePortNumberEnabled()) {
+            return new Pair<InetNodeInfo, CommonFrame>(new InetNodeInfo(addr, port), commonFrame);
+        } else {
+            return new Pair<InetNodeInfo, CommonFrame>(new InetNodeInfo(addr), commonFrame);
+        }
+    }
+    
+    private Pair<InetNodeInfo, CommonFrame> receiveFromChannel(DatagramChannel channel, ByteBufferPool pool) throws IOException, InvalidDataException {
+        ByteBuffer buffer = pool.acquire();
+        
+        try {
+            InetSocketAddress saddr = (InetSocketAddress)channel.receive(buffer);
+            
+            if (saddr == null) {
+                return null;
+            }
+            
+            buffer.flip();
+            CommonFrame commonFrame = new CommonFrame(buffer);
+            return createPair(saddr.getAddress(), saddr.getPort(), commonFrame);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+    
+    private Pair<InetNodeInfo, CommonFrame> receiveFromChannel(DatagramChannel channel, Selector selector, ByteBufferPool pool) throws IOException, InvalidDataException {
+        for (;;) {
+            Pair<InetNodeInfo, CommonFrame> pair = receiveFromChannel(channel, pool);
+            
+            if (pair != null) {
+                return pair;
+            }
+            
+            await(selector);
+        }
+    }
+    
+    private Pair<InetNodeInfo, CommonFrame> receiveFromSocket(MulticastSocket socket) throws IOException, InvalidDataException {
+        DatagramPacket packet = receivePacket(socket);
+        byte[] data = getData(packet);
+
+        CommonFrame commonFrame = new CommonFrame(data);
+
+        return createPair(packet.getAddress(), packet.getPort(), commonFrame);
+    }
+    
     /**
      * このUDPNetworkのサブネットからフレームを受信する。
      * 受信を行うまで待機する。
@@ -341,29 +684,36 @@ public class UDPNetwork {
      * @throws NetworkException 無効なフレームを受信、あるいは受信に失敗した場合
      */
     public Pair<InetNodeInfo, CommonFrame> receive()  throws NetworkException {
-        LOGGER.entering(CLASS_NAME, "receive");
+        Tracer.entering(LOGGER, CLASS_NAME, "receive");
         
         if (!isInService()) {
             throw new NetworkException("not working");
         }
         
         try {
-            DatagramPacket packet = receivePacket();
-            byte[] data = getData(packet);
-
-            CommonFrame commonFrame = new CommonFrame(data);
+            MulticastSocket socket;
+            DatagramChannel channel;
+            Selector selector;
+            ByteBufferPool pool;
             
-            InetAddress addr = packet.getAddress();
+            synchronized (this) {
+                socket = multicastSocket;
+                channel = datagramChannel;
+                selector = receiveSelector;
+                pool = bufferPool;
+            }
             
             Pair<InetNodeInfo, CommonFrame> pair;
             
-            if (isRemotePortNumberEnabled()) {
-                int port = packet.getPort();
-                pair = new Pair<InetNodeInfo, CommonFrame>(new InetNodeInfo(addr, port), commonFrame);
+            if (channel != null) {
+                pair = receiveFromChannel(channel, selector, pool);
+            } else if (socket != null) {
+                pair = receiveFromSocket(socket);
             } else {
-                pair = new Pair<InetNodeInfo, CommonFrame>(new InetNodeInfo(addr), commonFrame);
+                throw new IOException("socket closed");
             }
-            LOGGER.exiting(CLASS_NAME, "receive", pair);
+            
+            Tracer.exiting(LOGGER, CLASS_NAME, "receive", pair);
             return pair;
         } catch (IOException ex) {
             NetworkException exception = new NetworkException("catched exception", ex);
@@ -375,4 +725,53 @@ public class UDPNetwork {
             throw exception;
         }
     }
+    
+    private void drainChannel(DatagramChannel channel, ByteBufferPool pool, List<Pair<InetNodeInfo, CommonFrame>> pairs, int max) {
+        try {
+            while (pairs.size() < max) {
+                try {
+                    Pair<InetNodeInfo, CommonFrame> pair = receiveFromChannel(channel, pool);
+                    if (pair == null) {
+                        break;
+                    }
+                    pairs.add(pair);
+                } catch (InvalidDataException ex) {
+                    LOGGER.logp(Level.FINE, CLASS_NAME, "drainChannel", "invalid frame", ex);
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.logp(Level.FINE, CLASS_NAME, "drainChannel", "catched exception", ex);
+        }
+    }
+    
+    /**
+     * このUDPNetworkのサブネットから複数のフレームをまとめて受信する。
+     * 少なくとも1つのフレームを受信するまで待機し、その後ソケットに既に届いているフレームを待機せずに最大max個まで受信する。
+     * MulticastSocketを利用している場合には、常に1つのフレームのみを受信する。
+     * 2つ目以降のフレームの解析に失敗した場合、そのフレームは破棄される。
+     * @param max 受信するフレームの最大数
+     * @return 受信したフレームのリスト
+     * @throws NetworkException 無効なフレームを受信、あるいは受信に失敗した場合
+     */
+    public List<Pair<InetNodeInfo, CommonFrame>> receiveBatch(int max) throws NetworkException {
+        Tracer.entering(LOGGER, CLASS_NAME, "receiveBatch", max);
+        
+        LinkedList<Pair<InetNodeInfo, CommonFrame>> pairs = new LinkedList<Pair<InetNodeInfo, CommonFrame>>();
+        pairs.add(receive());
+        
+        DatagramChannel channel;
+        ByteBufferPool pool;
+
+        synchronized (this) {
+            channel = datagramChannel;
+            pool = bufferPool;
+        }
+        
+        if (channel != null) {
+            drainChannel(channel, pool, pairs, max);
+        }
+        
+        Tracer.exiting(LOGGER, CLASS_NAME, "receiveBatch", pairs);
+        return pairs;
+    }
 }
@@ -1,6 +1,7 @@
 package echowand.object;
 
 import echowand.common.EOJ;
+import echowand.common.EPC;
 import echowand.common.ESV;
 import echowand.logic.DefaultRequestProcessor;
 import echowand.net.CommonFrame;
@@ -41,6 +42,16 @@ public class AnnounceRequestProcessor extends DefaultRequestProcessor {
     }
     
     
+    private void invalidatePropertyMaps(Frame frame) {
+        logger.entering(className, "invalidatePropertyMaps", frame);
+        
+        for (RemoteObject object : remoteManager.getAtNode(frame.getSender())) {
+            object.invalidatePropertyMaps();
+        }
+        
+        logger.exiting(className, "invalidatePropertyMaps");
+    }
+    
     private StandardPayload updateINForINFC(Frame frame) {
         logger.entering(className, "updateINForINFC", frame);
         
@@ -57,6 +68,9 @@ public class AnnounceRequestProcessor extends DefaultRequestProcessor {
         for (int i = 0; i < len; i++) {
             Property property = payload.getFirstPropertyAt(i);
             replyPayload.addFirstProperty(new Property(property.getEPC()));
+            if (property.getEPC() == EPC.xD5 && payload.getSEOJ().isNodeProfileObject()) {
+                invalidatePropertyMaps(frame);
+            }
             if (object != null) {
                 object.notifyData(property.getEPC(), new ObjectData(property.getEDT()));
             }
@@ -0,0 +1,435 @@
+package echowand.object;
+
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.logic.SetGetTransactionConfig;
+import echowand.logic.Transaction;
+import echowand.logic.TransactionFuture;
+import echowand.logic.TransactionListener;
+import echowand.logic.TransactionManager;
+import echowand.net.CommonFrame;
+import echowand.net.Frame;
+import echowand.net.Node;
+import echowand.net.Property;
+import echowand.net.StandardPayload;
+import echowand.net.Subnet;
+import echowand.net.SubnetException;
+import echowand.net.UDPNetwork;
+import echowand.util.HashedWheelTimer;
+import echowand.util.Pair;
+import echowand.util.Tracer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.logging.Logger;
+
+/**
+ * 同じノードの同じオブジェクトに対するGetをまとめて一つのフレームで送信する。
+ * 指定された時間内に要求されたGetは、プロパティ数やフレームサイズの上限に達するまで一つのトランザクションにまとめられる。
+ * レスポンスのプロパティはEPC毎にそれぞれの要求元に返される。
+ * @author Yoshiki Makino
+ */
+public class GetRequestCoalescer {
+    private static final Logger logger = Logger.getLogger(GetRequestCoalescer.class.getName());
+    private static final String className = GetRequestCoalescer.class.getName();
+
+    /**
+     * Getをまとめる時間のデフォルト値(ミリ秒)
+     */
+    public static final int DEFAULT_WINDOW = 5;
+
+    /**
+     * 一つのフレームにまとめるプロパティ数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_OPC = 16;
+
+    /**
+     * リクエストフレームの最大サイズのデフォルト値(バイト)
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = UDPNetwork.DEFAULT_BUFFER_SIZE;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int PROPERTY_SIZE = 2;
+
+    private Subnet subnet;
+    private TransactionManager transactionManager;
+    private int window = DEFAULT_WINDOW;
+    private int maxOPC = DEFAULT_MAX_OPC;
+    private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private int timeout = RemoteObject.TRANSACTION_TIMEOUT;
+    private EOJ sourceEOJ = RemoteObject.SOURCE_EOJ;
+
+    private HashMap<Pair<Node, EOJ>, Batch> batches;
+
+    private class Batch {
+        private Node node;
+        private EOJ eoj;
+        private LinkedHashMap<EPC, LinkedList<TransactionFuture<ObjectData>>> futures;
+        private HashedWheelTimer.Timeout timeoutHandle;
+
+        public Batch(Node node, EOJ eoj) {
+            this.node = node;
+            this.eoj = eoj;
+            this.futures = new LinkedHashMap<EPC, LinkedList<TransactionFuture<ObjectData>>>();
+        }
+
+        public void add(EPC epc, TransactionFuture<ObjectData> future) {
+            LinkedList<TransactionFuture<ObjectData>> list = futures.get(epc);
+            if (list == null) {
+                list = new LinkedList<TransactionFuture<ObjectData>>();
+                futures.put(epc, list);
+            }
+            list.add(future);
+        }
+
+        public boolean isFull() {
+            int count = futures.size();
+            return count >= maxOPC || HEADER_SIZE + PROPERTY_SIZE * (count + 1) > maxFrameSize;
+        }
+    }
+
+    private class FlushTask implements Runnable {
+        private Batch batch;
+
+        public FlushTask(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            Tracer.entering(logger, className, "FlushTask.run");
+
+            if (removeBatch(batch)) {
+                execute(batch);
+            }
+
+            Tracer.exiting(logger, className, "FlushTask.run");
+        }
+    }
+
+    private class CoalescedTransactionListener implements TransactionListener {
+        private Batch batch;
+
+        public CoalescedTransactionListener(Batch batch) {
+            this.batch = batch;
+        }
+
+        private void complete(EPC epc, ObjectData data) {
+            LinkedList<TransactionFuture<ObjectData>> list = batch.futures.remove(epc);
+
+            if (list == null) {
+                return;
+            }
+
+            for (TransactionFuture<ObjectData> future : list) {
+                if (data == null) {
+                    future.fail(new EchonetObjectException("no valid data"));
+                } else {
+                    future.complete(data);
+                }
+            }
+        }
+
+        @Override
+        public void begin(Transaction t) {
+        }
+
+        @Override
+        public void send(Transaction t, Subnet subnet, Frame frame, boolean success) {
+        }
+
+        @Override
+        public void receive(Transaction t, Subnet subnet, Frame frame) {
+            Tracer.entering(logger, className, "CoalescedTransactionListener.receive", t, subnet, frame);
+
+            if (!frame.getSender().equals(batch.node)) {
+                Tracer.exiting(logger, className, "CoalescedTransactionListener.receive");
+                return;
+            }
+
+            CommonFrame cf = frame.getCommonFrame();
+            StandardPayload payload = cf.getEDATA(StandardPayload.class);
+
+            if (payload == null || !payload.getSEOJ().equals(batch.eoj)) {
+                Tracer.exiting(logger, className, "CoalescedTransactionListener.receive");
+                return;
+            }
+
+            synchronized (batch) {
+                int count = payload.getFirstOPC();
+                for (int i=0; i<count; i++) {
+                    Property property = payload.getFirstPropertyAt(i);
+                    if (property.getPDC() == 0) {
+                        complete(property.getEPC(), null);
+                    } else {
+                        complete(property.getEPC(), new ObjectData(property.getEDT()));
+                    }
+                }
+            }
+
+            t.finish();
+
+            Tracer.exiting(logger, className, "CoalescedTransactionListener.receive");
+        }
+
+        @Override
+        public void finish(Transaction t) {
+            Tracer.entering(logger, className, "CoalescedTransactionListener.finish", t);
+
+            synchronized (batch) {
+                for (LinkedList<TransactionFuture<ObjectData>> list : batch.futures.values()) {
+                    for (TransactionFuture<ObjectData> future : list) {
+                        if (t.countResponses() == 0) {
+                            future.fail(new EchonetObjectException("no response"));
+                        } else {
+                            future.fail(new EchonetObjectException("no valid data"));
+                        }
+                    }
+                }
+                batch.futures.clear();
+            }
+
+            Tracer.exiting(logger, className, "CoalescedTransactionListener.finish");
+        }
+    }
+
+    /**
+     * GetRequestCoalescerを生成する。
+     * @param subnet リクエストを送信するサブネット
+     * @param transactionManager トランザクション生成に用いられるTransactionManager
+     */
+    public GetRequestCoalescer(Subnet subnet, TransactionManager transactionManager) {
+        logger.entering(className, "GetRequestCoalescer", new Object[]{subnet, transactionManager});
+
+        this.subnet = subnet;
+        this.transactionManager = transactionManager;
+        this.batches = new HashMap<Pair<Node, EOJ>, Batch>();
+
+        logger.exiting(className, "GetRequestCoalescer");
+    }
+
+    /**
+     * Getをまとめる時間を返す。
+     * @return Getをまとめる時間(ミリ秒)
+     */
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    /**
+     * Getをまとめる時間を設定する。0を指定した場合には、上限に達するかflushが呼び出されるまでまとめる。
+     * @param window Getをまとめる時間(ミリ秒)
+     */
+    public synchronized void setWindow(int window) {
+        logger.entering(className, "setWindow", window);
+
+        if (window < 0) {
+            throw new IllegalArgumentException("invalid window: " + window);
+        }
+
+        this.window = window;
+
+        logger.exiting(className, "setWindow");
+    }
+
+    /**
+     * 一つのフレームにまとめるプロパティ数の上限を返す。
+     * @return プロパティ数の上限
+     */
+    public synchronized int getMaxOPC() {
+        return maxOPC;
+    }
+
+    /**
+     * 一つのフレームにまとめるプロパティ数の上限を設定する。
+     * @param maxOPC プロパティ数の上限
+     */
+    public synchronized void setMaxOPC(int maxOPC) {
+        logger.entering(className, "setMaxOPC", maxOPC);
+
+        if (maxOPC <= 0 || maxOPC > 0xff) {
+            throw new IllegalArgumentException("invalid maxOPC: " + maxOPC);
+        }
+
+        this.maxOPC = maxOPC;
+
+        logger.exiting(className, "setMaxOPC");
+    }
+
+    /**
+     * リクエストフレームの最大サイズを返す。
+     * @return リクエストフレームの最大サイズ(バイト)
+     */
+    public synchronized int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * リクエストフレームの最大サイズを設定する。
+     * @param maxFrameSize リクエストフレームの最大サイズ(バイト)
+     */
+    public synchronized void setMaxFrameSize(int maxFrameSize) {
+        logger.entering(className, "setMaxFrameSize", maxFrameSize);
+
+        if (maxFrameSize < HEADER_SIZE + PROPERTY_SIZE) {
+            throw new IllegalArgumentException("invalid maxFrameSize: " + maxFrameSize);
+        }
+
+        this.maxFrameSize = maxFrameSize;
+
+        logger.exiting(className, "setMaxFrameSize");
+    }
+
+    /**
+     * トランザクションのタイムアウト時間を返す。
+     * @return タイムアウト(ミリ秒)
+     */
+    public synchronized int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * トランザクションのタイムアウト時間を設定する。
+     * @param timeout タイムアウト(ミリ秒)
+     */
+    public synchronized void setTimeout(int timeout) {
+        logger.entering(className, "setTimeout", timeout);
+
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("invalid timeout: " + timeout);
+        }
+
+        this.timeout = timeout;
+
+        logger.exiting(className, "setTimeout");
+    }
+
+    /**
+     * まとめている途中のGetの宛先の数を返す。
+     * @return まとめている途中のGetの宛先の数
+     */
+    public synchronized int countPendingBatches() {
+        return batches.size();
+    }
+
+    private synchronized boolean removeBatch(Batch batch) {
+        Pair<Node, EOJ> key = new Pair<Node, EOJ>(batch.node, batch.eoj);
+
+        if (batches.get(key) != batch) {
+            return false;
+        }
+
+        batches.remove(key);
+
+        if (batch.timeoutHandle != null) {
+            batch.timeoutHandle.cancel();
+            batch.timeoutHandle = null;
+        }
+
+        return true;
+    }
+
+    private void execute(Batch batch) {
+        Tracer.entering(logger, className, "execute", batch);
+
+        SetGetTransactionConfig transactionConfig = new SetGetTransactionConfig();
+        transactionConfig.setResponseRequired(true);
+        transactionConfig.setSenderNode(subnet.getLocalNode());
+        transactionConfig.setReceiverNode(batch.node);
+        transactionConfig.setSourceEOJ(sourceEOJ);
+        transactionConfig.setDestinationEOJ(batch.eoj);
+
+        synchronized (batch) {
+            for (EPC epc : batch.futures.keySet()) {
+                transactionConfig.addGet(epc);
+            }
+        }
+
+        Transaction transaction = transactionManager.createTransaction(transactionConfig);
+        transaction.setTimeout(getTimeout());
+        transaction.addTransactionListener(new CoalescedTransactionListener(batch));
+
+        try {
+            transaction.execute();
+        } catch (SubnetException e) {
+            EchonetObjectException exception = new EchonetObjectException("getDataAsync failed", e);
+            synchronized (batch) {
+                for (LinkedList<TransactionFuture<ObjectData>> list : batch.futures.values()) {
+                    for (TransactionFuture<ObjectData> future : list) {
+                        future.fail(exception);
+                    }
+                }
+            }
+            transaction.finish();
+        }
+
+        Tracer.exiting(logger, className, "execute");
+    }
+
+    /**
+     * 指定されたノードのオブジェクトのEPCのデータを非同期に取得する。
+     * 同じノードとEOJに対するGetは、一定時間あるいは上限に達するまでまとめられた後に一つのフレームで送信される。
+     * レスポンスが存在しない場合や有効なデータが得られなかった場合には、EchonetObjectExceptionを原因として失敗する。
+     * 返されるTransactionFutureを取り消しても、まとめられたTransactionは終了しない。
+     * @param node 宛先ノード
+     * @param eoj 宛先EOJ
+     * @param epc EPCの指定
+     * @return 指定したEPCのデータを受け取るTransactionFuture
+     */
+    public TransactionFuture<ObjectData> getDataAsync(Node node, EOJ eoj, EPC epc) {
+        Tracer.entering(logger, className, "getDataAsync", node, eoj, epc);
+
+        TransactionFuture<ObjectData> future = new TransactionFuture<ObjectData>();
+        Batch fullBatch = null;
+
+        synchronized (this) {
+            Pair<Node, EOJ> key = new Pair<Node, EOJ>(node, eoj);
+            Batch batch = batches.get(key);
+
+            if (batch == null) {
+                batch = new Batch(node, eoj);
+                batches.put(key, batch);
+                if (window > 0) {
+                    batch.timeoutHandle = transactionManager.getTimeoutTimer().newTimeout(new FlushTask(batch), window);
+                }
+            }
+
+            synchronized (batch) {
+                batch.add(epc, future);
+                if (batch.isFull() && removeBatch(batch)) {
+                    fullBatch = batch;
+                }
+            }
+        }
+
+        if (fullBatch != null) {
+            execute(fullBatch);
+        }
+
+        Tracer.exiting(logger, className, "getDataAsync", future);
+        return future;
+    }
+
+    /**
+     * まとめている途中の全てのGetを直ちに送信する。
+     */
+    public void flush() {
+        Tracer.entering(logger, className, "flush");
+
+        LinkedList<Batch> flushed = new LinkedList<Batch>();
+
+        synchronized (this) {
+            for (Batch batch : new LinkedList<Batch>(batches.values())) {
+                if (removeBatch(batch)) {
+                    flushed.add(batch);
+                }
+            }
+        }
+
+        for (Batch batch : flushed) {
+            execute(batch);
+        }
+
+        Tracer.exiting(logger, className, "flush");
+    }
+}
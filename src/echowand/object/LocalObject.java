@@ -11,16 +11,35 @@ import java.util.logging.Logger;
 
 /**
  * ローカルに存在するECHONETオブジェクト
+ * プロパティデータの読み出しはロックを取得せずに、最後に設定されたデータの表を参照して行う。
+ * プロパティデータの変更はオブジェクト毎に直列化され、変更の通知はロックを解放してから行われる。
+ * 変更の通知はオブジェクト毎のキューに登録され、一つのスレッドによって変更された順番に配送される。
  * @author Yoshiki Makino
  */
 public class LocalObject implements EchonetObject {
     private static final Logger logger = Logger.getLogger(LocalObject.class.getName());
     private static final String className = LocalObject.class.getName();
     
-    private EOJ eoj;
+    private volatile EOJ eoj;
     private ObjectInfo objectInfo;
-    private EnumMap<EPC, ObjectData> propertyData;
+    private volatile EnumMap<EPC, ObjectData> propertyData;
     private LinkedList<LocalObjectDelegate> delegates;
+    private volatile LocalObjectDelegate[] delegateArray;
+    private int updateDepth;
+    private boolean draining;
+    private LinkedList<Notification> pendingNotifications;
+    
+    private static class Notification {
+        public EPC epc;
+        public ObjectData curData;
+        public ObjectData oldData;
+        
+        public Notification(EPC epc, ObjectData curData, ObjectData oldData) {
+            this.epc = epc;
+            this.curData = curData;
+            this.oldData = oldData;
+        }
+    }
     
     /**
      * 指定されたオブジェクト情報を用いてLocaObjectを生成
@@ -31,20 +50,29 @@ public class LocalObject implements EchonetObject {
         
         this.objectInfo = objectInfo;
         this.eoj = objectInfo.getClassEOJ().getEOJWithInstanceCode((byte)0x01);
-        propertyData = new EnumMap<EPC, ObjectData>(EPC.class);
         delegates = new LinkedList<LocalObjectDelegate>();
+        delegateArray = new LocalObjectDelegate[0];
+        updateDepth = 0;
+        draining = false;
+        pendingNotifications = new LinkedList<Notification>();
         
+        EnumMap<EPC, ObjectData> initialData = new EnumMap<EPC, ObjectData>(EPC.class);
         int len = objectInfo.size();
         for (int i=0; i<len; i++) {
             PropertyInfo info = objectInfo.getAtIndex(i);
-            propertyData.put(info.epc, new ObjectData(info.initialData));
+            initialData.put(info.epc, new ObjectData(info.initialData));
         }
+        propertyData = initialData;
         
         logger.exiting(className, "LocalObject");
     }
     
-    private synchronized LinkedList<LocalObjectDelegate> cloneDelegates() {
-        return new LinkedList<LocalObjectDelegate>(delegates);
+    private LocalObjectDelegate[] cloneDelegates() {
+        return delegateArray;
+    }
+    
+    private void updateDelegateArray() {
+        delegateArray = delegates.toArray(new LocalObjectDelegate[0]);
     }
     
     /**
@@ -61,6 +89,7 @@ public class LocalObject implements EchonetObject {
     
     /**
      * 指定されたEPCのプロパティのためにLocalObjectが内部で管理しているデータの内容を設定する。
+     * データの表は複製して変更され、変更中も読み出しは以前の表を参照して行われる。
      * @param epc 設定するデータのEPC
      * @param data 設定するデータの内容
      * @return 設定に成功したらtrue、そうでなければfalse
@@ -73,7 +102,9 @@ public class LocalObject implements EchonetObject {
             return false;
         }
 
-        propertyData.put(epc, data);
+        EnumMap<EPC, ObjectData> newPropertyData = new EnumMap<EPC, ObjectData>(propertyData);
+        newPropertyData.put(epc, data);
+        propertyData = newPropertyData;
         
         logger.exiting(className, "setInternalData", true);
         return true;
@@ -84,32 +115,98 @@ public class LocalObject implements EchonetObject {
      * LocalObject内部のデータと新たに指定されたデータを設定したSetResultオブジェクトをDelegateに順番に渡して行く。
      * 最終的にSetResultが保持している新たに指定された値にLocalObject内部のデータを変更する。
      * もしも、Delegateが処理に失敗した場合にはnullを返す。
+     * データの変更はこのオブジェクトのロックを取得して行い、変更の通知はロックを解放してから行う。
+     * 他のスレッドが通知を配送中の場合には、変更の通知はそのスレッドによって変更された順番に行われる。
      *
      * @param epc 設定するデータのEPC
      * @param data 設定するデータの内容
      * @return 設定に成功したらtrue、そうでなければfalse
      */
-    public synchronized boolean forceSetData(EPC epc, ObjectData data) {
+    public boolean forceSetData(EPC epc, ObjectData data) {
         logger.entering(className, "forceSetData", new Object[]{epc, data});
         
-        ObjectData oldData = this.getData(epc);
+        LocalObjectDelegate.SetState result;
+        
+        synchronized (this) {
+            ObjectData oldData = this.getData(epc);
 
-        LocalObjectDelegate.SetState result = setDataDelegate(epc, data, oldData);
+            result = setDataDelegate(epc, data, oldData);
 
-        if (result.isFail()) {
-            logger.exiting(className, "forceSetData", false);
-            return false;
+            if (result.isFail()) {
+                logger.exiting(className, "forceSetData", false);
+                return false;
+            }
+
+            setInternalData(epc, result.getNewData());
+
+            if (result.isDataChanged()) {
+                pendingNotifications.add(new Notification(epc, result.getNewData(), result.getCurrentData()));
+            }
         }
         
-        setInternalData(epc, result.getNewData());
-        
-        if (result.isDataChanged()) {
-            notifyDataChanged(epc, result.getNewData(), result.getCurrentData());
-        }
+        drainNotifications();
 
         logger.exiting(className, "forceSetData", true);
         return true;
     }
+    
+    /**
+     * 指定された処理をこのオブジェクトのロックを取得して実行する。
+     * 処理中の他のスレッドからのデータの変更は処理が終了するまで待たされる。
+     * 処理中に発生したデータの変更の通知は、ロックを解放してから順番に行われる。
+     * @param task 実行する処理
+     */
+    void update(Runnable task) {
+        logger.entering(className, "update", task);
+        
+        synchronized (this) {
+            updateDepth++;
+            try {
+                task.run();
+            } finally {
+                updateDepth--;
+            }
+        }
+        
+        drainNotifications();
+        
+        logger.exiting(className, "update");
+    }
+    
+    private synchronized Notification pollNotification() {
+        Notification notification = pendingNotifications.poll();
+        
+        if (notification == null) {
+            draining = false;
+        }
+        
+        return notification;
+    }
+    
+    private void drainNotifications() {
+        synchronized (this) {
+            if (draining || updateDepth > 0) {
+                return;
+            }
+            draining = true;
+        }
+        
+        for (;;) {
+            Notification notification = pollNotification();
+            if (notification == null) {
+                return;
+            }
+            
+            try {
+                notifyDataChanged(notification.epc, notification.curData, notification.oldData);
+            } catch (RuntimeException ex) {
+                synchronized (this) {
+                    draining = false;
+                }
+                throw ex;
+            }
+        }
+    }
 
     /**
      * 指定されたEPCのプロパティの内容を変更する。 Setの許可がないプロパティへの操作や、データの制約に従わない操作は失敗する。
@@ -122,7 +219,7 @@ public class LocalObject implements EchonetObject {
      * @return 設定に成功したらtrue、そうでなければfalse
      */
     @Override
-    public synchronized boolean setData(EPC epc, ObjectData data) {
+    public boolean setData(EPC epc, ObjectData data) {
         logger.entering(className, "setData", new Object[]{epc, data});
         
         if (!this.isSettable(epc)) {
@@ -148,7 +245,7 @@ public class LocalObject implements EchonetObject {
      * @param epc データのEPC
      * @return プロパティのデータ、存在しない場合にはnull
      */
-    public synchronized ObjectData getInternalData(EPC epc) {
+    public ObjectData getInternalData(EPC epc) {
         logger.entering(className, "getInternalData", epc);
         
         ObjectData data = propertyData.get(epc);
@@ -167,7 +264,7 @@ public class LocalObject implements EchonetObject {
      * @param epc データのEPC
      * @return プロパティのデータ、存在しない場合にはnull
      */
-    public synchronized ObjectData forceGetData(EPC epc) {
+    public ObjectData forceGetData(EPC epc) {
         logger.entering(className, "forceGetData", epc);
         
         LocalObjectDelegate.GetState result = getDataDelegate(epc);
@@ -191,7 +288,7 @@ public class LocalObject implements EchonetObject {
      * @return プロパティのデータ、存在しない場合にはnull
      */
     @Override
-    public synchronized ObjectData getData(EPC epc) {
+    public ObjectData getData(EPC epc) {
         logger.entering(className, "getData", epc);
         
         if (!this.isGettable(epc)) {
@@ -220,7 +317,7 @@ public class LocalObject implements EchonetObject {
      * @return 存在していればtrue、そうでなければfalse
      */
     @Override
-    public synchronized boolean contains(EPC epc) {
+    public boolean contains(EPC epc) {
         return propertyData.containsKey(epc);
     }
     
@@ -342,6 +439,7 @@ public class LocalObject implements EchonetObject {
             result = false;
         } else {
             result = delegates.add(delegate);
+            updateDelegateArray();
         }
         
         logger.entering(className, "addDelegate", result);
@@ -357,6 +455,7 @@ public class LocalObject implements EchonetObject {
         logger.entering(className, "removeDelegate", delegate);
         
         boolean result = delegates.remove(delegate);
+        updateDelegateArray();
         
         logger.entering(className, "removeDelegate", result);
         return result;
@@ -158,9 +158,12 @@ public class LocalSetGetAtomic implements Runnable {
     public void run() {
         logger.entering(className, "run");
 
-        synchronized (object) {
-            doSetGet();
-        }
+        object.update(new Runnable() {
+            @Override
+            public void run() {
+                doSetGet();
+            }
+        });
         
         logger.exiting(className, "run");
     }
@@ -3,13 +3,22 @@ package echowand.object;
 import echowand.common.Data;
 import echowand.common.EOJ;
 import echowand.common.EPC;
+import echowand.common.ESV;
 import echowand.common.PropertyMap;
 import echowand.logic.SetGetTransactionConfig;
 import echowand.logic.Transaction;
+import echowand.logic.TransactionFuture;
 import echowand.logic.TransactionListener;
 import echowand.logic.TransactionManager;
 import echowand.net.*;
+import echowand.util.Pair;
+import echowand.util.Tracer;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -41,14 +50,33 @@ public class RemoteObject implements EchonetObject {
      */
     public static final EPC ANNOUNCE_PROPERTYMAP_EPC = EPC.x9D;
     
+    private static final EPC[] PROPERTYMAP_EPCS = {GET_PROPERTYMAP_EPC, SET_PROPERTYMAP_EPC, ANNOUNCE_PROPERTYMAP_EPC};
+    
     private TransactionManager transactionManager;
     private Subnet subnet;
     private Node node;
     private EOJ eoj;
     private int timeout;
+    private GetRequestCoalescer getRequestCoalescer;
+    private RemotePropertyCache propertyCache;
+    
+    private boolean propertyMapCacheEnabled;
+    private long propertyMapCacheTTL;
+    private int propertyMapGeneration;
+    private EnumMap<EPC, CachedPropertyMap> propertyMaps;
     
     private LinkedList<RemoteObjectObserver> observers;
     
+    private static class CachedPropertyMap {
+        public PropertyMap propertyMap;
+        public long time;
+        
+        public CachedPropertyMap(PropertyMap propertyMap) {
+            this.propertyMap = propertyMap;
+            this.time = System.currentTimeMillis();
+        }
+    }
+    
     /**
      * RemoteObjectを生成する。
      * @param subnet このRemoteObjectが含まれるサブネット
@@ -65,6 +93,10 @@ public class RemoteObject implements EchonetObject {
         this.transactionManager = transactionManager;
         this.observers = new LinkedList<RemoteObjectObserver>();
         this.timeout = TRANSACTION_TIMEOUT;
+        this.propertyMapCacheEnabled = true;
+        this.propertyMapCacheTTL = 0;
+        this.propertyMapGeneration = 0;
+        this.propertyMaps = new EnumMap<EPC, CachedPropertyMap>(EPC.class);
         
         logger.entering(className, "RemoteObject");
     }
@@ -137,11 +169,68 @@ public class RemoteObject implements EchonetObject {
         return timeout;
     }
     
+    /**
+     * Getをまとめて送信するGetRequestCoalescerを設定する。
+     * 設定した場合、getDataとgetDataAsyncはGetRequestCoalescerを利用してデータを取得する。
+     * @param getRequestCoalescer 利用するGetRequestCoalescer、nullの場合には利用しない
+     */
+    public synchronized void setGetRequestCoalescer(GetRequestCoalescer getRequestCoalescer) {
+        logger.entering(className, "setGetRequestCoalescer", getRequestCoalescer);
+        
+        this.getRequestCoalescer = getRequestCoalescer;
+        
+        logger.exiting(className, "setGetRequestCoalescer");
+    }
+    
+    /**
+     * 設定されたGetRequestCoalescerを返す。
+     * @return 設定されたGetRequestCoalescer、設定されていない場合にはnull
+     */
+    public synchronized GetRequestCoalescer getGetRequestCoalescer() {
+        return getRequestCoalescer;
+    }
+    
+    /**
+     * プロパティデータをキャッシュするRemotePropertyCacheを設定する。
+     * 設定した場合、getDataとgetDataAsyncはキャッシュに有効なデータが存在すればネットワークにアクセスせずにデータを返す。
+     * また、Setに成功したデータや通知されたデータはキャッシュに格納される。
+     * @param propertyCache 利用するRemotePropertyCache、nullの場合には利用しない
+     */
+    public synchronized void setPropertyCache(RemotePropertyCache propertyCache) {
+        logger.entering(className, "setPropertyCache", propertyCache);
+        
+        this.propertyCache = propertyCache;
+        
+        logger.exiting(className, "setPropertyCache");
+    }
+    
+    /**
+     * 設定されたRemotePropertyCacheを返す。
+     * @return 設定されたRemotePropertyCache、設定されていない場合にはnull
+     */
+    public synchronized RemotePropertyCache getPropertyCache() {
+        return propertyCache;
+    }
+    
+    private void updatePropertyCache(EPC epc, ObjectData data, boolean success) {
+        RemotePropertyCache cache = getPropertyCache();
+        
+        if (cache == null) {
+            return;
+        }
+        
+        if (success) {
+            cache.put(node, eoj, epc, data);
+        } else {
+            cache.invalidate(node, eoj, epc);
+        }
+    }
+    
     private boolean isValidFrame(Frame frame) {
-        logger.entering(className, "isValidFrame", frame);
+        Tracer.entering(logger, className, "isValidFrame", frame);
 
         if (!frame.getSender().equals(node)) {
-            logger.exiting(className, "isValidFrame", false);
+            Tracer.exiting(logger, className, "isValidFrame", false);
             return false;
         }
 
@@ -149,45 +238,45 @@ public class RemoteObject implements EchonetObject {
         StandardPayload payload = cf.getEDATA(StandardPayload.class);
         
         if (payload == null) {
-            logger.exiting(className, "isValidFrame", false);
+            Tracer.exiting(logger, className, "isValidFrame", false);
             return false;
         }
         
         if (!payload.getSEOJ().equals(eoj)) {
-            logger.exiting(className, "isValidFrame", false);
+            Tracer.exiting(logger, className, "isValidFrame", false);
             return false;
         }
 
-        logger.exiting(className, "isValidFrame", true);
+        Tracer.exiting(logger, className, "isValidFrame", true);
         return true;
     }
 
     private Property getValidFirstProperty(Frame frame, EPC epc) {
-        logger.entering(className, "getValidFirstProperty", new Object[]{frame, epc});
+        Tracer.entering(logger, className, "getValidFirstProperty", frame, epc);
         
         if (!isValidFrame(frame)) {
-            logger.exiting(className, "getValidFirstProperty", null);
+            Tracer.exiting(logger, className, "getValidFirstProperty", null);
             return null;
         }
         CommonFrame cf = frame.getCommonFrame();
         StandardPayload payload = cf.getEDATA(StandardPayload.class);
         
         if (payload == null) {
-            logger.exiting(className, "getValidFirstProperty", null);
+            Tracer.exiting(logger, className, "getValidFirstProperty", null);
             return null;
         }
         
         if (payload.getFirstOPC() != 1) {
-            logger.exiting(className, "getValidFirstProperty", null);
+            Tracer.exiting(logger, className, "getValidFirstProperty", null);
             return null;
         }
         Property property = payload.getFirstPropertyAt(0);
         if (property.getEPC() == epc) {
-            logger.exiting(className, "getValidFirstProperty", property);
+            Tracer.exiting(logger, className, "getValidFirstProperty", property);
             return property;
         }
         
-        logger.exiting(className, "getValidFirstProperty", null);
+        Tracer.exiting(logger, className, "getValidFirstProperty", null);
         return null;
     }
 
@@ -207,11 +296,11 @@ public class RemoteObject implements EchonetObject {
         
         @Override
         public void begin(Transaction t) {
-            logger.entering(className, "RemoteObjectGetTransactionListener.begin", t);
+            Tracer.entering(logger, className, "RemoteObjectGetTransactionListener.begin", t);
             
             dataList = new LinkedList<Data>();
             
-            logger.exiting(className, "RemoteObjectGetTransactionListener.begin");
+            Tracer.exiting(logger, className, "RemoteObjectGetTransactionListener.begin");
         }
         
         @Override
@@ -220,7 +309,7 @@ public class RemoteObject implements EchonetObject {
 
         @Override
         public void receive(Transaction t, Subnet subnet, Frame frame) {
-            logger.entering(className, "RemoteObjectGetTransactionListener.receive", new Object[]{t, subnet, frame});
+            Tracer.entering(logger, className, "RemoteObjectGetTransactionListener.receive", t, subnet, frame);
             
             Property property = getValidFirstProperty(frame, this.epc);
             if (property != null) {
@@ -230,19 +319,19 @@ public class RemoteObject implements EchonetObject {
                 }
             }
             
-            logger.exiting(className, "RemoteObjectGetTransactionListener.receive");
+            Tracer.exiting(logger, className, "RemoteObjectGetTransactionListener.receive");
         }
 
         @Override
         public void finish(Transaction t) {
-            logger.entering(className, "RemoteObjectGetTransactionListener.finish", t);
+            Tracer.entering(logger, className, "RemoteObjectGetTransactionListener.finish", t);
             
             if (!dataList.isEmpty()) {
                 data = new ObjectData(dataList);
             }
             dataList = null;
             
-            logger.exiting(className, "RemoteObjectGetTransactionListener.finish");
+            Tracer.exiting(logger, className, "RemoteObjectGetTransactionListener.finish");
         }
     }
     
@@ -269,7 +358,7 @@ public class RemoteObject implements EchonetObject {
 
         @Override
         public void receive(Transaction t, Subnet subnet, Frame frame) {
-            logger.entering(className, "RemoteObjectSetTransactionListener.receive", new Object[]{t, subnet, frame});
+            Tracer.entering(logger, className, "RemoteObjectSetTransactionListener.receive", t, subnet, frame);
             
             Property property = getValidFirstProperty(frame, this.epc);
             if (property != null) {
@@ -277,7 +366,160 @@ public class RemoteObject implements EchonetObject {
                 t.finish();
             }
             
-            logger.exiting(className, "RemoteObjectSetTransactionListener.receive");
+            Tracer.exiting(logger, className, "RemoteObjectSetTransactionListener.receive");
+        }
+
+        @Override
+        public void finish(Transaction t) {
+        }
+    }
+    
+    class RemoteObjectGetFutureTransactionListener extends RemoteObjectGetTransactionListener {
+        private TransactionFuture<ObjectData> future;
+
+        public RemoteObjectGetFutureTransactionListener(EPC epc, TransactionFuture<ObjectData> future) {
+            super(epc);
+            this.future = future;
+        }
+
+        @Override
+        public void finish(Transaction t) {
+            Tracer.entering(logger, className, "RemoteObjectGetFutureTransactionListener.finish", t);
+
+            super.finish(t);
+
+            ObjectData data = getData();
+            if (t.countResponses() == 0) {
+                future.fail(new EchonetObjectException("no response"));
+            } else if (data == null) {
+                future.fail(new EchonetObjectException("no valid data"));
+            } else {
+                future.complete(data);
+            }
+
+            Tracer.exiting(logger, className, "RemoteObjectGetFutureTransactionListener.finish");
+        }
+    }
+
+    class RemoteObjectSetFutureTransactionListener extends RemoteObjectSetTransactionListener {
+        private EPC epc;
+        private ObjectData data;
+        private TransactionFuture<Boolean> future;
+
+        public RemoteObjectSetFutureTransactionListener(EPC epc, ObjectData data, TransactionFuture<Boolean> future) {
+            super(epc);
+            this.epc = epc;
+            this.data = data;
+            this.future = future;
+        }
+
+        @Override
+        public void finish(Transaction t) {
+            Tracer.entering(logger, className, "RemoteObjectSetFutureTransactionListener.finish", t);
+
+            updatePropertyCache(epc, data, isSuccess());
+            future.complete(isSuccess());
+
+            Tracer.exiting(logger, className, "RemoteObjectSetFutureTransactionListener.finish");
+        }
+    }
+    
+    class RemoteObjectBulkTransactionListener implements TransactionListener {
+        private EnumSet<EPC> remainingSetEPCs;
+        private EnumSet<EPC> remainingGetEPCs;
+        private EnumMap<EPC, Boolean> setResults;
+        private EnumMap<EPC, ObjectData> getResults;
+        
+        public RemoteObjectBulkTransactionListener(Map<EPC, ObjectData> setProperties, List<EPC> getEPCs) {
+            remainingSetEPCs = EnumSet.noneOf(EPC.class);
+            remainingGetEPCs = EnumSet.noneOf(EPC.class);
+            setResults = new EnumMap<EPC, Boolean>(EPC.class);
+            getResults = new EnumMap<EPC, ObjectData>(EPC.class);
+            
+            for (EPC epc : setProperties.keySet()) {
+                remainingSetEPCs.add(epc);
+                setResults.put(epc, false);
+            }
+            
+            remainingGetEPCs.addAll(getEPCs);
+        }
+        
+        public synchronized EnumMap<EPC, Boolean> getSetResults() {
+            return new EnumMap<EPC, Boolean>(setResults);
+        }
+        
+        public synchronized EnumMap<EPC, ObjectData> getGetResults() {
+            return new EnumMap<EPC, ObjectData>(getResults);
+        }
+        
+        private void receiveSetProperty(Property property) {
+            if (remainingSetEPCs.remove(property.getEPC())) {
+                setResults.put(property.getEPC(), property.getPDC() == 0);
+            }
+        }
+        
+        private void receiveGetProperty(Property property) {
+            if (remainingGetEPCs.remove(property.getEPC()) && property.getPDC() != 0) {
+                getResults.put(property.getEPC(), new ObjectData(property.getEDT()));
+            }
+        }
+        
+        @Override
+        public void begin(Transaction t) {
+        }
+
+        @Override
+        public void send(Transaction t, Subnet subnet, Frame frame, boolean success) {
+        }
+
+        @Override
+        public void receive(Transaction t, Subnet subnet, Frame frame) {
+            Tracer.entering(logger, className, "RemoteObjectBulkTransactionListener.receive", t, subnet, frame);
+            
+            if (!isValidFrame(frame)) {
+                Tracer.exiting(logger, className, "RemoteObjectBulkTransactionListener.receive");
+                return;
+            }
+            
+            StandardPayload payload = frame.getCommonFrame().getEDATA(StandardPayload.class);
+            boolean done;
+            
+            synchronized (this) {
+                int firstOPC = 0xff & payload.getFirstOPC();
+                
+                switch (payload.getESV()) {
+                    case Get_Res:
+                    case Get_SNA:
+                        for (int i=0; i<firstOPC; i++) {
+                            receiveGetProperty(payload.getFirstPropertyAt(i));
+                        }
+                        break;
+                    case Set_Res:
+                    case SetC_SNA:
+                        for (int i=0; i<firstOPC; i++) {
+                            receiveSetProperty(payload.getFirstPropertyAt(i));
+                        }
+                        break;
+                    case SetGet_Res:
+                    case SetGet_SNA:
+                        for (int i=0; i<firstOPC; i++) {
+                            receiveSetProperty(payload.getFirstPropertyAt(i));
+                        }
+                        int secondOPC = 0xff & payload.getSecondOPC();
+                        for (int i=0; i<secondOPC; i++) {
+                            receiveGetProperty(payload.getSecondPropertyAt(i));
+                        }
+                        break;
+                }
+                
+                done = remainingSetEPCs.isEmpty() && remainingGetEPCs.isEmpty();
+            }
+            
+            if (done) {
+                t.finish();
+            }
+            
+            Tracer.exiting(logger, className, "RemoteObjectBulkTransactionListener.receive");
         }
 
         @Override
@@ -286,7 +528,7 @@ public class RemoteObject implements EchonetObject {
     }
     
     private SetGetTransactionConfig createSetGetTransactionConfig() {
-        logger.entering(className, "createSetGetTransactionConfig");
+        Tracer.entering(logger, className, "createSetGetTransactionConfig");
         
         SetGetTransactionConfig transactionConfig = new SetGetTransactionConfig();
         transactionConfig.setResponseRequired(true);
@@ -295,21 +537,30 @@ public class RemoteObject implements EchonetObject {
         transactionConfig.setSourceEOJ(SOURCE_EOJ);
         transactionConfig.setDestinationEOJ(eoj);
         
-        logger.exiting(className, "createSetGetTransactionConfig", transactionConfig);
+        Tracer.exiting(logger, className, "createSetGetTransactionConfig", transactionConfig);
         return transactionConfig;
     }
     
     private Transaction createSetGetTransaction(SetGetTransactionConfig transactionConfig, TransactionListener transactionListener) {
-        logger.entering(className, "createSetGetTransaction", new Object[]{transactionConfig, transactionListener});
+        Tracer.entering(logger, className, "createSetGetTransaction", transactionConfig, transactionListener);
         
         Transaction transaction = transactionManager.createTransaction(transactionConfig);
         transaction.setTimeout(timeout);
         transaction.addTransactionListener(transactionListener);
         
-        logger.exiting(className, "createSetGetTransaction", transaction);
+        Tracer.exiting(logger, className, "createSetGetTransaction", transaction);
         return transaction;
     }
     
+    private <V> void executeFuture(Transaction transaction, TransactionFuture<V> future, String methodName) {
+        try {
+            transaction.execute();
+        } catch (SubnetException e) {
+            future.fail(new EchonetObjectException(methodName + " failed", e));
+            transaction.finish();
+        }
+    }
+    
     /**
      * 指定されたEPCのデータを返す。
      * EPCのデータを取得するためにTransactionを実行する。
@@ -319,7 +570,21 @@ public class RemoteObject implements EchonetObject {
      */
     @Override
     public ObjectData getData(EPC epc) throws EchonetObjectException {
-        logger.entering(className, "getData", epc);
+        Tracer.entering(logger, className, "getData", epc);
+        
+        RemotePropertyCache cache = getPropertyCache();
+        if (cache != null) {
+            ObjectData data = cache.getData(this, epc);
+            Tracer.exiting(logger, className, "getData", data);
+            return data;
+        }
+        
+        GetRequestCoalescer coalescer = getGetRequestCoalescer();
+        if (coalescer != null) {
+            ObjectData data = getCoalescedData(coalescer, epc);
+            Tracer.exiting(logger, className, "getData", data);
+            return data;
+        }
         
         RemoteObjectGetTransactionListener transactionListener;
 
@@ -358,10 +623,84 @@ public class RemoteObject implements EchonetObject {
             throw exception;
         }
         
-        logger.exiting(className, "getData", data);
+        Tracer.exiting(logger, className, "getData", data);
         return data;
     }
     
+    private ObjectData getCoalescedData(GetRequestCoalescer coalescer, EPC epc) throws EchonetObjectException {
+        try {
+            return coalescer.getDataAsync(node, eoj, epc).get();
+        } catch (InterruptedException e) {
+            EchonetObjectException exception = new EchonetObjectException("interrupted", e);
+            logger.throwing(className, "getCoalescedData", exception);
+            throw exception;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EchonetObjectException) {
+                EchonetObjectException exception = (EchonetObjectException)e.getCause();
+                logger.throwing(className, "getCoalescedData", exception);
+                throw exception;
+            }
+            EchonetObjectException exception = new EchonetObjectException("getData failed", e.getCause());
+            logger.throwing(className, "getCoalescedData", exception);
+            throw exception;
+        }
+    }
+    
+    /**
+     * 指定されたEPCのデータを非同期に取得する。
+     * EPCのデータを取得するためにTransactionを開始し、レスポンスを待たずにTransactionFutureを返す。
+     * レスポンスが存在しない場合や有効なデータが得られなかった場合には、EchonetObjectExceptionを原因として失敗する。
+     * TransactionFutureを取り消すとTransactionは終了する。
+     * GetRequestCoalescerが設定されている場合には、他のGetとまとめて送信される。
+     * RemotePropertyCacheが設定されている場合には、キャッシュに有効なデータが存在すればそのデータで完了する。
+     * @param epc EPCの指定
+     * @return 指定したEPCのデータを受け取るTransactionFuture
+     */
+    public TransactionFuture<ObjectData> getDataAsync(EPC epc) {
+        Tracer.entering(logger, className, "getDataAsync", epc);
+        
+        RemotePropertyCache cache = getPropertyCache();
+        TransactionFuture<ObjectData> future;
+        
+        if (cache != null) {
+            future = cache.getDataAsync(this, epc);
+        } else {
+            future = fetchDataAsync(epc);
+        }
+        
+        Tracer.exiting(logger, className, "getDataAsync", future);
+        return future;
+    }
+    
+    /**
+     * RemotePropertyCacheを利用せずに、指定されたEPCのデータを非同期に取得する。
+     * @param epc EPCの指定
+     * @return 指定したEPCのデータを受け取るTransactionFuture
+     */
+    TransactionFuture<ObjectData> fetchDataAsync(EPC epc) {
+        Tracer.entering(logger, className, "fetchDataAsync", epc);
+        
+        GetRequestCoalescer coalescer = getGetRequestCoalescer();
+        if (coalescer != null) {
+            TransactionFuture<ObjectData> future = coalescer.getDataAsync(node, eoj, epc);
+            Tracer.exiting(logger, className, "fetchDataAsync", future);
+            return future;
+        }
+
+        SetGetTransactionConfig transactionConfig = createSetGetTransactionConfig();
+        transactionConfig.addGet(epc);
+
+        Transaction transaction = transactionManager.createTransaction(transactionConfig);
+        transaction.setTimeout(timeout);
+        TransactionFuture<ObjectData> future = new TransactionFuture<ObjectData>(transaction);
+        transaction.addTransactionListener(new RemoteObjectGetFutureTransactionListener(epc, future));
+
+        executeFuture(transaction, future, "getDataAsync");
+
+        Tracer.exiting(logger, className, "fetchDataAsync", future);
+        return future;
+    }
+    
     /**
      * 指定されたEPCのデータをアナウンスするように要求する。
      * @param epc EPCの指定
@@ -393,6 +732,7 @@ public class RemoteObject implements EchonetObject {
     /**
      * 指定されたEPCに指定されたデータをセットする。
      * EPCのデータをSetするためにTransactionを実行する。
+     * RemotePropertyCacheが設定されている場合には、セットを受け付けたデータをキャッシュに格納する。
      * @param epc EPCの指定
      * @param data セットするデータの指定
      * @return セットを受け付けた場合にはtrue、そうでなければfalse
@@ -400,7 +740,7 @@ public class RemoteObject implements EchonetObject {
      */
     @Override
     public boolean setData(EPC epc, ObjectData data) throws EchonetObjectException {
-        logger.entering(className, "setData", new Object[]{epc, data});
+        Tracer.entering(logger, className, "setData", epc, data);
         
         RemoteObjectSetTransactionListener transactionListener;
 
@@ -424,16 +764,364 @@ public class RemoteObject implements EchonetObject {
         }
 
         boolean success = transactionListener.isSuccess();
-        logger.exiting(className, "setData", success);
+        updatePropertyCache(epc, data, success);
+        
+        Tracer.exiting(logger, className, "setData", success);
         return success;
     }
 
+    /**
+     * 指定されたEPCに指定されたデータを非同期にセットする。
+     * EPCのデータをSetするためにTransactionを開始し、レスポンスを待たずにTransactionFutureを返す。
+     * TransactionFutureの結果はセットを受け付けた場合にはtrue、そうでなければfalseとなる。
+     * TransactionFutureを取り消すとTransactionは終了する。
+     * @param epc EPCの指定
+     * @param data セットするデータの指定
+     * @return セットの結果を受け取るTransactionFuture
+     */
+    public TransactionFuture<Boolean> setDataAsync(EPC epc, ObjectData data) {
+        Tracer.entering(logger, className, "setDataAsync", epc, data);
+
+        SetGetTransactionConfig transactionConfig = createSetGetTransactionConfig();
+        transactionConfig.addSet(epc, data.getData());
+
+        Transaction transaction = transactionManager.createTransaction(transactionConfig);
+        transaction.setTimeout(timeout);
+        TransactionFuture<Boolean> future = new TransactionFuture<Boolean>(transaction);
+        transaction.addTransactionListener(new RemoteObjectSetFutureTransactionListener(epc, data, future));
+
+        executeFuture(transaction, future, "setDataAsync");
+
+        Tracer.exiting(logger, className, "setDataAsync", future);
+        return future;
+    }
+
+    /**
+     * プロパティマップをキャッシュするかどうかを設定する。
+     * キャッシュを無効にすると、キャッシュされているプロパティマップは破棄される。
+     * @param enabled キャッシュする場合にはtrue、そうでなければfalse
+     */
+    public synchronized void setPropertyMapCacheEnabled(boolean enabled) {
+        logger.entering(className, "setPropertyMapCacheEnabled", enabled);
+        
+        propertyMapCacheEnabled = enabled;
+        
+        if (!enabled) {
+            clearPropertyMaps();
+        }
+        
+        logger.exiting(className, "setPropertyMapCacheEnabled");
+    }
+    
+    /**
+     * プロパティマップをキャッシュするかどうかを返す。
+     * @return キャッシュする場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean isPropertyMapCacheEnabled() {
+        return propertyMapCacheEnabled;
+    }
+    
+    /**
+     * キャッシュしたプロパティマップの有効期間を設定する。
+     * 0を指定した場合には、無効化されるまでキャッシュしたプロパティマップを利用する。
+     * @param ttl 有効期間(ミリ秒)
+     * @return 有効期間の設定に成功したらtrue、そうでなければfalse
+     */
+    public synchronized boolean setPropertyMapCacheTTL(long ttl) {
+        logger.entering(className, "setPropertyMapCacheTTL", ttl);
+        
+        if (ttl < 0) {
+            logger.exiting(className, "setPropertyMapCacheTTL", false);
+            return false;
+        }
+        
+        propertyMapCacheTTL = ttl;
+        
+        logger.exiting(className, "setPropertyMapCacheTTL", true);
+        return true;
+    }
+    
+    /**
+     * キャッシュしたプロパティマップの有効期間を返す。
+     * @return 有効期間(ミリ秒)、0の場合には無期限
+     */
+    public synchronized long getPropertyMapCacheTTL() {
+        return propertyMapCacheTTL;
+    }
+    
+    private void clearPropertyMaps() {
+        propertyMaps.clear();
+        propertyMapGeneration++;
+    }
+    
+    /**
+     * キャッシュしている全てのプロパティマップを無効にする。
+     * 次にプロパティマップが必要になった時にはネットワークから取得する。
+     */
+    public synchronized void invalidatePropertyMaps() {
+        logger.entering(className, "invalidatePropertyMaps");
+        
+        clearPropertyMaps();
+        
+        logger.exiting(className, "invalidatePropertyMaps");
+    }
+    
+    /**
+     * 指定されたEPCのプロパティマップがキャッシュされており、有効期間内であるかを返す。
+     * @param epc プロパティマップのEPC
+     * @return キャッシュされていればtrue、そうでなければfalse
+     */
+    public synchronized boolean isPropertyMapCached(EPC epc) {
+        return getCachedPropertyMap(epc) != null;
+    }
+    
+    private PropertyMap getCachedPropertyMap(EPC epc) {
+        CachedPropertyMap cached = propertyMaps.get(epc);
+        
+        if (cached == null) {
+            return null;
+        }
+        
+        if (propertyMapCacheTTL > 0 && System.currentTimeMillis() - cached.time >= propertyMapCacheTTL) {
+            propertyMaps.remove(epc);
+            return null;
+        }
+        
+        return cached.propertyMap;
+    }
+    
+    private synchronized void putPropertyMap(EPC epc, PropertyMap propertyMap, int generation) {
+        if (propertyMapCacheEnabled && generation == propertyMapGeneration) {
+            propertyMaps.put(epc, new CachedPropertyMap(propertyMap));
+        }
+    }
+    
+    private PropertyMap fetchPropertyMap(EPC epc) throws EchonetObjectException {
+        int generation;
+        
+        synchronized (this) {
+            generation = propertyMapGeneration;
+        }
+        
+        PropertyMap propertyMap = new PropertyMap(getData(epc).toBytes());
+        putPropertyMap(epc, propertyMap, generation);
+        return propertyMap;
+    }
+    
+    private RemoteObjectBulkTransactionListener executeBulkTransaction(SetGetTransactionConfig transactionConfig, Map<EPC, ObjectData> setProperties, List<EPC> getEPCs, String methodName) throws EchonetObjectException {
+        RemoteObjectBulkTransactionListener transactionListener = new RemoteObjectBulkTransactionListener(setProperties, getEPCs);
+        
+        if (setProperties.isEmpty() && getEPCs.isEmpty()) {
+            return transactionListener;
+        }
+        
+        Transaction transaction = createSetGetTransaction(transactionConfig, transactionListener);
+        
+        try {
+            transaction.execute();
+            transaction.join();
+        } catch (SubnetException e) {
+            EchonetObjectException exception = new EchonetObjectException(methodName + " failed", e);
+            logger.throwing(className, methodName, exception);
+            throw exception;
+        } catch (InterruptedException e) {
+            EchonetObjectException exception = new EchonetObjectException("interrupted", e);
+            logger.throwing(className, methodName, exception);
+            throw exception;
+        }
+        
+        if (transaction.countResponses() == 0 && !getEPCs.isEmpty()) {
+            EchonetObjectException exception = new EchonetObjectException("no response");
+            logger.throwing(className, methodName, exception);
+            throw exception;
+        }
+        
+        return transactionListener;
+    }
+    
+    /**
+     * 指定された複数のEPCのデータをまとめて返す。
+     * 全てのEPCのGetを一つのTransactionで実行し、フレームの最大サイズを超えない限り一つのフレームで送信する。
+     * 返されるEnumMapには、データの取得に成功したEPCのみが含まれる。
+     * @param epcs EPCのリスト
+     * @return 取得に成功したEPCとデータのEnumMap
+     * @throws EchonetObjectException ネットワークに問題が発生した場合やレスポンスが存在しない場合
+     */
+    public EnumMap<EPC, ObjectData> getData(List<EPC> epcs) throws EchonetObjectException {
+        Tracer.entering(logger, className, "getData", epcs);
+        
+        SetGetTransactionConfig transactionConfig = createSetGetTransactionConfig();
+        for (EPC epc : epcs) {
+            transactionConfig.addGet(epc);
+        }
+        
+        Map<EPC, ObjectData> setProperties = new EnumMap<EPC, ObjectData>(EPC.class);
+        EnumMap<EPC, ObjectData> results = executeBulkTransaction(transactionConfig, setProperties, epcs, "getData").getGetResults();
+        
+        for (Map.Entry<EPC, ObjectData> entry : results.entrySet()) {
+            updatePropertyCache(entry.getKey(), entry.getValue(), true);
+        }
+        
+        Tracer.exiting(logger, className, "getData", results);
+        return results;
+    }
+    
+    /**
+     * 指定された複数のEPCにそれぞれのデータをまとめてセットする。
+     * 全てのEPCのSetを一つのTransactionで実行し、フレームの最大サイズを超えない限り一つのフレームで送信する。
+     * @param properties EPCとセットするデータのMap
+     * @return EPC毎にセットを受け付けた場合にはtrue、そうでなければfalseを格納したEnumMap
+     * @throws EchonetObjectException ネットワークに問題が発生した場合
+     */
+    public EnumMap<EPC, Boolean> setData(Map<EPC, ObjectData> properties) throws EchonetObjectException {
+        Tracer.entering(logger, className, "setData", properties);
+        
+        SetGetTransactionConfig transactionConfig = createSetGetTransactionConfig();
+        for (Map.Entry<EPC, ObjectData> entry : properties.entrySet()) {
+            transactionConfig.addSet(entry.getKey(), entry.getValue().getData());
+        }
+        
+        List<EPC> getEPCs = new LinkedList<EPC>();
+        EnumMap<EPC, Boolean> results = executeBulkTransaction(transactionConfig, properties, getEPCs, "setData").getSetResults();
+        
+        for (Map.Entry<EPC, Boolean> entry : results.entrySet()) {
+            updatePropertyCache(entry.getKey(), properties.get(entry.getKey()), entry.getValue());
+        }
+        
+        Tracer.exiting(logger, className, "setData", results);
+        return results;
+    }
+    
+    /**
+     * 指定された複数のEPCへのセットと、指定された複数のEPCのデータの取得を一つのSetGetとして実行する。
+     * SetGetは分割されずに一つのフレームで送信される。セットとデータの取得はそれぞれ一つ以上のEPCを指定する必要がある。
+     * @param setProperties EPCとセットするデータのMap
+     * @param getEPCs データを取得するEPCのリスト
+     * @return 一番目の要素はEPC毎にセットを受け付けた場合にはtrue、そうでなければfalseを格納したEnumMap、
+     * 二番目の要素は取得に成功したEPCとデータのEnumMap
+     * @throws EchonetObjectException ネットワークに問題が発生した場合、レスポンスが存在しない場合や一つのフレームに収まらない場合
+     */
+    public Pair<EnumMap<EPC, Boolean>, EnumMap<EPC, ObjectData>> setGetData(Map<EPC, ObjectData> setProperties, List<EPC> getEPCs) throws EchonetObjectException {
+        Tracer.entering(logger, className, "setGetData", setProperties, getEPCs);
+        
+        SetGetTransactionConfig transactionConfig = createSetGetTransactionConfig();
+        for (Map.Entry<EPC, ObjectData> entry : setProperties.entrySet()) {
+            transactionConfig.addSet(entry.getKey(), entry.getValue().getData());
+        }
+        for (EPC epc : getEPCs) {
+            transactionConfig.addGet(epc);
+        }
+        
+        if (transactionConfig.getESV() != ESV.SetGet || transactionConfig.getCountPayloads() != 1) {
+            EchonetObjectException exception = new EchonetObjectException("cannot send as a single SetGet frame");
+            logger.throwing(className, "setGetData", exception);
+            throw exception;
+        }
+        
+        RemoteObjectBulkTransactionListener transactionListener = executeBulkTransaction(transactionConfig, setProperties, getEPCs, "setGetData");
+        Pair<EnumMap<EPC, Boolean>, EnumMap<EPC, ObjectData>> results = new Pair<EnumMap<EPC, Boolean>, EnumMap<EPC, ObjectData>>(transactionListener.getSetResults(), transactionListener.getGetResults());
+        
+        for (Map.Entry<EPC, Boolean> entry : results.first.entrySet()) {
+            updatePropertyCache(entry.getKey(), setProperties.get(entry.getKey()), entry.getValue());
+        }
+        
+        for (Map.Entry<EPC, ObjectData> entry : results.second.entrySet()) {
+            updatePropertyCache(entry.getKey(), entry.getValue(), true);
+        }
+        
+        Tracer.exiting(logger, className, "setGetData", results);
+        return results;
+    }
+
     private PropertyMap getPropertyMap(EPC epc) throws EchonetObjectException {
-        return new PropertyMap(getData(epc).toBytes());
+        synchronized (this) {
+            PropertyMap propertyMap = getCachedPropertyMap(epc);
+            if (propertyMap != null) {
+                return propertyMap;
+            }
+        }
+        
+        return fetchPropertyMap(epc);
+    }
+    
+    private void fetchPropertyMaps(List<EPC> epcs, int generation) throws EchonetObjectException {
+        if (epcs.isEmpty()) {
+            return;
+        }
+        
+        EnumMap<EPC, ObjectData> results = getData(epcs);
+        
+        for (EPC epc : epcs) {
+            ObjectData data = results.get(epc);
+            
+            if (data == null) {
+                EchonetObjectException exception = new EchonetObjectException("no valid data");
+                logger.throwing(className, "fetchPropertyMaps", exception);
+                throw exception;
+            }
+            
+            putPropertyMap(epc, new PropertyMap(data.toBytes()), generation);
+        }
+    }
+    
+    /**
+     * キャッシュされていないプロパティマップをネットワークから取得してキャッシュする。
+     * 取得するプロパティマップはまとめて一つのGetで要求される。
+     * @throws EchonetObjectException プロパティマップの取得に失敗した場合
+     */
+    public void prefetchPropertyMaps() throws EchonetObjectException {
+        logger.entering(className, "prefetchPropertyMaps");
+        
+        LinkedList<EPC> epcs = new LinkedList<EPC>();
+        int generation;
+        
+        synchronized (this) {
+            generation = propertyMapGeneration;
+            
+            for (EPC epc : PROPERTYMAP_EPCS) {
+                if (getCachedPropertyMap(epc) == null) {
+                    epcs.add(epc);
+                }
+            }
+        }
+        
+        fetchPropertyMaps(epcs, generation);
+        
+        logger.exiting(className, "prefetchPropertyMaps");
+    }
+    
+    /**
+     * 全てのプロパティマップをネットワークから取得し直してキャッシュする。
+     * 全てのプロパティマップはまとめて一つのGetで要求される。
+     * @throws EchonetObjectException プロパティマップの取得に失敗した場合
+     */
+    public void refreshPropertyMaps() throws EchonetObjectException {
+        logger.entering(className, "refreshPropertyMaps");
+        
+        int generation;
+        
+        synchronized (this) {
+            clearPropertyMaps();
+            generation = propertyMapGeneration;
+        }
+        
+        LinkedList<EPC> epcs = new LinkedList<EPC>();
+        for (EPC epc : PROPERTYMAP_EPCS) {
+            epcs.add(epc);
+        }
+        
+        fetchPropertyMaps(epcs, generation);
+        
+        logger.exiting(className, "refreshPropertyMaps");
+    }
+    
+    private boolean isPropertyMapEPC(EPC epc) {
+        return epc == GET_PROPERTYMAP_EPC || epc == SET_PROPERTYMAP_EPC || epc == ANNOUNCE_PROPERTYMAP_EPC;
     }
     
     /**
      * 指定されたEPCのプロパティが存在するかを返す。
+     * プロパティマップはキャッシュされ、キャッシュが有効な間はネットワークから取得しない。
      * @param epc EPCの指定
      * @return 存在していればtrue、そうでなければfalse
      * @throws EchonetObjectException データの取得に失敗した場合
@@ -445,6 +1133,7 @@ public class RemoteObject implements EchonetObject {
     
     /**
      * 指定されたEPCがGet可能であるかを返す。
+     * Getプロパティマップはキャッシュされ、キャッシュが有効な間はネットワークから取得しない。
      * @param epc EPCの指定
      * @return Get可能であればtrue、そうでなければfalse
      * @throws EchonetObjectException データの取得に失敗した場合
@@ -456,6 +1145,7 @@ public class RemoteObject implements EchonetObject {
     
     /**
      * 指定されたEPCがSet可能であるかを返す。
+     * Setプロパティマップはキャッシュされ、キャッシュが有効な間はネットワークから取得しない。
      * @param epc EPCの指定
      * @return Set可能であればtrue、そうでなければfalse
      * @throws EchonetObjectException データの取得に失敗した場合
@@ -467,6 +1157,7 @@ public class RemoteObject implements EchonetObject {
     
     /**
      * 指定されたEPCが通知を行うかを返す。
+     * Annoプロパティマップはキャッシュされ、キャッシュが有効な間はネットワークから取得しない。
      * @param epc EPCの指定
      * @return 通知を行うのであればtrue、そうでなければfalse
      * @throws EchonetObjectException データの取得に失敗した場合
@@ -510,17 +1201,28 @@ public class RemoteObject implements EchonetObject {
     
     /**
      * プロパティデータの変更をオブザーバに通知する。
+     * プロパティマップの通知の場合には、キャッシュしているプロパティマップを通知されたデータで更新する。
+     * RemotePropertyCacheが設定されている場合には、通知されたデータをキャッシュに格納する。
      * @param epc 通知EPC
      * @param data 通知データ
      */
     public void notifyData(EPC epc, ObjectData data) {
-        logger.entering(className, "notifyData", new Object[]{epc, data});
+        Tracer.entering(logger, className, "notifyData", epc, data);
+        
+        if (isPropertyMapEPC(epc)) {
+            synchronized (this) {
+                propertyMapGeneration++;
+                putPropertyMap(epc, new PropertyMap(data.toBytes()), propertyMapGeneration);
+            }
+        }
+        
+        updatePropertyCache(epc, data, true);
         
         for (RemoteObjectObserver observer : cloneObservers()) {
             observer.notifyData(this, epc, data);
         }
         
-        logger.exiting(className, "notifyData");
+        Tracer.exiting(logger, className, "notifyData");
     }
     
     @Override
@@ -18,6 +18,7 @@ public class RemoteObjectManager {
     private static final String className = RemoteObjectManager.class.getName();
     
     private HashMap<Node, HashMap<EOJ, RemoteObject>> objects;
+    private RemotePropertyCache propertyCache;
     
     /**
      * RemoteObjectManagerを生成する。
@@ -57,6 +58,9 @@ public class RemoteObjectManager {
         HashMap<EOJ, RemoteObject> map = getOrCreateNodeHashMap(object.getNode());
         if (!map.containsKey(object.getEOJ())) {
             map.put(object.getEOJ(), object);
+            if (propertyCache != null) {
+                object.setPropertyCache(propertyCache);
+            }
             result = true;
         }
         
@@ -64,6 +68,32 @@ public class RemoteObjectManager {
         return result;
     }
     
+    /**
+     * 登録済みの全てのRemoteObjectと、以降に登録されるRemoteObjectにRemotePropertyCacheを設定する。
+     * @param propertyCache 設定するRemotePropertyCache、nullの場合には設定を解除する
+     */
+    public synchronized void setPropertyCache(RemotePropertyCache propertyCache) {
+        logger.entering(className, "setPropertyCache", propertyCache);
+        
+        this.propertyCache = propertyCache;
+        
+        for (HashMap<EOJ, RemoteObject> map : objects.values()) {
+            for (RemoteObject object : map.values()) {
+                object.setPropertyCache(propertyCache);
+            }
+        }
+        
+        logger.exiting(className, "setPropertyCache");
+    }
+    
+    /**
+     * 設定されたRemotePropertyCacheを返す。
+     * @return 設定されたRemotePropertyCache、設定されていない場合にはnull
+     */
+    public synchronized RemotePropertyCache getPropertyCache() {
+        return propertyCache;
+    }
+    
     /**
      * 指定されたRemoteObjectの登録を抹消する。
      * @param object 登録を抹消するRemoteObject
@@ -0,0 +1,421 @@
+package echowand.object;
+
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.logic.TransactionFuture;
+import echowand.logic.TransactionFutureListener;
+import echowand.net.Node;
+import echowand.util.Pair;
+import echowand.util.Tracer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * リモートオブジェクトのプロパティデータをノード、EOJ、EPC毎にキャッシュする。
+ * キャッシュに有効なデータが存在しない場合にはネットワークからデータを取得してキャッシュする。
+ * 同じプロパティに対する取得が同時に要求された場合には、一つのGetの結果が全ての要求元に返される。
+ * RemoteObjectに設定すると、Setに成功したデータや通知されたデータもキャッシュされる。
+ * @author Yoshiki Makino
+ */
+public class RemotePropertyCache {
+    private static final Logger logger = Logger.getLogger(RemotePropertyCache.class.getName());
+    private static final String className = RemotePropertyCache.class.getName();
+
+    /**
+     * キャッシュしたデータの有効期間のデフォルト値(ミリ秒)
+     */
+    public static final long DEFAULT_TTL = 60000;
+
+    private long defaultTTL = DEFAULT_TTL;
+    private EnumMap<EPC, Long> ttls;
+    private HashMap<Pair<Node, EOJ>, EnumMap<EPC, Entry>> entries;
+    private HashMap<Pair<Node, EOJ>, EnumMap<EPC, LinkedList<TransactionFuture<ObjectData>>>> waitingFutures;
+    private long sequence = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private static class Entry {
+        public ObjectData data;
+        public long time;
+        public long sequence;
+
+        public Entry(ObjectData data, long sequence) {
+            this.data = data;
+            this.time = System.currentTimeMillis();
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * RemotePropertyCacheを生成する。
+     */
+    public RemotePropertyCache() {
+        logger.entering(className, "RemotePropertyCache");
+
+        ttls = new EnumMap<EPC, Long>(EPC.class);
+        entries = new HashMap<Pair<Node, EOJ>, EnumMap<EPC, Entry>>();
+        waitingFutures = new HashMap<Pair<Node, EOJ>, EnumMap<EPC, LinkedList<TransactionFuture<ObjectData>>>>();
+
+        logger.exiting(className, "RemotePropertyCache");
+    }
+
+    /**
+     * キャッシュしたデータの有効期間のデフォルト値を設定する。
+     * @param ttl 有効期間(ミリ秒)、0の場合にはキャッシュしない
+     * @return 設定に成功した場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean setDefaultTTL(long ttl) {
+        logger.entering(className, "setDefaultTTL", ttl);
+
+        if (ttl < 0) {
+            logger.exiting(className, "setDefaultTTL", false);
+            return false;
+        }
+
+        defaultTTL = ttl;
+
+        logger.exiting(className, "setDefaultTTL", true);
+        return true;
+    }
+
+    /**
+     * キャッシュしたデータの有効期間のデフォルト値を返す。
+     * @return 有効期間(ミリ秒)
+     */
+    public synchronized long getDefaultTTL() {
+        return defaultTTL;
+    }
+
+    /**
+     * 指定されたEPCのデータの有効期間を設定する。
+     * @param epc EPCの指定
+     * @param ttl 有効期間(ミリ秒)、0の場合にはキャッシュしない、負の場合にはEPC毎の設定を削除する
+     */
+    public synchronized void setTTL(EPC epc, long ttl) {
+        logger.entering(className, "setTTL", new Object[]{epc, ttl});
+
+        if (ttl < 0) {
+            ttls.remove(epc);
+        } else {
+            ttls.put(epc, ttl);
+        }
+
+        logger.exiting(className, "setTTL");
+    }
+
+    /**
+     * 指定されたEPCのデータの有効期間を返す。
+     * @param epc EPCの指定
+     * @return 有効期間(ミリ秒)
+     */
+    public synchronized long getTTL(EPC epc) {
+        Long ttl = ttls.get(epc);
+
+        if (ttl == null) {
+            return defaultTTL;
+        }
+
+        return ttl;
+    }
+
+    private Pair<Node, EOJ> createKey(Node node, EOJ eoj) {
+        return new Pair<Node, EOJ>(node, eoj);
+    }
+
+    private Entry getEntry(Pair<Node, EOJ> key, EPC epc) {
+        EnumMap<EPC, Entry> map = entries.get(key);
+
+        if (map == null) {
+            return null;
+        }
+
+        Entry entry = map.get(epc);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() - entry.time >= getTTL(epc)) {
+            map.remove(epc);
+            if (map.isEmpty()) {
+                entries.remove(key);
+            }
+            return null;
+        }
+
+        return entry;
+    }
+
+    private void putEntry(Pair<Node, EOJ> key, EPC epc, ObjectData data, long startSequence) {
+        if (getTTL(epc) == 0) {
+            return;
+        }
+
+        EnumMap<EPC, Entry> map = entries.get(key);
+
+        if (map == null) {
+            map = new EnumMap<EPC, Entry>(EPC.class);
+            entries.put(key, map);
+        }
+
+        Entry entry = map.get(epc);
+        if (entry != null && entry.sequence > startSequence) {
+            return;
+        }
+
+        map.put(epc, new Entry(data, ++sequence));
+    }
+
+    /**
+     * キャッシュされている有効なデータを返す。
+     * @param node ノードの指定
+     * @param eoj EOJの指定
+     * @param epc EPCの指定
+     * @return キャッシュされているデータ、存在しない場合にはnull
+     */
+    public synchronized ObjectData get(Node node, EOJ eoj, EPC epc) {
+        Entry entry = getEntry(createKey(node, eoj), epc);
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.data;
+    }
+
+    /**
+     * データをキャッシュする。
+     * @param node ノードの指定
+     * @param eoj EOJの指定
+     * @param epc EPCの指定
+     * @param data キャッシュするデータ
+     */
+    public synchronized void put(Node node, EOJ eoj, EPC epc, ObjectData data) {
+        Tracer.entering(logger, className, "put", node, eoj, epc, data);
+
+        putEntry(createKey(node, eoj), epc, data, sequence);
+
+        Tracer.exiting(logger, className, "put");
+    }
+
+    /**
+     * 指定されたプロパティのキャッシュを無効にする。
+     * @param node ノードの指定
+     * @param eoj EOJの指定
+     * @param epc EPCの指定
+     */
+    public synchronized void invalidate(Node node, EOJ eoj, EPC epc) {
+        Tracer.entering(logger, className, "invalidate", node, eoj, epc);
+
+        Pair<Node, EOJ> key = createKey(node, eoj);
+        EnumMap<EPC, Entry> map = entries.get(key);
+
+        if (map != null) {
+            map.remove(epc);
+            if (map.isEmpty()) {
+                entries.remove(key);
+            }
+        }
+
+        Tracer.exiting(logger, className, "invalidate");
+    }
+
+    /**
+     * 指定されたオブジェクトの全てのプロパティのキャッシュを無効にする。
+     * @param node ノードの指定
+     * @param eoj EOJの指定
+     */
+    public synchronized void invalidate(Node node, EOJ eoj) {
+        Tracer.entering(logger, className, "invalidate", node, eoj);
+
+        entries.remove(createKey(node, eoj));
+
+        Tracer.exiting(logger, className, "invalidate");
+    }
+
+    /**
+     * 全てのキャッシュを無効にする。
+     */
+    public synchronized void clear() {
+        logger.entering(className, "clear");
+
+        entries.clear();
+
+        logger.exiting(className, "clear");
+    }
+
+    /**
+     * キャッシュされているデータの数を返す。有効期間を過ぎたデータも含まれる。
+     * @return キャッシュされているデータの数
+     */
+    public synchronized int countEntries() {
+        int count = 0;
+
+        for (EnumMap<EPC, Entry> map : entries.values()) {
+            count += map.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * キャッシュのデータを返した回数を返す。
+     * @return キャッシュのデータを返した回数
+     */
+    public synchronized long countHits() {
+        return hits;
+    }
+
+    /**
+     * キャッシュに有効なデータが存在しなかった回数を返す。
+     * @return キャッシュに有効なデータが存在しなかった回数
+     */
+    public synchronized long countMisses() {
+        return misses;
+    }
+
+    private List<TransactionFuture<ObjectData>> takeWaitingFutures(Pair<Node, EOJ> key, EPC epc) {
+        EnumMap<EPC, LinkedList<TransactionFuture<ObjectData>>> map = waitingFutures.get(key);
+
+        if (map == null) {
+            return new LinkedList<TransactionFuture<ObjectData>>();
+        }
+
+        LinkedList<TransactionFuture<ObjectData>> futures = map.remove(epc);
+        if (map.isEmpty()) {
+            waitingFutures.remove(key);
+        }
+
+        if (futures == null) {
+            return new LinkedList<TransactionFuture<ObjectData>>();
+        }
+
+        return futures;
+    }
+
+    private class FetchListener implements TransactionFutureListener<ObjectData> {
+        private Pair<Node, EOJ> key;
+        private EPC epc;
+        private long startSequence;
+
+        public FetchListener(Pair<Node, EOJ> key, EPC epc, long startSequence) {
+            this.key = key;
+            this.epc = epc;
+            this.startSequence = startSequence;
+        }
+
+        @Override
+        public void success(TransactionFuture<ObjectData> future, ObjectData result) {
+            List<TransactionFuture<ObjectData>> futures;
+
+            synchronized (RemotePropertyCache.this) {
+                putEntry(key, epc, result, startSequence);
+                futures = takeWaitingFutures(key, epc);
+            }
+
+            for (TransactionFuture<ObjectData> waitingFuture : futures) {
+                waitingFuture.complete(result);
+            }
+        }
+
+        @Override
+        public void failure(TransactionFuture<ObjectData> future, Throwable cause) {
+            List<TransactionFuture<ObjectData>> futures;
+
+            synchronized (RemotePropertyCache.this) {
+                futures = takeWaitingFutures(key, epc);
+            }
+
+            for (TransactionFuture<ObjectData> waitingFuture : futures) {
+                waitingFuture.fail(cause);
+            }
+        }
+    }
+
+    /**
+     * 指定されたRemoteObjectのEPCのデータを非同期に取得する。
+     * キャッシュに有効なデータが存在する場合には、完了したTransactionFutureを返す。
+     * 同じプロパティの取得が既に実行中の場合には、その結果を受け取るTransactionFutureを返す。
+     * @param object RemoteObjectの指定
+     * @param epc EPCの指定
+     * @return 指定したEPCのデータを受け取るTransactionFuture
+     */
+    public TransactionFuture<ObjectData> getDataAsync(RemoteObject object, EPC epc) {
+        Tracer.entering(logger, className, "getDataAsync", object, epc);
+
+        Pair<Node, EOJ> key = createKey(object.getNode(), object.getEOJ());
+        TransactionFuture<ObjectData> future = new TransactionFuture<ObjectData>();
+        long startSequence;
+
+        synchronized (this) {
+            Entry entry = getEntry(key, epc);
+
+            if (entry != null) {
+                hits++;
+                future.complete(entry.data);
+                Tracer.exiting(logger, className, "getDataAsync", future);
+                return future;
+            }
+
+            misses++;
+
+            EnumMap<EPC, LinkedList<TransactionFuture<ObjectData>>> map = waitingFutures.get(key);
+            if (map == null) {
+                map = new EnumMap<EPC, LinkedList<TransactionFuture<ObjectData>>>(EPC.class);
+                waitingFutures.put(key, map);
+            }
+
+            LinkedList<TransactionFuture<ObjectData>> futures = map.get(epc);
+            if (futures != null) {
+                futures.add(future);
+                Tracer.exiting(logger, className, "getDataAsync", future);
+                return future;
+            }
+
+            futures = new LinkedList<TransactionFuture<ObjectData>>();
+            futures.add(future);
+            map.put(epc, futures);
+            startSequence = sequence;
+        }
+
+        object.fetchDataAsync(epc).addTransactionFutureListener(new FetchListener(key, epc, startSequence));
+
+        Tracer.exiting(logger, className, "getDataAsync", future);
+        return future;
+    }
+
+    /**
+     * 指定されたRemoteObjectのEPCのデータを返す。
+     * キャッシュに有効なデータが存在しない場合にはネットワークから取得する。
+     * @param object RemoteObjectの指定
+     * @param epc EPCの指定
+     * @return 指定したEPCのデータ
+     * @throws EchonetObjectException データの取得に失敗した場合
+     */
+    public ObjectData getData(RemoteObject object, EPC epc) throws EchonetObjectException {
+        Tracer.entering(logger, className, "getData", object, epc);
+
+        try {
+            ObjectData data = getDataAsync(object, epc).get();
+            Tracer.exiting(logger, className, "getData", data);
+            return data;
+        } catch (InterruptedException e) {
+            EchonetObjectException exception = new EchonetObjectException("interrupted", e);
+            logger.throwing(className, "getData", exception);
+            throw exception;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EchonetObjectException) {
+                EchonetObjectException exception = (EchonetObjectException)e.getCause();
+                logger.throwing(className, "getData", exception);
+                throw exception;
+            }
+            EchonetObjectException exception = new EchonetObjectException("getData failed", e.getCause());
+            logger.throwing(className, "getData", exception);
+            throw exception;
+        }
+    }
+}
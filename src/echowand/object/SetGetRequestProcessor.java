@@ -4,6 +4,7 @@ import echowand.common.EOJ;
 import echowand.common.ESV;
 import echowand.logic.DefaultRequestProcessor;
 import echowand.net.*;
+import echowand.util.Tracer;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -157,16 +158,18 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
     }
     
     private Frame createResponse(Node sender, Frame frame, LocalObject object, StandardPayload res) {
-        logger.entering(className, "createResponse", new Object[]{sender, frame, object, res});
+        Tracer.entering(logger, className, "createResponse", sender, frame, object, res);
         
         Frame resFrame = createResponse(sender, frame, object, res, false, null);
         
-        logger.exiting(className, "createResponse", resFrame);
+        Tracer.exiting(logger, className, "createResponse", resFrame);
         return resFrame;
     }
     
     private Frame createResponse(Node sender, Frame frame, LocalObject object, StandardPayload res, boolean useGroup, Subnet subnet) {
-        logger.entering(className, "createResponse", new Object[]{sender, frame, object, res, useGroup, subnet});
+        if (Tracer.isEnabled(logger)) {
+            logger.entering(className, "createResponse", new Object[]{sender, frame, object, res, useGroup, subnet});
+        }
         
         short tid = frame.getCommonFrame().getTID();
         CommonFrame cf = new CommonFrame();
@@ -184,7 +187,7 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
         
         Frame resFrame =  new Frame(sender, peer, cf, frame.getConnection());
         
-        logger.exiting(className, "createResponse", resFrame);
+        Tracer.exiting(logger, className, "createResponse", resFrame);
         return resFrame;
     }
     
@@ -205,7 +208,7 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
     }
     
     private void processObjectSetI(Subnet subnet, Frame frame, LocalObject object, boolean processed) {
-        logger.entering(className, "processObjectSetI", new Object[]{subnet, frame, object, processed});
+        Tracer.entering(logger, className, "processObjectSetI", subnet, frame, object, processed);
         
         StandardPayload res = new StandardPayload();
         if (!doSetAllData(frame, object, res)) {
@@ -217,11 +220,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
             }
         }
         
-        logger.entering(className, "processObjectSetI");
+        Tracer.entering(logger, className, "processObjectSetI");
     }
     
     private void processObjectSetC(Subnet subnet, Frame frame, LocalObject object, boolean processed) {
-        logger.entering(className, "processObjectSetC", new Object[]{subnet, frame, object, processed});
+        Tracer.entering(logger, className, "processObjectSetC", subnet, frame, object, processed);
         
         StandardPayload res = new StandardPayload();
         if (doSetAllData(frame, object, res)) {
@@ -235,11 +238,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
             e.printStackTrace();
         }
         
-        logger.exiting(className, "processObjectSetC");
+        Tracer.exiting(logger, className, "processObjectSetC");
     }
     
     private void processObjectGet(Subnet subnet, Frame frame, LocalObject object, boolean processed) {
-        logger.entering(className, "processObjectGet", new Object[]{subnet, frame, object, processed});
+        Tracer.entering(logger, className, "processObjectGet", subnet, frame, object, processed);
         
         StandardPayload res = new StandardPayload();
         if (doGetAllData(frame, object, res, false)) {
@@ -253,11 +256,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
             e.printStackTrace();
         }
         
-        logger.exiting(className, "processObjectGet");
+        Tracer.exiting(logger, className, "processObjectGet");
     }
 
     private void processObjectSetGet(Subnet subnet, Frame frame, LocalObject object, boolean processed) {
-        logger.entering(className, "processObjectSetGet", new Object[]{subnet, frame, object, processed});
+        Tracer.entering(logger, className, "processObjectSetGet", subnet, frame, object, processed);
         
         StandardPayload res = new StandardPayload();
         if (doSetGetAllData(frame, object, res)) {
@@ -271,10 +274,10 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
             e.printStackTrace();
         }
         
-        logger.exiting(className, "processObjectSetGet");
+        Tracer.exiting(logger, className, "processObjectSetGet");
     }
     private void processObjectINF_REQ(Subnet subnet, Frame frame, LocalObject object, boolean processed) {
-        logger.entering(className, "processObjectINF_REQ", new Object[]{subnet, frame, object, processed});
+        Tracer.entering(logger, className, "processObjectINF_REQ", subnet, frame, object, processed);
         
         boolean useGroup;
         
@@ -293,20 +296,20 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
             e.printStackTrace();
         }
         
-        logger.exiting(className, "processObjectINF_REQ");
+        Tracer.exiting(logger, className, "processObjectINF_REQ");
     }
     
     private boolean processRequest(Subnet subnet, Frame frame, ESV esv, boolean processed) {
-        logger.entering(className, "processRequest", new Object[]{subnet, frame, esv, processed});
+        Tracer.entering(logger, className, "processRequest", subnet, frame, esv, processed);
         
         if (processed) {
-            logger.exiting(className, "processRequest", false);
+            Tracer.exiting(logger, className, "processRequest", false);
             return false;
         }
         
         List<LocalObject> objects = getDestinationObject(frame);
         if (objects.isEmpty()) {
-            logger.exiting(className, "processRequest", false);
+            Tracer.exiting(logger, className, "processRequest", false);
             return false;
         }
         
@@ -328,12 +331,12 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
                     processObjectINF_REQ(subnet, frame, object, processed);
                     break;
                 default:
-                    logger.exiting(className, "processRequest", false);
+                    Tracer.exiting(logger, className, "processRequest", false);
                     return false;
             }
         }
 
-        logger.exiting(className, "processRequest", true);
+        Tracer.exiting(logger, className, "processRequest", true);
         return true;
     }
     
@@ -346,11 +349,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
      */
     @Override
     public boolean processSetI(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "processRequest", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "processRequest", subnet, frame, processed);
         
         boolean ret = processRequest(subnet, frame, ESV.SetI, processed);
         
-        logger.entering(className, "processRequest", ret);
+        Tracer.entering(logger, className, "processRequest", ret);
         return ret;
     }
     
@@ -363,11 +366,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
      */
     @Override
     public boolean processSetC(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "processSetC", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "processSetC", subnet, frame, processed);
         
         boolean ret = processRequest(subnet, frame, ESV.SetC, processed);
         
-        logger.entering(className, "processSetC", ret);
+        Tracer.entering(logger, className, "processSetC", ret);
         return ret;
     }
     
@@ -380,11 +383,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
      */
     @Override
     public boolean processGet(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "processGet", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "processGet", subnet, frame, processed);
         
         boolean ret = processRequest(subnet, frame, ESV.Get, processed);
         
-        logger.exiting(className, "processGet", ret);
+        Tracer.exiting(logger, className, "processGet", ret);
         return ret;
     }
 
@@ -397,11 +400,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
      */
     @Override
     public boolean processSetGet(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "processSetGet", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "processSetGet", subnet, frame, processed);
         
         boolean ret = processRequest(subnet, frame, ESV.SetGet, processed);
         
-        logger.exiting(className, "processSetGet", ret);
+        Tracer.exiting(logger, className, "processSetGet", ret);
         return ret;
     }
     
@@ -414,11 +417,11 @@ public class SetGetRequestProcessor extends DefaultRequestProcessor {
      */
     @Override
     public boolean processINF_REQ(Subnet subnet, Frame frame, boolean processed) {
-        logger.entering(className, "processSetGet", new Object[]{subnet, frame, processed});
+        Tracer.entering(logger, className, "processSetGet", subnet, frame, processed);
         
         boolean ret = processRequest(subnet, frame, ESV.INF_REQ, processed);
         
-        logger.exiting(className, "processSetGet", ret);
+        Tracer.exiting(logger, className, "processSetGet", ret);
         return ret;
     }
 }
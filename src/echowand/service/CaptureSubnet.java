@@ -1,18 +1,20 @@
 package echowand.service;
 
+import echowand.net.BatchReceivable;
 import echowand.net.Frame;
 import echowand.net.Node;
 import echowand.net.NodeInfo;
 import echowand.net.Subnet;
 import echowand.net.SubnetException;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * 送受信したフレームをキャプチャする機能を持つSubnet
  * キャプチャ処理はCaptureSubnetObserverを利用して記述する
  * @author ymakino
  */
-public class CaptureSubnet implements ExtendedSubnet {
+public class CaptureSubnet implements ExtendedSubnet, BatchReceivable {
     private Subnet internalSubnet;
     private LinkedList<CaptureSubnetObserver> observers;
     
@@ -61,6 +63,28 @@ public class CaptureSubnet implements ExtendedSubnet {
         return frame;
     }
 
+    /**
+     * 内部のSubnetから複数のフレームをまとめて受信する。
+     * 内部のSubnetがBatchReceivableを実装していない場合には、receiveを利用して1つのフレームを受信する。
+     * @param max 受信するフレームの最大数
+     * @return 受信したFrameのリスト
+     * @throws SubnetException 無効なフレームを受信、あるいは受信に失敗した場合
+     */
+    @Override
+    public List<Frame> receiveBatch(int max) throws SubnetException {
+        List<Frame> frames;
+        if (internalSubnet instanceof BatchReceivable) {
+            frames = ((BatchReceivable)internalSubnet).receiveBatch(max);
+        } else {
+            frames = new LinkedList<Frame>();
+            frames.add(internalSubnet.receive());
+        }
+        for (Frame frame : frames) {
+            notifyReceived(frame);
+        }
+        return frames;
+    }
+
     @Override
     public Node getLocalNode() {
         return internalSubnet.getLocalNode();
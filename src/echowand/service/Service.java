@@ -7,8 +7,10 @@ import echowand.common.EPC;
 import echowand.logic.AnnounceTransactionConfig;
 import echowand.logic.SetGetTransactionConfig;
 import echowand.logic.Transaction;
+import echowand.logic.TransactionConfig;
 import echowand.logic.TransactionListener;
 import echowand.logic.TransactionManager;
+import echowand.logic.TransactionScheduler;
 import echowand.net.Frame;
 import echowand.net.Node;
 import echowand.net.NodeInfo;
@@ -36,6 +38,7 @@ import echowand.util.Selector;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
@@ -50,6 +53,10 @@ public class Service {
     private static final String CLASS_NAME = Service.class.getName();
     
     private Core core;
+    private boolean tcpEnabled = false;
+    private int maxFrameSize = TransactionConfig.DEFAULT_MAX_FRAME_SIZE;
+    private HashMap<Node, Integer> nodeMaxFrameSizes = new HashMap<Node, Integer>();
+    private TransactionScheduler transactionScheduler = null;
     
     /**
      * 利用するCoreを指定してServiceを生成する。
@@ -63,6 +70,76 @@ public class Service {
         LOGGER.exiting(CLASS_NAME, "Service");
     }
     
+    /**
+     * 以降のdoGet、doSet、doSetGet、doNotifyのリクエストをTCPで送信するように設定する。
+     * InetSubnetを利用している場合には、リモートノード毎にプールされたTCP接続が再利用される。
+     */
+    public synchronized void enableTCP() {
+        tcpEnabled = true;
+    }
+    
+    /**
+     * 以降のリクエストをTCPで送信しないように設定する。
+     */
+    public synchronized void disableTCP() {
+        tcpEnabled = false;
+    }
+    
+    /**
+     * リクエストをTCPで送信するかどうかを返す。
+     * @return TCPで送信する場合にはtrue、そうでなければfalse
+     */
+    public synchronized boolean isTCPEnabled() {
+        return tcpEnabled;
+    }
+    
+    /**
+     * 以降のリクエストのフレームの最大サイズを設定する。
+     * プロパティを一つのフレームに含めるとこのサイズを超える場合には、リクエストは複数のフレームに分割され、
+     * それぞれのレスポンスは一つのResultにまとめられる。
+     * @param maxFrameSize フレームの最大サイズ(バイト)
+     */
+    public synchronized void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+    
+    /**
+     * リクエストのフレームの最大サイズを返す。
+     * @return フレームの最大サイズ(バイト)
+     */
+    public synchronized int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+    
+    /**
+     * 指定されたノードへのリクエストのフレームの最大サイズを設定する。
+     * setMaxFrameSize(int)で設定されたサイズよりも優先される。
+     * @param node ノードの指定
+     * @param maxFrameSize フレームの最大サイズ(バイト)、0以下の場合にはノード毎の設定を削除する
+     */
+    public synchronized void setMaxFrameSize(Node node, int maxFrameSize) {
+        if (maxFrameSize > 0) {
+            nodeMaxFrameSizes.put(node, maxFrameSize);
+        } else {
+            nodeMaxFrameSizes.remove(node);
+        }
+    }
+    
+    /**
+     * 指定されたノードへのリクエストのフレームの最大サイズを返す。
+     * @param node ノードの指定
+     * @return フレームの最大サイズ(バイト)
+     */
+    public synchronized int getMaxFrameSize(Node node) {
+        Integer size = nodeMaxFrameSizes.get(node);
+        
+        if (size == null) {
+            return maxFrameSize;
+        }
+        
+        return size;
+    }
+    
     /**
      * 利用するCoreを返す。
      * @return 利用するCore
@@ -103,6 +180,33 @@ public class Service {
         return core.getTransactionManager();
     }
     
+    /**
+     * 以降のdoGet、doSet、doSetGetのリクエストの実行に利用するTransactionSchedulerを設定する。
+     * TransactionSchedulerを設定すると、ノード毎に同時に実行するリクエストの数が制限される。
+     * @param transactionScheduler 利用するTransactionScheduler、nullの場合にはリクエストを直ちに実行する
+     */
+    public synchronized void setTransactionScheduler(TransactionScheduler transactionScheduler) {
+        this.transactionScheduler = transactionScheduler;
+    }
+    
+    /**
+     * リクエストの実行に利用するTransactionSchedulerを返す。
+     * @return 利用するTransactionScheduler、設定されていない場合にはnull
+     */
+    public synchronized TransactionScheduler getTransactionScheduler() {
+        return transactionScheduler;
+    }
+    
+    private void executeTransaction(Transaction transaction) throws SubnetException {
+        TransactionScheduler scheduler = getTransactionScheduler();
+        
+        if (scheduler == null) {
+            transaction.execute();
+        } else {
+            scheduler.schedule(transaction);
+        }
+    }
+    
     private class ResultBaseTransactionListener implements TransactionListener {
         ResultBase result;
         
@@ -197,6 +301,7 @@ public class Service {
         SetGetTransactionConfig transactionConfig = new SetGetTransactionConfig();
         
         transactionConfig.setReceiverNode(node);
+        transactionConfig.setMaxFrameSize(getMaxFrameSize(node));
         transactionConfig.setDestinationEOJ(eoj);
         transactionConfig.setSenderNode(getSubnet().getLocalNode());
         transactionConfig.setSourceEOJ(new EOJ("0ef001"));
@@ -215,6 +320,7 @@ public class Service {
         SetGetTransactionConfig transactionConfig = new SetGetTransactionConfig();
         
         transactionConfig.setReceiverNode(node);
+        transactionConfig.setMaxFrameSize(getMaxFrameSize(node));
         transactionConfig.setDestinationEOJ(eoj);
         transactionConfig.setSenderNode(getSubnet().getLocalNode());
         transactionConfig.setSourceEOJ(new EOJ("0ef001"));
@@ -233,6 +339,7 @@ public class Service {
         SetGetTransactionConfig transactionConfig = new SetGetTransactionConfig();
         
         transactionConfig.setReceiverNode(node);
+        transactionConfig.setMaxFrameSize(getMaxFrameSize(node));
         transactionConfig.setDestinationEOJ(eoj);
         transactionConfig.setSenderNode(getSubnet().getLocalNode());
         transactionConfig.setSourceEOJ(new EOJ("0ef001"));
@@ -292,9 +399,13 @@ public class Service {
         Transaction transaction = new Transaction(getSubnet(), getTransactionManager(), transactionConfig);
         transaction.setTimeout(timeout);
         
+        if (isTCPEnabled()) {
+            transaction.enableTCP();
+        }
+        
         transaction.addTransactionListener(new ResultBaseTransactionListener(getResult));
         
-        transaction.execute();
+        executeTransaction(transaction);
         
         LOGGER.exiting(CLASS_NAME, "doGet", getResult);
         return getResult;
@@ -347,9 +458,13 @@ public class Service {
         Transaction transaction = new Transaction(getSubnet(), getTransactionManager(), transactionConfig);
         transaction.setTimeout(timeout);
         
+        if (isTCPEnabled()) {
+            transaction.enableTCP();
+        }
+        
         transaction.addTransactionListener(new ResultBaseTransactionListener(setResult));
         
-        transaction.execute();
+        executeTransaction(transaction);
 
         LOGGER.exiting(CLASS_NAME, "doSet", setResult);
         return setResult;
@@ -641,9 +756,13 @@ public class Service {
         Transaction transaction = new Transaction(getSubnet(), getTransactionManager(), transactionConfig);
         transaction.setTimeout(timeout);
         
+        if (isTCPEnabled()) {
+            transaction.enableTCP();
+        }
+        
         transaction.addTransactionListener(new ResultBaseTransactionListener(setGetResult));
         
-        transaction.execute();
+        executeTransaction(transaction);
 
         LOGGER.exiting(CLASS_NAME, "doSetGet", setGetResult);
         return setGetResult;
@@ -1144,6 +1263,7 @@ public class Service {
         }
         
         transactionConfig.setReceiverNode(core.getSubnet().getGroupNode());
+        transactionConfig.setMaxFrameSize(getMaxFrameSize(core.getSubnet().getGroupNode()));
         transactionConfig.setSenderNode(core.getSubnet().getLocalNode());
         transactionConfig.setDestinationEOJ(new EOJ("0ef001"));
         transactionConfig.setSourceEOJ(eoj);
@@ -1151,6 +1271,10 @@ public class Service {
         Transaction transaction = core.getTransactionManager().createTransaction(transactionConfig);
         transaction.setTimeout(timeout);
         
+        if (isTCPEnabled()) {
+            transaction.enableTCP();
+        }
+        
         transaction.addTransactionListener(new ResultBaseTransactionListener(notifyResult));
         
         transaction.execute();
@@ -0,0 +1,393 @@
+package echowand.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 多数のタイムアウト処理を単一のスレッドで管理するタイマー
+ * 一定間隔のティック毎に円環状に並んだバケットを一つずつ処理し、期限に達したタスクを実行する。
+ * タスクの登録と取り消しはタスク数に依存しない時間で行われる。
+ * タスクは指定された遅延時間の経過後、ティックの間隔以内に実行される。
+ * 全てのタスクは単一のスレッドで順番に実行されるため、タスクがブロックすると他の全てのタスクの実行が遅れる。
+ * 処理を行うスレッドは最初のタスクの登録時に開始され、一定時間タスクが存在しない場合には終了する。
+ * @author ymakino
+ */
+public class HashedWheelTimer {
+    private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+    private static final String CLASS_NAME = HashedWheelTimer.class.getName();
+
+    /**
+     * デフォルトのティックの間隔(ミリ秒)
+     */
+    public static final long DEFAULT_TICK_DURATION = 10;
+
+    /**
+     * デフォルトのバケット数
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * タスクが存在しない場合にスレッドを終了するまでのデフォルトの時間(ミリ秒)
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 5000;
+
+    private final long tickDuration;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int idleTicks;
+
+    private Thread workerThread;
+    private long startTime;
+    private long tick;
+    private int idleCount;
+    private int pendingCount;
+    private boolean stopped;
+
+    /**
+     * 登録されたタスクの実行を管理するハンドル
+     */
+    public class Timeout {
+        private final Runnable task;
+        private final long delay;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+        private boolean cancelled;
+        private boolean expired;
+
+        private Timeout(Runnable task, long delay) {
+            this.task = task;
+            this.delay = delay;
+        }
+
+        /**
+         * 登録されたタスクを返す。
+         * @return 登録されたタスク
+         */
+        public Runnable getTask() {
+            return task;
+        }
+
+        /**
+         * 登録時に指定された遅延時間を返す。
+         * @return 遅延時間(ミリ秒)
+         */
+        public long getDelay() {
+            return delay;
+        }
+
+        /**
+         * タスクの実行を取り消す。
+         * 既にタスクが実行されているか、取り消されている場合には何もしない。
+         * @return 取り消しに成功した場合にはtrue、そうでなければfalse
+         */
+        public boolean cancel() {
+            synchronized (HashedWheelTimer.this) {
+                if (cancelled || expired) {
+                    return false;
+                }
+
+                cancelled = true;
+
+                if (bucket != null) {
+                    bucket.remove(this);
+                    pendingCount--;
+                }
+
+                return true;
+            }
+        }
+
+        /**
+         * タスクの実行が取り消されたか返す。
+         * @return 取り消された場合にはtrue、そうでなければfalse
+         */
+        public boolean isCancelled() {
+            synchronized (HashedWheelTimer.this) {
+                return cancelled;
+            }
+        }
+
+        /**
+         * タスクが期限に達して実行されたか返す。
+         * @return 実行された場合にはtrue、そうでなければfalse
+         */
+        public boolean isExpired() {
+            synchronized (HashedWheelTimer.this) {
+                return expired;
+            }
+        }
+    }
+
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        public void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+
+            tail = timeout;
+        }
+
+        public void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            ArrayList<Timeout> expiredTimeouts = new ArrayList<Timeout>();
+
+            for (;;) {
+                long sleepTime;
+
+                synchronized (HashedWheelTimer.this) {
+                    if (stopped) {
+                        workerThread = null;
+                        return;
+                    }
+
+                    sleepTime = tickNanos * tick - (currentTime() - startTime);
+
+                    if (sleepTime <= 0) {
+                        expireTimeouts(expiredTimeouts);
+
+                        if (!updateIdleCount()) {
+                            return;
+                        }
+                    }
+                }
+
+                if (sleepTime > 0) {
+                    LockSupport.parkNanos(this, sleepTime);
+                    continue;
+                }
+
+                for (Timeout timeout : expiredTimeouts) {
+                    runTask(timeout);
+                }
+
+                expiredTimeouts.clear();
+            }
+        }
+    }
+
+    /**
+     * デフォルトのティックの間隔とバケット数でHashedWheelTimerを生成する。
+     */
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * ティックの間隔とバケット数を指定してHashedWheelTimerを生成する。
+     * @param tickDuration ティックの間隔(ミリ秒)
+     * @param wheelSize バケット数
+     */
+    public HashedWheelTimer(long tickDuration, int wheelSize) {
+        this(tickDuration, wheelSize, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * ティックの間隔、バケット数、スレッドを終了するまでの時間を指定してHashedWheelTimerを生成する。
+     * @param tickDuration ティックの間隔(ミリ秒)
+     * @param wheelSize バケット数
+     * @param idleTimeout タスクが存在しない場合にスレッドを終了するまでの時間(ミリ秒)
+     */
+    public HashedWheelTimer(long tickDuration, int wheelSize, long idleTimeout) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("invalid tick duration: " + tickDuration);
+        }
+
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("invalid wheel size: " + wheelSize);
+        }
+
+        this.tickDuration = tickDuration;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheel = new Bucket[wheelSize];
+        this.idleTicks = (int)Math.max(1, idleTimeout / tickDuration);
+
+        for (int i=0; i<wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+    }
+
+    /**
+     * ティックの間隔を返す。
+     * @return ティックの間隔(ミリ秒)
+     */
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * バケット数を返す。
+     * @return バケット数
+     */
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    /**
+     * 実行を待っているタスクの数を返す。
+     * @return 実行を待っているタスクの数
+     */
+    public synchronized int countPendingTimeouts() {
+        return pendingCount;
+    }
+
+    /**
+     * タスクを処理するスレッドが動作中であるか返す。
+     * @return スレッドが動作中であればtrue、そうでなければfalse
+     */
+    public synchronized boolean isWorking() {
+        return workerThread != null;
+    }
+
+    private long currentTime() {
+        return System.nanoTime();
+    }
+
+    private void startWorker() {
+        startTime = currentTime();
+        tick = 0;
+        idleCount = 0;
+
+        workerThread = new Thread(new Worker(), "HashedWheelTimer");
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    /**
+     * 指定された遅延時間の経過後にタスクを実行するように登録する。
+     * タスクはこのHashedWheelTimerのスレッドで実行されるため、長時間ブロックしてはならない。
+     * @param task 実行するタスク
+     * @param delay 遅延時間(ミリ秒)
+     * @return 登録したタスクのハンドル
+     * @throws IllegalStateException 既にstopが呼び出されている場合
+     */
+    public synchronized Timeout newTimeout(Runnable task, long delay) {
+        LOGGER.entering(CLASS_NAME, "newTimeout", new Object[]{task, delay});
+
+        if (stopped) {
+            IllegalStateException exception = new IllegalStateException("timer stopped");
+            LOGGER.throwing(CLASS_NAME, "newTimeout", exception);
+            throw exception;
+        }
+
+        if (workerThread == null) {
+            startWorker();
+        }
+
+        Timeout timeout = new Timeout(task, delay);
+
+        long deadline = currentTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+        long calculated = (deadline + tickNanos - 1) / tickNanos;
+        long ticks = Math.max(calculated, tick);
+        timeout.remainingRounds = (calculated - tick) / wheel.length;
+        wheel[(int)(ticks % wheel.length)].add(timeout);
+        pendingCount++;
+        idleCount = 0;
+
+        LOGGER.exiting(CLASS_NAME, "newTimeout", timeout);
+        return timeout;
+    }
+
+    /**
+     * タイマーを停止する。実行を待っているタスクは実行されない。
+     * 停止後はタスクを登録することはできない。
+     */
+    public synchronized void stop() {
+        LOGGER.entering(CLASS_NAME, "stop");
+
+        stopped = true;
+
+        for (Bucket bucket : wheel) {
+            while (bucket.head != null) {
+                Timeout timeout = bucket.head;
+                bucket.remove(timeout);
+                timeout.cancelled = true;
+            }
+        }
+
+        pendingCount = 0;
+
+        if (workerThread != null) {
+            LockSupport.unpark(workerThread);
+        }
+
+        LOGGER.exiting(CLASS_NAME, "stop");
+    }
+
+    private void expireTimeouts(ArrayList<Timeout> expiredTimeouts) {
+        Bucket bucket = wheel[(int)(tick % wheel.length)];
+        Timeout timeout = bucket.head;
+
+        while (timeout != null) {
+            Timeout next = timeout.next;
+
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                timeout.expired = true;
+                pendingCount--;
+                expiredTimeouts.add(timeout);
+            } else {
+                timeout.remainingRounds--;
+            }
+
+            timeout = next;
+        }
+
+        tick++;
+    }
+
+    private boolean updateIdleCount() {
+        if (pendingCount > 0) {
+            idleCount = 0;
+            return true;
+        }
+
+        if (++idleCount < idleTicks) {
+            return true;
+        }
+
+        workerThread = null;
+        return false;
+    }
+
+    private void runTask(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException ex) {
+            LOGGER.logp(Level.WARNING, CLASS_NAME, "runTask", "catched exception", ex);
+        }
+    }
+}
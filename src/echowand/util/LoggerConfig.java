@@ -11,6 +11,14 @@ import java.util.logging.Logger;
  */
 public class LoggerConfig {
     
+    /**
+     * システムプロパティechowand.traceにtrueが指定されているかどうかを表す。
+     * trueの場合、Tracerが最初に利用された時点でechowandのLoggerのレベルをFINERに設定し、
+     * フレームやトランザクションの処理経路のentering/exitingのログをコンソールに出力する。
+     * falseの場合でも、changeLogLevelAllなどによりLoggerのレベルを変更すればログは出力される。
+     */
+    public static final boolean TRACE_ENABLED = Boolean.getBoolean("echowand.trace");
+    
     /*
      * This HashMap keeps Logger instances to avoid being released accidentally.
      * Because OpenJDK uses weak references for keeping Logger instances,
@@ -39,11 +47,22 @@ public class LoggerConfig {
         return handler;
     }
     
+    /**
+     * 指定された名前のLoggerの全てのログをコンソールに出力するように設定する。
+     * フレームやトランザクションの処理経路のentering/exitingのログ(FINER)も出力される。
+     * @param name Loggerの名前
+     */
     public synchronized static void changeLogLevelAll(String name) {
         changeLogLevel(Level.ALL, name);
     }
     
     
+    /**
+     * 指定された名前のLoggerのレベルを変更し、ログをコンソールに出力するように設定する。
+     * フレームやトランザクションの処理経路のentering/exitingのログ(FINER)も、このレベルに従って出力される。
+     * @param level 設定するレベル
+     * @param name Loggerの名前
+     */
     public synchronized static void changeLogLevel(Level level, String name) {
         getLogger(name).setLevel(level);
         getLogger(name).addHandler(getHandler());
@@ -14,6 +14,8 @@ public class TimeoutTask extends TimerTask {
     private TimeoutObserver target;
     
     private static Timer timer;
+    
+    private HashedWheelTimer.Timeout timeoutHandle;
 
     private long timeout;
     private boolean done;
@@ -37,6 +39,15 @@ public class TimeoutTask extends TimerTask {
     public void start() {
         timer.schedule(this, timeout);
     }
+    
+    /**
+     * 指定されたHashedWheelTimerを利用してタイムアウトの計測を開始する。
+     * 多数のTimeoutTaskを単一のスレッドで処理する場合に利用する。
+     * @param wheelTimer タイムアウトの計測に利用するHashedWheelTimer
+     */
+    public synchronized void start(HashedWheelTimer wheelTimer) {
+        timeoutHandle = wheelTimer.newTimeout(this, timeout);
+    }
 
     public synchronized boolean isDone() {
         return done;
@@ -60,5 +71,10 @@ public class TimeoutTask extends TimerTask {
     public synchronized void terminate() {
         terminated = true;
         cancel();
+        
+        if (timeoutHandle != null) {
+            timeoutHandle.cancel();
+            timeoutHandle = null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package echowand.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * フレームやトランザクションの処理経路でentering/exitingのログを出力するためのユーティリティ
+ * LoggerがFINERのログを出力しない場合には、引数の配列を確保せずに直ちに戻る。
+ * 引数の数毎にメソッドを用意しているため、呼び出し側でも配列は確保されない。
+ * int以下の整数の引数や戻り値は専用のメソッドによりボクシングせずに渡される。
+ * ログを出力するかどうかはLoggerのレベルに従うため、LoggerConfig.changeLogLevelAllなどにより有効にできる。
+ * システムプロパティechowand.traceにtrueを指定した場合には、最初に利用された時点で全てのechowandのLoggerについて有効にする。
+ * @author ymakino
+ */
+public final class Tracer {
+
+    static {
+        if (LoggerConfig.TRACE_ENABLED) {
+            LoggerConfig.changeLogLevel(Level.FINER, "echowand");
+        }
+    }
+
+    private Tracer() {
+    }
+
+    /**
+     * 指定されたLoggerがentering/exitingのログを出力するか返す。
+     * @param logger 確認するLogger
+     * @return ログを出力する場合にはtrue、そうでなければfalse
+     */
+    public static boolean isEnabled(Logger logger) {
+        return logger.isLoggable(Level.FINER);
+    }
+
+    /**
+     * メソッドの開始をログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     */
+    public static void entering(Logger logger, String sourceClass, String sourceMethod) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(sourceClass, sourceMethod);
+        }
+    }
+
+    /**
+     * メソッドの開始を引数とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param param1 引数
+     */
+    public static void entering(Logger logger, String sourceClass, String sourceMethod, Object param1) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(sourceClass, sourceMethod, param1);
+        }
+    }
+
+    /**
+     * メソッドの開始を整数の引数とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param param1 引数
+     */
+    public static void entering(Logger logger, String sourceClass, String sourceMethod, int param1) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(sourceClass, sourceMethod, param1);
+        }
+    }
+
+    /**
+     * メソッドの開始を2つの引数とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param param1 1番目の引数
+     * @param param2 2番目の引数
+     */
+    public static void entering(Logger logger, String sourceClass, String sourceMethod, Object param1, Object param2) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(sourceClass, sourceMethod, new Object[]{param1, param2});
+        }
+    }
+
+    /**
+     * メソッドの開始を3つの引数とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param param1 1番目の引数
+     * @param param2 2番目の引数
+     * @param param3 3番目の引数
+     */
+    public static void entering(Logger logger, String sourceClass, String sourceMethod, Object param1, Object param2, Object param3) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(sourceClass, sourceMethod, new Object[]{param1, param2, param3});
+        }
+    }
+
+    /**
+     * メソッドの開始を4つの引数とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param param1 1番目の引数
+     * @param param2 2番目の引数
+     * @param param3 3番目の引数
+     * @param param4 4番目の引数
+     */
+    public static void entering(Logger logger, String sourceClass, String sourceMethod, Object param1, Object param2, Object param3, Object param4) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(sourceClass, sourceMethod, new Object[]{param1, param2, param3, param4});
+        }
+    }
+
+    /**
+     * メソッドの終了をログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     */
+    public static void exiting(Logger logger, String sourceClass, String sourceMethod) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.exiting(sourceClass, sourceMethod);
+        }
+    }
+
+    /**
+     * メソッドの終了を戻り値とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param result 戻り値
+     */
+    public static void exiting(Logger logger, String sourceClass, String sourceMethod, Object result) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.exiting(sourceClass, sourceMethod, result);
+        }
+    }
+
+    /**
+     * メソッドの終了を整数の戻り値とともにログに出力する。
+     * @param logger 出力先のLogger
+     * @param sourceClass クラス名
+     * @param sourceMethod メソッド名
+     * @param result 戻り値
+     */
+    public static void exiting(Logger logger, String sourceClass, String sourceMethod, int result) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.exiting(sourceClass, sourceMethod, result);
+        }
+    }
+}
@@ -189,4 +189,17 @@ public class ClassEOJTest {
     public void testGetAllInstanceEOJ() {
         assertEquals(new EOJ("0EF000"), new ClassEOJ("0EF0").getAllInstanceEOJ());
     }
+    
+    @Test
+    public void testValueOf() {
+        ClassEOJ ceoj = ClassEOJ.valueOf((byte)0x00, (byte)0x11);
+        assertEquals(new ClassEOJ("0011"), ceoj);
+        assertSame(ceoj, ClassEOJ.valueOf((byte)0x00, (byte)0x11));
+        assertSame(ClassEOJ.valueOf((byte)0x0e, (byte)0xf0), ClassEOJ.valueOf((byte)0x0e, (byte)0xf0));
+        assertTrue(ClassEOJ.valueOf((byte)0x0e, (byte)0xf0).isNodeProfileObject());
+        
+        ClassEOJ other = ClassEOJ.valueOf((byte)0xf0, (byte)0x00);
+        assertEquals(new ClassEOJ("f000"), other);
+        assertNotSame(other, ClassEOJ.valueOf((byte)0xf0, (byte)0x00));
+    }
 }
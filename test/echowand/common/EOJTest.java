@@ -2,6 +2,7 @@ package echowand.common;
 
 import echowand.common.ClassEOJ;
 import echowand.common.EOJ;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import static org.junit.Assert.*;
 import org.junit.*;
@@ -166,6 +167,15 @@ public class EOJTest {
         assertEquals(0x56, beoj[2]);
     }
     
+    @Test
+    public void testWriteTo() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.put((byte)0x00);
+        eojs1[1].writeTo(buffer);
+        assertEquals(4, buffer.position());
+        assertArrayEquals(new byte[]{0x00, 0x12, 0x34, 0x56}, buffer.array());
+    }
+    
     @Test
     public void testCreationWithBytes() {
         EOJ eoj = new EOJ(new byte[]{(byte)0x01,
@@ -237,4 +247,21 @@ public class EOJTest {
             }
         }
     }
+    
+    @Test
+    public void testValueOf() {
+        EOJ eoj = EOJ.valueOf((byte)0x0e, (byte)0xf0, (byte)0x01);
+        assertEquals(new EOJ("0ef001"), eoj);
+        assertSame(eoj, EOJ.valueOf(new byte[]{0x00, 0x0e, (byte)0xf0, 0x01}, 1));
+        assertSame(eoj, EOJ.valueOf(ByteBuffer.wrap(new byte[]{0x0e, (byte)0xf0, 0x01})));
+        assertSame(eoj, new EOJ("0ef003").getEOJWithInstanceCode((byte)0x01));
+        
+        EOJ eoj2 = EOJ.valueOf((byte)0x00, (byte)0x11, (byte)0x80);
+        assertEquals(new EOJ("001180"), eoj2);
+        assertNotSame(eoj2, EOJ.valueOf((byte)0x00, (byte)0x11, (byte)0x80));
+        
+        EOJ eoj3 = EOJ.valueOf((byte)0xf0, (byte)0x00, (byte)0x01);
+        assertEquals(new EOJ("f00001"), eoj3);
+        assertNotSame(eoj3, EOJ.valueOf((byte)0xf0, (byte)0x00, (byte)0x01));
+    }
 }
@@ -0,0 +1,24 @@
+package echowand.common;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class EPCTest {
+    
+    @Test
+    public void testFromByte() {
+        for (EPC epc : EPC.values()) {
+            assertEquals(epc, EPC.fromByte(epc.toByte()));
+        }
+        
+        assertEquals(EPC.x80, EPC.fromByte((byte)0x80));
+        assertEquals(EPC.xFF, EPC.fromByte((byte)0xff));
+        assertEquals(EPC.Invalid, EPC.fromByte((byte)0x00));
+        assertEquals(EPC.Invalid, EPC.fromByte((byte)0x7f));
+        assertTrue(EPC.fromByte((byte)0x01).isInvalid());
+    }
+}
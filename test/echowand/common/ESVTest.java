@@ -72,4 +72,13 @@ public class ESVTest {
         assertFalse(ESV.INF_SNA.isInvalid());
         assertFalse(ESV.SetGet_SNA.isInvalid());
     }
+    
+    @Test
+    public void testFromByte() {
+        for (ESV esv : ESV.values()) {
+            assertEquals(esv, ESV.fromByte(esv.toByte()));
+        }
+        assertEquals(ESV.Invalid, ESV.fromByte((byte)0x01));
+        assertEquals(ESV.Invalid, ESV.fromByte((byte)0xff));
+    }
 }
@@ -47,4 +47,24 @@ public class AnnounceTransactionConfigTest {
         assertEquals(2, payload.getFirstOPC());
         assertEquals(0, payload.getSecondOPC());
     }
+    
+    @Test
+    public void testSplit() {
+        AnnounceTransactionConfig config = new AnnounceTransactionConfig();
+        config.setMaxFrameSize(1500);
+        
+        for (int i=0; i<20; i++) {
+            config.addAnnounce(EPC.x80, new Data(new byte[100]));
+        }
+        
+        assertEquals(2, config.getCountPayloads());
+        
+        StandardPayload payload = new StandardPayload();
+        config.addPayloadProperties(0, payload);
+        assertEquals(14, payload.getFirstOPC());
+        
+        payload = new StandardPayload();
+        config.addPayloadProperties(1, payload);
+        assertEquals(6, payload.getFirstOPC());
+    }
 }
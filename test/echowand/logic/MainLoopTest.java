@@ -1,12 +1,22 @@
 package echowand.logic;
 
+import echowand.common.EOJ;
+import echowand.common.ESV;
 import echowand.logic.MainLoop;
 import echowand.logic.Listener;
 import echowand.object.LocalObjectManager;
+import echowand.net.CommonFrame;
 import echowand.net.Frame;
 import echowand.net.InternalSubnet;
+import echowand.net.Node;
+import echowand.net.NodeInfo;
 import echowand.net.Subnet;
-import static org.junit.Assert.assertEquals;
+import echowand.net.SubnetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import static org.junit.Assert.*;
 import org.junit.*;
 
 /**
@@ -35,4 +45,194 @@ public class MainLoopTest {
         echonet.removeListener(listener);
         assertEquals(0, echonet.countListeners());
     }
+    
+    @Test
+    public void testBatchSize() {
+        MainLoop mainLoop = new MainLoop();
+        assertEquals(MainLoop.DEFAULT_BATCH_SIZE, mainLoop.getBatchSize());
+        
+        mainLoop.setBatchSize(32);
+        assertEquals(32, mainLoop.getBatchSize());
+        
+        mainLoop.setBatchSize(0);
+        assertEquals(1, mainLoop.getBatchSize());
+    }
+    
+    @Test
+    public void testReceiveFramesWithoutBatchReceivable() throws Exception {
+        final InternalSubnet internalSubnet = new InternalSubnet("MainLoopTest.testReceiveFramesWithoutBatchReceivable");
+        InternalSubnet sender = new InternalSubnet("MainLoopTest.testReceiveFramesWithoutBatchReceivable");
+        
+        Subnet subnet = new Subnet() {
+            @Override
+            public boolean send(Frame frame) throws SubnetException {
+                return internalSubnet.send(frame);
+            }
+            
+            @Override
+            public Frame receive() throws SubnetException {
+                return internalSubnet.receive();
+            }
+            
+            @Override
+            public Node getLocalNode() {
+                return internalSubnet.getLocalNode();
+            }
+            
+            @Override
+            public Node getRemoteNode(String name) throws SubnetException {
+                return internalSubnet.getRemoteNode(name);
+            }
+            
+            @Override
+            public Node getRemoteNode(NodeInfo nodeInfo) throws SubnetException {
+                return internalSubnet.getRemoteNode(nodeInfo);
+            }
+            
+            @Override
+            public Node getGroupNode() {
+                return internalSubnet.getGroupNode();
+            }
+        };
+        
+        MainLoop mainLoop = new MainLoop();
+        mainLoop.setSubnet(subnet);
+        
+        for (short i=0; i<3; i++) {
+            CommonFrame commonFrame = new CommonFrame(new EOJ("001101"), new EOJ("0ef001"), ESV.INF);
+            commonFrame.setTID(i);
+            sender.send(new Frame(sender.getLocalNode(), sender.getGroupNode(), commonFrame));
+        }
+        
+        List<Frame> frames = mainLoop.receiveFrames(10);
+        assertEquals(1, frames.size());
+        assertEquals(0, frames.get(0).getCommonFrame().getTID());
+        
+        frames = mainLoop.receiveFrames(10);
+        assertEquals(1, frames.size());
+        assertEquals(1, frames.get(0).getCommonFrame().getTID());
+    }
+    
+    @Test
+    public void testWorkerCount() {
+        MainLoop mainLoop = new MainLoop();
+        assertEquals(MainLoop.DEFAULT_WORKER_COUNT, mainLoop.getWorkerCount());
+        assertEquals(MainLoop.DEFAULT_LANE_CAPACITY, mainLoop.getLaneCapacity());
+        assertEquals(DispatchLanePolicy.Sender, mainLoop.getLanePolicy());
+        
+        assertTrue(mainLoop.setWorkerCount(4));
+        assertEquals(4, mainLoop.getWorkerCount());
+        assertFalse(mainLoop.setWorkerCount(-1));
+        assertEquals(4, mainLoop.getWorkerCount());
+        
+        assertTrue(mainLoop.setLaneCapacity(16));
+        assertEquals(16, mainLoop.getLaneCapacity());
+        assertFalse(mainLoop.setLaneCapacity(0));
+        
+        assertTrue(mainLoop.setLanePolicy(DispatchLanePolicy.SenderAndSEOJ));
+        assertEquals(DispatchLanePolicy.SenderAndSEOJ, mainLoop.getLanePolicy());
+        assertFalse(mainLoop.setLanePolicy(null));
+        
+        assertEquals(0, mainLoop.getLaneQueueSize(0));
+        assertEquals(0, mainLoop.getLaneProcessedCount(3));
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testInvalidLane() {
+        MainLoop mainLoop = new MainLoop();
+        mainLoop.setWorkerCount(2);
+        mainLoop.getLaneQueueSize(2);
+    }
+    
+    @Test
+    public void testSelectLaneIndex() {
+        MainLoop mainLoop = new MainLoop();
+        InternalSubnet subnet = new InternalSubnet();
+        
+        Frame frame1 = new Frame(subnet.getLocalNode(), subnet.getGroupNode(), new CommonFrame(new EOJ("001101"), new EOJ("0ef001"), ESV.INF));
+        Frame frame2 = new Frame(subnet.getLocalNode(), subnet.getGroupNode(), new CommonFrame(new EOJ("001102"), new EOJ("0ef001"), ESV.INF));
+        
+        assertEquals(mainLoop.selectLaneIndex(frame1, 8), mainLoop.selectLaneIndex(frame2, 8));
+        
+        mainLoop.setLanePolicy(DispatchLanePolicy.SenderAndSEOJ);
+        boolean found = false;
+        for (int i=1; i<=0x10; i++) {
+            Frame frame = new Frame(subnet.getLocalNode(), subnet.getGroupNode(), new CommonFrame(new EOJ(String.format("0011%02x", i)), new EOJ("0ef001"), ESV.INF));
+            int index = mainLoop.selectLaneIndex(frame, 8);
+            assertTrue(0 <= index && index < 8);
+            found |= (index != mainLoop.selectLaneIndex(frame1, 8));
+        }
+        assertTrue(found);
+    }
+    
+    @Test
+    public void testOrderedDispatch() throws Exception {
+        final int senderCount = 4;
+        final int frameCount = 200;
+        
+        InternalSubnet subnet = new InternalSubnet("MainLoopTest.testOrderedDispatch");
+        List<InternalSubnet> senders = new ArrayList<InternalSubnet>();
+        for (int i=0; i<senderCount; i++) {
+            senders.add(new InternalSubnet("MainLoopTest.testOrderedDispatch"));
+        }
+        
+        final HashMap<String, LinkedList<Integer>> results = new HashMap<String, LinkedList<Integer>>();
+        
+        MainLoop mainLoop = new MainLoop();
+        mainLoop.setSubnet(subnet);
+        assertTrue(mainLoop.setWorkerCount(4));
+        mainLoop.addListener(new Listener() {
+            @Override
+            public boolean process(Subnet subnet, Frame frame, boolean processed) {
+                String key = frame.getSender().toString();
+                synchronized (results) {
+                    if (!results.containsKey(key)) {
+                        results.put(key, new LinkedList<Integer>());
+                    }
+                    results.get(key).add(frame.getCommonFrame().getTID() & 0xffff);
+                }
+                return true;
+            }
+        });
+        
+        Thread thread = new Thread(mainLoop);
+        thread.setDaemon(true);
+        thread.start();
+        
+        for (short i=0; i<frameCount; i++) {
+            for (InternalSubnet sender : senders) {
+                CommonFrame commonFrame = new CommonFrame(new EOJ("001101"), new EOJ("0ef001"), ESV.INF);
+                commonFrame.setTID(i);
+                sender.send(new Frame(sender.getLocalNode(), sender.getGroupNode(), commonFrame));
+            }
+        }
+        
+        long processed = 0;
+        for (int i=0; i<500 && processed != senderCount * frameCount; i++) {
+            Thread.sleep(10);
+            processed = 0;
+            for (int lane=0; lane<mainLoop.getWorkerCount(); lane++) {
+                processed += mainLoop.getLaneProcessedCount(lane);
+            }
+        }
+        
+        assertEquals(senderCount * frameCount, processed);
+        assertFalse(mainLoop.setWorkerCount(2));
+        
+        synchronized (results) {
+            assertEquals(senderCount, results.size());
+            for (LinkedList<Integer> tids : results.values()) {
+                assertEquals(frameCount, tids.size());
+                for (int i=0; i<frameCount; i++) {
+                    assertEquals(i, (int)tids.get(i));
+                }
+            }
+        }
+        
+        for (int lane=0; lane<mainLoop.getWorkerCount(); lane++) {
+            assertEquals(0, mainLoop.getLaneQueueSize(lane));
+            assertEquals(mainLoop.getLaneEnqueuedCount(lane), mainLoop.getLaneProcessedCount(lane));
+            assertTrue(mainLoop.getLaneHighWaterMark(lane) <= MainLoop.DEFAULT_LANE_CAPACITY);
+        }
+    }
 }
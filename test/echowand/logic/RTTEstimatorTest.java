@@ -0,0 +1,78 @@
+package echowand.logic;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class RTTEstimatorTest {
+    
+    @Test
+    public void testInitialRTO() {
+        RTTEstimator estimator = new RTTEstimator();
+        RetransmissionPolicy policy = new RetransmissionPolicy();
+        assertEquals(0, estimator.countSamples());
+        assertEquals(RetransmissionPolicy.DEFAULT_INITIAL_RTO, estimator.getRTO(policy));
+    }
+    
+    @Test
+    public void testUpdate() {
+        RTTEstimator estimator = new RTTEstimator();
+        RetransmissionPolicy policy = new RetransmissionPolicy(3, 1000, 10, 4000);
+        
+        estimator.update(40);
+        assertEquals(40, estimator.getSmoothedRTT());
+        assertEquals(20, estimator.getRTTVariance());
+        assertEquals(120, estimator.getRTO(policy));
+        
+        for (int i=0; i<100; i++) {
+            estimator.update(40);
+        }
+        assertEquals(101, estimator.countSamples());
+        assertEquals(40, estimator.getSmoothedRTT());
+        assertTrue(estimator.getRTO(policy) < 60);
+        
+        estimator.update(1000000);
+        assertEquals(4000, estimator.getRTO(policy));
+    }
+    
+    @Test
+    public void testSmallChanges() {
+        RTTEstimator estimator = new RTTEstimator();
+        
+        estimator.update(40);
+        for (int i=0; i<100; i++) {
+            estimator.update(45);
+        }
+        assertEquals(45, estimator.getSmoothedRTT());
+        
+        for (int i=0; i<100; i++) {
+            estimator.update(38);
+        }
+        assertEquals(38, estimator.getSmoothedRTT());
+    }
+    
+    @Test
+    public void testMinRTO() {
+        RTTEstimator estimator = new RTTEstimator();
+        estimator.update(1);
+        assertEquals(RetransmissionPolicy.DEFAULT_MIN_RTO, estimator.getRTO(new RetransmissionPolicy()));
+    }
+    
+    @Test
+    public void testBackoffRTO() {
+        RetransmissionPolicy policy = new RetransmissionPolicy(5, 100, 10, 1000);
+        assertEquals(100, policy.getBackoffRTO(100, 0));
+        assertEquals(200, policy.getBackoffRTO(100, 1));
+        assertEquals(800, policy.getBackoffRTO(100, 3));
+        assertEquals(1000, policy.getBackoffRTO(100, 4));
+        assertEquals(1000, policy.getBackoffRTO(100, 40));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidPolicy() {
+        new RetransmissionPolicy(1, 100, 200, 100);
+    }
+}
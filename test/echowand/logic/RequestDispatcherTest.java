@@ -176,6 +176,46 @@ public class RequestDispatcherTest {
         commonFrame.setEDATA(new SimplePayload());
         assertFalse(dispatcher.process(subnet, frame, false));
     }
+    
+    @Test
+    public void testProcessorTable() {
+        InternalSubnet subnet = new InternalSubnet();
+        RequestDispatcher dispatcher = new RequestDispatcher();
+        final int[] count = new int[1];
+        
+        DefaultRequestProcessor getProcessor = new DefaultRequestProcessor() {
+            @Override
+            public boolean processGet(Subnet subnet, Frame frame, boolean processed) {
+                count[0]++;
+                return true;
+            }
+        };
+        RequestProcessor trueProcessor = new ReturnTrueRequestProcessor();
+        
+        dispatcher.addRequestProcessor(new DefaultRequestProcessor());
+        dispatcher.addRequestProcessor(getProcessor);
+        assertEquals(2, dispatcher.countRequestProcessors());
+        assertEquals(1, dispatcher.countRequestProcessors(ESV.Get));
+        assertEquals(0, dispatcher.countRequestProcessors(ESV.SetC));
+        assertEquals(0, dispatcher.countRequestProcessors(ESV.Get_Res));
+        
+        Frame getFrame = new Frame(subnet.getLocalNode(), subnet.getLocalNode(), new CommonFrame(new EOJ("0ef001"), new EOJ("001101"), ESV.Get));
+        Frame setFrame = new Frame(subnet.getLocalNode(), subnet.getLocalNode(), new CommonFrame(new EOJ("0ef001"), new EOJ("001101"), ESV.SetC));
+        assertTrue(dispatcher.process(subnet, getFrame, false));
+        assertFalse(dispatcher.process(subnet, setFrame, false));
+        assertEquals(1, count[0]);
+        
+        dispatcher.addRequestProcessor(trueProcessor);
+        assertEquals(2, dispatcher.countRequestProcessors(ESV.Get));
+        assertEquals(1, dispatcher.countRequestProcessors(ESV.SetC));
+        assertTrue(dispatcher.process(subnet, setFrame, false));
+        
+        dispatcher.removeRequestProcessor(getProcessor);
+        dispatcher.removeRequestProcessor(trueProcessor);
+        assertEquals(0, dispatcher.countRequestProcessors(ESV.Get));
+        assertFalse(dispatcher.process(subnet, getFrame, false));
+        assertEquals(1, count[0]);
+    }
 }
 
 class ReturnTrueRequestProcessor implements RequestProcessor {
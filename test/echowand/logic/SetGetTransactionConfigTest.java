@@ -122,4 +122,80 @@ public class SetGetTransactionConfigTest {
         assertEquals(new EOJ("123456"), config.getSourceEOJ());
         assertEquals(new EOJ("789abc"), config.getDestinationEOJ());
     }
+    
+    @Test
+    public void testSplitGet() {
+        SetGetTransactionConfig config = new SetGetTransactionConfig();
+        assertEquals(TransactionConfig.DEFAULT_MAX_FRAME_SIZE, config.getMaxFrameSize());
+        config.setMaxFrameSize(20);
+        
+        for (int i=0; i<10; i++) {
+            config.addGet(EPC.fromByte((byte)(0x80 + i)));
+        }
+        
+        assertEquals(3, config.getCountPayloads());
+        int count = 0;
+        for (int i=0; i<config.getCountPayloads(); i++) {
+            StandardPayload payload = new StandardPayload();
+            config.addPayloadProperties(i, payload);
+            assertTrue(12 + 2 * payload.getFirstOPC() <= 20);
+            for (int j=0; j<payload.getFirstOPC(); j++) {
+                assertEquals(EPC.fromByte((byte)(0x80 + count++)), payload.getFirstPropertyAt(j).getEPC());
+            }
+        }
+        assertEquals(10, count);
+    }
+    
+    @Test
+    public void testSplitSetGet() {
+        SetGetTransactionConfig config = new SetGetTransactionConfig();
+        config.setMaxFrameSize(32);
+        config.addSet(EPC.x80, new Data(new byte[10]));
+        config.addSet(EPC.x81, new Data(new byte[10]));
+        config.addSet(EPC.x82, new Data(new byte[40]));
+        config.addGet(EPC.x88);
+        config.addGet(EPC.x89);
+        
+        assertEquals(4, config.getCountPayloads());
+        
+        StandardPayload payload = new StandardPayload();
+        config.addPayloadProperties(0, payload);
+        assertEquals(1, payload.getFirstOPC());
+        assertEquals(0, payload.getSecondOPC());
+        
+        payload = new StandardPayload();
+        config.addPayloadProperties(1, payload);
+        assertEquals(1, payload.getFirstOPC());
+        assertEquals(EPC.x81, payload.getFirstPropertyAt(0).getEPC());
+        
+        payload = new StandardPayload();
+        config.addPayloadProperties(2, payload);
+        assertEquals(1, payload.getFirstOPC());
+        assertEquals(EPC.x82, payload.getFirstPropertyAt(0).getEPC());
+        assertEquals(0, payload.getSecondOPC());
+        
+        payload = new StandardPayload();
+        config.addPayloadProperties(3, payload);
+        assertEquals(0, payload.getFirstOPC());
+        assertEquals(2, payload.getSecondOPC());
+    }
+    
+    @Test
+    public void testSplitMaxOPC() {
+        SetGetTransactionConfig config = new SetGetTransactionConfig();
+        config.setMaxFrameSize(4096);
+        for (int i=0; i<300; i++) {
+            config.addGet(EPC.x80);
+        }
+        
+        assertEquals(2, config.getCountPayloads());
+        StandardPayload payload = new StandardPayload();
+        config.addPayloadProperties(0, payload);
+        assertEquals(TransactionConfig.MAX_OPC, 0xff & payload.getFirstOPC());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidMaxFrameSize() {
+        new SetGetTransactionConfig().setMaxFrameSize(10);
+    }
 }
@@ -0,0 +1,147 @@
+package echowand.logic;
+
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.net.InternalSubnet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class TransactionFutureTest {
+    private InternalSubnet subnet;
+    private TransactionManager transactionManager;
+    private Transaction transaction;
+
+    @Before
+    public void setUp() {
+        subnet = new InternalSubnet();
+        transactionManager = new TransactionManager(subnet);
+        SetGetTransactionConfig config = new SetGetTransactionConfig();
+        config.setSenderNode(subnet.getLocalNode());
+        config.setReceiverNode(subnet.getGroupNode());
+        config.setSourceEOJ(new EOJ("0ef001"));
+        config.setDestinationEOJ(new EOJ("001101"));
+        config.addGet(EPC.x80);
+        transaction = transactionManager.createTransaction(config);
+        transaction.setTimeout(10000);
+    }
+
+    private class DummyFutureListener implements TransactionFutureListener<String> {
+        public int count;
+        public String result;
+        public Throwable cause;
+
+        @Override
+        public void success(TransactionFuture<String> future, String result) {
+            this.count++;
+            this.result = result;
+        }
+
+        @Override
+        public void failure(TransactionFuture<String> future, Throwable cause) {
+            this.count++;
+            this.cause = cause;
+        }
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+        TransactionFuture<String> future = new TransactionFuture<String>(transaction);
+        DummyFutureListener listener = new DummyFutureListener();
+        future.addTransactionFutureListener(listener);
+        assertSame(transaction, future.getTransaction());
+        assertFalse(future.isDone());
+        assertEquals(0, listener.count);
+
+        assertTrue(future.complete("result"));
+        assertFalse(future.complete("other"));
+        assertFalse(future.fail(new Exception()));
+        assertFalse(future.cancel(true));
+
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertEquals("result", future.get());
+        assertEquals(1, listener.count);
+        assertEquals("result", listener.result);
+
+        DummyFutureListener lateListener = new DummyFutureListener();
+        future.addTransactionFutureListener(lateListener);
+        assertEquals(1, lateListener.count);
+        assertEquals("result", lateListener.result);
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        TransactionFuture<String> future = new TransactionFuture<String>(transaction);
+        DummyFutureListener listener = new DummyFutureListener();
+        future.addTransactionFutureListener(listener);
+
+        Exception cause = new Exception("failed");
+        assertTrue(future.fail(cause));
+        assertTrue(future.isDone());
+        assertSame(cause, listener.cause);
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        transaction.execute();
+        assertEquals(1, transactionManager.countActiveTransactions());
+
+        TransactionFuture<String> future = new TransactionFuture<String>(transaction);
+        DummyFutureListener listener = new DummyFutureListener();
+        future.addTransactionFutureListener(listener);
+
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertFalse(future.complete("result"));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertTrue(transaction.isDone());
+        assertEquals(0, transactionManager.countActiveTransactions());
+        assertTrue(listener.cause instanceof CancellationException);
+
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException e) {
+        }
+    }
+
+    @Test(expected=TimeoutException.class)
+    public void testGetTimeout() throws Exception {
+        TransactionFuture<String> future = new TransactionFuture<String>(transaction);
+        future.get(100, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testGetFromOtherThread() throws Exception {
+        final TransactionFuture<String> future = new TransactionFuture<String>(transaction);
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                future.complete("result");
+            }
+        }.start();
+
+        assertEquals("result", future.get(5000, TimeUnit.MILLISECONDS));
+    }
+}
@@ -7,6 +7,7 @@ import echowand.net.Node;
 import echowand.net.InternalSubnet;
 import echowand.net.SubnetException;
 import echowand.net.Subnet;
+import echowand.common.EPC;
 import echowand.common.ESV;
 import echowand.logic.TransactionManager;
 import echowand.logic.TransactionConfig;
@@ -16,6 +17,9 @@ import echowand.object.LocalObjectManager;
 import echowand.object.LocalObject;
 import echowand.info.TemperatureSensorInfo;
 import echowand.logic.SetGetTransactionConfig;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -75,4 +79,143 @@ public class TransactionManagerTest {
         assertTrue(t != null);
         assertEquals(config, t.getTransactionConfig());
     }
+    
+    @Test
+    public void testAllocateTID() {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        
+        assertEquals((short)1, transactionManager.allocateTID());
+        assertEquals((short)2, transactionManager.allocateTID());
+        
+        for (int i=3; i<=0xffff; i++) {
+            assertEquals((short)i, transactionManager.allocateTID());
+        }
+        
+        assertEquals((short)1, transactionManager.allocateTID());
+    }
+    
+    @Test
+    public void testAllocateTIDSkipsActiveTransactions() throws SubnetException {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        SetGetTransactionConfig config = new SetGetTransactionConfig();
+        config.setSenderNode(subnet.getLocalNode());
+        config.setReceiverNode(subnet.getGroupNode());
+        config.setSourceEOJ(new EOJ("0ef001"));
+        config.setDestinationEOJ(new EOJ("001101"));
+        
+        Transaction t = transactionManager.createTransaction(config);
+        t.setTimeout(-1);
+        t.execute();
+        assertEquals(1, transactionManager.countUsedTIDs());
+        
+        HashSet<Short> tids = new HashSet<Short>();
+        for (int i=0; i<0xfffe; i++) {
+            short tid = transactionManager.allocateTID();
+            assertTrue(tid != 0);
+            assertTrue(tid != t.getTID());
+            tids.add(tid);
+        }
+        assertEquals(0xfffe, tids.size());
+        
+        t.finish();
+        assertEquals(0, transactionManager.countUsedTIDs());
+        assertEquals(t.getTID(), transactionManager.allocateTID());
+    }
+    
+    private SetGetTransactionConfig createGetConfig(Node sender, Node receiver) {
+        SetGetTransactionConfig config = new SetGetTransactionConfig();
+        config.setSenderNode(sender);
+        config.setReceiverNode(receiver);
+        config.setSourceEOJ(new EOJ("0ef001"));
+        config.setDestinationEOJ(new EOJ("001101"));
+        config.addGet(EPC.x80);
+        return config;
+    }
+    
+    @Test
+    public void testCreatedTransactionsDoNotReserveTIDs() {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        SetGetTransactionConfig config = createGetConfig(subnet.getLocalNode(), subnet.getLocalNode());
+        
+        for (int i=0; i<0x20000; i++) {
+            transactionManager.createTransaction(config);
+        }
+        assertEquals(0, transactionManager.countUsedTIDs());
+        assertEquals(0, transactionManager.countActiveTransactions());
+    }
+    
+    @Test
+    public void testExecuteReassignsReservedTID() throws SubnetException {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        SetGetTransactionConfig config = createGetConfig(subnet.getLocalNode(), subnet.getLocalNode());
+        
+        Transaction t1 = transactionManager.createTransaction(config);
+        for (int i=0; i<0xfffe; i++) {
+            transactionManager.allocateTID();
+        }
+        Transaction t2 = transactionManager.createTransaction(config);
+        assertEquals(t1.getTID(), t2.getTID());
+        
+        t1.setTimeout(-1);
+        t2.setTimeout(-1);
+        t1.execute();
+        t2.execute();
+        assertTrue(t1.getTID() != t2.getTID());
+        assertEquals(2, transactionManager.countUsedTIDs());
+        
+        t1.finish();
+        t2.finish();
+        assertEquals(0, transactionManager.countUsedTIDs());
+    }
+    
+    @Test
+    public void testExecuteFailureReleasesTID() {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        SetGetTransactionConfig config = createGetConfig(new InternalSubnet().getLocalNode(), subnet.getLocalNode());
+        
+        for (int i=0; i<100; i++) {
+            Transaction t = transactionManager.createTransaction(config);
+            t.setTimeout(-1);
+            try {
+                t.execute();
+                fail();
+            } catch (SubnetException e) {
+            }
+            assertFalse(t.isWaitingResponse());
+        }
+        
+        assertEquals(0, transactionManager.countUsedTIDs());
+        assertEquals(0, transactionManager.countActiveTransactions());
+    }
+    
+    @Test
+    public void testAllocateTIDConcurrently() throws InterruptedException {
+        InternalSubnet subnet = new InternalSubnet();
+        final TransactionManager transactionManager = new TransactionManager(subnet);
+        final Set<Short> tids = Collections.synchronizedSet(new HashSet<Short>());
+        Thread[] threads = new Thread[4];
+        
+        for (int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j=0; j<10000; j++) {
+                        tids.add(transactionManager.allocateTID());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(40000, tids.size());
+    }
 }
@@ -0,0 +1,205 @@
+package echowand.logic;
+
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.net.InternalSubnet;
+import echowand.net.Node;
+import echowand.net.SubnetException;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class TransactionSchedulerTest {
+    private InternalSubnet subnet;
+    private TransactionManager transactionManager;
+    private TransactionScheduler scheduler;
+    private Node node;
+
+    @Before
+    public void setUp() throws SubnetException {
+        subnet = new InternalSubnet("TransactionSchedulerTest");
+        transactionManager = new TransactionManager(subnet);
+        scheduler = new TransactionScheduler(subnet);
+        node = subnet.getLocalNode();
+    }
+
+    private Transaction createTransaction(Node receiver, int timeout) {
+        SetGetTransactionConfig transactionConfig = new SetGetTransactionConfig();
+        transactionConfig.setSenderNode(subnet.getLocalNode());
+        transactionConfig.setReceiverNode(receiver);
+        transactionConfig.setSourceEOJ(new EOJ("0ef001"));
+        transactionConfig.setDestinationEOJ(new EOJ("001101"));
+        transactionConfig.addGet(EPC.x80);
+
+        Transaction transaction = transactionManager.createTransaction(transactionConfig);
+        transaction.setTimeout(timeout);
+        return transaction;
+    }
+
+    private void waitExecuted(Transaction transaction) throws InterruptedException {
+        for (int i=0; i<500 && !transaction.isWaitingResponse() && !transaction.isDone(); i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void waitIdle(Node node) throws InterruptedException {
+        for (int i=0; i<1000 && (scheduler.countQueued(node) > 0 || scheduler.countInFlight(node) > 0); i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testDefault() {
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT, scheduler.getMaxInFlight());
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT, scheduler.getMaxInFlight(node));
+        assertFalse(scheduler.isAdaptive());
+        assertEquals(0, scheduler.countInFlight(node));
+        assertEquals(0, scheduler.countQueued());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidMaxInFlight() {
+        scheduler.setMaxInFlight(0);
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        scheduler.setMaxInFlight(2);
+
+        Transaction t1 = createTransaction(node, 10000);
+        Transaction t2 = createTransaction(node, 10000);
+        Transaction t3 = createTransaction(node, 10000);
+        Transaction t4 = createTransaction(node, 10000);
+
+        assertTrue(scheduler.schedule(t1));
+        assertTrue(scheduler.schedule(t2));
+        assertFalse(scheduler.schedule(t3));
+        assertFalse(scheduler.schedule(t4));
+
+        assertEquals(2, scheduler.countInFlight(node));
+        assertEquals(2, scheduler.countQueued(node));
+        assertTrue(t2.isWaitingResponse());
+        assertFalse(t3.isWaitingResponse());
+
+        t1.finish();
+        waitExecuted(t3);
+        assertTrue(t3.isWaitingResponse());
+        assertFalse(t4.isWaitingResponse());
+        assertEquals(2, scheduler.countInFlight(node));
+        assertEquals(1, scheduler.countQueued(node));
+
+        t4.finish();
+        assertTrue(t4.isDone());
+        assertEquals(2, scheduler.countInFlight(node));
+        assertEquals(0, scheduler.countQueued(node));
+
+        t2.finish();
+        t3.finish();
+        assertEquals(0, scheduler.countInFlight(node));
+    }
+
+    @Test
+    public void testMaxInFlightForNode() throws Exception {
+        scheduler.setMaxInFlight(node, 1);
+        assertEquals(1, scheduler.getMaxInFlight(node));
+
+        Transaction t1 = createTransaction(node, 10000);
+        Transaction t2 = createTransaction(node, 10000);
+        assertTrue(scheduler.schedule(t1));
+        assertFalse(scheduler.schedule(t2));
+
+        scheduler.setMaxInFlight(node, 0);
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT, scheduler.getMaxInFlight(node));
+        assertEquals(0, scheduler.countQueued());
+        waitExecuted(t2);
+        assertTrue(t2.isWaitingResponse());
+
+        t1.finish();
+        t2.finish();
+        assertEquals(0, scheduler.countInFlight(node));
+    }
+
+    @Test
+    public void testGroupNotLimited() throws SubnetException {
+        scheduler.setMaxInFlight(1);
+
+        Transaction t1 = createTransaction(subnet.getGroupNode(), 10000);
+        Transaction t2 = createTransaction(subnet.getGroupNode(), 10000);
+        assertTrue(scheduler.schedule(t1));
+        assertTrue(scheduler.schedule(t2));
+        assertEquals(0, scheduler.countInFlight(subnet.getGroupNode()));
+
+        t1.finish();
+        t2.finish();
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        scheduler.setAdaptive(true);
+        assertTrue(scheduler.isAdaptive());
+
+        Transaction t1 = createTransaction(node, 50);
+        scheduler.schedule(t1);
+        t1.join();
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT / 2, scheduler.getMaxInFlight(node));
+
+        for (int i=0; i<4; i++) {
+            Transaction t = createTransaction(node, 50);
+            scheduler.schedule(t);
+            t.join();
+        }
+        assertEquals(1, scheduler.getMaxInFlight(node));
+
+        Transaction t2 = createTransaction(node, 10000);
+        Transaction t3 = createTransaction(node, 10000);
+        assertTrue(scheduler.schedule(t2));
+        assertFalse(scheduler.schedule(t3));
+
+        scheduler.setAdaptive(false);
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT, scheduler.getMaxInFlight(node));
+        waitExecuted(t3);
+        assertTrue(t3.isWaitingResponse());
+
+        t2.finish();
+        t3.finish();
+    }
+
+    @Test
+    public void testAdaptiveIgnoresFinish() throws Exception {
+        scheduler.setAdaptive(true);
+
+        Transaction t1 = createTransaction(node, 10000);
+        scheduler.schedule(t1);
+        t1.finish();
+        assertFalse(t1.isTimedOut());
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT, scheduler.getMaxInFlight(node));
+
+        Transaction t2 = createTransaction(node, 50);
+        scheduler.schedule(t2);
+        t2.join();
+        assertTrue(t2.isTimedOut());
+        assertEquals(TransactionScheduler.DEFAULT_MAX_IN_FLIGHT / 2, scheduler.getMaxInFlight(node));
+    }
+
+    @Test
+    public void testLongQueue() throws Exception {
+        scheduler.setMaxInFlight(1);
+
+        Transaction t1 = createTransaction(node, 10000);
+        assertTrue(scheduler.schedule(t1));
+
+        for (int i=0; i<5000; i++) {
+            assertFalse(scheduler.schedule(createTransaction(node, 0)));
+        }
+        assertEquals(5000, scheduler.countQueued(node));
+
+        t1.finish();
+        waitIdle(node);
+        assertEquals(0, scheduler.countQueued(node));
+        assertEquals(0, scheduler.countInFlight(node));
+    }
+}
@@ -0,0 +1,163 @@
+package echowand.logic;
+
+import echowand.common.EOJ;
+import echowand.net.InternalSubnet;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class TransactionTableTest {
+    private InternalSubnet subnet;
+    private TransactionManager transactionManager;
+    private SetGetTransactionConfig config;
+    
+    @Before
+    public void setUp() {
+        subnet = new InternalSubnet();
+        transactionManager = new TransactionManager(subnet);
+        config = new SetGetTransactionConfig();
+        config.setSenderNode(subnet.getLocalNode());
+        config.setReceiverNode(subnet.getGroupNode());
+        config.setSourceEOJ(new EOJ("0ef001"));
+        config.setDestinationEOJ(new EOJ("001101"));
+    }
+    
+    private Transaction createTransaction() {
+        return new Transaction(subnet, transactionManager, config);
+    }
+    
+    private List<Transaction> getAll(TransactionTable table, short tid) {
+        ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+        for (TransactionTable.Entry entry = table.get(tid); entry != null; entry = entry.nextEntry()) {
+            transactions.add(entry.getTransaction());
+        }
+        return transactions;
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidBucketCount() {
+        new TransactionTable(100);
+    }
+    
+    @Test
+    public void testAddAndRemove() {
+        TransactionTable table = new TransactionTable();
+        Transaction t1 = createTransaction();
+        Transaction t2 = createTransaction();
+        
+        assertEquals(0, table.size());
+        assertNull(table.get(t1.getTID()));
+        
+        table.add(t1);
+        table.add(t2);
+        assertEquals(2, table.size());
+        assertTrue(table.containsTID(t1.getTID()));
+        assertSame(t1, table.get(t1.getTID()).getTransaction());
+        assertSame(t2, table.get(t2.getTID()).getTransaction());
+        
+        assertTrue(table.remove(t1));
+        assertFalse(table.remove(t1));
+        assertEquals(1, table.size());
+        assertFalse(table.containsTID(t1.getTID()));
+        assertSame(t2, table.get(t2.getTID()).getTransaction());
+    }
+    
+    @Test
+    public void testSameBucket() {
+        TransactionTable table = new TransactionTable(1);
+        ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+        
+        for (int i=0; i<10; i++) {
+            Transaction t = createTransaction();
+            transactions.add(t);
+            table.add(t);
+        }
+        
+        for (Transaction t : transactions) {
+            List<Transaction> found = getAll(table, t.getTID());
+            assertEquals(1, found.size());
+            assertSame(t, found.get(0));
+        }
+        
+        assertTrue(table.remove(transactions.get(5)));
+        assertFalse(table.containsTID(transactions.get(5).getTID()));
+        assertTrue(table.containsTID(transactions.get(4).getTID()));
+        assertTrue(table.containsTID(transactions.get(6).getTID()));
+        assertEquals(9, table.size());
+    }
+    
+    @Test
+    public void testConcurrentAddAndRemove() throws InterruptedException {
+        final TransactionTable table = new TransactionTable(4);
+        Thread[] threads = new Thread[4];
+        
+        for (int i=0; i<threads.length; i++) {
+            final ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+            for (int j=0; j<500; j++) {
+                transactions.add(createTransaction());
+            }
+            
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (Transaction t : transactions) {
+                        table.add(t);
+                    }
+                    for (Transaction t : transactions) {
+                        assertTrue(table.remove(t));
+                    }
+                }
+            };
+        }
+        
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(0, table.size());
+    }
+    
+    @Test
+    public void testCountTIDs() {
+        TransactionTable table = new TransactionTable();
+        Transaction t1 = createTransaction();
+        Transaction t2 = createTransaction();
+        
+        table.add(t1);
+        table.add(t2);
+        assertEquals(2, table.countTIDs());
+        
+        table.remove(t2);
+        assertEquals(1, table.countTIDs());
+        table.remove(t1);
+        assertEquals(0, table.countTIDs());
+    }
+    
+    @Test
+    public void testReserveTID() {
+        TransactionTable table = new TransactionTable();
+        
+        assertFalse(table.isReservedTID((short)0x1234));
+        assertTrue(table.reserveTID((short)0x1234));
+        assertFalse(table.reserveTID((short)0x1234));
+        assertTrue(table.reserveTID((short)0xffff));
+        assertTrue(table.isReservedTID((short)0x1234));
+        assertTrue(table.isReservedTID((short)0xffff));
+        assertFalse(table.isReservedTID((short)0x1235));
+        assertEquals(2, table.countReservedTIDs());
+        
+        assertTrue(table.releaseTID((short)0x1234));
+        assertFalse(table.releaseTID((short)0x1234));
+        assertFalse(table.isReservedTID((short)0x1234));
+        assertEquals(1, table.countReservedTIDs());
+    }
+}
@@ -3,6 +3,7 @@ package echowand.logic;
 import echowand.net.CommonFrame;
 import echowand.net.Property;
 import echowand.net.Frame;
+import echowand.net.Node;
 import echowand.net.StandardPayload;
 import echowand.net.InternalSubnet;
 import echowand.net.SubnetException;
@@ -12,6 +13,10 @@ import echowand.common.ESV;
 import echowand.common.EOJ;
 import echowand.common.EPC;
 import echowand.net.Inet4Subnet;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.*;
@@ -118,6 +123,44 @@ public class TransactionTest {
         }
     }
     
+    @Test
+    public void testEnableTCP() throws SubnetException {
+        Transaction t = new Transaction(subnet, transactionManager, transactionConfig2);
+        final LinkedList<Frame> sentFrames = new LinkedList<Frame>();
+        t.addTransactionListener(new TransactionListener() {
+            @Override
+            public void begin(Transaction t) {
+            }
+
+            @Override
+            public void send(Transaction t, Subnet subnet, Frame frame, boolean success) {
+                sentFrames.add(frame);
+            }
+
+            @Override
+            public void receive(Transaction t, Subnet subnet, Frame frame) {
+            }
+
+            @Override
+            public void finish(Transaction t) {
+            }
+        });
+        
+        assertFalse(t.isTCPEnabled());
+        t.enableTCP();
+        assertTrue(t.isTCPEnabled());
+        
+        t.execute();
+        
+        assertEquals(2, sentFrames.size());
+        for (Frame frame : sentFrames) {
+            assertTrue(frame.isTCPEnabled());
+        }
+        
+        t.disableTCP();
+        assertFalse(t.isTCPEnabled());
+    }
+    
     @Test
     public void testExecuteMulti() {
         try {
@@ -165,6 +208,13 @@ public class TransactionTest {
         return new Frame(subnet.getLocalNode(), frame.getSender(), replyCommonFrame);
     }
     
+    public Frame createReplyFrame(Node receiver, short tid) {
+        CommonFrame commonFrame = new CommonFrame(new EOJ("0ef001"), new EOJ("001101"), ESV.Get_Res);
+        commonFrame.setTID(tid);
+        commonFrame.getEDATA(StandardPayload.class).addFirstProperty(new Property(EPC.x80, new Data((byte)0x30)));
+        return new Frame(subnet.getLocalNode(), receiver, commonFrame);
+    }
+    
     @Test
     public void testSimpleTransaction() {
         Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
@@ -429,6 +479,63 @@ public class TransactionTest {
         }
     }
     
+    @Test
+    public void testTimeoutThreads() throws Exception {
+        int before = Thread.activeCount();
+        
+        LinkedList<Transaction> transactions = new LinkedList<Transaction>();
+        
+        for (int i=0; i<1000; i++) {
+            Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
+            t.setTimeout(60000 + i);
+            t.execute();
+            transactions.add(t);
+        }
+        
+        assertEquals(1000, transactionManager.countActiveTransactions());
+        assertEquals(1000, transactionManager.getTimeoutTimer().countPendingTimeouts());
+        assertTrue(Thread.activeCount() <= before + 1);
+        
+        for (Transaction t : transactions) {
+            t.finish();
+        }
+        
+        assertEquals(0, transactionManager.countActiveTransactions());
+        assertEquals(0, transactionManager.getTimeoutTimer().countPendingTimeouts());
+    }
+    
+    @Test
+    public void testBlockingListenerDoesNotDelayTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Transaction t1 = new Transaction(subnet, transactionManager, transactionConfig1);
+        t1.setTimeout(50);
+        t1.addTransactionListener(new TransactionListenerTest() {
+            @Override
+            public void finish(Transaction t) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(TransactionTest.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        });
+        
+        Transaction t2 = new Transaction(subnet, transactionManager, transactionConfig1);
+        t2.setTimeout(200);
+        
+        try {
+            t1.execute();
+            t2.execute();
+            
+            for (int i=0; i<100 && !t2.isTimedOut(); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(t2.isTimedOut());
+        } finally {
+            release.countDown();
+        }
+    }
+    
     public class TransactionListenerTest implements TransactionListener {
             public int sendCount = 0;
             public int receiveCount = 0;
@@ -557,4 +664,171 @@ public class TransactionTest {
         
         assertEquals(1, t.countResponses());
     }
+    
+    @Test
+    public void testExecuteAsync() throws Exception {
+        Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
+        t.setTimeout(10000);
+        
+        TransactionFuture<Transaction> future = t.executeAsync();
+        assertFalse(future.isDone());
+        assertTrue(t.isWaitingResponse());
+        
+        Frame reqFrame = subnet.receive();
+        assertTrue(t.receiveResponse(createReplyFrame(reqFrame)));
+        assertFalse(future.isDone());
+        
+        t.finish();
+        assertTrue(future.isDone());
+        assertSame(t, future.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, future.get().countResponses());
+    }
+    
+    @Test
+    public void testExecuteAsyncTimeout() throws Exception {
+        Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
+        t.setTimeout(100);
+        
+        TransactionFuture<Transaction> future = t.executeAsync();
+        assertSame(t, future.get(5000, TimeUnit.MILLISECONDS));
+        assertTrue(t.isDone());
+        assertEquals(0, t.countResponses());
+    }
+    
+    @Test
+    public void testExecuteAsyncFail() throws Exception {
+        Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
+        transactionConfig1.setReceiverNode(inet4Subnet.getLocalNode());
+        
+        TransactionFuture<Transaction> future = t.executeAsync();
+        assertTrue(future.isDone());
+        assertTrue(t.isDone());
+        assertEquals(0, transactionManager.countActiveTransactions());
+        
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SubnetException);
+        }
+    }
+    
+    private Transaction createRetransmissionTransaction(RetransmissionPolicy policy) {
+        transactionConfig1.setReceiverNode(subnet.getLocalNode());
+        transactionConfig1.setRetransmissionPolicy(policy);
+        Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
+        t.setTimeout(2000);
+        return t;
+    }
+    
+    @Test
+    public void testRetransmission() throws Exception {
+        Transaction t = createRetransmissionTransaction(new RetransmissionPolicy(2, 50, 10, 1000));
+        final LinkedList<String> threadNames = new LinkedList<String>();
+        t.addTransactionListener(new TransactionListener() {
+            @Override
+            public void begin(Transaction t) {
+            }
+
+            @Override
+            public void send(Transaction t, Subnet subnet, Frame frame, boolean success) {
+                synchronized (threadNames) {
+                    threadNames.add(Thread.currentThread().getName());
+                }
+            }
+
+            @Override
+            public void receive(Transaction t, Subnet subnet, Frame frame) {
+            }
+
+            @Override
+            public void finish(Transaction t) {
+            }
+        });
+        t.execute();
+        
+        short tid = subnet.receive().getCommonFrame().getTID();
+        assertEquals(tid, subnet.receive().getCommonFrame().getTID());
+        assertEquals(tid, subnet.receive().getCommonFrame().getTID());
+        
+        Thread.sleep(300);
+        assertNull(subnet.receiveNoWait());
+        assertEquals(2, t.countRetransmissions());
+        synchronized (threadNames) {
+            assertEquals(3, threadNames.size());
+            assertFalse(threadNames.contains("HashedWheelTimer"));
+        }
+        
+        assertTrue(t.receiveResponse(createReplyFrame(subnet.getLocalNode(), tid)));
+        assertTrue(t.receiveResponse(createReplyFrame(subnet.getLocalNode(), tid)));
+        assertEquals(1, t.countResponses());
+        assertEquals(0, transactionManager.getRTTEstimator(subnet.getLocalNode()).countSamples());
+        t.finish();
+    }
+    
+    @Test
+    public void testRetransmissionWithAllInstance() throws Exception {
+        transactionConfig1.setDestinationEOJ(new EOJ("0ef000"));
+        Transaction t = createRetransmissionTransaction(new RetransmissionPolicy(1, 50, 10, 1000));
+        t.execute();
+        
+        short tid = subnet.receive().getCommonFrame().getTID();
+        assertEquals(tid, subnet.receive().getCommonFrame().getTID());
+        assertEquals(1, t.countRetransmissions());
+        
+        Frame reply1 = createReplyFrame(subnet.getLocalNode(), tid);
+        Frame reply2 = createReplyFrame(subnet.getLocalNode(), tid);
+        reply2.getCommonFrame().getEDATA(StandardPayload.class).setSEOJ(new EOJ("0ef002"));
+        
+        assertTrue(t.receiveResponse(reply1));
+        assertTrue(t.receiveResponse(reply2));
+        assertTrue(t.receiveResponse(reply1));
+        assertTrue(t.receiveResponse(reply2));
+        assertEquals(2, t.countResponses());
+        t.finish();
+    }
+    
+    @Test
+    public void testRetransmissionStopsOnResponse() throws Exception {
+        Transaction t = createRetransmissionTransaction(new RetransmissionPolicy(3, 100, 10, 1000));
+        t.execute();
+        
+        Frame reqFrame = subnet.receive();
+        assertTrue(t.receiveResponse(createReplyFrame(reqFrame)));
+        
+        Thread.sleep(300);
+        assertNull(subnet.receiveNoWait());
+        assertEquals(0, t.countRetransmissions());
+        assertEquals(1, transactionManager.getRTTEstimator(subnet.getLocalNode()).countSamples());
+        t.finish();
+    }
+    
+    @Test
+    public void testNoRetransmissionForTCP() throws Exception {
+        Transaction t = createRetransmissionTransaction(new RetransmissionPolicy(3, 50, 10, 1000));
+        t.enableTCP();
+        t.execute();
+        
+        assertNotNull(subnet.receive());
+        Thread.sleep(300);
+        assertNull(subnet.receiveNoWait());
+        assertEquals(0, t.countRetransmissions());
+        t.finish();
+    }
+    
+    @Test
+    public void testNoRetransmissionForGroup() throws Exception {
+        transactionConfig1.setRetransmissionPolicy(new RetransmissionPolicy(3, 50, 10, 1000));
+        Transaction t = new Transaction(subnet, transactionManager, transactionConfig1);
+        t.setTimeout(500);
+        t.execute();
+        
+        assertNotNull(subnet.receive());
+        Thread.sleep(200);
+        for (Frame frame = subnet.receiveNoWait(); frame != null; frame = subnet.receiveNoWait()) {
+            assertNotSame(ESV.Get, frame.getCommonFrame().getEDATA(StandardPayload.class).getESV());
+        }
+        assertEquals(0, t.countRetransmissions());
+        t.finish();
+    }
 }
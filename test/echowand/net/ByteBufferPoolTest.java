@@ -0,0 +1,61 @@
+package echowand.net;
+
+import java.nio.ByteBuffer;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author ymakino
+ */
+public class ByteBufferPoolTest {
+    
+    @Test
+    public void testAcquire() {
+        ByteBufferPool pool = new ByteBufferPool(1500, 2, false);
+        ByteBuffer buffer = pool.acquire();
+        assertEquals(1500, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(1500, buffer.limit());
+        assertFalse(buffer.isDirect());
+        
+        pool = new ByteBufferPool(64, 2, true);
+        buffer = pool.acquire();
+        assertEquals(64, buffer.capacity());
+        assertTrue(buffer.isDirect());
+    }
+    
+    @Test
+    public void testRelease() {
+        ByteBufferPool pool = new ByteBufferPool(1500, 2, false);
+        ByteBuffer buffer1 = pool.acquire();
+        ByteBuffer buffer2 = pool.acquire();
+        ByteBuffer buffer3 = pool.acquire();
+        assertEquals(0, pool.getPooledCount());
+        
+        buffer1.put((byte)0x01);
+        buffer1.flip();
+        
+        assertTrue(pool.release(buffer1));
+        assertTrue(pool.release(buffer2));
+        assertFalse(pool.release(buffer3));
+        assertEquals(2, pool.getPooledCount());
+        
+        ByteBuffer buffer = pool.acquire();
+        assertSame(buffer2, buffer);
+        buffer = pool.acquire();
+        assertSame(buffer1, buffer);
+        assertEquals(0, buffer.position());
+        assertEquals(1500, buffer.limit());
+        assertEquals(0, pool.getPooledCount());
+    }
+    
+    @Test
+    public void testReleaseInvalidBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(1500, 2, false);
+        assertFalse(pool.release(null));
+        assertFalse(pool.release(ByteBuffer.allocate(100)));
+        assertFalse(pool.release(ByteBuffer.allocateDirect(1500)));
+        assertEquals(0, pool.getPooledCount());
+    }
+}
@@ -0,0 +1,142 @@
+package echowand.net;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ymakino
+ */
+public class CommonFrameDecoderTest {
+
+    private byte[] createFrameBytes(short tid, ESV esv, int size) {
+        CommonFrame commonFrame = new CommonFrame(new EOJ("0ef001"), new EOJ("001101"), esv);
+        commonFrame.setTID(tid);
+        StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+        payload.addFirstProperty(new Property(EPC.x80, new Data(new byte[size])));
+        if (esv.isSetGet()) {
+            payload.addSecondProperty(new Property(EPC.x81));
+        }
+        return commonFrame.toBytes();
+    }
+
+    private byte[] concat(byte[]... arrays) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array);
+        }
+        return out.toByteArray();
+    }
+
+    private InputStream createSplitInputStream(final byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    public void testDecodePipelinedFrames() throws Exception {
+        byte[] bytes = concat(createFrameBytes((short)1, ESV.SetC, 10), createFrameBytes((short)2, ESV.SetGet, 20), createFrameBytes((short)3, ESV.Get_Res, 1));
+        CommonFrameDecoder decoder = new CommonFrameDecoder(128, 4096);
+
+        assertEquals(bytes.length, decoder.readFrom(new ByteArrayInputStream(bytes)));
+        assertEquals(1, decoder.decode().getTID());
+        CommonFrame commonFrame = decoder.decode();
+        assertEquals(2, commonFrame.getTID());
+        assertEquals(1, commonFrame.getEDATA(StandardPayload.class).getSecondOPC());
+        assertEquals(3, decoder.decode().getTID());
+        assertNull(decoder.decode());
+        assertEquals(0, decoder.countBufferedBytes());
+    }
+
+    @Test
+    public void testDecodeSplitFrames() throws Exception {
+        byte[] bytes = concat(createFrameBytes((short)1, ESV.SetGet, 30), createFrameBytes((short)2, ESV.SetC, 0x7f));
+        InputStream is = createSplitInputStream(bytes);
+        CommonFrameDecoder decoder = new CommonFrameDecoder(16, 4096);
+
+        short tid = 1;
+        while (decoder.readFrom(is) != -1) {
+            CommonFrame commonFrame = decoder.decode();
+            if (commonFrame != null) {
+                assertEquals(tid++, commonFrame.getTID());
+                assertArrayEquals(createFrameBytes(commonFrame.getTID(), commonFrame.getEDATA(StandardPayload.class).getESV(), tid == 2 ? 30 : 0x7f), commonFrame.toBytes());
+            }
+        }
+
+        assertEquals(3, tid);
+        assertEquals(0, decoder.countBufferedBytes());
+    }
+
+    @Test
+    public void testCompactBuffer() throws Exception {
+        byte[] frame = createFrameBytes((short)1, ESV.SetC, 10);
+        CommonFrameDecoder decoder = new CommonFrameDecoder(64, 64);
+
+        for (int i=0; i<100; i++) {
+            decoder.readFrom(new ByteArrayInputStream(frame, 0, 5));
+            assertNull(decoder.decode());
+            decoder.readFrom(new ByteArrayInputStream(frame, 5, frame.length - 5));
+            assertNotNull(decoder.decode());
+            assertFalse(decoder.isOverflowed());
+        }
+    }
+
+    @Test(expected=NetworkException.class)
+    public void testInvalidHeader() throws Exception {
+        byte[] bytes = createFrameBytes((short)1, ESV.SetC, 1);
+        bytes[1] = CommonFrame.EHD2_ARBITRARY_PAYLOAD;
+        CommonFrameDecoder decoder = new CommonFrameDecoder(128, 4096);
+        decoder.readFrom(new ByteArrayInputStream(bytes, 0, 4));
+        decoder.decode();
+    }
+
+    @Test(expected=NetworkException.class)
+    public void testInvalidESV() throws Exception {
+        byte[] bytes = createFrameBytes((short)1, ESV.SetC, 1);
+        bytes[10] = (byte)0x00;
+        CommonFrameDecoder decoder = new CommonFrameDecoder(128, 4096);
+        decoder.readFrom(new ByteArrayInputStream(bytes));
+        decoder.decode();
+    }
+
+    @Test(expected=NetworkException.class)
+    public void testInvalidEPC() throws Exception {
+        byte[] bytes = createFrameBytes((short)1, ESV.SetC, 1);
+        bytes[12] = (byte)0x00;
+        CommonFrameDecoder decoder = new CommonFrameDecoder(128, 4096);
+        decoder.readFrom(new ByteArrayInputStream(bytes));
+        decoder.decode();
+    }
+
+    @Test
+    public void testRejectedFrame() throws Exception {
+        byte[] invalid = createFrameBytes((short)1, ESV.SetC, 0);
+        byte[] bytes = concat(invalid, createFrameBytes((short)2, ESV.SetC, 1));
+        CommonFrameDecoder decoder = new CommonFrameDecoder(16, 64);
+
+        InputStream is = new ByteArrayInputStream(bytes);
+        while (decoder.readFrom(is) > 0) {
+            assertNull(decoder.decode());
+        }
+        assertEquals(bytes.length, decoder.countBufferedBytes());
+
+        byte[] padding = new byte[64];
+        while (!decoder.isOverflowed()) {
+            decoder.readFrom(new ByteArrayInputStream(padding));
+            assertNull(decoder.decode());
+        }
+        assertEquals(64, decoder.countBufferedBytes());
+    }
+}
@@ -103,6 +103,77 @@ public class CommonFrameTest {
         assertEquals(0, buffer.compareTo(newBuffer));
     }
     
+    @Test
+    public void testSetGetCreationFromByteBuffer() throws InvalidDataException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put((byte)0x10);
+        buffer.put((byte)0x81);
+        buffer.putShort((short)0x1234);
+        buffer.put(new EOJ("123456").toBytes());
+        buffer.put(new EOJ("abcdef").toBytes());
+        buffer.put(ESV.SetGet.toByte());
+        buffer.put((byte)0x01);
+        buffer.put(new Property(EPC.x88, new Data((byte)0x12, (byte)0x34)).toBytes());
+        buffer.put((byte)0x01);
+        buffer.put(new Property(EPC.x80).toBytes());
+        buffer.flip();
+        
+        CommonFrame f = new CommonFrame(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals((short)0x1234, f.getTID());
+        
+        StandardPayload payload = f.getEDATA(StandardPayload.class);
+        assertEquals(new EOJ("123456"), payload.getSEOJ());
+        assertEquals(new EOJ("abcdef"), payload.getDEOJ());
+        assertEquals(ESV.SetGet, payload.getESV());
+        assertEquals(1, payload.getFirstOPC());
+        assertEquals(EPC.x88, payload.getFirstPropertyAt(0).getEPC());
+        assertEquals(new Data((byte)0x12, (byte)0x34), payload.getFirstPropertyAt(0).getEDT());
+        assertEquals(1, payload.getSecondOPC());
+        assertEquals(EPC.x80, payload.getSecondPropertyAt(0).getEPC());
+        
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte)0x00);
+        }
+        
+        assertEquals(new Data((byte)0x12, (byte)0x34), payload.getFirstPropertyAt(0).getEDT());
+        assertEquals(19, f.toBytes().length);
+    }
+    
+    @Test
+    public void testWriteTo() {
+        CommonFrame f = new CommonFrame(new EOJ("123456"), new EOJ("abcdef"), ESV.SetGet);
+        f.setTID((short)0x1234);
+        StandardPayload payload = f.getEDATA(StandardPayload.class);
+        payload.addFirstProperty(new Property(EPC.x88, new Data((byte)0x12, (byte)0x34)));
+        payload.addSecondProperty(new Property(EPC.x80));
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put((byte)0xff);
+        f.writeTo(buffer);
+        
+        assertEquals(19, f.size());
+        assertEquals(1 + f.size(), buffer.position());
+        
+        byte[] bytes = new byte[f.size()];
+        buffer.position(1);
+        buffer.get(bytes);
+        assertArrayEquals(f.toBytes(), bytes);
+    }
+    
+    @Test(expected=java.nio.BufferOverflowException.class)
+    public void testWriteToWithShortBuffer() {
+        CommonFrame f = new CommonFrame(new EOJ("123456"), new EOJ("abcdef"), ESV.Get);
+        f.getEDATA(StandardPayload.class).addFirstProperty(new Property(EPC.x80));
+        f.writeTo(ByteBuffer.allocate(f.size() - 1));
+    }
+    
+    @Test(expected=InvalidDataException.class)
+    public void testCreationWithTruncatedByteBuffer() throws InvalidDataException {
+        new CommonFrame(ByteBuffer.wrap(new byte[]{(byte)0x10, (byte)0x81, (byte)0x00, (byte)0x01, (byte)0x12}));
+    }
+    
     @Test
     public void testCreationWithInfo() {
         EOJ seoj = new EOJ("001101");
@@ -0,0 +1,91 @@
+package echowand.net;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Get_Resフレームの解析時間を計測する。
+ * 全てのプロパティを解析するStandardPayloadと、CommonFrameが生成するペイロードを比較する。
+ * @author ymakino
+ */
+public class FrameDecodeBenchmark {
+    private static final int WARMUP_COUNT = 200000;
+    private static final int MEASURE_COUNT = 1000000;
+
+    private static byte[] createGetResFrame() {
+        CommonFrame commonFrame = new CommonFrame(new EOJ("001101"), new EOJ("0ef001"), ESV.Get_Res);
+        commonFrame.setTID((short)0x1234);
+        StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+        payload.addFirstProperty(new Property(EPC.x80, new Data((byte)0x30)));
+        payload.addFirstProperty(new Property(EPC.x81, new Data((byte)0x00)));
+        payload.addFirstProperty(new Property(EPC.x82, new Data((byte)0x00, (byte)0x00, (byte)0x44, (byte)0x00)));
+        payload.addFirstProperty(new Property(EPC.x88, new Data((byte)0x42)));
+        payload.addFirstProperty(new Property(EPC.x8A, new Data((byte)0x00, (byte)0x00, (byte)0x77)));
+        payload.addFirstProperty(new Property(EPC.x9D, new Data((byte)0x02, (byte)0x80, (byte)0xd6)));
+        payload.addFirstProperty(new Property(EPC.x9E, new Data((byte)0x01, (byte)0x80)));
+        payload.addFirstProperty(new Property(EPC.xE0, new Data((byte)0x00, (byte)0xdc)));
+        return commonFrame.toBytes();
+    }
+
+    private static int decodeEager(byte[] bytes) throws InvalidDataException {
+        StandardPayload payload = new StandardPayload(bytes, 4);
+        return payload.getFirstOPC() + payload.getFirstPropertyAt(0).getPDC();
+    }
+
+    private static int decodeHeader(byte[] bytes) throws InvalidDataException {
+        CommonFrame commonFrame = new CommonFrame(bytes);
+        StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+        return commonFrame.getTID() + payload.getESV().ordinal();
+    }
+
+    private static int decodeAll(byte[] bytes) throws InvalidDataException {
+        CommonFrame commonFrame = new CommonFrame(bytes);
+        StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+        int sum = 0;
+        for (int i=0; i<payload.getFirstOPC(); i++) {
+            sum += payload.getFirstPropertyAt(i).getPDC();
+        }
+        return sum;
+    }
+
+    private static long run(String name, byte[] bytes, int mode, int count) throws InvalidDataException {
+        long sum = 0;
+        long start = System.nanoTime();
+
+        for (int i=0; i<count; i++) {
+            switch (mode) {
+                case 0: sum += decodeEager(bytes); break;
+                case 1: sum += decodeHeader(bytes); break;
+                default: sum += decodeAll(bytes); break;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        if (name != null) {
+            System.out.println(String.format("%-32s %8.1f ns/frame (%d)", name, (double)elapsed / count, sum));
+        }
+
+        return sum;
+    }
+
+    public static void main(String[] args) {
+        try {
+            byte[] bytes = createGetResFrame();
+
+            for (int mode=0; mode<3; mode++) {
+                run(null, bytes, mode, WARMUP_COUNT);
+            }
+
+            run("StandardPayload (all properties)", bytes, 0, MEASURE_COUNT);
+            run("CommonFrame (header only)", bytes, 1, MEASURE_COUNT);
+            run("CommonFrame (all properties)", bytes, 2, MEASURE_COUNT);
+        } catch (InvalidDataException ex) {
+            Logger.getLogger(FrameDecodeBenchmark.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package echowand.net;
+
+import echowand.common.EOJ;
+import echowand.common.ESV;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author ymakino
+ */
+public class FrameRingBufferTest {
+    private InternalSubnet subnet = new InternalSubnet();
+    
+    private Frame createFrame(ESV esv, int tid) {
+        CommonFrame commonFrame = new CommonFrame(new EOJ("0ef001"), new EOJ("0ef001"), esv);
+        commonFrame.setTID((short)tid);
+        return new Frame(subnet.getLocalNode(), subnet.getGroupNode(), commonFrame);
+    }
+    
+    private short getTID(Frame frame) {
+        return frame.getCommonFrame().getTID();
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new FrameRingBuffer(0);
+    }
+    
+    @Test
+    public void testOfferAndPoll() throws InterruptedException {
+        FrameRingBuffer queue = new FrameRingBuffer(3);
+        assertEquals(3, queue.getCapacity());
+        assertEquals(FrameQueueOverflowPolicy.Block, queue.getOverflowPolicy());
+        assertNull(queue.poll());
+        
+        for (int i=0; i<5; i++) {
+            assertTrue(queue.offer(createFrame(ESV.Get, i)));
+            assertEquals(i, getTID(queue.poll()));
+        }
+        
+        assertTrue(queue.offer(createFrame(ESV.Get, 10)));
+        assertTrue(queue.offer(createFrame(ESV.Get, 11)));
+        assertTrue(queue.offer(createFrame(ESV.Get, 12)));
+        assertFalse(queue.offer(createFrame(ESV.Get, 13)));
+        assertFalse(queue.offer(createFrame(ESV.Get, 13), 10, TimeUnit.MILLISECONDS));
+        assertEquals(3, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        
+        assertEquals(10, getTID(queue.peek()));
+        assertEquals(10, getTID(queue.take()));
+        assertEquals(11, getTID(queue.take()));
+        assertEquals(12, getTID(queue.poll(10, TimeUnit.MILLISECONDS)));
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        
+        assertEquals(8, queue.getEnqueuedCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(3, queue.getHighWaterMark());
+    }
+    
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        FrameRingBuffer queue = new FrameRingBuffer(2, FrameQueueOverflowPolicy.DropNewest);
+        queue.put(createFrame(ESV.Get, 1));
+        queue.put(createFrame(ESV.Get, 2));
+        queue.put(createFrame(ESV.Get, 3));
+        
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, getTID(queue.take()));
+        assertEquals(2, getTID(queue.take()));
+    }
+    
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        FrameRingBuffer queue = new FrameRingBuffer(2, FrameQueueOverflowPolicy.DropOldest);
+        queue.put(createFrame(ESV.Get, 1));
+        queue.put(createFrame(ESV.Get, 2));
+        queue.put(createFrame(ESV.Get, 3));
+        
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(2, getTID(queue.take()));
+        assertEquals(3, getTID(queue.take()));
+    }
+    
+    @Test
+    public void testDropLowPriority() throws InterruptedException {
+        FrameRingBuffer queue = new FrameRingBuffer(3, FrameQueueOverflowPolicy.DropLowPriority);
+        queue.put(createFrame(ESV.Get_Res, 1));
+        queue.put(createFrame(ESV.INF, 2));
+        queue.put(createFrame(ESV.Get_Res, 3));
+        queue.put(createFrame(ESV.Get_Res, 4));
+        
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        
+        queue.put(createFrame(ESV.INF, 5));
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getDroppedCount());
+        
+        assertFalse(queue.offer(createFrame(ESV.Get_Res, 6)));
+        
+        assertEquals(1, getTID(queue.take()));
+        assertEquals(3, getTID(queue.take()));
+        assertEquals(4, getTID(queue.take()));
+        assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void testBlock() throws InterruptedException {
+        final FrameRingBuffer queue = new FrameRingBuffer(1);
+        queue.put(createFrame(ESV.Get, 1));
+        
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(createFrame(ESV.Get, 2));
+                } catch (InterruptedException ex) {
+                    fail();
+                }
+            }
+        };
+        thread.start();
+        
+        Thread.sleep(100);
+        assertTrue(thread.isAlive());
+        assertEquals(1, getTID(queue.take()));
+        
+        thread.join(1000);
+        assertFalse(thread.isAlive());
+        assertEquals(2, getTID(queue.take()));
+        assertEquals(0, queue.getDroppedCount());
+    }
+    
+    @Test
+    public void testDrainTo() throws InterruptedException {
+        FrameRingBuffer queue = new FrameRingBuffer(4);
+        for (int i=0; i<4; i++) {
+            queue.put(createFrame(ESV.Get, i));
+        }
+        
+        LinkedList<Frame> frames = new LinkedList<Frame>();
+        assertEquals(3, queue.drainTo(frames, 3));
+        assertEquals(3, frames.size());
+        assertEquals(0, getTID(frames.get(0)));
+        assertEquals(2, getTID(frames.get(2)));
+        
+        assertEquals(1, queue.drainTo(frames));
+        assertEquals(3, getTID(frames.get(3)));
+        assertEquals(0, queue.size());
+        assertEquals(4, queue.getHighWaterMark());
+    }
+}
@@ -15,6 +15,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.LinkedList;
+import java.util.List;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -322,6 +323,85 @@ public class Inet4SubnetTest {
         assertFalse(subnet.isTCPAcceptorEnabled());
     }
     
+    @Test
+    public void testEnableDatagramChannel() throws SubnetException {
+        assertFalse(subnet.isDatagramChannelEnabled());
+        assertTrue(subnet.enableDatagramChannel());
+        assertTrue(subnet.isDatagramChannelEnabled());
+        
+        subnet.startService();
+        
+        assertFalse(subnet.disableDatagramChannel());
+        assertTrue(subnet.isDatagramChannelEnabled());
+        
+        sendTest(subnet.getLocalNode(), true);
+    }
+    
+    @Test
+    public void testEnableBatchReceive() throws SubnetException {
+        assertFalse(subnet.isBatchReceiveEnabled());
+        assertTrue(subnet.enableBatchReceive());
+        assertTrue(subnet.isBatchReceiveEnabled());
+        
+        assertEquals(InetSubnet.DEFAULT_BATCH_SIZE, subnet.getBatchSize());
+        assertFalse(subnet.setBatchSize(0));
+        assertTrue(subnet.setBatchSize(8));
+        assertEquals(8, subnet.getBatchSize());
+        
+        subnet.startService();
+        
+        assertFalse(subnet.disableBatchReceive());
+        assertFalse(subnet.setBatchSize(16));
+        assertTrue(subnet.isBatchReceiveEnabled());
+        assertEquals(8, subnet.getBatchSize());
+    }
+    
+    @Test
+    public void testReceiveQueue() throws SubnetException {
+        assertEquals(InetSubnet.DEFAULT_RECEIVE_QUEUE_CAPACITY, subnet.getReceiveQueueCapacity());
+        assertEquals(FrameQueueOverflowPolicy.Block, subnet.getReceiveQueueOverflowPolicy());
+        assertFalse(subnet.setReceiveQueueCapacity(0));
+        assertTrue(subnet.setReceiveQueueCapacity(16));
+        assertTrue(subnet.setReceiveQueueOverflowPolicy(FrameQueueOverflowPolicy.DropLowPriority));
+        assertEquals(0, subnet.getReceiveQueueEnqueuedCount());
+        
+        subnet.startService();
+        
+        assertFalse(subnet.setReceiveQueueCapacity(32));
+        assertFalse(subnet.setReceiveQueueOverflowPolicy(FrameQueueOverflowPolicy.Block));
+        assertEquals(16, subnet.getReceiveQueueCapacity());
+        assertEquals(FrameQueueOverflowPolicy.DropLowPriority, subnet.getReceiveQueueOverflowPolicy());
+        
+        sendTest(subnet.getLocalNode(), true);
+        
+        assertEquals(1, subnet.getReceiveQueueEnqueuedCount());
+        assertEquals(0, subnet.getReceiveQueueDroppedCount());
+        assertEquals(1, subnet.getReceiveQueueHighWaterMark());
+        assertEquals(0, subnet.getReceiveQueueSize());
+    }
+    
+    @Test
+    public void testReceiveBatch() throws SubnetException, InterruptedException {
+        subnet.enableDatagramChannel();
+        subnet.enableBatchReceive();
+        subnet.startService();
+        
+        for (int i=0; i<5; i++) {
+            subnet.send(new Frame(subnet.getLocalNode(), subnet.getLocalNode(), createFrame()));
+        }
+        
+        Thread.sleep(100);
+        
+        int count = 0;
+        while (count < 5) {
+            List<Frame> frames = subnet.receiveBatch(10);
+            assertFalse(frames.isEmpty());
+            count += frames.size();
+        }
+        
+        assertEquals(5, count);
+    }
+    
     @Test(expected = SubnetException.class)
     public void testNewTCPConnectionFailure() throws SubnetException, UnknownHostException {
         subnet.newTCPConnection(subnet.getRemoteNode(getLocalAddress()));
@@ -3,6 +3,7 @@ package echowand.net;
 import echowand.common.EOJ;
 import echowand.common.ESV;
 import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.*;
@@ -71,6 +72,32 @@ public class InternalSubnetTest {
         assertEquals(subnet.getLocalNode(), receivedFrame.getReceiver());
     }
     
+    @Test
+    public void testReceiveBatch() throws SubnetException {
+        InternalSubnet subnet = new InternalSubnet("testReceiveBatch");
+        Node local = subnet.getLocalNode();
+        Node group = subnet.getGroupNode();
+        
+        for (int i=0; i<5; i++) {
+            CommonFrame sendFrame = createFrame();
+            sendFrame.setTID((short)i);
+            subnet.send(new Frame(local, group, sendFrame));
+        }
+        
+        List<Frame> frames = subnet.receiveBatch(3);
+        assertEquals(3, frames.size());
+        assertEquals((short)0, frames.get(0).getCommonFrame().getTID());
+        assertEquals((short)1, frames.get(1).getCommonFrame().getTID());
+        assertEquals((short)2, frames.get(2).getCommonFrame().getTID());
+        
+        frames = subnet.receiveBatch(10);
+        assertEquals(2, frames.size());
+        assertEquals((short)3, frames.get(0).getCommonFrame().getTID());
+        assertEquals((short)4, frames.get(1).getCommonFrame().getTID());
+        
+        assertNull(subnet.receiveNoWait());
+    }
+    
     @Test
     public void testSendAndReceive() {
         InternalSubnet subnet1 = new InternalSubnet();
@@ -0,0 +1,178 @@
+package echowand.net;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class LazyStandardPayloadTest {
+
+    private StandardPayload createSetGetPayload() {
+        StandardPayload payload = new StandardPayload(new EOJ("123456"), new EOJ("abcdef"), ESV.SetGet);
+        payload.addFirstProperty(new Property(EPC.x88, new Data((byte)0x12, (byte)0x34)));
+        payload.addFirstProperty(new Property(EPC.x80, new Data((byte)0x30)));
+        payload.addSecondProperty(new Property(EPC.x81));
+        return payload;
+    }
+
+    @Test
+    public void testCreation() throws InvalidDataException {
+        byte[] bytes = createSetGetPayload().toBytes();
+        LazyStandardPayload payload = new LazyStandardPayload(bytes, 0);
+
+        assertFalse(payload.isPropertiesDecoded());
+        assertEquals(new EOJ("123456"), payload.getSEOJ());
+        assertEquals(new EOJ("abcdef"), payload.getDEOJ());
+        assertEquals(ESV.SetGet, payload.getESV());
+        assertEquals(2, payload.getFirstOPC());
+        assertEquals(1, payload.getSecondOPC());
+
+        assertEquals(EPC.x80, payload.getFirstPropertyAt(1).getEPC());
+        assertEquals(new Data((byte)0x30), payload.getFirstPropertyAt(1).getEDT());
+        assertSame(payload.getFirstPropertyAt(1), payload.getFirstPropertyAt(1));
+        assertEquals(EPC.x81, payload.getSecondPropertyAt(0).getEPC());
+        assertEquals(EPC.x88, payload.getFirstPropertyAt(0).getEPC());
+        assertFalse(payload.isPropertiesDecoded());
+
+        assertEquals(bytes.length, payload.size());
+        assertArrayEquals(bytes, payload.toBytes());
+    }
+
+    @Test
+    public void testCreationWithByteBuffer() throws InvalidDataException {
+        byte[] bytes = createSetGetPayload().toBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+
+        LazyStandardPayload payload = new LazyStandardPayload(buffer);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte)0x00);
+        }
+
+        assertEquals(new Data((byte)0x12, (byte)0x34), payload.getFirstPropertyAt(0).getEDT());
+        assertArrayEquals(bytes, payload.toBytes());
+    }
+
+    @Test
+    public void testWithoutProperties() throws InvalidDataException {
+        byte[] bytes = new StandardPayload(new EOJ("123456"), new EOJ("abcdef"), ESV.Get).toBytes();
+        LazyStandardPayload payload = new LazyStandardPayload(bytes, 0);
+        assertEquals(0, payload.getFirstOPC());
+        assertArrayEquals(bytes, payload.toBytes());
+
+        payload = new LazyStandardPayload(new byte[]{0x12, 0x34, 0x56, 0x12, 0x34, 0x56, 0x62}, 0);
+        assertEquals(0, payload.getFirstOPC());
+        assertEquals(8, payload.size());
+    }
+
+    @Test
+    public void testAddProperty() throws InvalidDataException {
+        LazyStandardPayload payload = new LazyStandardPayload(createSetGetPayload().toBytes(), 0);
+
+        payload.addFirstProperty(new Property(EPC.x9F));
+        assertTrue(payload.isPropertiesDecoded());
+        assertEquals(3, payload.getFirstOPC());
+        assertEquals(EPC.x88, payload.getFirstPropertyAt(0).getEPC());
+        assertEquals(EPC.x9F, payload.getFirstPropertyAt(2).getEPC());
+        assertEquals(1, payload.getSecondOPC());
+        assertEquals(EPC.x81, payload.getSecondPropertyAt(0).getEPC());
+    }
+
+    @Test
+    public void testModifyProperty() throws InvalidDataException {
+        LazyStandardPayload payload = new LazyStandardPayload(createSetGetPayload().toBytes(), 0);
+
+        payload.getFirstPropertyAt(0).setEDT(new Data((byte)0x56));
+        byte[] bytes = payload.toBytes();
+
+        StandardPayload newPayload = new StandardPayload(bytes);
+        assertEquals(new Data((byte)0x56), newPayload.getFirstPropertyAt(0).getEDT());
+        assertEquals(EPC.x80, newPayload.getFirstPropertyAt(1).getEPC());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final byte[] bytes = createSetGetPayload().toBytes();
+        final LazyStandardPayload[] payloads = new LazyStandardPayload[20000];
+        for (int i=0; i<payloads.length; i++) {
+            payloads[i] = new LazyStandardPayload(bytes, 0);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            final int type = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (LazyStandardPayload payload : payloads) {
+                            switch (type) {
+                                case 0:
+                                    assertEquals(EPC.x80, payload.getFirstPropertyAt(1).getEPC());
+                                    break;
+                                case 1:
+                                    assertEquals(EPC.x81, payload.getSecondPropertyAt(0).getEPC());
+                                    break;
+                                case 2:
+                                    assertArrayEquals(bytes, payload.toBytes());
+                                    break;
+                                default:
+                                    payload.toString();
+                                    assertEquals(2, payload.getFirstOPC());
+                                    break;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testInvalidIndex() throws InvalidDataException {
+        LazyStandardPayload payload = new LazyStandardPayload(createSetGetPayload().toBytes(), 0);
+        payload.getSecondPropertyAt(1);
+    }
+
+    @Test(expected=InvalidDataException.class)
+    public void testCreationWithTruncatedBytes() throws InvalidDataException {
+        byte[] bytes = createSetGetPayload().toBytes();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        new LazyStandardPayload(truncated, 0);
+    }
+
+    @Test(expected=InvalidDataException.class)
+    public void testCreationWithoutSecondOPC() throws InvalidDataException {
+        new LazyStandardPayload(new byte[]{0x12, 0x34, 0x56, 0x12, 0x34, 0x56, 0x6e, 0x00}, 0);
+    }
+}
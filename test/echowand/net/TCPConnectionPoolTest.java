@@ -0,0 +1,276 @@
+package echowand.net;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.LinkedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ymakino
+ */
+public class TCPConnectionPoolTest {
+    private InetSubnet subnet;
+    private TCPConnectionPool pool;
+    private Node remoteNode;
+
+    @Before
+    public void setUp() throws IOException, SubnetException {
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+
+        subnet = new Inet4Subnet();
+        subnet.setPortNumber(port);
+        subnet.enableTCPAcceptor();
+        subnet.startService();
+
+        pool = subnet.getTCPConnectionPool();
+        remoteNode = subnet.getRemoteNode(InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() {
+        subnet.stopService();
+    }
+
+    private CommonFrame createFrame(short tid) {
+        CommonFrame commonFrame = new CommonFrame(new EOJ("0ef001"), new EOJ("0ef001"), ESV.Get);
+        commonFrame.setTID(tid);
+        commonFrame.getEDATA(StandardPayload.class).addFirstProperty(new Property(EPC.x80));
+        return commonFrame;
+    }
+
+    private void waitPoolSize(int size) throws InterruptedException {
+        for (int i=0; i<500 && pool.countConnections() != size; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, pool.countConnections());
+    }
+
+    private void waitClosed(TCPConnection connection) throws InterruptedException {
+        for (int i=0; i<500 && !connection.isClosed(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testDefaultConfig() {
+        assertEquals(TCPConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_NODE, pool.getMaxConnectionsPerNode());
+        assertEquals(TCPConnectionPool.DEFAULT_IDLE_TIMEOUT, pool.getIdleTimeout());
+        assertEquals(TCPConnectionPool.DEFAULT_CONNECT_TIMEOUT, pool.getConnectTimeout());
+        assertEquals(0, pool.countConnections());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidMaxConnections() {
+        pool.setMaxConnectionsPerNode(0);
+    }
+
+    @Test
+    public void testAcquireAndRelease() throws SubnetException {
+        TCPConnection connection1 = pool.acquire(remoteNode);
+        assertTrue(pool.contains(connection1));
+        assertTrue(pool.release(connection1));
+        assertFalse(pool.release(connection1));
+
+        TCPConnection connection2 = pool.acquire(remoteNode);
+        assertSame(connection1, connection2);
+        assertEquals(1, pool.countConnections());
+        assertEquals(1, pool.countConnections(remoteNode.getNodeInfo()));
+        pool.release(connection2);
+    }
+
+    @Test
+    public void testMaxConnectionsPerNode() throws SubnetException {
+        pool.setMaxConnectionsPerNode(2);
+
+        TCPConnection connection1 = pool.acquire(remoteNode);
+        TCPConnection connection2 = pool.acquire(remoteNode);
+        assertNotSame(connection1, connection2);
+
+        TCPConnection connection3 = pool.acquire(remoteNode);
+        assertTrue(connection3 == connection1 || connection3 == connection2);
+        assertEquals(2, pool.countConnections());
+
+        pool.release(connection1);
+        pool.release(connection2);
+        pool.release(connection3);
+    }
+
+    @Test
+    public void testConcurrentAcquireWithClosedConnections() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+
+        final int threadCount = 4;
+        final int iterations = 20;
+        final LinkedList<Throwable> errors = new LinkedList<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+
+        for (int i=0; i<threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j=0; j<iterations; j++) {
+                            TCPConnection connection = pool.acquire(remoteNode);
+                            assertTrue(pool.countConnections(remoteNode.getNodeInfo()) <= 1);
+                            connection.close();
+                            pool.release(connection);
+                            pool.evictIdleConnections();
+                        }
+                    } catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        TCPConnection connection = pool.acquire(remoteNode);
+        assertEquals(1, pool.countConnections());
+        assertEquals(1, pool.countConnections(remoteNode.getNodeInfo()));
+        pool.release(connection);
+    }
+
+    @Test
+    public void testEvictClosedConnection() throws Exception {
+        TCPConnection connection1 = pool.acquire(remoteNode);
+        pool.release(connection1);
+
+        connection1.close();
+        assertFalse(pool.contains(connection1));
+        assertEquals(0, pool.countConnections());
+
+        TCPConnection connection2 = pool.acquire(remoteNode);
+        assertNotSame(connection1, connection2);
+        assertFalse(connection2.isClosed());
+        pool.release(connection2);
+    }
+
+    @Test
+    public void testEvictIdleConnections() throws Exception {
+        pool.setIdleTimeout(50);
+
+        TCPConnection connection1 = pool.acquire(remoteNode);
+        TCPConnection connection2 = pool.acquire(remoteNode);
+        pool.release(connection1);
+
+        Thread.sleep(100);
+
+        pool.evictIdleConnections();
+        waitPoolSize(1);
+        waitClosed(connection1);
+        assertFalse(connection2.isClosed());
+        assertTrue(pool.contains(connection2));
+
+        pool.release(connection2);
+        waitPoolSize(0);
+        waitClosed(connection2);
+    }
+
+    @Test
+    public void testSendOverPooledConnection() throws Exception {
+        for (short i=0; i<3; i++) {
+            Frame frame = new Frame(subnet.getLocalNode(), remoteNode, createFrame(i));
+            frame.setTCPEnabled(true);
+            assertTrue(subnet.send(frame));
+
+            Frame received = subnet.receive();
+            assertEquals(i, received.getCommonFrame().getTID());
+            assertTrue(received.getConnection() instanceof TCPConnection);
+        }
+
+        assertEquals(1, pool.countConnections());
+    }
+
+    @Test
+    public void testPipelineDepth() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+        pool.setMaxPipelineDepth(4);
+
+        for (short i=0; i<4; i++) {
+            pool.send(remoteNode, createFrame(i));
+        }
+
+        TCPConnection connection = pool.acquire(remoteNode);
+        pool.release(connection);
+        assertEquals(4, pool.countOutstandingRequests(connection));
+
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.send(remoteNode, createFrame((short)4));
+                } catch (SubnetException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+        sender.start();
+        sender.join(200);
+        assertTrue(sender.isAlive());
+
+        Frame request = subnet.receive();
+        CommonFrame response = new CommonFrame(new EOJ("0ef001"), new EOJ("0ef001"), ESV.Get_Res);
+        response.setTID(request.getCommonFrame().getTID());
+        response.getEDATA(StandardPayload.class).addFirstProperty(new Property(EPC.x80, new Data((byte)0x30)));
+        subnet.send(new Frame(subnet.getLocalNode(), request.getSender(), response, request.getConnection()));
+
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertEquals(4, pool.countOutstandingRequests(connection));
+        assertEquals(1, pool.countConnections());
+    }
+
+    @Test
+    public void testPipelineTimeout() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+        pool.setPipelineTimeout(50);
+
+        pool.send(remoteNode, createFrame((short)1));
+        pool.send(remoteNode, createFrame((short)2));
+
+        TCPConnection connection = pool.acquire(remoteNode);
+        pool.release(connection);
+        assertEquals(2, pool.countOutstandingRequests(connection));
+
+        Thread.sleep(100);
+        assertEquals(0, pool.countOutstandingRequests(connection));
+    }
+
+    @Test
+    public void testSendGroupOverUDP() throws Exception {
+        Frame frame = new Frame(subnet.getLocalNode(), subnet.getGroupNode(), createFrame((short)1));
+        frame.setTCPEnabled(true);
+        assertTrue(subnet.send(frame));
+        assertEquals(0, pool.countConnections());
+    }
+
+    @Test
+    public void testStopService() throws Exception {
+        TCPConnection connection = pool.acquire(remoteNode);
+        pool.release(connection);
+
+        subnet.stopService();
+        assertTrue(connection.isClosed());
+        assertEquals(0, pool.countConnections());
+    }
+}
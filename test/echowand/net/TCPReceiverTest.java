@@ -0,0 +1,244 @@
+package echowand.net;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import echowand.util.Pair;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ymakino
+ */
+public class TCPReceiverTest {
+    private static final int CONNECTION_COUNT = 1000;
+    private static final int FRAMES_PER_CONNECTION = 50;
+
+    private InetAddress loopback;
+    private int port;
+    private TCPReceiver receiver;
+    private TCPAcceptor acceptor;
+    private ArrayList<TCPConnection> clients;
+
+    @Before
+    public void setUp() throws IOException, NetworkException {
+        loopback = InetAddress.getByName("127.0.0.1");
+
+        ServerSocket ss = new ServerSocket(0);
+        port = ss.getLocalPort();
+        ss.close();
+
+        receiver = new TCPReceiver();
+        acceptor = new TCPAcceptor(loopback, port);
+        acceptor.addObserver(new TCPAcceptorObserver() {
+            @Override
+            public void notifyAccepted(TCPConnection connection) {
+                receiver.addConnection(connection);
+            }
+        });
+
+        receiver.startService();
+        acceptor.startService();
+        clients = new ArrayList<TCPConnection>();
+    }
+
+    @After
+    public void tearDown() throws NetworkException {
+        for (TCPConnection client : clients) {
+            if (!client.isClosed()) {
+                client.close();
+            }
+        }
+
+        receiver.stopService();
+        acceptor.stopService();
+    }
+
+    private TCPConnection connect() throws NetworkException {
+        InetNodeInfo nodeInfo = new InetNodeInfo(loopback);
+        TCPConnection connection = new TCPConnection(nodeInfo, nodeInfo, port);
+        clients.add(connection);
+        return connection;
+    }
+
+    private CommonFrame createFrame(short tid, ESV esv) {
+        CommonFrame commonFrame = new CommonFrame(new EOJ("0ef001"), new EOJ("0ef001"), esv);
+        commonFrame.setTID(tid);
+        StandardPayload payload = commonFrame.getEDATA(StandardPayload.class);
+        if (esv == ESV.Get_Res) {
+            payload.addFirstProperty(new Property(EPC.x80, new Data((byte)0x30)));
+        } else {
+            payload.addFirstProperty(new Property(EPC.x80));
+        }
+        return commonFrame;
+    }
+
+    private void waitConnections(int count) throws InterruptedException {
+        for (int i=0; i<500 && receiver.countConnections() != count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, receiver.countConnections());
+    }
+
+    @Test
+    public void testSelectorCount() {
+        assertEquals(TCPReceiver.DEFAULT_SELECTOR_COUNT, receiver.getSelectorCount());
+        assertEquals(4, new TCPReceiver(4).getSelectorCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSelectorCount() {
+        new TCPReceiver(0);
+    }
+
+    @Test
+    public void testAddAndRemoveAcceptor() {
+        assertTrue(receiver.addAcceptor(acceptor));
+        assertFalse(receiver.addAcceptor(acceptor));
+        assertTrue(receiver.removeAcceptor(acceptor));
+        assertFalse(receiver.removeAcceptor(acceptor));
+    }
+
+    @Test(expected=NetworkException.class)
+    public void testBlockingAcceptWithSelector() throws Exception {
+        receiver.addAcceptor(acceptor);
+        connect();
+        waitConnections(1);
+        acceptor.accept();
+    }
+
+    @Test
+    public void testSendAndReceive() throws Exception {
+        receiver.addAcceptor(acceptor);
+        TCPConnection client = connect();
+
+        client.send(createFrame((short)1, ESV.Get));
+        Pair<TCPConnection, CommonFrame> pair = receiver.receive();
+        assertEquals(1, pair.second.getTID());
+
+        pair.first.send(createFrame((short)1, ESV.Get_Res));
+        assertEquals(ESV.Get_Res, client.receive().getEDATA(StandardPayload.class).getESV());
+
+        try {
+            pair.first.receive();
+            fail();
+        } catch (NetworkException e) {
+        }
+
+        assertTrue(receiver.removeConnection(pair.first));
+        assertEquals(0, receiver.countConnections());
+        for (int i=0; i<500 && pair.first.isAttached(); i++) {
+            Thread.sleep(10);
+        }
+
+        client.send(createFrame((short)2, ESV.Get));
+        assertEquals(2, pair.first.receive().getTID());
+    }
+
+    @Test
+    public void testSendImmediatelyAfterAddConnection() throws Exception {
+        receiver.addAcceptor(acceptor);
+
+        for (int i=0; i<CONNECTION_COUNT / 10; i++) {
+            TCPConnection client = connect();
+            assertTrue(receiver.addConnection(client));
+            for (int j=0; j<FRAMES_PER_CONNECTION; j++) {
+                client.send(createFrame((short)i, ESV.Get));
+            }
+        }
+
+        Set<Short> tids = new HashSet<Short>();
+        for (int i=0; i<CONNECTION_COUNT / 10 * FRAMES_PER_CONNECTION; i++) {
+            Pair<TCPConnection, CommonFrame> pair = receiver.receive();
+            assertEquals(ESV.Get, pair.second.getEDATA(StandardPayload.class).getESV());
+            tids.add(pair.second.getTID());
+        }
+
+        assertEquals(CONNECTION_COUNT / 10, tids.size());
+    }
+
+    @Test
+    public void testPipelinedSend() throws Exception {
+        receiver.addAcceptor(acceptor);
+        TCPConnection client = connect();
+
+        client.send(createFrame((short)0, ESV.Get));
+        Pair<TCPConnection, CommonFrame> pair = receiver.receive();
+
+        for (int i=0; i<CONNECTION_COUNT * 10; i++) {
+            pair.first.send(createFrame((short)i, ESV.Get_Res));
+        }
+
+        for (int i=0; i<CONNECTION_COUNT * 10; i++) {
+            assertEquals((short)i, client.receive().getTID());
+        }
+
+        for (int i=0; i<500 && pair.first.countPendingBytes() != 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pair.first.countPendingBytes());
+    }
+
+    @Test
+    public void testPendingWritesLimit() throws Exception {
+        receiver.addAcceptor(acceptor);
+        TCPConnection client = connect();
+
+        client.send(createFrame((short)0, ESV.Get));
+        Pair<TCPConnection, CommonFrame> pair = receiver.receive();
+
+        boolean failed = false;
+        for (int i=0; i<1000000 && !failed; i++) {
+            try {
+                pair.first.send(createFrame((short)i, ESV.Get_Res));
+            } catch (NetworkException ex) {
+                failed = true;
+            }
+        }
+
+        assertTrue(failed);
+        assertTrue(pair.first.countPendingBytes() <= TCPConnection.MAX_PENDING_BYTES);
+        assertFalse(pair.first.isClosed());
+    }
+
+    @Test
+    public void testManyConnections() throws Exception {
+        receiver.addAcceptor(acceptor);
+        int threadCount = Thread.activeCount();
+
+        for (int i=0; i<CONNECTION_COUNT; i++) {
+            connect().send(createFrame((short)i, ESV.Get));
+        }
+
+        Set<Short> tids = new HashSet<Short>();
+        for (int i=0; i<CONNECTION_COUNT; i++) {
+            Pair<TCPConnection, CommonFrame> pair = receiver.receive();
+            tids.add(pair.second.getTID());
+            pair.first.send(createFrame(pair.second.getTID(), ESV.Get_Res));
+        }
+
+        assertEquals(CONNECTION_COUNT, tids.size());
+        assertEquals(CONNECTION_COUNT, receiver.countConnections());
+        assertTrue(Thread.activeCount() < threadCount + 10);
+
+        for (int i=0; i<CONNECTION_COUNT; i++) {
+            TCPConnection client = clients.get(i);
+            CommonFrame commonFrame = client.receive();
+            assertEquals(i, commonFrame.getTID());
+            assertEquals(ESV.Get_Res, commonFrame.getEDATA(StandardPayload.class).getESV());
+            client.close();
+        }
+
+        waitConnections(0);
+    }
+}
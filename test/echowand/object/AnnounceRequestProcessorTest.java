@@ -136,4 +136,25 @@ public class AnnounceRequestProcessorTest {
             fail();
         }
     }
+    
+    @Test
+    public void testInvalidatePropertyMaps() {
+        InternalSubnet subnet = new InternalSubnet("AnnounceRequestProcessorTest");
+        LocalObjectManager localManager = new LocalObjectManager();
+        RemoteObjectManager remoteManager = new RemoteObjectManager();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        remoteManager.add(object);
+        AnnounceRequestProcessor listener = new AnnounceRequestProcessor(localManager, remoteManager);
+        
+        CommonFrame cf = new CommonFrame(new EOJ("001101"), new EOJ("0ef001"), ESV.INF);
+        cf.getEDATA(StandardPayload.class).addFirstProperty(new Property(EPC.x9F, new Data((byte)0x01, (byte)0x80)));
+        listener.processINF(subnet, new Frame(subnet.getLocalNode(), subnet.getGroupNode(), cf), false);
+        assertTrue(object.isPropertyMapCached(EPC.x9F));
+        
+        cf = new CommonFrame(new EOJ("0ef001"), new EOJ("0ef001"), ESV.INF);
+        cf.getEDATA(StandardPayload.class).addFirstProperty(new Property(EPC.xD5, new Data((byte)0x01, (byte)0x00, (byte)0x11, (byte)0x01)));
+        listener.processINF(subnet, new Frame(subnet.getLocalNode(), subnet.getGroupNode(), cf), false);
+        assertFalse(object.isPropertyMapCached(EPC.x9F));
+    }
 }
@@ -0,0 +1,158 @@
+package echowand.object;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import echowand.logic.TransactionFuture;
+import echowand.logic.TransactionManager;
+import echowand.net.CommonFrame;
+import echowand.net.Frame;
+import echowand.net.InternalSubnet;
+import echowand.net.Property;
+import echowand.net.StandardPayload;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class GetRequestCoalescerTest {
+    private InternalSubnet subnet;
+    private TransactionManager transactionManager;
+    private GetRequestCoalescer coalescer;
+    private EOJ eoj = new EOJ("001101");
+    
+    @Before
+    public void setUp() {
+        subnet = new InternalSubnet("GetRequestCoalescerTest");
+        transactionManager = new TransactionManager(subnet);
+        coalescer = new GetRequestCoalescer(subnet, transactionManager);
+    }
+    
+    private Frame createResponse(Frame request, ESV esv, Property... properties) {
+        CommonFrame commonFrame = new CommonFrame(eoj, RemoteObject.SOURCE_EOJ, esv);
+        commonFrame.setTID(request.getCommonFrame().getTID());
+        for (Property property : properties) {
+            commonFrame.getEDATA(StandardPayload.class).addFirstProperty(property);
+        }
+        return new Frame(subnet.getLocalNode(), subnet.getLocalNode(), commonFrame);
+    }
+    
+    private Throwable getCause(TransactionFuture<ObjectData> future) throws Exception {
+        try {
+            future.get(5000, TimeUnit.MILLISECONDS);
+            fail();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+    
+    @Test
+    public void testCoalesce() throws Exception {
+        coalescer.setWindow(50);
+        
+        TransactionFuture<ObjectData> future1 = coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x80);
+        TransactionFuture<ObjectData> future2 = coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x81);
+        TransactionFuture<ObjectData> future3 = coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x80);
+        assertEquals(1, coalescer.countPendingBatches());
+        
+        Frame request = subnet.receive();
+        StandardPayload payload = request.getCommonFrame().getEDATA(StandardPayload.class);
+        assertEquals(ESV.Get, payload.getESV());
+        assertEquals(2, payload.getFirstOPC());
+        assertEquals(EPC.x80, payload.getFirstPropertyAt(0).getEPC());
+        assertEquals(EPC.x81, payload.getFirstPropertyAt(1).getEPC());
+        assertEquals(0, coalescer.countPendingBatches());
+        assertNull(subnet.receiveNoWait());
+        
+        Frame response = createResponse(request, ESV.Get_SNA, new Property(EPC.x80, new Data((byte)0x30)), new Property(EPC.x81));
+        assertTrue(transactionManager.process(subnet, response, false));
+        
+        assertEquals(new ObjectData((byte)0x30), future1.get(5000, TimeUnit.MILLISECONDS));
+        assertEquals(new ObjectData((byte)0x30), future3.get(5000, TimeUnit.MILLISECONDS));
+        assertTrue(getCause(future2) instanceof EchonetObjectException);
+    }
+    
+    @Test
+    public void testMaxOPC() throws Exception {
+        coalescer.setWindow(0);
+        coalescer.setMaxOPC(2);
+        
+        coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x80);
+        assertNull(subnet.receiveNoWait());
+        coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x81);
+        
+        Frame request = subnet.receiveNoWait();
+        assertNotNull(request);
+        assertEquals(2, request.getCommonFrame().getEDATA(StandardPayload.class).getFirstOPC());
+    }
+    
+    @Test
+    public void testMaxFrameSize() throws Exception {
+        coalescer.setWindow(0);
+        coalescer.setMaxFrameSize(16);
+        
+        coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x80);
+        coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x81);
+        
+        Frame request = subnet.receiveNoWait();
+        assertNotNull(request);
+        assertEquals(2, request.getCommonFrame().getEDATA(StandardPayload.class).getFirstOPC());
+        assertTrue(request.getCommonFrame().toBytes().length <= 16);
+    }
+    
+    @Test
+    public void testFlushAndSeparateDestinations() throws Exception {
+        coalescer.setWindow(0);
+        
+        coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x80);
+        coalescer.getDataAsync(subnet.getLocalNode(), new EOJ("001102"), EPC.x80);
+        assertEquals(2, coalescer.countPendingBatches());
+        assertNull(subnet.receiveNoWait());
+        
+        coalescer.flush();
+        assertEquals(0, coalescer.countPendingBatches());
+        assertNotNull(subnet.receiveNoWait());
+        assertNotNull(subnet.receiveNoWait());
+        assertNull(subnet.receiveNoWait());
+    }
+    
+    @Test
+    public void testNoResponse() throws Exception {
+        coalescer.setWindow(0);
+        coalescer.setTimeout(100);
+        
+        TransactionFuture<ObjectData> future = coalescer.getDataAsync(subnet.getLocalNode(), eoj, EPC.x80);
+        coalescer.flush();
+        
+        Throwable cause = getCause(future);
+        assertTrue(cause instanceof EchonetObjectException);
+        assertEquals("no response", cause.getMessage());
+    }
+    
+    @Test
+    public void testRemoteObject() throws Exception {
+        coalescer.setWindow(50);
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), eoj, transactionManager);
+        object.setGetRequestCoalescer(coalescer);
+        assertSame(coalescer, object.getGetRequestCoalescer());
+        
+        TransactionFuture<ObjectData> future1 = object.getDataAsync(EPC.x80);
+        TransactionFuture<ObjectData> future2 = object.getDataAsync(EPC.xE0);
+        
+        Frame request = subnet.receive();
+        assertEquals(2, request.getCommonFrame().getEDATA(StandardPayload.class).getFirstOPC());
+        
+        Frame response = createResponse(request, ESV.Get_Res, new Property(EPC.x80, new Data((byte)0x30)), new Property(EPC.xE0, new Data((byte)0x12, (byte)0x34)));
+        transactionManager.process(subnet, response, false);
+        
+        assertEquals(new ObjectData((byte)0x30), future1.get(5000, TimeUnit.MILLISECONDS));
+        assertEquals(new ObjectData((byte)0x12, (byte)0x34), future2.get(5000, TimeUnit.MILLISECONDS));
+    }
+}
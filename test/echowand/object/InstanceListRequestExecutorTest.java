@@ -5,6 +5,7 @@ import echowand.common.EPC;
 import echowand.common.ESV;
 import echowand.logic.TransactionManager;
 import echowand.net.*;
+import echowand.util.HashedWheelTimer;
 import java.util.GregorianCalendar;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -137,7 +138,7 @@ public class InstanceListRequestExecutorTest {
                 if (executor.isDone()) {
                     break;
                 } else {
-                    assertTrue(timeout > (t2 - t1));
+                    assertTrue(timeout + HashedWheelTimer.DEFAULT_TICK_DURATION > (t2 - t1));
                 }
                 Thread.sleep(100);
             }
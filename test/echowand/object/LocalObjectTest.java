@@ -10,6 +10,7 @@ import echowand.info.ObjectInfo;
 import echowand.info.HomeAirConditionerInfo;
 import echowand.common.EOJ;
 import echowand.common.EPC;
+import java.util.LinkedList;
 import static org.junit.Assert.*;
 import org.junit.*;
 
@@ -492,4 +493,140 @@ public class LocalObjectTest {
         assertFalse(object.removeDelegate(notifyDelegate1));
         assertFalse(object.removeDelegate(notifyDelegate2));
     }
+    
+    @Test
+    public void testGetDataWhileLocked() throws Exception {
+        DeviceObjectInfo info = new HomeAirConditionerInfo();
+        info.add(new PropertyInfo(EPC.x80, true, true, true, 1));
+        final LocalObject object = new LocalObject(info);
+        object.setData(EPC.x80, new ObjectData((byte)0x30));
+        
+        final Object started = new Object();
+        final boolean[] locked = new boolean[]{false};
+        
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                object.update(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (started) {
+                            locked[0] = true;
+                            started.notifyAll();
+                        }
+                        try {
+                            Thread.sleep(1000);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                });
+            }
+        };
+        writer.start();
+        
+        synchronized (started) {
+            while (!locked[0]) {
+                started.wait();
+            }
+        }
+        
+        final ObjectData[] results = new ObjectData[2];
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                results[0] = object.getData(EPC.x80);
+                results[1] = object.getInternalData(EPC.x80);
+            }
+        };
+        reader.start();
+        reader.join(500);
+        
+        assertFalse(reader.isAlive());
+        assertEquals(new ObjectData((byte)0x30), results[0]);
+        assertEquals(new ObjectData((byte)0x30), results[1]);
+        assertTrue(object.contains(EPC.x80));
+        
+        writer.join();
+    }
+    
+    @Test
+    public void testNotifyOutsideLock() {
+        DeviceObjectInfo info = new HomeAirConditionerInfo();
+        info.add(new PropertyInfo(EPC.x80, true, true, true, 1));
+        final LocalObject object = new LocalObject(info);
+        final LinkedList<Boolean> holdsLock = new LinkedList<Boolean>();
+        
+        object.addDelegate(new LocalObjectDefaultDelegate() {
+            @Override
+            public void notifyDataChanged(NotifyState result, LocalObject object, EPC epc, ObjectData curData, ObjectData oldData) {
+                holdsLock.add(Thread.holdsLock(object));
+            }
+        });
+        
+        assertTrue(object.setData(EPC.x80, new ObjectData((byte)0x30)));
+        assertEquals(1, holdsLock.size());
+        assertFalse(holdsLock.getLast());
+        
+        object.update(new Runnable() {
+            @Override
+            public void run() {
+                object.setData(EPC.x80, new ObjectData((byte)0x31));
+                object.setData(EPC.x80, new ObjectData((byte)0x30));
+                assertEquals(1, holdsLock.size());
+            }
+        });
+        
+        assertEquals(3, holdsLock.size());
+        assertFalse(holdsLock.get(1));
+        assertFalse(holdsLock.get(2));
+        assertEquals(new ObjectData((byte)0x30), object.getData(EPC.x80));
+    }
+    
+    @Test
+    public void testNotifyOrderWithConcurrentWriters() throws Exception {
+        DeviceObjectInfo info = new HomeAirConditionerInfo();
+        info.add(new PropertyInfo(EPC.x80, true, true, true, 1));
+        final LocalObject object = new LocalObject(info);
+        final LinkedList<ObjectData> notified = new LinkedList<ObjectData>();
+        final LinkedList<Boolean> chained = new LinkedList<Boolean>();
+        
+        object.addDelegate(new LocalObjectDefaultDelegate() {
+            @Override
+            public void notifyDataChanged(NotifyState result, LocalObject object, EPC epc, ObjectData curData, ObjectData oldData) {
+                synchronized (notified) {
+                    if (!notified.isEmpty()) {
+                        chained.add(notified.getLast().equals(oldData));
+                    }
+                    notified.add(curData);
+                }
+                Thread.yield();
+            }
+        });
+        
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            final byte base = (byte)(i * 0x10);
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j=0; j<5000; j++) {
+                        object.setData(EPC.x80, new ObjectData((byte)(base + (j % 0x10))));
+                    }
+                }
+            });
+        }
+        
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        synchronized (notified) {
+            assertEquals(object.getData(EPC.x80), notified.getLast());
+            assertFalse(chained.contains(false));
+        }
+    }
 }
@@ -16,7 +16,14 @@ import echowand.common.ESV;
 import echowand.common.EPC;
 import echowand.common.PropertyMap;
 import echowand.common.Data;
+import echowand.logic.TransactionFuture;
 import echowand.logic.TransactionManager;
+import echowand.util.Pair;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static org.junit.Assert.*;
@@ -238,6 +245,85 @@ public class RemoteObjectTest {
         }
     }
     
+    @Test
+    public void testGetDataAsync() throws Exception {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        new ResponseThread(subnet, transactionManager, true).start();
+        
+        LinkedList<TransactionFuture<ObjectData>> futures = new LinkedList<TransactionFuture<ObjectData>>();
+        for (int i=0; i<1000; i++) {
+            futures.add(object.getDataAsync(EPC.x80));
+        }
+        
+        for (TransactionFuture<ObjectData> future : futures) {
+            assertEquals(new ObjectData((byte) 0x41), future.get(10000, TimeUnit.MILLISECONDS));
+            assertTrue(future.getTransaction().isDone());
+        }
+        
+        assertEquals(0, transactionManager.countActiveTransactions());
+    }
+    
+    @Test
+    public void testGetDataAsyncFail() throws Exception {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        object.setTimeout(100);
+        
+        TransactionFuture<ObjectData> future = object.getDataAsync(EPC.x80);
+        try {
+            future.get(5000, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EchonetObjectException);
+        }
+        
+        subnet.receiveNoWait();
+        new ResponseThread(subnet, transactionManager).start();
+        object.setTimeout(500);
+        future = object.getDataAsync(EPC.xE1);
+        try {
+            future.get(5000, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EchonetObjectException);
+        }
+    }
+    
+    @Test
+    public void testCancelGetDataAsync() throws Exception {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        
+        TransactionFuture<ObjectData> future = object.getDataAsync(EPC.x80);
+        assertFalse(future.isDone());
+        assertEquals(1, transactionManager.countActiveTransactions());
+        
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(future.getTransaction().isDone());
+        assertEquals(0, transactionManager.countActiveTransactions());
+    }
+    
+    @Test
+    public void testSetDataAsync() throws Exception {
+        InternalSubnet subnet = new InternalSubnet();
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        
+        new ResponseThread(subnet, transactionManager).start();
+        assertTrue(object.setDataAsync(EPC.x80, new ObjectData((byte) 0x42)).get(5000, TimeUnit.MILLISECONDS));
+        
+        new ResponseThread(subnet, transactionManager).start();
+        assertFalse(object.setDataAsync(EPC.xE0, new ObjectData((byte) 0x42)).get(5000, TimeUnit.MILLISECONDS));
+        
+        new ResponseThread(subnet, transactionManager).start();
+        assertEquals(new ObjectData((byte) 0x42), object.getDataAsync(EPC.x80).get(5000, TimeUnit.MILLISECONDS));
+    }
+    
     @Test
     public void setTimeout() {
         InternalSubnet subnet = new InternalSubnet();
@@ -340,4 +426,210 @@ public class RemoteObjectTest {
             fail();
         }
     }
+    
+    @Test
+    public void testPropertyMapCache() throws Exception {
+        final InternalSubnet subnet = new InternalSubnet("RemoteObjectTest.testPropertyMapCache");
+        final TransactionManager transactionManager = new TransactionManager(subnet);
+        final int[] count = new int[]{0};
+        RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        
+        Thread responseThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (;;) {
+                        Frame frame = subnet.receive();
+                        synchronized (count) {
+                            count[0]++;
+                        }
+                        StandardPayload reqPayload = frame.getCommonFrame().getEDATA(StandardPayload.class);
+                        CommonFrame cf = new CommonFrame(new EOJ("001101"), new EOJ("0EF001"), ESV.Get_Res);
+                        cf.setTID(frame.getCommonFrame().getTID());
+                        for (int i=0; i<reqPayload.getFirstOPC(); i++) {
+                            CommonFrame reqCommonFrame = new CommonFrame(new EOJ("0EF001"), new EOJ("001101"), ESV.Get);
+                            reqCommonFrame.setTID(frame.getCommonFrame().getTID());
+                            reqCommonFrame.getEDATA(StandardPayload.class).addFirstProperty(reqPayload.getFirstPropertyAt(i));
+                            Frame resFrame = createGetFrame(subnet, new Frame(frame.getSender(), frame.getReceiver(), reqCommonFrame));
+                            cf.getEDATA(StandardPayload.class).addFirstProperty(resFrame.getCommonFrame().getEDATA(StandardPayload.class).getFirstPropertyAt(0));
+                        }
+                        transactionManager.process(subnet, new Frame(subnet.getLocalNode(), subnet.getLocalNode(), cf), false);
+                    }
+                } catch (SubnetException e) {
+                }
+            }
+        };
+        responseThread.setDaemon(true);
+        responseThread.start();
+        
+        assertTrue(object.isPropertyMapCacheEnabled());
+        assertEquals(0, object.getPropertyMapCacheTTL());
+        
+        assertTrue(object.isGettable(EPC.x80));
+        assertTrue(object.isGettable(EPC.xE0));
+        assertTrue(object.isSettable(EPC.x80));
+        assertTrue(object.isObservable(EPC.x80));
+        assertFalse(object.contains(EPC.x81));
+        assertEquals(3, count[0]);
+        assertTrue(object.isPropertyMapCached(EPC.x9F));
+        
+        object.invalidatePropertyMaps();
+        assertFalse(object.isPropertyMapCached(EPC.x9F));
+        assertTrue(object.isGettable(EPC.x80));
+        assertEquals(4, count[0]);
+        
+        PropertyMap pmap = new PropertyMap();
+        pmap.set(EPC.x81);
+        object.notifyData(EPC.x9E, new ObjectData(pmap.toBytes()));
+        assertTrue(object.isSettable(EPC.x81));
+        assertFalse(object.isSettable(EPC.x80));
+        assertEquals(4, count[0]);
+        
+        object.refreshPropertyMaps();
+        assertEquals(5, count[0]);
+        assertTrue(object.isSettable(EPC.x80));
+        
+        assertFalse(object.setPropertyMapCacheTTL(-1));
+        assertTrue(object.setPropertyMapCacheTTL(50));
+        Thread.sleep(100);
+        assertFalse(object.isPropertyMapCached(EPC.x9F));
+        object.prefetchPropertyMaps();
+        assertEquals(6, count[0]);
+        
+        object.setPropertyMapCacheEnabled(false);
+        assertFalse(object.isPropertyMapCached(EPC.x9F));
+        assertTrue(object.isGettable(EPC.x80));
+        assertTrue(object.isGettable(EPC.x80));
+        assertEquals(8, count[0]);
+    }
+    
+    private Frame createBulkResponse(Subnet subnet, Frame request, ESV esv, Property[] firstProperties, Property[] secondProperties) {
+        CommonFrame cf = new CommonFrame(new EOJ("001101"), new EOJ("0EF001"), esv);
+        cf.setTID(request.getCommonFrame().getTID());
+        StandardPayload payload = cf.getEDATA(StandardPayload.class);
+        for (Property property : firstProperties) {
+            payload.addFirstProperty(property);
+        }
+        for (Property property : secondProperties) {
+            payload.addSecondProperty(property);
+        }
+        return new Frame(subnet.getLocalNode(), subnet.getLocalNode(), cf);
+    }
+    
+    @Test
+    public void testBulkGetData() throws Exception {
+        InternalSubnet subnet = new InternalSubnet("RemoteObjectTest.testBulkGetData");
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        final RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        final LinkedList<EnumMap<EPC, ObjectData>> results = new LinkedList<EnumMap<EPC, ObjectData>>();
+        
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results.add(object.getData(Arrays.asList(EPC.x80, EPC.x81, EPC.x82)));
+                } catch (EchonetObjectException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        
+        Frame request = subnet.receive();
+        StandardPayload payload = request.getCommonFrame().getEDATA(StandardPayload.class);
+        assertEquals(ESV.Get, payload.getESV());
+        assertEquals(3, payload.getFirstOPC());
+        assertNull(subnet.receiveNoWait());
+        
+        Property[] properties = new Property[]{new Property(EPC.x80, new Data((byte)0x30)), new Property(EPC.x81), new Property(EPC.x82, new Data((byte)0x41))};
+        transactionManager.process(subnet, createBulkResponse(subnet, request, ESV.Get_SNA, properties, new Property[]{}), false);
+        
+        thread.join(5000);
+        assertEquals(1, results.size());
+        EnumMap<EPC, ObjectData> result = results.getFirst();
+        assertEquals(2, result.size());
+        assertEquals(new ObjectData((byte)0x30), result.get(EPC.x80));
+        assertFalse(result.containsKey(EPC.x81));
+        assertEquals(new ObjectData((byte)0x41), result.get(EPC.x82));
+        
+        assertTrue(object.getData(new LinkedList<EPC>()).isEmpty());
+    }
+    
+    @Test
+    public void testBulkSetData() throws Exception {
+        InternalSubnet subnet = new InternalSubnet("RemoteObjectTest.testBulkSetData");
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        final RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        final LinkedList<EnumMap<EPC, Boolean>> results = new LinkedList<EnumMap<EPC, Boolean>>();
+        final EnumMap<EPC, ObjectData> properties = new EnumMap<EPC, ObjectData>(EPC.class);
+        properties.put(EPC.x80, new ObjectData((byte)0x30));
+        properties.put(EPC.x81, new ObjectData((byte)0x41));
+        
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results.add(object.setData(properties));
+                } catch (EchonetObjectException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        
+        Frame request = subnet.receive();
+        StandardPayload payload = request.getCommonFrame().getEDATA(StandardPayload.class);
+        assertEquals(ESV.SetC, payload.getESV());
+        assertEquals(2, payload.getFirstOPC());
+        
+        Property[] responseProperties = new Property[]{new Property(EPC.x80), new Property(EPC.x81, new Data((byte)0x41))};
+        transactionManager.process(subnet, createBulkResponse(subnet, request, ESV.SetC_SNA, responseProperties, new Property[]{}), false);
+        
+        thread.join(5000);
+        assertEquals(1, results.size());
+        assertTrue(results.getFirst().get(EPC.x80));
+        assertFalse(results.getFirst().get(EPC.x81));
+    }
+    
+    @Test
+    public void testSetGetData() throws Exception {
+        InternalSubnet subnet = new InternalSubnet("RemoteObjectTest.testSetGetData");
+        TransactionManager transactionManager = new TransactionManager(subnet);
+        final RemoteObject object = new RemoteObject(subnet, subnet.getLocalNode(), new EOJ("001101"), transactionManager);
+        final LinkedList<Pair<EnumMap<EPC, Boolean>, EnumMap<EPC, ObjectData>>> results = new LinkedList<Pair<EnumMap<EPC, Boolean>, EnumMap<EPC, ObjectData>>>();
+        final EnumMap<EPC, ObjectData> properties = new EnumMap<EPC, ObjectData>(EPC.class);
+        properties.put(EPC.x80, new ObjectData((byte)0x30));
+        
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results.add(object.setGetData(properties, Arrays.asList(EPC.x81)));
+                } catch (EchonetObjectException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        
+        Frame request = subnet.receive();
+        StandardPayload payload = request.getCommonFrame().getEDATA(StandardPayload.class);
+        assertEquals(ESV.SetGet, payload.getESV());
+        assertEquals(1, payload.getFirstOPC());
+        assertEquals(1, payload.getSecondOPC());
+        
+        Frame response = createBulkResponse(subnet, request, ESV.SetGet_Res, new Property[]{new Property(EPC.x80)}, new Property[]{new Property(EPC.x81, new Data((byte)0x42))});
+        transactionManager.process(subnet, response, false);
+        
+        thread.join(5000);
+        assertEquals(1, results.size());
+        assertTrue(results.getFirst().first.get(EPC.x80));
+        assertEquals(new ObjectData((byte)0x42), results.getFirst().second.get(EPC.x81));
+        
+        try {
+            object.setGetData(properties, new LinkedList<EPC>());
+            fail();
+        } catch (EchonetObjectException e) {
+        }
+    }
 }
@@ -0,0 +1,151 @@
+package echowand.object;
+
+import echowand.common.Data;
+import echowand.common.EOJ;
+import echowand.common.EPC;
+import echowand.common.ESV;
+import echowand.logic.TransactionFuture;
+import echowand.logic.TransactionManager;
+import echowand.net.CommonFrame;
+import echowand.net.Frame;
+import echowand.net.InternalSubnet;
+import echowand.net.Node;
+import echowand.net.Property;
+import echowand.net.StandardPayload;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Yoshiki Makino
+ */
+public class RemotePropertyCacheTest {
+    private InternalSubnet subnet;
+    private TransactionManager transactionManager;
+    private RemotePropertyCache cache;
+    private RemoteObject object;
+    private Node node;
+    private EOJ eoj = new EOJ("001101");
+
+    @Before
+    public void setUp() {
+        subnet = new InternalSubnet("RemotePropertyCacheTest");
+        transactionManager = new TransactionManager(subnet);
+        cache = new RemotePropertyCache();
+        node = subnet.getLocalNode();
+        object = new RemoteObject(subnet, node, eoj, transactionManager);
+        object.setPropertyCache(cache);
+    }
+
+    private Frame createResponse(Frame request, ESV esv, Property property) {
+        CommonFrame commonFrame = new CommonFrame(eoj, RemoteObject.SOURCE_EOJ, esv);
+        commonFrame.setTID(request.getCommonFrame().getTID());
+        commonFrame.getEDATA(StandardPayload.class).addFirstProperty(property);
+        return new Frame(node, node, commonFrame);
+    }
+
+    @Test
+    public void testTTL() {
+        assertEquals(RemotePropertyCache.DEFAULT_TTL, cache.getDefaultTTL());
+        assertEquals(RemotePropertyCache.DEFAULT_TTL, cache.getTTL(EPC.x80));
+
+        assertFalse(cache.setDefaultTTL(-1));
+        assertTrue(cache.setDefaultTTL(1000));
+        assertEquals(1000, cache.getTTL(EPC.x80));
+
+        cache.setTTL(EPC.x80, 0);
+        assertEquals(0, cache.getTTL(EPC.x80));
+        cache.put(node, eoj, EPC.x80, new ObjectData((byte)0x30));
+        assertNull(cache.get(node, eoj, EPC.x80));
+
+        cache.setTTL(EPC.x80, -1);
+        assertEquals(1000, cache.getTTL(EPC.x80));
+    }
+
+    @Test
+    public void testPutAndInvalidate() throws Exception {
+        cache.put(node, eoj, EPC.x80, new ObjectData((byte)0x30));
+        cache.put(node, eoj, EPC.x81, new ObjectData((byte)0x41));
+        assertEquals(new ObjectData((byte)0x30), cache.get(node, eoj, EPC.x80));
+        assertEquals(2, cache.countEntries());
+
+        cache.invalidate(node, eoj, EPC.x80);
+        assertNull(cache.get(node, eoj, EPC.x80));
+        assertEquals(1, cache.countEntries());
+
+        cache.invalidate(node, eoj);
+        assertEquals(0, cache.countEntries());
+
+        cache.setTTL(EPC.x80, 50);
+        cache.put(node, eoj, EPC.x80, new ObjectData((byte)0x30));
+        Thread.sleep(100);
+        assertNull(cache.get(node, eoj, EPC.x80));
+
+        cache.put(node, eoj, EPC.x81, new ObjectData((byte)0x41));
+        cache.clear();
+        assertEquals(0, cache.countEntries());
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        TransactionFuture<ObjectData> future1 = object.getDataAsync(EPC.x80);
+        TransactionFuture<ObjectData> future2 = object.getDataAsync(EPC.x80);
+
+        Frame request = subnet.receive();
+        assertEquals(ESV.Get, request.getCommonFrame().getEDATA(StandardPayload.class).getESV());
+        assertNull(subnet.receiveNoWait());
+
+        transactionManager.process(subnet, createResponse(request, ESV.Get_Res, new Property(EPC.x80, new Data((byte)0x30))), false);
+
+        assertEquals(new ObjectData((byte)0x30), future1.get(5000, TimeUnit.MILLISECONDS));
+        assertEquals(new ObjectData((byte)0x30), future2.get(5000, TimeUnit.MILLISECONDS));
+
+        assertEquals(new ObjectData((byte)0x30), object.getData(EPC.x80));
+        assertNull(subnet.receiveNoWait());
+
+        assertEquals(1, cache.countHits());
+        assertEquals(2, cache.countMisses());
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        TransactionFuture<Boolean> future = object.setDataAsync(EPC.x80, new ObjectData((byte)0x31));
+        Frame request = subnet.receive();
+        transactionManager.process(subnet, createResponse(request, ESV.Set_Res, new Property(EPC.x80)), false);
+        assertTrue(future.get(5000, TimeUnit.MILLISECONDS));
+        assertEquals(new ObjectData((byte)0x31), cache.get(node, eoj, EPC.x80));
+
+        future = object.setDataAsync(EPC.x80, new ObjectData((byte)0x32));
+        request = subnet.receive();
+        transactionManager.process(subnet, createResponse(request, ESV.SetC_SNA, new Property(EPC.x80, new Data((byte)0x32))), false);
+        assertFalse(future.get(5000, TimeUnit.MILLISECONDS));
+        assertNull(cache.get(node, eoj, EPC.x80));
+    }
+
+    @Test
+    public void testNotifyData() {
+        object.notifyData(EPC.x80, new ObjectData((byte)0x30));
+        assertEquals(new ObjectData((byte)0x30), cache.get(node, eoj, EPC.x80));
+
+        object.setPropertyCache(null);
+        object.notifyData(EPC.x80, new ObjectData((byte)0x31));
+        assertEquals(new ObjectData((byte)0x30), cache.get(node, eoj, EPC.x80));
+    }
+
+    @Test
+    public void testRemoteObjectManager() {
+        RemoteObjectManager manager = new RemoteObjectManager();
+        RemoteObject object1 = new RemoteObject(subnet, node, new EOJ("001101"), transactionManager);
+        manager.add(object1);
+
+        manager.setPropertyCache(cache);
+        assertSame(cache, manager.getPropertyCache());
+        assertSame(cache, object1.getPropertyCache());
+
+        RemoteObject object2 = new RemoteObject(subnet, node, new EOJ("001102"), transactionManager);
+        manager.add(object2);
+        assertSame(cache, object2.getPropertyCache());
+    }
+}
@@ -6,6 +6,8 @@ import echowand.common.EPC;
 import echowand.common.ESV;
 import echowand.info.TemperatureSensorInfo;
 import echowand.logic.TooManyObjectsException;
+import echowand.logic.TransactionConfig;
+import echowand.logic.TransactionScheduler;
 import echowand.logic.TransactionManager;
 import echowand.net.Frame;
 import echowand.net.InternalNodeInfo;
@@ -229,6 +231,62 @@ public class ServiceTest {
         assertEquals(new Data((byte)0x11), result.getFrame(0).frame.getCommonFrame().getEDATA(StandardPayload.class).getFirstPropertyAt(0).getEDT());
     }
 
+    @Test
+    public void testDoGetSplit() throws Exception {
+        startService();
+        
+        Node node = subnet.getLocalNode();
+        EOJ eoj = new EOJ("001101");
+        List<EPC> epcs = new LinkedList<EPC>();
+        epcs.add(EPC.x80);
+        epcs.add(EPC.x81);
+        epcs.add(EPC.x82);
+        
+        assertEquals(TransactionConfig.DEFAULT_MAX_FRAME_SIZE, service.getMaxFrameSize(node));
+        service.setMaxFrameSize(node, 16);
+        assertEquals(16, service.getMaxFrameSize(node));
+        assertEquals(TransactionConfig.DEFAULT_MAX_FRAME_SIZE, service.getMaxFrameSize());
+        
+        GetResult result = service.doGet(node, eoj, epcs, 1000);
+        Thread.sleep(500);
+        
+        assertEquals(2, result.countRequestFrames());
+        assertEquals(2, result.countFrames());
+        assertEquals(3, result.countData());
+        
+        service.setMaxFrameSize(node, 0);
+        assertEquals(TransactionConfig.DEFAULT_MAX_FRAME_SIZE, service.getMaxFrameSize(node));
+    }
+    
+    @Test
+    public void testDoGetWithTransactionScheduler() throws Exception {
+        startService();
+        
+        Node node = subnet.getLocalNode();
+        EOJ eoj = new EOJ("001101");
+        
+        TransactionScheduler scheduler = new TransactionScheduler(subnet);
+        scheduler.setMaxInFlight(1);
+        assertNull(service.getTransactionScheduler());
+        service.setTransactionScheduler(scheduler);
+        assertSame(scheduler, service.getTransactionScheduler());
+        
+        GetResult result1 = service.doGet(node, eoj, EPC.x80, 300);
+        GetResult result2 = service.doGet(node, eoj, EPC.x80, 300);
+        assertEquals(1, scheduler.countQueued(node));
+        
+        result1.join();
+        assertEquals(1, result1.countData());
+        
+        result2.join();
+        assertEquals(1, result2.countData());
+        
+        for (int i=0; i<100 && scheduler.countInFlight(node) > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.countInFlight(node));
+    }
+    
     /**
      * Test of doSet method, of class Service.
      */
@@ -0,0 +1,145 @@
+package echowand.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author ymakino
+ */
+public class HashedWheelTimerTest {
+    
+    public static class Task implements Runnable {
+        public List<Task> results;
+        public int id;
+        
+        public Task(List<Task> results, int id) {
+            this.results = results;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            results.add(this);
+        }
+    }
+    
+    @Test
+    public void testNewTimeout() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, 8);
+        List<Task> results = Collections.synchronizedList(new ArrayList<Task>());
+        
+        Task task1 = new Task(results, 1);
+        Task task2 = new Task(results, 2);
+        Task task3 = new Task(results, 3);
+        
+        HashedWheelTimer.Timeout timeout3 = timer.newTimeout(task3, 300);
+        HashedWheelTimer.Timeout timeout1 = timer.newTimeout(task1, 20);
+        HashedWheelTimer.Timeout timeout2 = timer.newTimeout(task2, 100);
+        assertEquals(3, timer.countPendingTimeouts());
+        assertTrue(timer.isWorking());
+        assertEquals(300, timeout3.getDelay());
+        assertSame(task1, timeout1.getTask());
+        
+        Thread.sleep(200);
+        assertEquals(2, results.size());
+        assertSame(task1, results.get(0));
+        assertSame(task2, results.get(1));
+        assertTrue(timeout1.isExpired());
+        assertTrue(timeout2.isExpired());
+        assertFalse(timeout3.isExpired());
+        assertEquals(1, timer.countPendingTimeouts());
+        
+        Thread.sleep(200);
+        assertEquals(3, results.size());
+        assertSame(task3, results.get(2));
+        assertEquals(0, timer.countPendingTimeouts());
+        assertFalse(timeout3.cancel());
+    }
+    
+    @Test
+    public void testCancel() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, 8);
+        List<Task> results = Collections.synchronizedList(new ArrayList<Task>());
+        
+        HashedWheelTimer.Timeout timeout1 = timer.newTimeout(new Task(results, 1), 50);
+        HashedWheelTimer.Timeout timeout2 = timer.newTimeout(new Task(results, 2), 50);
+        HashedWheelTimer.Timeout timeout3 = timer.newTimeout(new Task(results, 3), 50);
+        
+        assertTrue(timeout2.cancel());
+        assertFalse(timeout2.cancel());
+        assertTrue(timeout2.isCancelled());
+        assertEquals(2, timer.countPendingTimeouts());
+        
+        Thread.sleep(150);
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).id);
+        assertEquals(3, results.get(1).id);
+        assertFalse(timeout2.isExpired());
+        assertFalse(timeout1.isCancelled());
+        assertFalse(timeout3.cancel());
+    }
+    
+    @Test
+    public void testStop() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, 8);
+        List<Task> results = Collections.synchronizedList(new ArrayList<Task>());
+        
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new Task(results, 1), 50);
+        timer.stop();
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.countPendingTimeouts());
+        
+        Thread.sleep(100);
+        assertTrue(results.isEmpty());
+        assertFalse(timer.isWorking());
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void testNewTimeoutAfterStop() {
+        HashedWheelTimer timer = new HashedWheelTimer();
+        timer.stop();
+        timer.newTimeout(new Task(new ArrayList<Task>(), 1), 10);
+    }
+    
+    @Test
+    public void testIdleWorker() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, 4, 300);
+        List<Task> results = Collections.synchronizedList(new ArrayList<Task>());
+        
+        timer.newTimeout(new Task(results, 1), 10);
+        assertTrue(timer.isWorking());
+        
+        Thread.sleep(100);
+        assertEquals(1, results.size());
+        assertTrue(timer.isWorking());
+        
+        Thread.sleep(400);
+        assertEquals(1, results.size());
+        assertFalse(timer.isWorking());
+        
+        timer.newTimeout(new Task(results, 2), 10);
+        assertTrue(timer.isWorking());
+        
+        Thread.sleep(100);
+        assertEquals(2, results.size());
+    }
+    
+    @Test
+    public void testManyTimeouts() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, 16);
+        List<Task> results = Collections.synchronizedList(new ArrayList<Task>());
+        
+        int before = Thread.activeCount();
+        for (int i=0; i<5000; i++) {
+            timer.newTimeout(new Task(results, i), 10 + (i % 300));
+        }
+        assertTrue(Thread.activeCount() <= before + 1);
+        
+        Thread.sleep(600);
+        assertEquals(5000, results.size());
+    }
+}
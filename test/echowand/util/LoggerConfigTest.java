@@ -0,0 +1,27 @@
+package echowand.util;
+
+import java.util.logging.Logger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ymakino
+ */
+public class LoggerConfigTest {
+
+    @Test
+    public void testTraceEnabled() {
+        assertEquals(Boolean.getBoolean("echowand.trace"), LoggerConfig.TRACE_ENABLED);
+    }
+
+    @Test
+    public void testChangeLogLevelAllEnablesTrace() {
+        String name = LoggerConfigTest.class.getName() + ".testChangeLogLevelAllEnablesTrace";
+        Logger logger = Logger.getLogger(name);
+        assertFalse(Tracer.isEnabled(logger));
+
+        LoggerConfig.changeLogLevelAll(name);
+        assertTrue(Tracer.isEnabled(logger));
+    }
+}
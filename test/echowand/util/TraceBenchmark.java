@@ -0,0 +1,69 @@
+package echowand.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+/**
+ * 無効なTracerの呼び出しにかかる時間と確保されるメモリを計測する。
+ * 以前のようにLogger.enteringを直接呼び出した場合と比較する。
+ * 確保されたメモリの計測にはHotSpotのcom.sun.management.ThreadMXBeanを利用する。
+ * @author ymakino
+ */
+public class TraceBenchmark {
+    private static final int WARMUP_COUNT = 2000000;
+    private static final int MEASURE_COUNT = 10000000;
+    private static final Logger logger = Logger.getLogger(TraceBenchmark.class.getName());
+    private static final String className = TraceBenchmark.class.getName();
+
+    private static int sink;
+
+    private static void traceWithTracer(int i) {
+        Tracer.entering(logger, className, "trace", logger, className, true);
+        sink += i;
+        Tracer.exiting(logger, className, "trace", i);
+    }
+
+    private static void traceWithLogger(int i) {
+        logger.entering(className, "trace", new Object[]{logger, className, true});
+        sink += i;
+        logger.exiting(className, "trace", i);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void measure(String name, boolean useTracer) {
+        for (int i=0; i<WARMUP_COUNT; i++) {
+            if (useTracer) {
+                traceWithTracer(i);
+            } else {
+                traceWithLogger(i);
+            }
+        }
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i=0; i<MEASURE_COUNT; i++) {
+            if (useTracer) {
+                traceWithTracer(i);
+            } else {
+                traceWithLogger(i);
+            }
+        }
+        long time = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+
+        System.out.println(String.format("%-12s %6.1f ns/call %8.2f bytes/call", name, (double)time / MEASURE_COUNT, (double)bytes / MEASURE_COUNT));
+    }
+
+    public static void main(String[] args) {
+        System.out.println("tracing enabled: " + Tracer.isEnabled(logger));
+        measure("Logger", false);
+        measure("Tracer", true);
+    }
+}
@@ -0,0 +1,77 @@
+package echowand.util;
+
+import java.util.LinkedList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ymakino
+ */
+public class TracerTest {
+    private Logger logger;
+    private LinkedList<LogRecord> records;
+    private Handler handler;
+
+    @Before
+    public void setUp() {
+        logger = Logger.getLogger(TracerTest.class.getName());
+        records = new LinkedList<LogRecord>();
+        handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        handler.setLevel(Level.ALL);
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void tearDown() {
+        logger.removeHandler(handler);
+        logger.setLevel(null);
+    }
+
+    @Test
+    public void testDisabled() {
+        logger.setLevel(Level.INFO);
+        assertFalse(Tracer.isEnabled(logger));
+
+        Tracer.entering(logger, "Class", "method", 1, 2);
+        Tracer.exiting(logger, "Class", "method", 3);
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void testEnabled() {
+        logger.setLevel(Level.FINER);
+        assertTrue(Tracer.isEnabled(logger));
+
+        Tracer.entering(logger, "Class", "method");
+        Tracer.entering(logger, "Class", "method", "a");
+        Tracer.entering(logger, "Class", "method", "a", "b", "c", "d");
+        Tracer.exiting(logger, "Class", "method", "r");
+        assertEquals(4, records.size());
+
+        assertEquals("ENTRY", records.get(0).getMessage());
+        assertEquals("method", records.get(0).getSourceMethodName());
+        assertArrayEquals(new Object[]{"a"}, records.get(1).getParameters());
+        assertArrayEquals(new Object[]{"a", "b", "c", "d"}, records.get(2).getParameters());
+        assertArrayEquals(new Object[]{"r"}, records.get(3).getParameters());
+    }
+}